@@ -49,6 +49,30 @@ public class FileProperties {
      * 回收站目录, 位于 ${chunkFileDir}/${username}/${jmalcloudTrashDir}
      */
     private String jmalcloudTrashDir = ".jmalcloudTrash";
+    /**
+     * 图片衍生文件(剪裁、webp等)的缓存目录, 位于 ${chunkFileDir}/${imageCacheDir}
+     */
+    private String imageCacheDir = ".imageCache";
+    /**
+     * 图片衍生文件缓存的最大占用空间(MB)
+     */
+    private Long imageCacheMaxSizeMB = 2048L;
+    /**
+     * oss 对象范围读取的块缓存目录, 位于 ${chunkFileDir}/${ossBlockCacheDir}
+     */
+    private String ossBlockCacheDir = ".ossBlockCache";
+    /**
+     * oss 块缓存的最大占用空间(MB)
+     */
+    private Long ossBlockCacheMaxSizeMB = 2048L;
+    /**
+     * 是否开启秒传, 上传自己已有的内容相同(SHA-256和大小相同)的文件时直接复制已有文件
+     */
+    private Boolean instantUpload = true;
+    /**
+     * 后台补算文件内容哈希时每秒最多读取的数据量(MB), 0 表示不补算
+     */
+    private Long contentHashBackfillRateMB = 32L;
     /**
      * lucene索引存储目录
      */
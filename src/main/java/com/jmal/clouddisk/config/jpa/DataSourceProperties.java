@@ -23,11 +23,23 @@ public class DataSourceProperties {
 
     private Boolean jpaEnabled = true;
 
+    /**
+     * 队列写入(SQLite)时单个事务最多合并的写入任务数, 小于等于1时关闭合并提交
+     */
+    private Integer writeBatchSize = 200;
+
+    /**
+     * 队列写入(SQLite)时等待凑满一批任务的最长时间(毫秒)
+     */
+    private Long writeBatchWaitMillis = 10L;
+
     public String toString() {
         return "DataSourceProperties{" +
                 "type=" + type +
                 ", migration=" + migration +
                 ", jpaEnabled=" + jpaEnabled +
+                ", writeBatchSize=" + writeBatchSize +
+                ", writeBatchWaitMillis=" + writeBatchWaitMillis +
                 '}';
     }
 
@@ -0,0 +1,19 @@
+package com.jmal.clouddisk.config.mongodb;
+
+import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.util.SortKeyUtil;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * 保存 FileDocument 前根据文件名生成排序键, 保证 save/insert 的文件都带有 sortKey
+ */
+@Component
+public class FileDocumentBeforeConvertCallback implements BeforeConvertCallback<FileDocument> {
+
+    @Override
+    public FileDocument onBeforeConvert(FileDocument fileDocument, String collection) {
+        fileDocument.setSortKey(SortKeyUtil.getSortKey(fileDocument.getName()));
+        return fileDocument;
+    }
+}
@@ -8,21 +8,20 @@ import com.jmal.clouddisk.annotation.LogOperatingFun;
 import com.jmal.clouddisk.model.*;
 import com.jmal.clouddisk.service.IMarkdownService;
 import com.jmal.clouddisk.service.IUserService;
+import com.jmal.clouddisk.service.impl.ArticleCacheService;
 import com.jmal.clouddisk.service.impl.CategoryService;
-import com.jmal.clouddisk.service.impl.LogService;
 import com.jmal.clouddisk.service.impl.SettingService;
 import com.jmal.clouddisk.service.impl.TagService;
+import com.jmal.clouddisk.service.impl.VisitCounterService;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -45,7 +44,9 @@ public class ArticlesController {
 
     private final IMarkdownService fileService;
 
-    private final LogService logService;
+    private final VisitCounterService visitCounterService;
+
+    private final ArticleCacheService articleCacheService;
 
     private final IUserService userService;
 
@@ -63,20 +64,29 @@ public class ArticlesController {
     @GetMapping(value = "/articles/sitemap.xml", produces = {"application/xml;charset=UTF-8"})
     @LogOperatingFun(value = "sitemap.xml", logType = LogOperation.Type.ARTICLE)
     @ResponseBody
-    public Urlset sitemapXml() {
+    public Urlset sitemapXml(HttpServletRequest request, WebRequest webRequest) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         return fileService.getSitemapXml();
     }
 
     @GetMapping(value = "/articles/sitemap.txt", produces = {"text/plain;charset=UTF-8"})
     @LogOperatingFun(value = "sitemap.txt", logType = LogOperation.Type.ARTICLE)
     @ResponseBody
-    public String sitemapTxt() {
+    public String sitemapTxt(HttpServletRequest request, WebRequest webRequest) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         return fileService.getSitemapTxt();
     }
 
     @GetMapping("/articles")
     @LogOperatingFun(value = "文章列表", logType = LogOperation.Type.ARTICLE)
-    public String index(HttpServletRequest request, Model map) {
+    public String index(HttpServletRequest request, WebRequest webRequest, Model map) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         map.addAttribute("mark", "articles");
         boolean isPjax = isPjax(request);
         WebsiteSettingDTO websiteSettingDTO;
@@ -97,94 +107,47 @@ public class ArticlesController {
     }
 
     @GetMapping("/articles/o/{slug}")
-    @LogOperatingFun(value = "独立页面", logType = LogOperation.Type.ARTICLE)
-    public String alonePage(HttpServletRequest request, @PathVariable String slug, Model map) {
-        String url = "/articles/o/" + slug;
-        long visits = logService.getVisitsByUrl(url);
-        map.addAttribute("visits", visits);
+    public String alonePage(HttpServletRequest request, WebRequest webRequest, @PathVariable String slug, Model map) {
+        String url = VisitCounterService.ALONE_PAGE_URL_PREFIX + slug;
         map.addAttribute("url", url);
-        return articlePage(request, slug, map);
+        return articlePage(request, webRequest, slug, url, map);
     }
 
     @GetMapping("/articles/s/{slug}")
-    @LogOperatingFun(value = "文章", logType = LogOperation.Type.ARTICLE)
-    public String article(HttpServletRequest request, @PathVariable String slug, Model map) {
-        String url = "/articles/s/" + slug;
-        long visits = logService.getVisitsByUrl(url);
-        map.addAttribute("visits", visits);
+    public String article(HttpServletRequest request, WebRequest webRequest, @PathVariable String slug, Model map) {
+        String url = VisitCounterService.ARTICLE_URL_PREFIX + slug;
         map.addAttribute("url", url);
-        return articlePage(request, slug, map);
+        return articlePage(request, webRequest, slug, url, map);
     }
 
-    private String articlePage(HttpServletRequest request, String slug, Model map) {
-        boolean isPjax = pjaxMap(request, map, "article");
+    private String articlePage(HttpServletRequest request, WebRequest webRequest, String slug, String url, Model map) {
         ArticleVO articleVO = fileService.getMarkDownContentBySlug(slug);
         if (articleVO == null || !BooleanUtil.isTrue(articleVO.getRelease())) {
             return notFind(request, map);
         }
-        Cookie[] cookies = request.getCookies();
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                if ("consumerId".equals(cookie.getName())) {
-                    articleVO.setEditable(true);
-                }
-            }
+        long visits = visitCounterService.increment(url);
+        // 页面没有变化时不再渲染, 返回的 304 中访问次数可能不是最新的
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
+        boolean isPjax = pjaxMap(request, map, "article");
+        map.addAttribute("visits", visits);
+        if (isEditable(request)) {
+            // 缓存中的文章是共享的, 复制一份再修改
+            ArticleVO editableArticleVO = new ArticleVO();
+            BeanUtils.copyProperties(articleVO, editableArticleVO);
+            editableArticleVO.setEditable(true);
+            articleVO = editableArticleVO;
         }
         map.addAttribute("keywords", setKeywords(articleVO));
         map.addAttribute("description", setDescription(articleVO));
 
-        modifyHtml(map, articleVO);
-
         map.addAttribute("markdown", articleVO);
 
         map.addAttribute("titleName", articleVO.getName());
         return isPjax ? "article" : "index";
     }
 
-    private static void modifyHtml(Model map, ArticleVO articleVO) {
-        // 使用 Jsoup 解析 HTML 内容, 使用parseBodyFragment 避免 Jsoup 自动添加 <html> 和 <body> 标签
-        Document document = Jsoup.parseBodyFragment(articleVO.getHtml());
-
-        // 关闭 "Pretty Print"（美化排版） 避免 Jsoup 自动格式化 HTML
-        document.outputSettings().prettyPrint(false);
-
-        // 遍历所有 h 标签（h1, h2, h3, h4, h5, h6）
-        for (int i = 1; i <= 6; i++) {
-            Elements headers = document.select("h" + i);
-            for (Element header : headers) {
-                if (!header.hasAttr("id")) {
-                    String textContent = header.text();
-                    // 将非字母数字字符替换为下划线
-                    String idValue = "header-" + textContent.replaceAll("[^a-zA-Z0-9一-龥\\s]", "").trim().replaceAll("\\s+", "_");
-                    header.attr("id", idValue);
-                }
-            }
-        }
-
-        // default img
-        String cover = articleVO.getCover();
-        if (StrUtil.isBlank(cover)) {
-            Object object = map.getAttribute("setting");
-            if (object instanceof WebsiteSettingDTO settingDTO) {
-                cover = settingDTO.getBackgroundSite();
-            }
-        }
-
-        // 遍历所有 img 标签
-        Elements images = document.select("img");
-        for (Element img : images) {
-            if (img.hasAttr("src")) {
-                String srcValue = img.attr("src");
-                img.attr("data-src", srcValue);
-                img.addClass("lazy");
-                img.attr("src", cover);
-            }
-        }
-        // 获取修改后的 HTML 内容
-        String modifiedHtmlContent = document.body().html();
-        articleVO.setHtml(modifiedHtmlContent);
-    }
-
     private String setDescription(ArticleVO articleVO) {
         if (articleVO.getHtml() == null) {
             return articleVO.getName();
@@ -208,16 +171,22 @@ public class ArticlesController {
 
     @GetMapping("/articles/categories")
     @LogOperatingFun(value = "文章分类", logType = LogOperation.Type.ARTICLE)
-    public String categories(HttpServletRequest request, Model map) {
+    public String categories(HttpServletRequest request, WebRequest webRequest, Model map) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         boolean isPjax = pjaxMap(request, map, "categories");
         map.addAttribute("titleName", "分类");
-        map.addAttribute("categories", categoryService.list(null, null));
+        map.addAttribute("categories", articleCacheService.get("categories", () -> categoryService.list(null, null)));
         return isPjax ? "categories" : "index";
     }
 
     @GetMapping("/articles/archives")
     @LogOperatingFun(value = "文章归档", logType = LogOperation.Type.ARTICLE)
-    public String archives(HttpServletRequest request, Model map) {
+    public String archives(HttpServletRequest request, WebRequest webRequest, Model map) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         boolean isPjax = pjaxMap(request, map, "archives");
         map.addAttribute("titleName", "归档");
         int page = 1, pageSize = 100;
@@ -231,7 +200,10 @@ public class ArticlesController {
 
     @GetMapping("/articles/categories/{categorySlugName}")
     @LogOperatingFun(value = "文章分类", logType = LogOperation.Type.ARTICLE)
-    public String getCategoryByName(HttpServletRequest request, Model map, @PathVariable String categorySlugName) {
+    public String getCategoryByName(HttpServletRequest request, WebRequest webRequest, Model map, @PathVariable String categorySlugName) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         boolean isPjax = pjaxMap(request, map, "articles-query");
         if (CharSequenceUtil.isBlank(categorySlugName)) {
             return notFind(request, map);
@@ -258,16 +230,22 @@ public class ArticlesController {
 
     @GetMapping("/articles/tags")
     @LogOperatingFun(value = "文章标签", logType = LogOperation.Type.ARTICLE)
-    public String tags(HttpServletRequest request, Model map) {
+    public String tags(HttpServletRequest request, WebRequest webRequest, Model map) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         boolean isPjax = pjaxMap(request, map, "tags");
         map.addAttribute("titleName", "标签");
-        map.addAttribute("tags", tagService.listTagsOfArticle());
+        map.addAttribute("tags", articleCacheService.get("tags", tagService::listTagsOfArticle));
         return isPjax ? "tags" : "index";
     }
 
     @GetMapping("/articles/tags/{tagSlugName}")
     @LogOperatingFun(value = "文章标签", logType = LogOperation.Type.ARTICLE)
-    public String getTagByName(HttpServletRequest request, Model map, @PathVariable String tagSlugName) {
+    public String getTagByName(HttpServletRequest request, WebRequest webRequest, Model map, @PathVariable String tagSlugName) {
+        if (checkNotModified(request, webRequest)) {
+            return null;
+        }
         boolean isPjax = pjaxMap(request, map, "articles-query");
         if (CharSequenceUtil.isBlank(tagSlugName)) {
             return notFind(request, map);
@@ -380,6 +358,30 @@ public class ArticlesController {
         }
     }
 
+    /***
+     * 页面没有变化时返回 304
+     * 同一个url的页面还和 pjax、主题、是否可编辑有关, 这几项也加到 ETag 中
+     * @param request HttpServletRequest
+     * @param webRequest WebRequest
+     * @return 是否返回 304
+     */
+    private boolean checkNotModified(HttpServletRequest request, WebRequest webRequest) {
+        String variant = (isPjax(request) ? "1" : "0") + (darkTheme(request) ? "1" : "0") + (isEditable(request) ? "1" : "0");
+        return webRequest.checkNotModified(articleCacheService.getEtag(variant));
+    }
+
+    private boolean isEditable(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if ("consumerId".equals(cookie.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private boolean darkTheme(HttpServletRequest request) {
         Cookie[] cookies = request.getCookies();
         if (cookies != null) {
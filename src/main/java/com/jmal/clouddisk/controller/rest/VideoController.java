@@ -1,6 +1,8 @@
 package com.jmal.clouddisk.controller.rest;
 
+import cn.hutool.core.convert.Convert;
 import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.media.OnDemandTranscodeService;
 import com.jmal.clouddisk.service.IShareService;
 import com.jmal.clouddisk.util.FileContentTypeUtils;
 import com.jmal.clouddisk.util.MyFileUtils;
@@ -9,6 +11,7 @@ import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -16,6 +19,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -28,6 +32,8 @@ public class VideoController {
 
     private final IShareService shareService;
 
+    private final OnDemandTranscodeService onDemandTranscodeService;
+
 
     @GetMapping("/video/hls/{username}/{fileId}.m3u8")
     public ResponseEntity<UrlResource> m3u8(@PathVariable String username, @PathVariable String fileId) throws IOException {
@@ -55,7 +61,28 @@ public class VideoController {
 
     @GetMapping("/video/hls/{username}/{fileId}-{index}.ts")
     public ResponseEntity<UrlResource> ts(@PathVariable String username, @PathVariable String fileId, @PathVariable String index) throws IOException {
-        return getUrlResourceResponseEntity(username, fileId, fileId + "-" + index + ".ts");
+        String segment = fileId + "-" + index + ".ts";
+        if (Files.notExists(Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), username, fileProperties.getVideoTranscodeCache(), fileId, segment))) {
+            // 按需转码, 等待分片生成, 等待超时后让播放器稍后重试
+            OnDemandTranscodeService.SegmentStatus status = onDemandTranscodeService.awaitSegment(username, fileId, Convert.toInt(index, -1));
+            if (status == OnDemandTranscodeService.SegmentStatus.PENDING) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                        .build();
+            }
+        }
+        return getUrlResourceResponseEntity(username, fileId, segment);
+    }
+
+    @GetMapping("/video/hls/{username}/{fileId}/{name:\\d+p}.m3u8")
+    public ResponseEntity<UrlResource> renditionM3u8(@PathVariable String username, @PathVariable String fileId, @PathVariable String name) throws IOException {
+        return getUrlResourceResponseEntity(username, fileId, name + ".m3u8");
+    }
+
+    @GetMapping("/video/hls/{username}/{fileId}/{name:\\d+p}-{index}.ts")
+    public ResponseEntity<UrlResource> renditionTs(@PathVariable String username, @PathVariable String fileId, @PathVariable String name, @PathVariable String index) throws IOException {
+        return getUrlResourceResponseEntity(username, fileId, name + "-" + index + ".ts");
     }
 
     @GetMapping("/public/video/hls/{shareId}/{shareToken}/{username}/{fileId}.m3u8")
@@ -76,4 +103,16 @@ public class VideoController {
         return ts(username, fileId, index);
     }
 
+    @GetMapping("/public/video/hls/{shareId}/{shareToken}/{username}/{fileId}/{name:\\d+p}.m3u8")
+    public ResponseEntity<UrlResource> publicRenditionM3u8(@PathVariable String username, @PathVariable String fileId, @PathVariable String name, @PathVariable String shareId, @PathVariable String shareToken) throws IOException {
+        shareService.validShare(shareToken, shareId);
+        return renditionM3u8(username, fileId, name);
+    }
+
+    @GetMapping("/public/video/hls/{shareId}/{shareToken}/{username}/{fileId}/{name:\\d+p}-{index}.ts")
+    public ResponseEntity<UrlResource> publicRenditionTs(@PathVariable String username, @PathVariable String fileId, @PathVariable String name, @PathVariable String index, @PathVariable String shareId, @PathVariable String shareToken) throws IOException {
+        shareService.validShare(shareToken, shareId);
+        return renditionTs(username, fileId, name, index);
+    }
+
 }
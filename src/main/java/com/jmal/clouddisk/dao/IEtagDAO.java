@@ -1,6 +1,7 @@
 package com.jmal.clouddisk.dao;
 
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
+import com.jmal.clouddisk.model.file.dto.FolderSizeDTO;
 
 import java.time.Instant;
 import java.util.List;
@@ -27,15 +28,28 @@ public interface IEtagDAO {
 
     List<FileBaseEtagDTO> findFileBaseEtagDTOByRootDirFilesWithoutEtag();
 
-    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder();
+    /**
+     * 查找需要更新ETag的文件夹, 路径越深越靠前, 包含 etag, etagHash
+     *
+     * @param limit 最多返回的数量
+     */
+    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit);
 
     void clearMarkUpdateById(String fileId);
 
     boolean setMarkUpdateByUserIdAndPathAndName(String userId, String path, String name);
 
+    /**
+     * 查找文件夹的直接子项, 包含 etag, size, childrenCount
+     */
     List<FileBaseEtagDTO> findFileBaseEtagDTOByUserIdAndPath(String userId, String path);
 
-    long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount);
+    /**
+     * 汇总文件夹直接子项的大小和数量, 不读取子项本身
+     */
+    FolderSizeDTO sumSizeAndCountByUserIdAndPath(String userId, String path);
+
+    long updateEtagAndSizeById(String fileId, String etag, String etagHash, long size, int childrenCount);
 
     int findEtagUpdateFailedAttemptsById(String fileId);
 
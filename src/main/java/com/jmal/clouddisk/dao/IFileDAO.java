@@ -17,6 +17,7 @@ import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface IFileDAO {
 
@@ -134,12 +135,75 @@ public interface IFileDAO {
 
     void setShowCover(String id, Boolean showCover);
 
+    /**
+     * 写入媒体处理结果, 只更新 mediaInfo 中不为 null 的字段:
+     * 尺寸(w/h)、exif、music、video、mediaCover、缩略图(content)、contentType、size、md5、mediaStatus
+     *
+     * @param id        fileId
+     * @param mediaInfo 媒体处理结果
+     */
+    void setMediaInfoById(String id, FileDocument mediaInfo);
+
+    List<String> findIdsByMediaStatus(int mediaStatus, int limit);
+
+    /**
+     * 设置文件内容的哈希
+     *
+     * @param id          fileId
+     * @param contentHash 文件内容的SHA-256, 为 null 时清空
+     */
+    void setContentHashById(String id, String contentHash);
+
+    /**
+     * 查找用户自己内容相同的文件
+     *
+     * @param userId      userId
+     * @param contentHash 文件内容的SHA-256
+     * @param size        文件大小
+     * @param limit       最多返回的数量
+     * @return 只包含 id、userId、path、name、size、updateDate
+     */
+    List<FileDocument> findAllByUserIdAndContentHashAndSize(String userId, String contentHash, long size, int limit);
+
+    /**
+     * 按id顺序查找尚未计算内容哈希的文件, 用于后台补算
+     *
+     * @param afterId 上一批最后一个fileId, 为 null 时从头开始
+     * @param limit   最多返回的数量
+     */
+    List<FileBaseDTO> findAllWithoutContentHash(String afterId, int limit);
+
+    /**
+     * 按id顺序查找没有文件名排序键的文件, 用于补全旧数据
+     *
+     * @param afterId 上一批最后一个fileId, 为 null 时从头开始
+     * @param limit   最多返回的数量
+     */
+    List<FileBaseDTO> findAllWithoutSortKey(String afterId, int limit);
+
+    /**
+     * 批量设置文件名排序键
+     *
+     * @param sortKeyMap fileId -> sortKey
+     */
+    void setSortKeys(Map<String, String> sortKeyMap);
+
     List<FileBaseDTO> findAllFileBaseDTOByIdIn(List<String> fileIdList);
 
     List<FileBaseDTO> findAllByUserIdAndPathPrefix(String userId, String pathPrefix);
 
     void setPathById(String id, String newFilePath);
 
+    /**
+     * 替换用户某个路径下所有文件的路径前缀, 一条语句完成
+     *
+     * @param userId        userId
+     * @param oldPathPrefix 原路径前缀, 以"/"结尾
+     * @param newPathPrefix 新路径前缀, 以"/"结尾
+     * @return 修改的文件数
+     */
+    long replacePathPrefix(String userId, String oldPathPrefix, String newPathPrefix);
+
     List<FileDocument> findAllByUserIdAndPathAndNameIn(String userId, String toPath, List<String> fromFilenameList);
 
     List<String> findFilenameListByIdIn(List<String> ids);
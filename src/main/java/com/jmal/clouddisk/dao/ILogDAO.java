@@ -2,15 +2,25 @@ package com.jmal.clouddisk.dao;
 
 import com.jmal.clouddisk.model.LogOperation;
 import com.jmal.clouddisk.model.LogOperationDTO;
+import com.jmal.clouddisk.model.dto.UrlVisitsDTO;
 import org.springframework.data.domain.Page;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 public interface ILogDAO {
 
     void save(LogOperation logOperation);
 
     Page<LogOperation> findAllByQuery(LogOperationDTO logOperationDTO, String currentUsername, String currentUserId, boolean isAdministrators);
 
-    long countByUrl(String url);
+    /**
+     * 按url分组统计访问次数, 只在初始化访问计数时使用
+     *
+     * @param urlPrefix url前缀
+     * @param before    只统计此时间之前的日志
+     */
+    List<UrlVisitsDTO> countGroupByUrlPrefix(String urlPrefix, LocalDateTime before);
 
     Page<LogOperation> findFileOperationHistoryByFileId(LogOperationDTO logOperationDTO, String fileId, String currentUserId, String currentUsername);
 }
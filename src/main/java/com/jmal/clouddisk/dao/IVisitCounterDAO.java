@@ -0,0 +1,25 @@
+package com.jmal.clouddisk.dao;
+
+import java.util.Map;
+import java.util.Set;
+
+public interface IVisitCounterDAO {
+
+    /**
+     * 获取url的访问次数
+     *
+     * @param url url
+     * @return 访问次数, 没有记录时返回0
+     */
+    long findVisitsByUrl(String url);
+
+    /**
+     * 批量增加访问次数, 没有记录时新建
+     *
+     * 写入结果无法确定时(如等待超时, 之后仍可能提交)抛出异常, 调用方不能重试, 否则会重复计数
+     *
+     * @param increments key: url, value: 增加的次数
+     * @return 确定没有写入的url, 可以重试, 其余的都已写入
+     */
+    Set<String> incrementAll(Map<String, Long> increments);
+}
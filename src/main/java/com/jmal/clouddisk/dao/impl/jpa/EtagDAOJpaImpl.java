@@ -8,6 +8,7 @@ import com.jmal.clouddisk.dao.impl.jpa.write.etag.EtagOperation;
 import com.jmal.clouddisk.dao.util.MyQuery;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
+import com.jmal.clouddisk.model.file.dto.FolderSizeDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Conditional;
@@ -94,8 +95,8 @@ public class EtagDAOJpaImpl implements IEtagDAO {
     }
 
     @Override
-    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder() {
-        return fileEtagRepository.findFileBaseEtagDTOByNeedUpdateFolder(Instant.now());
+    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit) {
+        return fileEtagRepository.findFileBaseEtagDTOByNeedUpdateFolder(Instant.now(), PageRequest.of(0, limit));
     }
 
     @Override
@@ -126,9 +127,14 @@ public class EtagDAOJpaImpl implements IEtagDAO {
     }
 
     @Override
-    public long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) {
+    public FolderSizeDTO sumSizeAndCountByUserIdAndPath(String userId, String path) {
+        return fileEtagRepository.sumSizeAndCountByUserIdAndPath(userId, path);
+    }
+
+    @Override
+    public long updateEtagAndSizeById(String fileId, String etag, String etagHash, long size, int childrenCount) {
         try {
-            return writeService.submit(new EtagOperation.UpdateEtagAndSizeById(fileId, etag, size, childrenCount)).get(30, TimeUnit.SECONDS);
+            return writeService.submit(new EtagOperation.UpdateEtagAndSizeById(fileId, etag, etagHash, size, childrenCount)).get(30, TimeUnit.SECONDS);
         } catch (Exception e) {
             throw new CommonException(e.getMessage());
         }
@@ -35,6 +35,7 @@ import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -412,6 +413,57 @@ public class FileDAOJpaImpl implements IFileDAO {
         }
     }
 
+    @Override
+    public void setMediaInfoById(String id, FileDocument mediaInfo) {
+        try {
+            writeService.submit(new FileOperation.SetMediaInfoById(id, mediaInfo)).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> findIdsByMediaStatus(int mediaStatus, int limit) {
+        return fileMetadataRepository.findIdsByMediaStatus(mediaStatus, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public void setContentHashById(String id, String contentHash) {
+        try {
+            writeService.submit(new FileOperation.SetContentHashById(id, contentHash)).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
+    @Override
+    public List<FileDocument> findAllByUserIdAndContentHashAndSize(String userId, String contentHash, long size, int limit) {
+        return fileMetadataRepository.findAllByUserIdAndContentHashAndSize(userId, contentHash, size, PageRequest.of(0, limit))
+                .stream().map(FileMetadataDO::toFileDocument).toList();
+    }
+
+    @Override
+    public List<FileBaseDTO> findAllWithoutContentHash(String afterId, int limit) {
+        return fileMetadataRepository.findAllWithoutContentHash(afterId == null ? "" : afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<FileBaseDTO> findAllWithoutSortKey(String afterId, int limit) {
+        return fileMetadataRepository.findAllWithoutSortKey(afterId == null ? "" : afterId, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public void setSortKeys(Map<String, String> sortKeyMap) {
+        if (sortKeyMap.isEmpty()) {
+            return;
+        }
+        try {
+            writeService.submit(new FileOperation.SetSortKeys(sortKeyMap)).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
     @Override
     public void setShowCover(String id, Boolean showCover) {
         try {
@@ -444,6 +496,16 @@ public class FileDAOJpaImpl implements IFileDAO {
         }
     }
 
+    @Override
+    public long replacePathPrefix(String userId, String oldPathPrefix, String newPathPrefix) {
+        String pathPrefixForLike = MyQuery.escapeLikeSpecialChars(oldPathPrefix) + "%";
+        try {
+            return writeService.submit(new FileOperation.ReplacePathPrefix(userId, pathPrefixForLike, oldPathPrefix, newPathPrefix)).get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
     @Override
     public List<FileDocument> findAllByUserIdAndPathAndNameIn(String userId, String toPath, List<String> fromFilenameList) {
         List<FileMetadataDO> fileMetadataDOList = fileMetadataRepository.findAllByUserIdAndPathAndNameIn(userId, toPath, fromFilenameList);
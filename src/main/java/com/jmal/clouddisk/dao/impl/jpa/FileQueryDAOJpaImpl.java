@@ -7,6 +7,7 @@ import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
 import com.jmal.clouddisk.dao.IFileQueryDAO;
 import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
 import com.jmal.clouddisk.dao.impl.jpa.repository.TrashRepository;
+import com.jmal.clouddisk.dao.util.FileCursor;
 import com.jmal.clouddisk.lucene.LuceneQueryService;
 import com.jmal.clouddisk.model.UploadApiParamDTO;
 import com.jmal.clouddisk.model.file.FileDocument;
@@ -14,8 +15,10 @@ import com.jmal.clouddisk.model.file.FileIntroVO;
 import com.jmal.clouddisk.model.file.FileMetadataDO;
 import com.jmal.clouddisk.model.file.TrashEntityDO;
 import com.jmal.clouddisk.model.file.dto.FileBaseMountDTO;
+import com.jmal.clouddisk.model.file.dto.FileIntroDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.impl.CommonFileService;
+import com.jmal.clouddisk.service.impl.FileSortService;
 import com.jmal.clouddisk.util.TimeUntils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -23,6 +26,7 @@ import org.jetbrains.annotations.NotNull;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Repository;
@@ -51,7 +55,8 @@ public class FileQueryDAOJpaImpl implements IFileQueryDAO {
     @Override
     public Page<FileIntroVO> getFileIntroVO(UploadApiParamDTO upload) {
         Page<String> page = null;
-        Pageable pageable = upload.getPageable(Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER));
+        // 在数据库中按 (userId, path, isFolder, sortKey) 排序和分页
+        Pageable pageable = FileSortService.toSortKeyPageable(upload.getPageable(Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER)));
         String currentDirectory = upload.getCurrentDirectory();
         String queryFileType = upload.getQueryFileType();
 
@@ -134,8 +139,26 @@ public class FileQueryDAOJpaImpl implements IFileQueryDAO {
     }
 
     private Page<FileIntroVO> findAllByUserIdAndPath(UploadApiParamDTO upload, String currentDirectory, Pageable pageable) {
-        Page<FileMetadataDO> fileMetadataDOPage = fileMetadataRepository.findAllByUserIdAndPath(upload.getUserId(), currentDirectory, pageable);
-        return getFileIntroVOPage(pageable, fileMetadataDOPage);
+        FileCursor cursor = upload.isDirectoryListing() ? FileCursor.decode(upload.getCursor()) : null;
+        if (cursor != null && upload.getPageSize() != null && FileSortService.isSortByName(upload.getSortableProp(), upload.getOrder())) {
+            // 游标分页, 不跳过前面的记录, 也不统计总数
+            Pageable limit = PageRequest.of(0, upload.getPageSize());
+            List<FileIntroDTO> list = FileSortService.isDescending(upload.getSortableProp(), upload.getOrder())
+                    ? fileMetadataRepository.findFileIntroByUserIdAndPathBefore(upload.getUserId(), currentDirectory, cursor.isFolder(), cursor.sortKey(), cursor.id(), limit)
+                    : fileMetadataRepository.findFileIntroByUserIdAndPathAfter(upload.getUserId(), currentDirectory, cursor.isFolder(), cursor.sortKey(), cursor.id(), limit);
+            return new PageImpl<>(toFileIntroVOList(list));
+        }
+        Page<FileIntroDTO> page = fileMetadataRepository.findFileIntroByUserIdAndPath(upload.getUserId(), currentDirectory, pageable);
+        return new PageImpl<>(toFileIntroVOList(page.getContent()), pageable, page.getTotalElements());
+    }
+
+    private static List<FileIntroVO> toFileIntroVOList(List<FileIntroDTO> list) {
+        long now = System.currentTimeMillis();
+        return list.stream().map(FileIntroDTO::toFileIntroVO)
+                .peek(fv -> {
+                    long updateMilli = TimeUntils.getMilli(fv.getUpdateDate());
+                    fv.setAgoTime(now - updateMilli);
+                }).toList();
     }
 
     @NotNull
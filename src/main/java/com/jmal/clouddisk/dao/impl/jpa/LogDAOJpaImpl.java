@@ -10,6 +10,7 @@ import com.jmal.clouddisk.dao.impl.jpa.write.Priority;
 import com.jmal.clouddisk.dao.impl.jpa.write.log.LogDataOperation;
 import com.jmal.clouddisk.model.LogOperation;
 import com.jmal.clouddisk.model.LogOperationDTO;
+import com.jmal.clouddisk.model.dto.UrlVisitsDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.util.TimeUntils;
 import jakarta.persistence.criteria.Predicate;
@@ -54,8 +55,8 @@ public class LogDAOJpaImpl implements ILogDAO, IWriteCommon<LogOperation> {
     }
 
     @Override
-    public long countByUrl(String url) {
-        return logRepository.countByUrl(url);
+    public List<UrlVisitsDTO> countGroupByUrlPrefix(String urlPrefix, LocalDateTime before) {
+        return logRepository.countGroupByUrlPrefix(urlPrefix, before);
     }
 
     @Override
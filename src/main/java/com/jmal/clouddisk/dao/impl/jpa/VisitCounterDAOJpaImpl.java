@@ -0,0 +1,66 @@
+package com.jmal.clouddisk.dao.impl.jpa;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.IVisitCounterDAO;
+import com.jmal.clouddisk.dao.impl.jpa.repository.VisitCounterRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IWriteService;
+import com.jmal.clouddisk.dao.impl.jpa.write.visitcounter.VisitCounterOperation;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.model.VisitCounter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class VisitCounterDAOJpaImpl implements IVisitCounterDAO, IWriteCommon<VisitCounter> {
+
+    private final VisitCounterRepository visitCounterRepository;
+
+    private final IWriteService writeService;
+
+    @Override
+    public void AsyncSaveAll(Iterable<VisitCounter> entities) {
+        try {
+            writeService.submit(new VisitCounterOperation.CreateAll(entities)).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new CommonException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long findVisitsByUrl(String url) {
+        return visitCounterRepository.findVisitsByUrl(url).orElse(0L);
+    }
+
+    @Override
+    public Set<String> incrementAll(Map<String, Long> increments) {
+        if (increments.isEmpty()) {
+            return Set.of();
+        }
+        try {
+            writeService.submit(new VisitCounterOperation.IncrementAll(increments)).get(30, TimeUnit.SECONDS);
+            return Set.of();
+        } catch (ExecutionException | CancellationException e) {
+            // 在同一个事务中执行, 失败或未执行时都没有写入
+            log.warn("批量增加访问次数失败, {}", e.getMessage());
+            return increments.keySet();
+        } catch (TimeoutException e) {
+            // 任务仍在写入队列中, 之后还可能提交
+            throw new CommonException("批量增加访问次数超时, 写入结果未知");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException(e.getMessage());
+        }
+    }
+}
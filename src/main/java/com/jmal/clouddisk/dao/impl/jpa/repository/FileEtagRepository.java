@@ -3,6 +3,7 @@ package com.jmal.clouddisk.dao.impl.jpa.repository;
 import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
 import com.jmal.clouddisk.model.file.FileMetadataDO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
+import com.jmal.clouddisk.model.file.dto.FolderSizeDTO;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -70,15 +71,14 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
     )
     List<FileBaseEtagDTO> findFileBaseEtagDTOByEtagIsNullAndIsFolderIsFalseAndPath(String path, Pageable pageable);
 
-    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.etag) " +
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.etag, f.etagHash) " +
             "FROM FileMetadataDO f " +
             "WHERE f.needsEtagUpdate = true " +
             "AND (f.retryAt IS NULL OR f.retryAt <= :now) " +
             "AND f.isFolder = true " +
-            "ORDER BY LENGTH(f.path) DESC, f.lastEtagUpdateRequestAt ASC " +
-            "LIMIT 16"
+            "ORDER BY LENGTH(f.path) DESC, f.lastEtagUpdateRequestAt ASC"
     )
-    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(Instant now);
+    List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(Instant now, Pageable pageable);
 
     @Modifying
     @Query("UPDATE FileMetadataDO f " +
@@ -96,16 +96,26 @@ public interface FileEtagRepository extends JpaRepository<FileMetadataDO, Long>
 
     boolean existsByUserIdAndPathAndName(String userId, String path, String name);
 
-    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag) " +
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.etag, f.size, f.childrenCount) " +
             "FROM FileMetadataDO f " +
             "WHERE f.userId = :userId " +
             "AND f.path = :userId1"
     )
     List<FileBaseEtagDTO> findFileBaseEtagDTOByUserIdAndPath(String userId, String userId1);
 
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FolderSizeDTO(" +
+            "COALESCE(SUM(f.size), 0), " +
+            "COUNT(f), " +
+            "COALESCE(SUM(CASE WHEN f.isFolder = true THEN COALESCE(f.childrenCount, 0) ELSE 0 END), 0)) " +
+            "FROM FileMetadataDO f " +
+            "WHERE f.userId = :userId " +
+            "AND f.path = :path"
+    )
+    FolderSizeDTO sumSizeAndCountByUserIdAndPath(String userId, String path);
+
     @Modifying
-    @Query("UPDATE FileMetadataDO f SET f.etag = :etag, f.size = :size, f.childrenCount = :childrenCount, f.updateDate = :now WHERE f.publicId = :fileId")
-    Integer updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount, LocalDateTime now);
+    @Query("UPDATE FileMetadataDO f SET f.etag = :etag, f.etagHash = :etagHash, f.size = :size, f.childrenCount = :childrenCount, f.updateDate = :now WHERE f.publicId = :fileId")
+    Integer updateEtagAndSizeById(String fileId, String etag, String etagHash, long size, int childrenCount, LocalDateTime now);
 
     @Query("SELECT f.etagUpdateFailedAttempts FROM FileMetadataDO f WHERE f.publicId = :id")
     Optional<Integer> findEtagUpdateFailedAttemptsById(String id);
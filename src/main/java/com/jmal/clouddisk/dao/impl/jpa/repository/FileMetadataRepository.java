@@ -114,7 +114,8 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
             "f.md5 = :md5, " +
             "f.suffix = :suffix, " +
             "f.contentType = :contentType, " +
-            "f.updateDate = :updateDate " +
+            "f.updateDate = :updateDate, " +
+            "f.contentHash = NULL " +
             "WHERE f.publicId = :id"
     )
     int updateModifyFile(
@@ -205,8 +206,27 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     void setIsFavoriteByIdIn(List<String> fileIds, boolean isFavorite);
 
     @Modifying
-    @Query("UPDATE FileMetadataDO f SET f.name = :name, f.suffix = :suffix WHERE f.publicId = :fileId")
-    void setNameAndSuffixById(String fileId, String name, String suffix);
+    @Query("UPDATE FileMetadataDO f SET f.name = :name, f.sortKey = :sortKey, f.suffix = :suffix WHERE f.publicId = :fileId")
+    void setNameAndSuffixById(String fileId, String name, String sortKey, String suffix);
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f SET f.contentHash = :contentHash WHERE f.publicId = :fileId")
+    void setContentHashById(String fileId, String contentHash);
+
+    List<FileMetadataDO> findAllByUserIdAndContentHashAndSize(String userId, String contentHash, Long size, Pageable pageable);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseDTO(f.publicId, f.name, f.path, f.userId) FROM FileMetadataDO f " +
+            "WHERE f.contentHash IS NULL AND f.isFolder = false AND f.mountFileId IS NULL AND f.publicId > :afterId " +
+            "ORDER BY f.publicId")
+    List<FileBaseDTO> findAllWithoutContentHash(String afterId, Pageable pageable);
+
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseDTO(f.publicId, f.name, f.path, f.userId) FROM FileMetadataDO f " +
+            "WHERE f.sortKey IS NULL AND f.publicId > :afterId ORDER BY f.publicId")
+    List<FileBaseDTO> findAllWithoutSortKey(String afterId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f SET f.sortKey = :sortKey WHERE f.publicId = :fileId")
+    void setSortKeyById(String fileId, String sortKey);
 
     @Query("SELECT f.publicId FROM FileMetadataDO f WHERE f.userId = :userId AND f.mountFileId IS NOT NULL")
     Page<String> findIdsByUserIdAndMountFileIdIsNotNull(String userId, Pageable pageable);
@@ -223,8 +243,14 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     void setPathById(String fileId, String path);
 
     @Modifying
-    @Query("UPDATE FileMetadataDO f SET f.name = :name WHERE f.mountFileId = :mountFileId")
-    void setNameByMountFileId(String mountFileId, String name);
+    @Query("UPDATE FileMetadataDO f SET f.path = CONCAT(:newPathPrefix, SUBSTRING(f.path, :start)) " +
+            "WHERE f.userId = :userId " +
+            "AND f.path LIKE :pathPrefix ESCAPE '\\'")
+    int replacePathPrefix(String userId, String pathPrefix, String newPathPrefix, int start);
+
+    @Modifying
+    @Query("UPDATE FileMetadataDO f SET f.name = :name, f.sortKey = :sortKey WHERE f.mountFileId = :mountFileId")
+    void setNameByMountFileId(String mountFileId, String name, String sortKey);
 
     @Query("SELECT f FROM FileMetadataDO f JOIN FETCH f.props p WHERE f.userId = :userId AND f.path = :path AND f.name IN :names")
     List<FileMetadataDO> findAllByUserIdAndPathAndNameIn(String userId, String path, List<String> names);
@@ -233,7 +259,7 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     List<String> findFilenameListByIdIn(List<String> ids);
 
 
-    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseAllDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.suffix, f.size, f.contentType) " +
+    @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseAllDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.suffix, f.size, f.contentType, f.updateDate, f.scannedMtime) " +
             "FROM FileMetadataDO f " +
             "WHERE f.userId = :userId " +
             "AND f.path = :path")
@@ -282,6 +308,9 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
 
     long countByLuceneIndex(int luceneIndex);
 
+    @Query("SELECT f.publicId FROM FileMetadataDO f WHERE f.mediaStatus = :mediaStatus")
+    List<String> findIdsByMediaStatus(int mediaStatus, Pageable pageable);
+
     @Query("SELECT new com.jmal.clouddisk.model.file.dto.FileBaseLuceneDTO(f.publicId, f.name, f.path, f.userId, f.isFolder, f.isFavorite, p.remark, p.tags, a.tagIds, f.etag, f.size, f.uploadDate) " +
             "FROM FileMetadataDO f LEFT JOIN ArticleDO a ON a.fileMetadata = f JOIN f.props p " +
             "WHERE f.luceneIndex = :status")
@@ -351,8 +380,33 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadataDO, Lo
     @EntityGraph(attributePaths = "props")
     Page<FileMetadataDO> findAllByUserIdAndSuffixIn(String userId, List<String> suffixList, Pageable pageable);
 
-    @EntityGraph(attributePaths = "props")
-    Page<FileMetadataDO> findAllByUserIdAndPath(String userId, String path, Pageable pageable);
+    String SELECT_FILE_INTRO_DTO = "SELECT new com.jmal.clouddisk.model.file.dto.FileIntroDTO(" +
+            "f.publicId, f.name, f.isFolder, f.md5, f.size, f.childrenCount, f.contentType, f.uploadDate, f.updateDate, " +
+            "f.userId, f.path, f.sortKey, f.suffix, f.isFavorite, f.mountFileId, f.ossFolder, " +
+            "p.shareBase, p.subShare, p.tags, p.shareProps, p.props) " +
+            "FROM FileMetadataDO f LEFT JOIN f.props p ";
+
+    @Query(value = SELECT_FILE_INTRO_DTO + "WHERE f.userId = :userId AND f.path = :path",
+            countQuery = "SELECT count(f) FROM FileMetadataDO f WHERE f.userId = :userId AND f.path = :path")
+    Page<FileIntroDTO> findFileIntroByUserIdAndPath(String userId, String path, Pageable pageable);
+
+    /**
+     * 按 (isFolder desc, sortKey, publicId) 查询游标之后的文件
+     */
+    @Query(SELECT_FILE_INTRO_DTO + "WHERE f.userId = :userId AND f.path = :path AND (" +
+            "(:isFolder = true AND f.isFolder = false) OR " +
+            "(f.isFolder = :isFolder AND (f.sortKey > :sortKey OR (f.sortKey = :sortKey AND f.publicId > :id)))) " +
+            "ORDER BY f.isFolder DESC, f.sortKey ASC, f.publicId ASC")
+    List<FileIntroDTO> findFileIntroByUserIdAndPathAfter(String userId, String path, boolean isFolder, String sortKey, String id, Pageable pageable);
+
+    /**
+     * 按 (isFolder desc, sortKey desc, publicId desc) 查询游标之后的文件
+     */
+    @Query(SELECT_FILE_INTRO_DTO + "WHERE f.userId = :userId AND f.path = :path AND (" +
+            "(:isFolder = true AND f.isFolder = false) OR " +
+            "(f.isFolder = :isFolder AND (f.sortKey < :sortKey OR (f.sortKey = :sortKey AND f.publicId < :id)))) " +
+            "ORDER BY f.isFolder DESC, f.sortKey DESC, f.publicId DESC")
+    List<FileIntroDTO> findFileIntroByUserIdAndPathBefore(String userId, String path, boolean isFolder, String sortKey, String id, Pageable pageable);
 
     @EntityGraph(attributePaths = "props")
     Page<FileMetadataDO> findAllByUserIdAndIsFavoriteIsTrue(String userId, Pageable pageable);
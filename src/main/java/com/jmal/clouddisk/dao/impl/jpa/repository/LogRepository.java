@@ -2,15 +2,22 @@ package com.jmal.clouddisk.dao.impl.jpa.repository;
 
 import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
 import com.jmal.clouddisk.model.LogOperation;
+import com.jmal.clouddisk.model.dto.UrlVisitsDTO;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
 @Conditional(RelationalDataSourceCondition.class)
 public interface LogRepository extends JpaRepository<LogOperation, String>, JpaSpecificationExecutor<LogOperation> {
 
-    long countByUrl(String url);
+    @Query("SELECT new com.jmal.clouddisk.model.dto.UrlVisitsDTO(l.url, COUNT(l)) FROM LogOperation l " +
+            "WHERE l.url LIKE CONCAT(:urlPrefix, '%') AND l.createTime < :before GROUP BY l.url")
+    List<UrlVisitsDTO> countGroupByUrlPrefix(String urlPrefix, LocalDateTime before);
 
 }
@@ -0,0 +1,23 @@
+package com.jmal.clouddisk.dao.impl.jpa.repository;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.model.VisitCounter;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+@Conditional(RelationalDataSourceCondition.class)
+public interface VisitCounterRepository extends JpaRepository<VisitCounter, String> {
+
+    @Query("SELECT v.visits FROM VisitCounter v WHERE v.url = :url")
+    Optional<Long> findVisitsByUrl(String url);
+
+    @Modifying
+    @Query("UPDATE VisitCounter v SET v.visits = v.visits + :delta WHERE v.url = :url")
+    int incrementVisitsByUrl(String url, long delta);
+}
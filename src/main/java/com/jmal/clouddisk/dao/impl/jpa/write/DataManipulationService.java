@@ -1,8 +1,17 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -10,13 +19,57 @@ public class DataManipulationService {
 
     private final Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers;
 
-    public DataManipulationService(Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers) {
+    private final EntityManagerFactory entityManagerFactory;
+
+    public DataManipulationService(Map<Class<? extends IDataOperation<?>>, IDataOperationHandler<?, ?>> handlers, EntityManagerFactory entityManagerFactory) {
         this.handlers = handlers;
+        this.entityManagerFactory = entityManagerFactory;
     }
 
     @Transactional
-    @SuppressWarnings("unchecked")
     public <R> R execute(IDataOperation<R> operation) {
+        return doExecute(operation);
+    }
+
+    /**
+     * 在同一个事务中依次执行一批数据操作(合并提交)。
+     * 每个操作前设置一个保存点, 单个操作失败只回滚到它自己的保存点, 不影响同批次的其他操作。
+     * 如果失败导致整个事务只能回滚(例如 Hibernate 在 flush 出错后会将事务标记为 rollback-only),
+     * 则抛出 {@link GroupCommitException}, 由调用方降级为逐个执行。
+     *
+     * @param operations 数据操作列表
+     * @return 与 operations 一一对应的执行结果
+     */
+    @Transactional
+    public List<OperationResult> executeBatch(List<? extends IDataOperation<?>> operations) {
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+        if (entityManager == null) {
+            throw new IllegalStateException("No transactional EntityManager available for batch execution.");
+        }
+        Session session = entityManager.unwrap(Session.class);
+        List<OperationResult> results = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+            try {
+                Object result = doExecute(operations.get(i));
+                // 立即flush, 让SQL错误在当前保存点内暴露
+                entityManager.flush();
+                session.doWork(connection -> connection.releaseSavepoint(savepoint));
+                results.add(OperationResult.success(result));
+            } catch (RuntimeException e) {
+                if (TransactionAspectSupport.currentTransactionStatus().isRollbackOnly()) {
+                    throw new GroupCommitException(i, e);
+                }
+                session.doWork(connection -> connection.rollback(savepoint));
+                entityManager.clear();
+                results.add(OperationResult.failure(e));
+            }
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R doExecute(IDataOperation<R> operation) {
         if (operation == null) {
             throw new IllegalArgumentException("Operation cannot be null.");
         }
@@ -31,4 +84,41 @@ public class DataManipulationService {
         return handler.handle(operation);
     }
 
+    /**
+     * 批量执行中单个操作的结果
+     *
+     * @param result 操作的返回值
+     * @param error  操作失败时的异常, 成功时为 null
+     */
+    public record OperationResult(Object result, Throwable error) {
+
+        static OperationResult success(Object result) {
+            return new OperationResult(result, null);
+        }
+
+        static OperationResult failure(Throwable error) {
+            return new OperationResult(null, error);
+        }
+    }
+
+    /**
+     * 批量执行时某个操作的失败导致整个事务无法提交
+     */
+    public static class GroupCommitException extends RuntimeException {
+
+        /**
+         * 导致事务失败的操作在批次中的下标
+         */
+        private final int failedIndex;
+
+        public GroupCommitException(int failedIndex, Throwable cause) {
+            super(cause);
+            this.failedIndex = failedIndex;
+        }
+
+        public int getFailedIndex() {
+            return failedIndex;
+        }
+    }
+
 }
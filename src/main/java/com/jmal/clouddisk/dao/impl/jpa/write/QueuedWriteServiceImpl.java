@@ -4,6 +4,8 @@ import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -12,6 +14,9 @@ import java.util.concurrent.atomic.AtomicLong;
  * 当数据源是SQLite时激活。
  * 它将写入任务放入一个内存优先级队列，由一个后台单线程消费者串行执行。
  * 高优先级的任务（如用户操作）会比普通优先级的任务（如后台任务）先被执行。
+ * <p>
+ * 合并提交模式（batchSize > 1）下，消费者每次最多取出 batchSize 个任务或等待 batchWaitMillis 毫秒，
+ * 在同一个事务中执行，避免SQLite为每一行写入单独fsync。每个任务的 CompletableFuture 在事务提交后单独完成。
  */
 @Slf4j
 public class QueuedWriteServiceImpl implements IWriteService {
@@ -76,12 +81,68 @@ public class QueuedWriteServiceImpl implements IWriteService {
 
     private final DataManipulationService dataManipulationService;
 
-    public QueuedWriteServiceImpl(DataManipulationService dataManipulationService) {
+    /**
+     * 单个事务最多合并的任务数
+     */
+    private final int batchSize;
+
+    /**
+     * 等待凑满一批任务的最长时间(毫秒)
+     */
+    private final long batchWaitMillis;
+
+    /**
+     * 统计信息输出间隔(毫秒)
+     */
+    private static final long STATS_LOG_INTERVAL_MILLIS = 60_000L;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile long lastCommitNanos;
+    private long lastStatsLogTime = System.currentTimeMillis();
+
+    public QueuedWriteServiceImpl(DataManipulationService dataManipulationService, Integer batchSize, Long batchWaitMillis) {
         this.dataManipulationService = dataManipulationService;
-        log.debug("写入策略初始化：带优先级的异步队列写入（适用于SQLite）。");
+        this.batchSize = batchSize == null ? 1 : Math.max(1, batchSize);
+        this.batchWaitMillis = batchWaitMillis == null ? 0 : Math.max(0, batchWaitMillis);
+        log.debug("写入策略初始化：带优先级的异步队列写入（适用于SQLite）, batchSize: {}, batchWaitMillis: {}", this.batchSize, this.batchWaitMillis);
         init();
     }
 
+    /**
+     * 写入队列的运行统计, 用于调整 batchSize 和 batchWaitMillis
+     *
+     * @param queueDepth          当前队列中等待的任务数
+     * @param batchCount          已提交的批次数
+     * @param taskCount           已执行的任务数
+     * @param lastBatchSize       最近一批的任务数
+     * @param avgBatchSize        平均每批的任务数
+     * @param lastCommitMillis    最近一批的执行+提交耗时(毫秒)
+     * @param avgCommitMillis     平均每批的执行+提交耗时(毫秒)
+     * @param maxCommitMillis     最大的单批执行+提交耗时(毫秒)
+     */
+    public record WriteQueueStats(int queueDepth, long batchCount, long taskCount, int lastBatchSize, double avgBatchSize,
+                                  double lastCommitMillis, double avgCommitMillis, double maxCommitMillis) {
+    }
+
+    public WriteQueueStats getStats() {
+        long batches = batchCount.get();
+        long tasks = taskCount.get();
+        return new WriteQueueStats(
+                writeQueue.size(),
+                batches,
+                tasks,
+                lastBatchSize,
+                batches == 0 ? 0 : (double) tasks / batches,
+                lastCommitNanos / 1_000_000.0,
+                batches == 0 ? 0 : totalCommitNanos.get() / 1_000_000.0 / batches,
+                maxCommitNanos.get() / 1_000_000.0
+        );
+    }
+
     @Override
     public <R> CompletableFuture<R> submit(IDataOperation<R> operation, Priority priority) {
         log.debug( "提交操作任务 {}, 优先级: {}", operation.getClass().getName(), priority);
@@ -115,7 +176,22 @@ public class QueuedWriteServiceImpl implements IWriteService {
                             break;
                         }
 
-                        processTask(task);
+                        if (batchSize <= 1) {
+                            long start = System.nanoTime();
+                            processTask(task);
+                            recordBatch(1, System.nanoTime() - start);
+                            continue;
+                        }
+
+                        List<WriteTask<?>> batch = new ArrayList<>(batchSize);
+                        batch.add(task);
+                        boolean poisoned = collectBatch(batch);
+                        processBatch(batch);
+                        if (poisoned) {
+                            log.debug("毒丸接收。消费者线程正在优雅地停止。");
+                            drainQueueOnShutdown();
+                            break;
+                        }
 
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
@@ -143,6 +219,98 @@ public class QueuedWriteServiceImpl implements IWriteService {
         }
     }
 
+    /**
+     * 从队列中收集一批任务, 直到达到 batchSize 或等待超过 batchWaitMillis
+     *
+     * @param batch 已包含第一个任务的批次
+     * @return 是否收到了毒丸
+     */
+    private boolean collectBatch(List<WriteTask<?>> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMillis);
+        while (batch.size() < batchSize) {
+            WriteTask<?> next = writeQueue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                next = writeQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+            }
+            if (next == POISON_PILL) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private void processBatch(List<WriteTask<?>> batch) {
+        if (batch.size() == 1) {
+            long start = System.nanoTime();
+            processTask(batch.getFirst());
+            recordBatch(1, System.nanoTime() - start);
+            return;
+        }
+        List<IDataOperation<?>> operations = new ArrayList<>(batch.size());
+        for (WriteTask<?> task : batch) {
+            operations.add(task.operation);
+        }
+        long start = System.nanoTime();
+        List<DataManipulationService.OperationResult> results;
+        try {
+            results = dataManipulationService.executeBatch(operations);
+        } catch (DataManipulationService.GroupCommitException e) {
+            // 失败的操作使整个事务无法提交, 该操作单独报错, 其余操作降级为逐个执行
+            WriteTask<?> failedTask = batch.get(e.getFailedIndex());
+            log.error("处理操作写入任务时出错 {}", failedTask.operation.getClass().getName(), e.getCause());
+            failedTask.future.completeExceptionally(e.getCause());
+            fallbackToSingle(batch, failedTask);
+            recordBatch(batch.size(), System.nanoTime() - start);
+            return;
+        } catch (Throwable e) {
+            log.warn("合并提交失败, 降级为逐个执行, 任务数: {}, {}", batch.size(), e.getMessage());
+            fallbackToSingle(batch, null);
+            recordBatch(batch.size(), System.nanoTime() - start);
+            return;
+        }
+        recordBatch(batch.size(), System.nanoTime() - start);
+        for (int i = 0; i < batch.size(); i++) {
+            WriteTask<?> task = batch.get(i);
+            DataManipulationService.OperationResult result = results.get(i);
+            if (result.error() != null) {
+                log.error("处理操作写入任务时出错 {}", task.operation.getClass().getName(), result.error());
+                task.future.completeExceptionally(result.error());
+            } else {
+                completeFuture(task.future, result.result());
+            }
+        }
+    }
+
+    private void fallbackToSingle(List<WriteTask<?>> batch, WriteTask<?> skipTask) {
+        for (WriteTask<?> task : batch) {
+            if (task != skipTask) {
+                processTask(task);
+            }
+        }
+    }
+
+    private void recordBatch(int size, long elapsedNanos) {
+        batchCount.incrementAndGet();
+        taskCount.addAndGet(size);
+        totalCommitNanos.addAndGet(elapsedNanos);
+        maxCommitNanos.accumulateAndGet(elapsedNanos, Math::max);
+        lastBatchSize = size;
+        lastCommitNanos = elapsedNanos;
+        long now = System.currentTimeMillis();
+        if (now - lastStatsLogTime >= STATS_LOG_INTERVAL_MILLIS) {
+            lastStatsLogTime = now;
+            log.info("写入队列统计: {}", getStats());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <R> void completeFuture(CompletableFuture<R> future, Object result) {
         future.complete((R) result);
@@ -166,7 +334,7 @@ public class QueuedWriteServiceImpl implements IWriteService {
     }
 
     @PreDestroy
-    private void stopConsumer() {
+    void stopConsumer() {
         log.debug("启动QueuedWriteService的优雅关闭...");
         writerExecutor.shutdown();
         try {
@@ -1,5 +1,6 @@
 package com.jmal.clouddisk.dao.impl.jpa.write;
 
+import com.jmal.clouddisk.config.jpa.DataSourceProperties;
 import com.jmal.clouddisk.dao.DataSourceType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -16,9 +17,9 @@ public class WriteServiceConfiguration {
     private final Environment environment;
 
     @Bean
-    public IWriteService actualWriteService(DataManipulationService dataManipulationService) {
+    public IWriteService actualWriteService(DataManipulationService dataManipulationService, DataSourceProperties dataSourceProperties) {
         if (isSqlite()) {
-            return new QueuedWriteServiceImpl(dataManipulationService);
+            return new QueuedWriteServiceImpl(dataManipulationService, dataSourceProperties.getWriteBatchSize(), dataSourceProperties.getWriteBatchWaitMillis());
         } else {
             return new DirectWriteServiceImpl(dataManipulationService);
         }
@@ -13,7 +13,7 @@ public final class EtagOperation {
 
     public record SetMarkUpdateByUserIdAndPathAndName(String userId, String path, String name) implements IEtagOperation<Integer>{}
 
-    public record UpdateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) implements IEtagOperation<Integer>{}
+    public record UpdateEtagAndSizeById(String fileId, String etag, String etagHash, long size, int childrenCount) implements IEtagOperation<Integer>{}
 
     public record SetFailedEtagById(String fileId, int attempts, String errorMsg, Boolean needsEtagUpdate) implements IEtagOperation<Void>{}
 
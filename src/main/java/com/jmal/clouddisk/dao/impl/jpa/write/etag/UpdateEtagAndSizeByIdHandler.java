@@ -18,6 +18,6 @@ public class UpdateEtagAndSizeByIdHandler implements IDataOperationHandler<EtagO
 
     @Override
     public Integer handle(EtagOperation.UpdateEtagAndSizeById op) {
-        return repo.updateEtagAndSizeById(op.fileId(), op.etag(), op.size(), op.childrenCount(), LocalDateTime.now());
+        return repo.updateEtagAndSizeById(op.fileId(), op.etag(), op.etagHash(), op.size(), op.childrenCount(), LocalDateTime.now());
     }
 }
@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public final class FileOperation {
     private FileOperation() {}
@@ -65,6 +66,13 @@ public final class FileOperation {
 
     public record SetPathById(String id, String newFilePath) implements IFileOperation<Void> {}
 
+    public record SetMediaInfoById(String id, FileDocument mediaInfo) implements IFileOperation<Void> {}
+    public record SetContentHashById(String id, String contentHash) implements IFileOperation<Void> {}
+
+    public record SetSortKeys(Map<String, String> sortKeyMap) implements IFileOperation<Void> {}
+
+    public record ReplacePathPrefix(String userId, String pathPrefixForLike, String oldPathPrefix, String newPathPrefix) implements IFileOperation<Integer> {}
+
     public record SetNameByMountFileId(String fileId, String newFileName) implements IFileOperation<Void> {}
 
     public record UpdateFileByUserIdAndPathAndName(String userId, String path, String name, UpdateFile updateFile) implements IFileOperation<Void> {}
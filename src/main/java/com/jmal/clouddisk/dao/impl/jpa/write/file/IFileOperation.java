@@ -3,5 +3,5 @@ package com.jmal.clouddisk.dao.impl.jpa.write.file;
 import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperation;
 
 public sealed interface IFileOperation<R> extends IDataOperation<R>
-        permits FileOperation.ClearAllFolderSizes, FileOperation.CreateAllFileMetadata, FileOperation.CreateFileMetadata, FileOperation.Default, FileOperation.DeleteAllByIdInBatch, FileOperation.DeleteAllByUserIdInBatch, FileOperation.DeleteById, FileOperation.RemoveAllByUserIdAndPathPrefix, FileOperation.RemoveByMountFileIdIn, FileOperation.RemoveByUserIdAndPathAndName, FileOperation.ResetIndexStatus, FileOperation.SetContent, FileOperation.SetDelTag, FileOperation.SetIsFavoriteByIdIn, FileOperation.SetOtherPropsById, FileOperation.SetNameAndSuffixById, FileOperation.SetNameByMountFileId, FileOperation.SetPathById, FileOperation.SetShareBaseOperation, FileOperation.SetSubShareFormShareBase, FileOperation.SetUpdateDateById, FileOperation.UnsetDelTag, FileOperation.UnsetDelTagByIdIn, FileOperation.UnsetShareBaseOperation, FileOperation.UnsetShareProps, FileOperation.UnsetTranscodeVideo, FileOperation.UpdateFileByUserIdAndPathAndName, FileOperation.UpdateFileSize, FileOperation.UpdateLuceneIndexStatusByIdIn, FileOperation.UpdateModifyFile, FileOperation.UpdateShareBaseById, FileOperation.UpdateShareProps, FileOperation.UpdateSharePropsById, FileOperation.UpdateTagsForFile, FileOperation.UpdateTagsForFiles, FileOperation.UpdateTranscodeVideoByIdIn, FileOperation.UpsertByUserIdAndPathAndName, FileOperation.setOtherPropsByUserIdAndPathAndName {
+        permits FileOperation.ClearAllFolderSizes, FileOperation.CreateAllFileMetadata, FileOperation.CreateFileMetadata, FileOperation.Default, FileOperation.DeleteAllByIdInBatch, FileOperation.DeleteAllByUserIdInBatch, FileOperation.DeleteById, FileOperation.RemoveAllByUserIdAndPathPrefix, FileOperation.RemoveByMountFileIdIn, FileOperation.RemoveByUserIdAndPathAndName, FileOperation.ReplacePathPrefix, FileOperation.ResetIndexStatus, FileOperation.SetContent, FileOperation.SetContentHashById, FileOperation.SetDelTag, FileOperation.SetIsFavoriteByIdIn, FileOperation.SetMediaInfoById, FileOperation.SetOtherPropsById, FileOperation.SetNameAndSuffixById, FileOperation.SetNameByMountFileId, FileOperation.SetPathById, FileOperation.SetShareBaseOperation, FileOperation.SetSortKeys, FileOperation.SetSubShareFormShareBase, FileOperation.SetUpdateDateById, FileOperation.UnsetDelTag, FileOperation.UnsetDelTagByIdIn, FileOperation.UnsetShareBaseOperation, FileOperation.UnsetShareProps, FileOperation.UnsetTranscodeVideo, FileOperation.UpdateFileByUserIdAndPathAndName, FileOperation.UpdateFileSize, FileOperation.UpdateLuceneIndexStatusByIdIn, FileOperation.UpdateModifyFile, FileOperation.UpdateShareBaseById, FileOperation.UpdateShareProps, FileOperation.UpdateSharePropsById, FileOperation.UpdateTagsForFile, FileOperation.UpdateTagsForFiles, FileOperation.UpdateTranscodeVideoByIdIn, FileOperation.UpsertByUserIdAndPathAndName, FileOperation.setOtherPropsByUserIdAndPathAndName {
 }
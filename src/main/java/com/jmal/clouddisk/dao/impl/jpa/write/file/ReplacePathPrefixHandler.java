@@ -0,0 +1,23 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.file;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("fileReplacePathPrefixHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class ReplacePathPrefixHandler implements IDataOperationHandler<FileOperation.ReplacePathPrefix, Integer> {
+
+    private final FileMetadataRepository repo;
+
+    @Override
+    public Integer handle(FileOperation.ReplacePathPrefix op) {
+        // SQL 的 SUBSTRING 从 1 开始, 按字符计算
+        int start = op.oldPathPrefix().codePointCount(0, op.oldPathPrefix().length()) + 1;
+        return repo.replacePathPrefix(op.userId(), op.pathPrefixForLike(), op.newPathPrefix(), start);
+    }
+}
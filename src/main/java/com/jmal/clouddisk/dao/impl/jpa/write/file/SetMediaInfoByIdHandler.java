@@ -0,0 +1,67 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.file;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.model.file.FileMetadataDO;
+import com.jmal.clouddisk.model.file.FilePropsDO;
+import com.jmal.clouddisk.model.file.OtherProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("fileSetMediaInfoByIdHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class SetMediaInfoByIdHandler implements IDataOperationHandler<FileOperation.SetMediaInfoById, Void> {
+
+    private final FileMetadataRepository repo;
+
+    @Override
+    public Void handle(FileOperation.SetMediaInfoById op) {
+        FileMetadataDO fileMetadataDO = repo.findByPublicId(op.id()).orElse(null);
+        if (fileMetadataDO == null) {
+            return null;
+        }
+        FileDocument mediaInfo = op.mediaInfo();
+        if (mediaInfo.getContentType() != null) {
+            fileMetadataDO.setContentType(mediaInfo.getContentType());
+        }
+        if (mediaInfo.getSize() != null) {
+            fileMetadataDO.setSize(mediaInfo.getSize());
+        }
+        if (mediaInfo.getMd5() != null) {
+            fileMetadataDO.setMd5(mediaInfo.getMd5());
+        }
+        if (mediaInfo.getMediaStatus() != null) {
+            fileMetadataDO.setMediaStatus(mediaInfo.getMediaStatus());
+        }
+        // 缩略图/封面已经由处理过程写入文件存储
+        if (mediaInfo.getContent() != null) {
+            fileMetadataDO.setHasContent(true);
+        }
+        FilePropsDO filePropsDO = fileMetadataDO.getProps();
+        OtherProperties otherProperties = filePropsDO.getProps() == null ? new OtherProperties() : filePropsDO.getProps();
+        if (mediaInfo.getW() != null) {
+            otherProperties.setW(mediaInfo.getW());
+            otherProperties.setH(mediaInfo.getH());
+        }
+        if (mediaInfo.getExif() != null) {
+            otherProperties.setExif(mediaInfo.getExif());
+        }
+        if (mediaInfo.getMusic() != null) {
+            otherProperties.setMusic(mediaInfo.getMusic());
+        }
+        if (mediaInfo.getVideo() != null) {
+            otherProperties.setVideo(mediaInfo.getVideo());
+        }
+        if (mediaInfo.getMediaCover() != null) {
+            otherProperties.setMediaCover(mediaInfo.getMediaCover());
+        }
+        filePropsDO.setProps(otherProperties);
+        fileMetadataDO.setProps(filePropsDO);
+        repo.save(fileMetadataDO);
+        return null;
+    }
+}
@@ -3,6 +3,7 @@ package com.jmal.clouddisk.dao.impl.jpa.write.file;
 import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
 import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
 import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import com.jmal.clouddisk.util.SortKeyUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Component;
@@ -16,7 +17,7 @@ public class SetNameAndSuffixByIdHandler implements IDataOperationHandler<FileOp
 
     @Override
     public Void handle(FileOperation.SetNameAndSuffixById op) {
-        repo.setNameAndSuffixById(op.fileId(), op.name(), op.suffix());
+        repo.setNameAndSuffixById(op.fileId(), op.name(), SortKeyUtil.getSortKey(op.name()), op.suffix());
         return null;
     }
 }
@@ -3,6 +3,7 @@ package com.jmal.clouddisk.dao.impl.jpa.write.file;
 import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
 import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
 import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import com.jmal.clouddisk.util.SortKeyUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.stereotype.Component;
@@ -16,7 +17,7 @@ public class SetNameByMountFileIdHandler implements IDataOperationHandler<FileOp
 
     @Override
     public Void handle(FileOperation.SetNameByMountFileId op) {
-        repo.setNameByMountFileId(op.newFileName(), op.fileId());
+        repo.setNameByMountFileId(op.fileId(), op.newFileName(), SortKeyUtil.getSortKey(op.newFileName()));
         return null;
     }
 }
@@ -0,0 +1,22 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.file;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.FileMetadataRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("fileSetSortKeysHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class SetSortKeysHandler implements IDataOperationHandler<FileOperation.SetSortKeys, Void> {
+
+    private final FileMetadataRepository repo;
+
+    @Override
+    public Void handle(FileOperation.SetSortKeys op) {
+        op.sortKeyMap().forEach(repo::setSortKeyById);
+        return null;
+    }
+}
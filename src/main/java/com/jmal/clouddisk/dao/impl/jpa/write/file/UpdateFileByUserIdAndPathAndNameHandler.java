@@ -32,6 +32,9 @@ public class UpdateFileByUserIdAndPathAndNameHandler implements IDataOperationHa
             if (file.getUpdateDate() != null) {
                 fileMetadataDO.setUpdateDate(file.getUpdateDate());
             }
+            if (file.getScannedMtime() != null) {
+                fileMetadataDO.setScannedMtime(file.getScannedMtime());
+            }
             FilePropsDO filePropsDO = fileMetadataDO.getProps();
             OtherProperties otherProperties = filePropsDO.getProps();
             if (file.getExif() != null) {
@@ -0,0 +1,22 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.visitcounter;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.VisitCounterRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+@Component("visitCounterCreateAllHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class CreateAllHandler implements IDataOperationHandler<VisitCounterOperation.CreateAll, Void> {
+
+    private final VisitCounterRepository repository;
+
+    @Override
+    public Void handle(VisitCounterOperation.CreateAll operation) {
+        repository.saveAll(operation.entities());
+        return null;
+    }
+}
@@ -0,0 +1,7 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.visitcounter;
+
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperation;
+
+public sealed interface IVisitCounterOperation<R> extends IDataOperation<R>
+        permits VisitCounterOperation.CreateAll, VisitCounterOperation.IncrementAll {
+}
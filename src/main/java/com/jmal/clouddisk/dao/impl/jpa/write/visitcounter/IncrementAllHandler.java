@@ -0,0 +1,38 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.visitcounter;
+
+import com.jmal.clouddisk.config.jpa.RelationalDataSourceCondition;
+import com.jmal.clouddisk.dao.impl.jpa.repository.VisitCounterRepository;
+import com.jmal.clouddisk.dao.impl.jpa.write.IDataOperationHandler;
+import com.jmal.clouddisk.model.VisitCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component("visitCounterIncrementAllHandler")
+@RequiredArgsConstructor
+@Conditional(RelationalDataSourceCondition.class)
+public class IncrementAllHandler implements IDataOperationHandler<VisitCounterOperation.IncrementAll, Void> {
+
+    private final VisitCounterRepository repository;
+
+    @Override
+    public Void handle(VisitCounterOperation.IncrementAll operation) {
+        // 写操作是串行执行的, 先更新, 没有记录时再插入, 不会重复插入
+        List<VisitCounter> newCounters = new ArrayList<>();
+        operation.increments().forEach((url, delta) -> {
+            if (repository.incrementVisitsByUrl(url, delta) == 0) {
+                VisitCounter visitCounter = new VisitCounter();
+                visitCounter.setUrl(url);
+                visitCounter.setVisits(delta);
+                newCounters.add(visitCounter);
+            }
+        });
+        if (!newCounters.isEmpty()) {
+            repository.saveAll(newCounters);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.jmal.clouddisk.dao.impl.jpa.write.visitcounter;
+
+import com.jmal.clouddisk.model.VisitCounter;
+
+import java.util.Map;
+
+public final class VisitCounterOperation {
+
+    private VisitCounterOperation() {
+    }
+
+    public record CreateAll(Iterable<VisitCounter> entities) implements IVisitCounterOperation<Void> {
+    }
+
+    public record IncrementAll(Map<String, Long> increments) implements IVisitCounterOperation<Void> {
+    }
+}
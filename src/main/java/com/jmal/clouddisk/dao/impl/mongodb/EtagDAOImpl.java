@@ -5,6 +5,7 @@ import cn.hutool.core.util.ReUtil;
 import com.jmal.clouddisk.dao.IEtagDAO;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
+import com.jmal.clouddisk.model.file.dto.FolderSizeDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.mongodb.client.AggregateIterable;
@@ -123,7 +124,7 @@ public class EtagDAOImpl implements IEtagDAO {
     }
 
     @Override
-    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder() {
+    public List<FileBaseEtagDTO> findFileBaseEtagDTOByNeedUpdateFolder(int limit) {
         Criteria criteria = Criteria.where(Constants.NEEDS_ETAG_UPDATE_FIELD).is(true).and(Constants.IS_FOLDER).is(true);
         Criteria or1 = Criteria.where("retryAt").exists(false);
         Criteria or2 = Criteria.where("retryAt").lte(Instant.now());
@@ -139,7 +140,7 @@ public class EtagDAOImpl implements IEtagDAO {
                         .and(Sort.by(Sort.Direction.ASC, Constants.LAST_ETAG_UPDATE_REQUEST_AT_FIELD))
         );
 
-        LimitOperation limitOperation = Aggregation.limit(16);
+        LimitOperation limitOperation = Aggregation.limit(limit);
 
         // match -> addFields -> sort -> limit
         Aggregation aggregation = Aggregation.newAggregation(
@@ -185,11 +186,24 @@ public class EtagDAOImpl implements IEtagDAO {
     }
 
     @Override
-    public long updateEtagAndSizeById(String fileId, String etag, long size, int childrenCount) {
+    public FolderSizeDTO sumSizeAndCountByUserIdAndPath(String userId, String path) {
+        Document descendants = new Document("$cond", Arrays.asList("$" + Constants.IS_FOLDER, new Document("$ifNull", Arrays.asList("$" + Constants.CHILDREN_COUNT, 0)), 0));
+        List<Bson> list = Arrays.asList(match(and(eq(USER_ID, userId), eq(Constants.PATH_FIELD, path))),
+                group(null, sum(Constants.TOTAL_SIZE, "$size"), sum("count", 1), sum("descendantCount", descendants)));
+        Document doc = mongoTemplate.getCollection(CommonFileService.COLLECTION_NAME).aggregate(list).first();
+        if (doc == null) {
+            return new FolderSizeDTO(0L, 0L, 0L);
+        }
+        return new FolderSizeDTO(Convert.toLong(doc.get(Constants.TOTAL_SIZE), 0L), Convert.toLong(doc.get("count"), 0L), Convert.toLong(doc.get("descendantCount"), 0L));
+    }
+
+    @Override
+    public long updateEtagAndSizeById(String fileId, String etag, String etagHash, long size, int childrenCount) {
         Query query = new Query();
         query.addCriteria(Criteria.where("_id").is(fileId));
         Update update = new Update();
         update.set(Constants.ETAG, etag);
+        update.set(Constants.ETAG_HASH, etagHash);
         update.set(Constants.SIZE, size);
         update.set(Constants.CHILDREN_COUNT, childrenCount);
         update.set(Constants.UPDATE_DATE, LocalDateTime.now());
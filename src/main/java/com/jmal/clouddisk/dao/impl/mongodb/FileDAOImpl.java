@@ -27,6 +27,7 @@ import com.jmal.clouddisk.service.IUserService;
 import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.service.impl.UserLoginHolder;
 import com.jmal.clouddisk.util.MongoUtil;
+import com.jmal.clouddisk.util.SortKeyUtil;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.result.UpdateResult;
@@ -37,7 +38,10 @@ import org.bson.types.ObjectId;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -52,6 +56,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static com.jmal.clouddisk.service.IUserService.USER_ID;
 import static com.jmal.clouddisk.service.impl.CommonFileService.COLLECTION_NAME;
@@ -135,6 +140,7 @@ public class FileDAOImpl implements IFileDAO {
     public String upsertMountFile(FileDocument fileDocument) {
         Update update = MongoUtil.getUpdate(fileDocument);
         update.set("remark", "挂载 mount");
+        update.set(Constants.SORT_KEY, SortKeyUtil.getSortKey(fileDocument.getName()));
         Query query = getQuery(fileDocument.getUserId(), fileDocument.getPath(), fileDocument.getName());
         UpdateResult updateResult = mongoTemplate.upsert(query, update, FileDocument.class);
         if (updateResult.getUpsertedId() != null) {
@@ -356,6 +362,8 @@ public class FileDAOImpl implements IFileDAO {
         update.set(Constants.SUFFIX, suffix);
         update.set(Constants.CONTENT_TYPE, fileContentType);
         update.set(Constants.UPDATE_DATE, updateTime);
+        // 内容已变化
+        update.unset(Constants.CONTENT_HASH);
         Query query = new Query();
         query.addCriteria(Criteria.where("_id").is(id));
         UpdateResult updateResult = mongoTemplate.upsert(query, update, FileDocument.class);
@@ -485,6 +493,7 @@ public class FileDAOImpl implements IFileDAO {
         query.addCriteria(Criteria.where("_id").is(fileId));
         Update update = new Update();
         update.set(Constants.FILENAME_FIELD, name);
+        update.set(Constants.SORT_KEY, SortKeyUtil.getSortKey(name));
         update.set(Constants.SUFFIX, suffix);
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
@@ -507,6 +516,122 @@ public class FileDAOImpl implements IFileDAO {
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
 
+    @Override
+    public void setMediaInfoById(String id, FileDocument mediaInfo) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(id));
+        Update update = new Update();
+        if (mediaInfo.getW() != null) {
+            update.set("w", mediaInfo.getW());
+            update.set("h", mediaInfo.getH());
+        }
+        if (mediaInfo.getExif() != null) {
+            update.set("exif", mediaInfo.getExif());
+        }
+        if (mediaInfo.getMusic() != null) {
+            update.set("music", mediaInfo.getMusic());
+        }
+        if (mediaInfo.getVideo() != null) {
+            update.set("video", mediaInfo.getVideo());
+        }
+        if (mediaInfo.getMediaCover() != null) {
+            update.set("mediaCover", mediaInfo.getMediaCover());
+        }
+        if (mediaInfo.getContent() != null) {
+            update.set(Constants.CONTENT, mediaInfo.getContent());
+        }
+        if (mediaInfo.getContentType() != null) {
+            update.set(Constants.CONTENT_TYPE, mediaInfo.getContentType());
+        }
+        if (mediaInfo.getSize() != null) {
+            update.set(Constants.SIZE, mediaInfo.getSize());
+        }
+        if (mediaInfo.getMd5() != null) {
+            update.set("md5", mediaInfo.getMd5());
+        }
+        if (mediaInfo.getMediaStatus() != null) {
+            update.set("mediaStatus", mediaInfo.getMediaStatus());
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateFirst(query, update, FileDocument.class);
+    }
+
+    @Override
+    public List<String> findIdsByMediaStatus(int mediaStatus, int limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("mediaStatus").is(mediaStatus));
+        query.fields().include("_id");
+        query.limit(limit);
+        return mongoTemplate.find(query, Document.class, COLLECTION_NAME).stream()
+                .map(document -> document.get("_id").toString())
+                .toList();
+    }
+
+    @Override
+    public void setContentHashById(String id, String contentHash) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("_id").is(id));
+        Update update = new Update();
+        if (contentHash == null) {
+            update.unset(Constants.CONTENT_HASH);
+        } else {
+            update.set(Constants.CONTENT_HASH, contentHash);
+        }
+        mongoTemplate.updateFirst(query, update, FileDocument.class);
+    }
+
+    @Override
+    public List<FileDocument> findAllByUserIdAndContentHashAndSize(String userId, String contentHash, long size, int limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(Constants.CONTENT_HASH).is(contentHash));
+        query.addCriteria(Criteria.where(USER_ID).is(userId));
+        query.addCriteria(Criteria.where(Constants.SIZE).is(size));
+        query.fields().include(USER_ID, Constants.PATH_FIELD, Constants.FILENAME_FIELD, Constants.SIZE, Constants.UPDATE_DATE);
+        query.limit(limit);
+        return mongoTemplate.find(query, FileDocument.class);
+    }
+
+    @Override
+    public List<FileBaseDTO> findAllWithoutContentHash(String afterId, int limit) {
+        Query query = new Query();
+        // 之前记录的是MD5(32位), 需要重新计算为SHA-256
+        query.addCriteria(new Criteria().orOperator(
+                Criteria.where(Constants.CONTENT_HASH).exists(false),
+                Criteria.where(Constants.CONTENT_HASH).regex("^[0-9a-f]{32}$")));
+        query.addCriteria(Criteria.where(Constants.IS_FOLDER).is(false));
+        query.addCriteria(Criteria.where(Constants.MOUNT_FILE_ID_FIELD).exists(false));
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("_id").gt(ObjectId.isValid(afterId) ? new ObjectId(afterId) : afterId));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.limit(limit);
+        return mongoTemplate.find(query, FileBaseDTO.class, COLLECTION_NAME);
+    }
+
+    @Override
+    public List<FileBaseDTO> findAllWithoutSortKey(String afterId, int limit) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(Constants.SORT_KEY).exists(false));
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("_id").gt(ObjectId.isValid(afterId) ? new ObjectId(afterId) : afterId));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.limit(limit);
+        return mongoTemplate.find(query, FileBaseDTO.class, COLLECTION_NAME);
+    }
+
+    @Override
+    public void setSortKeys(Map<String, String> sortKeyMap) {
+        if (sortKeyMap.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileDocument.class);
+        sortKeyMap.forEach((id, sortKey) -> bulkOperations.updateOne(new Query(Criteria.where("_id").is(id)), new Update().set(Constants.SORT_KEY, sortKey)));
+        bulkOperations.execute();
+    }
+
     @Override
     public void setShowCover(String id, Boolean showCover) {
         Query query = new Query();
@@ -540,6 +665,20 @@ public class FileDAOImpl implements IFileDAO {
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
 
+    @Override
+    public long replacePathPrefix(String userId, String oldPathPrefix, String newPathPrefix) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where(IUserService.USER_ID).is(userId));
+        query.addCriteria(Criteria.where(Constants.PATH_FIELD).regex("^" + ReUtil.escape(oldPathPrefix)));
+        // path = newPathPrefix + path.substring(oldPathPrefix.length), $substrCP 按码点计算
+        int start = oldPathPrefix.codePointCount(0, oldPathPrefix.length());
+        AggregationUpdate update = AggregationUpdate.update()
+                .set(Constants.PATH_FIELD)
+                .toValue(StringOperators.Concat.stringValue(newPathPrefix)
+                        .concatValueOf(StringOperators.valueOf(Constants.PATH_FIELD).substringCP(start, Integer.MAX_VALUE)));
+        return mongoTemplate.updateMulti(query, update, FileDocument.class).getModifiedCount();
+    }
+
     @Override
     public List<FileDocument> findAllByUserIdAndPathAndNameIn(String userId, String toPath, List<String> fromFilenameList) {
         Query query = new Query();
@@ -603,6 +742,7 @@ public class FileDAOImpl implements IFileDAO {
         query.addCriteria(Criteria.where(Constants.MOUNT_FILE_ID_FIELD).is(fileId));
         Update update = new Update();
         update.set(Constants.FILENAME_FIELD, newFileName);
+        update.set(Constants.SORT_KEY, SortKeyUtil.getSortKey(newFileName));
         mongoTemplate.updateMulti(query, update, FileDocument.class);
     }
 
@@ -676,6 +816,9 @@ public class FileDAOImpl implements IFileDAO {
         if (updateFile.getUpdateDate() != null) {
             update.set(Constants.UPDATE_DATE, updateFile.getUpdateDate());
         }
+        if (updateFile.getScannedMtime() != null) {
+            update.set(Constants.SCANNED_MTIME, updateFile.getScannedMtime());
+        }
         mongoTemplate.updateFirst(query, update, FileDocument.class);
     }
 
@@ -683,6 +826,7 @@ public class FileDAOImpl implements IFileDAO {
     public String upsertByUserIdAndPathAndName(String userId, String relativePath, String fileName, FileDocument fileDocument) {
         Update update = MongoUtil.getUpdate(fileDocument);
         update.set("_id", new ObjectId(fileDocument.getId()));
+        update.set(Constants.SORT_KEY, SortKeyUtil.getSortKey(fileName));
         Query query = getQuery(userId, relativePath, fileName);
         UpdateResult updateResult = mongoTemplate.upsert(query, update, FileDocument.class);
         if (updateResult.getUpsertedId() != null) {
@@ -4,6 +4,7 @@ import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileQueryDAO;
+import com.jmal.clouddisk.dao.util.FileCursor;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
 import com.jmal.clouddisk.model.UploadApiParamDTO;
@@ -15,6 +16,7 @@ import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.service.impl.FileSortService;
 import com.jmal.clouddisk.util.TimeUntils;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -25,6 +27,7 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -75,6 +78,11 @@ public class FileQueryDAOImpl implements IFileQueryDAO {
                 }
             }
         }
+        FileCursor cursor = upload.isDirectoryListing() ? FileCursor.decode(upload.getCursor()) : null;
+        if (cursor != null && upload.getPageSize() != null && FileSortService.isSortByName(upload.getSortableProp(), upload.getOrder())) {
+            // 游标分页, 不跳过前面的记录, 也不统计总数
+            return new PageImpl<>(getFileDocumentsAfter(upload, criteria, cursor));
+        }
         long count = getFileDocumentsCount(upload, criteria);
 
         List<FileIntroVO> list = getFileDocuments(upload, criteria);
@@ -160,27 +168,54 @@ public class FileQueryDAOImpl implements IFileQueryDAO {
     }
 
     private List<FileIntroVO> getFileDocuments(UploadApiParamDTO upload, Criteria criteria) {
-        List<FileIntroVO> fileIntroVOList;
         Query query = getQuery(upload, criteria);
         String order = listByPage(upload, query);
-        if (!CharSequenceUtil.isBlank(order)) {
-            String sortableProp = upload.getSortableProp();
-            Sort.Direction direction = Sort.Direction.ASC;
-            if (Constants.DESCENDING.equals(order)) {
-                direction = Sort.Direction.DESC;
-            }
-            query.with(Sort.by(direction, sortableProp));
-        } else {
-            query.with(Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER));
-        }
         query.fields().exclude(Constants.CONTENT).exclude("music.coverBase64").exclude(Constants.CONTENT_TEXT);
         String collectionName = BooleanUtil.isTrue(upload.getIsTrash()) ? CommonFileService.TRASH_COLLECTION_NAME : CommonFileService.COLLECTION_NAME;
         if (CommonFileService.TRASH_COLLECTION_NAME.equals(collectionName)) {
             query.addCriteria(Criteria.where("hidden").is(false));
+            // 回收站中的文件没有排序键, 只对当前页按文件名排序
+            if (!CharSequenceUtil.isBlank(order)) {
+                String sortableProp = upload.getSortableProp();
+                Sort.Direction direction = Sort.Direction.ASC;
+                if (Constants.DESCENDING.equals(order)) {
+                    direction = Sort.Direction.DESC;
+                }
+                query.with(Sort.by(direction, sortableProp));
+            } else {
+                query.with(Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER));
+            }
+            List<FileIntroVO> list = mongoTemplate.find(query, FileIntroVO.class, collectionName);
+            return FileSortService.sortByFileName(upload.getSortableProp(), sortFileIntroVOList(null, list), order);
         }
+        // 在数据库中按 (userId, path, isFolder, sortKey) 排序和分页
+        query.with(FileSortService.getSort(upload.getSortableProp(), order));
         List<FileIntroVO> list = mongoTemplate.find(query, FileIntroVO.class, collectionName);
-        fileIntroVOList = sortFileIntroVOList(null, list);
-        return FileSortService.sortByFileName(upload.getSortableProp(), fileIntroVOList, order);
+        return sortFileIntroVOList(null, list);
+    }
+
+    /**
+     * 按 (isFolder desc, sortKey, _id) 查询游标之后的一页
+     */
+    private List<FileIntroVO> getFileDocumentsAfter(UploadApiParamDTO upload, Criteria criteria, FileCursor cursor) {
+        Query query = getQuery(upload, criteria);
+        boolean descending = FileSortService.isDescending(upload.getSortableProp(), upload.getOrder());
+        Object id = ObjectId.isValid(cursor.id()) ? new ObjectId(cursor.id()) : cursor.id();
+        Criteria sameFolder = Criteria.where(Constants.IS_FOLDER).is(cursor.isFolder());
+        Criteria afterSortKey = descending ? Criteria.where(Constants.SORT_KEY).lt(cursor.sortKey()) : Criteria.where(Constants.SORT_KEY).gt(cursor.sortKey());
+        Criteria afterId = descending ? Criteria.where("_id").lt(id) : Criteria.where("_id").gt(id);
+        List<Criteria> orCriteria = new ArrayList<>(3);
+        if (cursor.isFolder()) {
+            orCriteria.add(Criteria.where(Constants.IS_FOLDER).is(false));
+        }
+        orCriteria.add(new Criteria().andOperator(sameFolder, afterSortKey));
+        orCriteria.add(new Criteria().andOperator(sameFolder, Criteria.where(Constants.SORT_KEY).is(cursor.sortKey()), afterId));
+        query.addCriteria(new Criteria().orOperator(orCriteria));
+        query.with(FileSortService.getSort(upload.getSortableProp(), upload.getOrder()));
+        query.limit(upload.getPageSize());
+        query.fields().exclude(Constants.CONTENT).exclude("music.coverBase64").exclude(Constants.CONTENT_TEXT);
+        List<FileIntroVO> list = mongoTemplate.find(query, FileIntroVO.class, CommonFileService.COLLECTION_NAME);
+        return sortFileIntroVOList(null, list);
     }
 
     private Query getQuery(UploadApiParamDTO upload, Criteria criteria) {
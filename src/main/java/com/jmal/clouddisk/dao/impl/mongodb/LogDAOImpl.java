@@ -1,9 +1,11 @@
 package com.jmal.clouddisk.dao.impl.mongodb;
 
 import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.ReUtil;
 import com.jmal.clouddisk.dao.ILogDAO;
 import com.jmal.clouddisk.model.LogOperation;
 import com.jmal.clouddisk.model.LogOperationDTO;
+import com.jmal.clouddisk.model.dto.UrlVisitsDTO;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.util.TimeUntils;
@@ -14,6 +16,7 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
@@ -41,10 +44,13 @@ public class LogDAOImpl implements ILogDAO {
     }
 
     @Override
-    public long countByUrl(String url) {
-        Query query = new Query();
-        query.addCriteria(Criteria.where("url").is(url));
-        return mongoTemplate.count(query, LogOperation.class);
+    public List<UrlVisitsDTO> countGroupByUrlPrefix(String urlPrefix, LocalDateTime before) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("url").regex("^" + ReUtil.escape(urlPrefix)).and("createTime").lt(before)),
+                Aggregation.group("url").count().as("visits"),
+                Aggregation.project("visits").and("url").previousOperation()
+        );
+        return mongoTemplate.aggregate(aggregation, LogOperation.class, UrlVisitsDTO.class).getMappedResults();
     }
 
     @Override
@@ -0,0 +1,60 @@
+package com.jmal.clouddisk.dao.impl.mongodb;
+
+import com.jmal.clouddisk.dao.IVisitCounterDAO;
+import com.jmal.clouddisk.model.VisitCounter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "jmalcloud.datasource.type", havingValue = "mongodb")
+public class VisitCounterDAOImpl implements IVisitCounterDAO {
+
+    private static final String URL = "url";
+
+    private static final String VISITS = "visits";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public long findVisitsByUrl(String url) {
+        Query query = new Query(Criteria.where(URL).is(url));
+        query.fields().include(VISITS);
+        VisitCounter visitCounter = mongoTemplate.findOne(query, VisitCounter.class);
+        return visitCounter == null || visitCounter.getVisits() == null ? 0 : visitCounter.getVisits();
+    }
+
+    @Override
+    public Set<String> incrementAll(Map<String, Long> increments) {
+        if (increments.isEmpty()) {
+            return Set.of();
+        }
+        List<String> urls = new ArrayList<>(increments.keySet());
+        // 按顺序执行, 出错时停止, 出错位置之前的已写入, 出错的和之后的都没有执行
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, VisitCounter.class);
+        urls.forEach(url -> bulkOps.upsert(new Query(Criteria.where(URL).is(url)), new Update().inc(VISITS, increments.get(url))));
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            if (e.getErrors().isEmpty()) {
+                // 只有 writeConcern 错误, 无法确定是否已写入
+                throw e;
+            }
+            return new HashSet<>(urls.subList(e.getErrors().getFirst().getIndex(), urls.size()));
+        }
+        return Set.of();
+    }
+}
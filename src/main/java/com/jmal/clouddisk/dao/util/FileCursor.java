@@ -0,0 +1,66 @@
+package com.jmal.clouddisk.dao.util;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.BooleanUtil;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.model.file.FileIntroVO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 目录列表的游标
+ * <p>
+ * 按文件名排序时列表的顺序为 (isFolder desc, sortKey, id), 游标记录上一页最后一个文件的这三个值,
+ * 下一页直接从游标之后查询, 不需要跳过前面的记录, 翻页的耗时与页数无关
+ *
+ * @param isFolder 是否为文件夹
+ * @param sortKey  文件名的排序键
+ * @param id       fileId
+ */
+public record FileCursor(boolean isFolder, String sortKey, String id) {
+
+    private static final char SEPARATOR = '\n';
+
+    /**
+     * 根据当前页生成下一页的游标, 使用数据库中保存的排序键, 与查询条件比较的值一致
+     *
+     * @param list     当前页
+     * @param pageSize 每页条数
+     * @return 游标, 已经是最后一页或最后一个文件还没有排序键时返回 null
+     */
+    public static String next(List<FileIntroVO> list, Integer pageSize) {
+        if (pageSize == null || list.isEmpty() || list.size() < pageSize) {
+            return null;
+        }
+        FileIntroVO last = list.getLast();
+        if (last.getSortKey() == null) {
+            return null;
+        }
+        return new FileCursor(BooleanUtil.isTrue(last.getIsFolder()), last.getSortKey(), last.getId()).encode();
+    }
+
+    public static FileCursor decode(String cursor) {
+        if (CharSequenceUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int first = value.indexOf(SEPARATOR);
+            int second = value.indexOf(SEPARATOR, first + 1);
+            if (first != 1 || second < 0) {
+                throw new IllegalArgumentException(cursor);
+            }
+            return new FileCursor(value.charAt(0) == '1', value.substring(first + 1, second), value.substring(second + 1));
+        } catch (IllegalArgumentException e) {
+            throw new CommonException(ExceptionType.PARAMETERS_VALUE.getCode(), "无效的游标");
+        }
+    }
+
+    public String encode() {
+        String value = (isFolder ? '1' : '0') + String.valueOf(SEPARATOR) + sortKey + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -7,6 +7,7 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.URLUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.media.ImageMagickProcessor;
+import com.jmal.clouddisk.media.ImageRenditionCache;
 import com.jmal.clouddisk.model.file.FileDocument;
 import com.jmal.clouddisk.oss.web.WebOssService;
 import com.jmal.clouddisk.service.Constants;
@@ -29,6 +30,7 @@ import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -87,6 +89,8 @@ public class FileInterceptor implements HandlerInterceptor {
 
     private final WebOssService webOssService;
 
+    private final ImageRenditionCache imageRenditionCache;
+
     @Override
     public boolean preHandle(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull Object handler) throws IOException {
         if (!internalValid(request, response)) {
@@ -108,9 +112,13 @@ public class FileInterceptor implements HandlerInterceptor {
                 case PREVIEW -> {
                     if (previewOssFile(request, response, path)) return false;
                 }
-                case CROP -> handleCrop(request, response);
+                case CROP -> {
+                    if (handleCrop(request, response)) return false;
+                }
                 case THUMBNAIL -> thumbnail(request, response);
-                case WEBP -> webp(request, response);
+                case WEBP -> {
+                    if (webp(request, response)) return false;
+                }
                 default -> {
                     return true;
                 }
@@ -125,9 +133,10 @@ public class FileInterceptor implements HandlerInterceptor {
         File file = getFileByRequest(request);
         if (!file.exists() || !file.isFile() || !file.canRead()) {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-        responseImageFileHeader(response, file.getName());
-        ImageMagickProcessor.toWebp(file, response.getOutputStream());
+        String key = ImageRenditionCache.renditionKey(response.getHeader(HttpHeaders.ETAG), file, PREVIEW, WEBP);
+        responseRendition(request, response, file.getName(), key, outputStream -> ImageMagickProcessor.toWebp(file, outputStream));
     }
 
     private void setHeader(HttpServletRequest request, HttpServletResponse response) {
@@ -302,11 +311,17 @@ public class FileInterceptor implements HandlerInterceptor {
         return true;
     }
 
-    private void webp(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    /**
+     * @return true 已返回304, 不再继续处理
+     */
+    private boolean webp(HttpServletRequest request, HttpServletResponse response) throws IOException {
         File file = getFileByRequest(request);
-        FileInputStream fileInputStream = new FileInputStream(file);
-        responseImageFileHeader(response, file.getName());
-        ImageMagickProcessor.convertToWebp(fileInputStream, response.getOutputStream());
+        String key = ImageRenditionCache.renditionKey(response.getHeader(HttpHeaders.ETAG), file, WEBP);
+        return responseRendition(request, response, file.getName(), key, outputStream -> {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                ImageMagickProcessor.convertToWebp(inputStream, outputStream);
+            }
+        });
     }
 
     private void thumbnail(HttpServletRequest request, HttpServletResponse response) throws FileNotFoundException {
@@ -360,15 +375,57 @@ public class FileInterceptor implements HandlerInterceptor {
         return getFileDocument(uriPath, true);
     }
 
-    private void handleCrop(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    /**
+     * @return true 已返回304, 不再继续处理
+     */
+    private boolean handleCrop(HttpServletRequest request, HttpServletResponse response) throws IOException {
         File file = getFileByRequest(request);
         String q = request.getParameter("q");
         String w = request.getParameter("w");
         String h = request.getParameter("h");
-        responseImageFileHeader(response, file.getName());
-        try (InputStream inputStream = new FileInputStream(file)) {
-            ImageMagickProcessor.cropImage(inputStream, q, w, h, response.getOutputStream());
+        String key = ImageRenditionCache.renditionKey(response.getHeader(HttpHeaders.ETAG), file, CROP, q, w, h, "png");
+        return responseRendition(request, response, file.getName(), key, outputStream -> {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                ImageMagickProcessor.cropImage(inputStream, q, w, h, outputStream);
+            }
+        });
+    }
+
+    /**
+     * 响应图片衍生文件, 优先使用磁盘缓存, 支持 If-None-Match
+     *
+     * @param key    缓存key, 同时作为响应的ETag
+     * @param writer 缓存不存在时生成衍生文件
+     * @return true 已返回304或404(ImageMagick 处理失败), 不再继续处理请求
+     */
+    private boolean responseRendition(HttpServletRequest request, HttpServletResponse response, String fileName, String key, ImageRenditionCache.RenditionWriter writer) throws IOException {
+        if (imageRenditionCache.isFailed(key)) {
+            // ImageMagick 最近处理失败, 不再重复执行
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return true;
+        }
+        String etag = "\"" + key + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
         }
+        responseImageFileHeader(response, fileName);
+        Path rendition = imageRenditionCache.getOrCreate(key, writer);
+        if (rendition == null) {
+            if (imageRenditionCache.isFailed(key)) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return true;
+            }
+            // 写入缓存失败时直接输出
+            writer.write(response.getOutputStream());
+            return false;
+        }
+        response.setContentLengthLong(Files.size(rendition));
+        Files.copy(rendition, response.getOutputStream());
+        return false;
     }
 
     private File getFileByRequest(HttpServletRequest request) {
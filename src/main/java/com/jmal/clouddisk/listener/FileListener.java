@@ -3,10 +3,14 @@ package com.jmal.clouddisk.listener;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.thread.ThreadUtil;
 import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.lucene.RebuildIndexTaskService;
 import com.jmal.clouddisk.lucene.ThrottledTaskExecutor;
+import com.jmal.clouddisk.model.file.dto.FileBaseAllDTO;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.IFileService;
+import com.jmal.clouddisk.service.impl.CommonFileService;
+import com.jmal.clouddisk.service.impl.CommonUserService;
 import com.jmal.clouddisk.util.MyThreadUtil;
 import io.methvin.watcher.DirectoryChangeEvent;
 import io.methvin.watcher.DirectoryChangeListener;
@@ -18,14 +22,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -38,17 +42,26 @@ public class FileListener implements DirectoryChangeListener {
     private final FileProperties fileProperties;
     private final IFileService fileService;
     private final RebuildIndexTaskService rebuildIndexTaskService;
+    private final CommonFileService commonFileService;
+    private final CommonUserService userService;
+    private final IFileDAO fileDAO;
 
     // --- 可配置参数 ---
     private static final Duration DEBOUNCE_PERIOD = Duration.ofSeconds(2); // 防抖静默期
+    private static final Duration MAX_BATCH_DELAY = Duration.ofSeconds(10); // 持续有事件时的最长等待时间
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final int COLLAPSE_THRESHOLD = 32; // 同一目录下的事件数达到该值时合并为一次目录对账
+    private static final int MIN_COLLAPSE_DEPTH = 1; // 根目录下一级(用户目录)及更深的目录才能合并
 
     @Getter
     private final Set<Path> filterDirSet = new CopyOnWriteArraySet<>();
 
-    // 用于调度防抖任务
+    // 用于定期取出待处理事件
     private final ScheduledExecutorService scheduler = ThreadUtil.createScheduledExecutor(1);
-    // 存储每个路径的待处理任务，用于取消和替换
-    private final Map<Path, Future<?>> scheduledTasks = new ConcurrentHashMap<>();
+    // 待处理的事件，同一路径上的事件会被合并
+    private final Object pendingLock = new Object();
+    private Path rootPath;
+    private PathEventTrie pendingEvents;
     // 使用虚拟线程处理最终的业务逻辑
     private final ThrottledTaskExecutor processExecutor = new ThrottledTaskExecutor(Constants.MAX_CONCURRENT_PROCESSING_NUMBER);
 
@@ -62,6 +75,9 @@ public class FileListener implements DirectoryChangeListener {
 
     @PostConstruct
     public void init() {
+        rootPath = Paths.get(fileProperties.getRootDir());
+        pendingEvents = new PathEventTrie(rootPath);
+        scheduler.scheduleWithFixedDelay(this::flushPendingEvents, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
         // 定期检查是否需要执行全盘扫描
         scanScheduler.scheduleAtFixedRate(this::checkAndTriggerScan, 15, 15, TimeUnit.SECONDS);
     }
@@ -88,9 +104,10 @@ public class FileListener implements DirectoryChangeListener {
         if (event.eventType() == DirectoryChangeEvent.EventType.OVERFLOW) {
             log.warn("文件系统事件队列溢出。可能已丢失事件。安排重新扫描。");
             rescanRequired.set(true);
-            // 状态已不可信，取消所有待处理的单个文件任务
-            scheduledTasks.values().forEach(future -> future.cancel(false));
-            scheduledTasks.clear();
+            // 状态已不可信，丢弃所有待处理的事件
+            synchronized (pendingLock) {
+                pendingEvents = new PathEventTrie(rootPath);
+            }
             return;
         }
 
@@ -101,25 +118,54 @@ public class FileListener implements DirectoryChangeListener {
             return;
         }
 
+        int flag = switch (event.eventType()) {
+            case CREATE -> PathEventTrie.CREATE;
+            case MODIFY -> PathEventTrie.MODIFY;
+            case DELETE -> PathEventTrie.DELETE;
+            default -> 0;
+        };
+        if (flag == 0) {
+            return;
+        }
+
         log.debug("收到事件：{}, 路径：{}。安排处理中。", event.eventType(), eventPath);
 
-        // 防抖逻辑
-        // 如果该路径已有待处理任务，先取消它
-        Future<?> existingTask = scheduledTasks.remove(eventPath);
-        if (existingTask != null) {
-            existingTask.cancel(false);
+        // 合并到待处理事件中, 由 flushPendingEvents 统一处理
+        synchronized (pendingLock) {
+            pendingEvents.add(eventPath, flag);
         }
+    }
 
-        // 安排一个新任务在静默期后执行
-        Future<?> newTask = scheduler.schedule(() -> {
-            // 任务执行前，从map中移除自己
-            scheduledTasks.remove(eventPath);
-            // 提交到虚拟线程池执行真正的处理逻辑
-            processExecutor.execute(() -> processEventWithThrottling(event));
-        }, DEBOUNCE_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
-
-        // 将新任务放入map
-        scheduledTasks.put(eventPath, newTask);
+    /**
+     * 静默期过后(或积累超过最长等待时间)取出所有待处理事件并提交处理
+     */
+    private void flushPendingEvents() {
+        if (!running.get()) {
+            return;
+        }
+        PathEventTrie drained;
+        synchronized (pendingLock) {
+            if (pendingEvents.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            boolean quiet = now - pendingEvents.getLastEventNanos() >= DEBOUNCE_PERIOD.toNanos();
+            boolean tooLong = now - pendingEvents.getFirstEventNanos() >= MAX_BATCH_DELAY.toNanos();
+            if (!quiet && !tooLong) {
+                return;
+            }
+            drained = pendingEvents;
+            pendingEvents = new PathEventTrie(rootPath);
+        }
+        try {
+            List<PathEventTrie.Work> works = drained.drain(COLLAPSE_THRESHOLD, MIN_COLLAPSE_DEPTH);
+            log.debug("处理 {} 个文件事件, 合并为 {} 个任务", drained.size(), works.size());
+            for (PathEventTrie.Work work : works) {
+                processExecutor.execute(() -> processWorkWithThrottling(work));
+            }
+        } catch (Exception e) {
+            log.error("处理文件事件失败", e);
+        }
     }
 
     private boolean isPathIgnored(Path eventPath) {
@@ -135,52 +181,129 @@ public class FileListener implements DirectoryChangeListener {
         return false;
     }
 
-    private void processEventWithThrottling(DirectoryChangeEvent event) {
+    private void processWorkWithThrottling(PathEventTrie.Work work) {
         if (!running.get()) return;
         try {
-            processEvent(event);
+            switch (work) {
+                case PathEventTrie.Change change -> processChange(change);
+                case PathEventTrie.Reconcile reconcile -> reconcile(reconcile.dir(), reconcile.created(), reconcile.recursive(), reconcile.childFlags());
+            }
         } catch (Exception e) {
-            log.error("处理路径：{} 的事件时发生未处理的异常", event.path(), e);
+            log.error("处理文件事件时发生未处理的异常: {}", work, e);
         }
     }
 
-    private void processEvent(DirectoryChangeEvent event) {
+    private void processChange(PathEventTrie.Change change) {
         // 确保在处理前，服务仍在运行
         if (!running.get()) {
             return;
         }
         try {
-            log.debug("处理事件：{}, 路径：{}", event.eventType(), event.path());
-            File file = event.path().toFile();
+            File file = change.path().toFile();
             String username = ownerOfChangeFile(file);
             if (CharSequenceUtil.isBlank(username)) {
                 return;
             }
+            // 多次事件合并后以文件当前状态为准
+            if (!file.exists()) {
+                log.info("用户：{}, 删除文件：{}", username, file.getAbsolutePath());
+                fileService.deleteFile(username, file);
+            } else if ((change.flags() & PathEventTrie.CREATE) != 0) {
+                log.info("用户：{}, 创建文件： {}", username, file.getAbsolutePath());
+                fileService.createFile(username, file);
+            } else {
+                log.info("用户：{}, 修改文件：{}", username, file.getAbsolutePath());
+                fileService.updateFile(username, file);
+            }
+        } catch (Exception e) {
+            log.error("处理路径：{}的事件失败", change.path(), e);
+        }
+    }
 
-            switch (event.eventType()) {
-                case CREATE -> {
-                    log.info("用户：{}, 创建文件： {}", username, file.getAbsolutePath());
-                    fileService.createFile(username, file);
-                }
-                case MODIFY -> {
-                    log.info("用户：{}, 修改文件：{}", username, file.getAbsolutePath());
-                    fileService.updateFile(username, file);
+    /**
+     * 对账目录: 一次性读取目录下的文件列表和数据库中的记录, 只处理有差异的部分
+     *
+     * @param dir        目录
+     * @param created    目录是新创建的, 先登记目录自身, 其下的文件才有上级目录的记录
+     * @param recursive  是否递归对账已存在的子目录
+     * @param childFlags 直接子节点上收到的事件, 有修改事件的文件即使大小不变也会更新
+     */
+    private void reconcile(Path dir, boolean created, boolean recursive, Map<Path, Integer> childFlags) {
+        if (!running.get() || !Files.isDirectory(dir)) {
+            return;
+        }
+        String username = ownerOfDir(dir);
+        if (CharSequenceUtil.isBlank(username)) {
+            return;
+        }
+        String userId = userService.getUserIdByUserName(username);
+        if (CharSequenceUtil.isBlank(userId)) {
+            return;
+        }
+        if (created) {
+            log.info("用户：{}, 创建文件夹：{}", username, dir);
+            fileService.createFile(username, dir.toFile());
+        }
+        String dirAbsolutePath = dir.toFile().getAbsolutePath();
+        String relativePath = dirAbsolutePath.substring(fileProperties.getRootDir().length() + username.length() + 1) + File.separator;
+        Map<String, FileBaseAllDTO> existing = new HashMap<>();
+        for (FileBaseAllDTO fileBaseAllDTO : fileDAO.findAllFileBaseAllDTOByUserIdAndPath(userId, relativePath)) {
+            existing.put(fileBaseAllDTO.getName(), fileBaseAllDTO);
+        }
+        log.debug("用户：{}, 对账目录：{}, 已有记录：{}", username, dir, existing.size());
+
+        List<Path> subDirs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                if (!running.get()) {
+                    return;
                 }
-                case DELETE -> {
-                    log.info("用户：{}, 删除文件：{}", username, file.getAbsolutePath());
-                    fileService.deleteFile(username, file);
+                if (isPathIgnored(child)) {
+                    existing.remove(child.getFileName().toString());
+                    continue;
                 }
-                default -> {
+                FileBaseAllDTO record = existing.remove(child.getFileName().toString());
+                int flags = childFlags.getOrDefault(child, 0);
+                File file = child.toFile();
+                if (Files.isDirectory(child)) {
+                    if (record == null) {
+                        fileService.createFile(username, file);
+                    }
+                    // 新目录或新创建的目录需要递归对账
+                    if (record == null || recursive || (flags & PathEventTrie.CREATE) != 0) {
+                        subDirs.add(child);
+                    }
+                } else if (record == null) {
+                    processExecutor.execute(() -> fileService.createFile(username, file));
+                } else if (flags != 0 || record.getSize() == null || record.getSize() != file.length()) {
+                    processExecutor.execute(() -> fileService.updateFile(username, file));
                 }
             }
-        } catch (Exception e) {
-            log.error("处理路径：{}的事件失败", event.path(), e);
+        } catch (IOException e) {
+            log.error("读取目录失败：{}", dir, e);
+            return;
+        }
+
+        // 剩下的记录在磁盘上已经不存在
+        if (!existing.isEmpty()) {
+            log.info("用户：{}, 删除目录：{} 下的 {} 个文件", username, dir, existing.size());
+            commonFileService.deleteFiles(username, dir.toFile(), new ArrayList<>(existing.values()));
+        }
+
+        for (Path subDir : subDirs) {
+            reconcile(subDir, false, true, Collections.emptyMap());
+        }
+    }
+
+    private int pendingEventCount() {
+        synchronized (pendingLock) {
+            return pendingEvents.size();
         }
     }
 
     private void checkAndTriggerScan() {
         // 如果需要重新扫描，且当前没有扫描任务在进行，并且待处理的单个事件很少（系统趋于空闲）
-        if (rescanRequired.get() && scheduledTasks.size() < IDLE_TASK_THRESHOLD && scanningInProgress.compareAndSet(false, true)) {
+        if (rescanRequired.get() && pendingEventCount() < IDLE_TASK_THRESHOLD && scanningInProgress.compareAndSet(false, true)) {
             log.info("系统空闲，需要重新扫描。开始增量扫描...");
             rescanRequired.set(false); // 重置标志
             try {
@@ -197,6 +320,14 @@ public class FileListener implements DirectoryChangeListener {
         }
     }
 
+    private String ownerOfDir(Path dir) {
+        int rootPathCount = rootPath.getNameCount();
+        if (!dir.startsWith(rootPath) || dir.getNameCount() <= rootPathCount) {
+            return null;
+        }
+        return dir.subpath(rootPathCount, rootPathCount + 1).toString();
+    }
+
     private String ownerOfChangeFile(File file) {
         try {
             int rootPathCount = Paths.get(fileProperties.getRootDir()).getNameCount();
@@ -240,7 +371,6 @@ public class FileListener implements DirectoryChangeListener {
         MyThreadUtil.shutdownExecutor(scheduler, "Scheduler");
         MyThreadUtil.shutdownExecutor(scanScheduler, "ScanScheduler");
 
-        scheduledTasks.clear();
         log.info("FileListener shut down complete.");
     }
 }
@@ -161,6 +161,10 @@ public class FileMonitor {
         // 临时目录
         Path tempPath = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir());
         for (File username : FileUtil.ls(tempPath.toString())) {
+            // 图片衍生文件缓存和OSS块缓存按占用空间自行淘汰
+            if (isSelfEvictingCacheDir(username)) {
+                continue;
+            }
             if (username.isDirectory()) {
                 for (File file : FileUtil.ls(username.getAbsolutePath())) {
                     clearUserCache(file);
@@ -169,6 +173,10 @@ public class FileMonitor {
         }
     }
 
+    private boolean isSelfEvictingCacheDir(File dir) {
+        return fileProperties.getImageCacheDir().equals(dir.getName()) || fileProperties.getOssBlockCacheDir().equals(dir.getName());
+    }
+
     /**
      * 清理用户缓存文件
      * @param file 需要清理的文件
@@ -0,0 +1,190 @@
+package com.jmal.clouddisk.listener;
+
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按路径分段存储的待处理文件事件
+ * <p>
+ * 同一路径上的多次事件(创建、修改、删除)合并为一组标志, 最终执行什么操作在处理时根据文件是否存在决定。
+ * 取出时, 直接子节点事件数达到阈值的目录会合并为一次目录级别的对账, 新创建的目录合并为一次整棵子树的对账
+ * (先登记目录自身, 再对账其下的文件), 已删除的目录不再处理其下的事件。
+ * <p>
+ * 非线程安全, 由 {@link FileListener} 加锁访问。
+ */
+final class PathEventTrie {
+
+    static final int CREATE = 1;
+    static final int MODIFY = 1 << 1;
+    static final int DELETE = 1 << 2;
+
+    /**
+     * 取出的待处理任务
+     */
+    sealed interface Work permits Change, Reconcile {
+    }
+
+    /**
+     * 单个路径的变更
+     *
+     * @param path  路径
+     * @param flags 合并后的事件标志
+     */
+    record Change(Path path, int flags) implements Work {
+    }
+
+    /**
+     * 目录对账
+     *
+     * @param dir        目录
+     * @param created    目录是新创建的, 对账前需要先登记目录自身
+     * @param recursive  是否递归对账已存在的子目录
+     * @param childFlags 该目录下直接子节点的事件标志
+     */
+    record Reconcile(Path dir, boolean created, boolean recursive, Map<Path, Integer> childFlags) implements Work {
+    }
+
+    private static final class Node {
+        private final Path path;
+        private final int depth;
+        private Map<String, Node> children;
+        private int flags;
+        /**
+         * 有事件的直接子节点数
+         */
+        private int childEvents;
+
+        private Node(Path path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+        private Node child(String name) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(name, key -> new Node(path.resolve(key), depth + 1));
+        }
+
+        private boolean has(int flag) {
+            return (flags & flag) != 0;
+        }
+    }
+
+    private final Node root;
+
+    private int size;
+
+    private long firstEventNanos;
+
+    private long lastEventNanos;
+
+    PathEventTrie(Path root) {
+        this.root = new Node(root, 0);
+    }
+
+    /**
+     * 记录事件, 不在根目录下的路径忽略
+     */
+    void add(Path path, int flag) {
+        if (!path.startsWith(root.path) || path.equals(root.path)) {
+            return;
+        }
+        Node parent = null;
+        Node node = root;
+        for (Path segment : root.path.relativize(path)) {
+            parent = node;
+            node = node.child(segment.toString());
+        }
+        if (node.flags == 0) {
+            size++;
+            parent.childEvents++;
+        }
+        node.flags |= flag;
+        long now = System.nanoTime();
+        if (firstEventNanos == 0) {
+            firstEventNanos = now;
+        }
+        lastEventNanos = now;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long getFirstEventNanos() {
+        return firstEventNanos;
+    }
+
+    long getLastEventNanos() {
+        return lastEventNanos;
+    }
+
+    /**
+     * 转换为待处理任务
+     *
+     * @param collapseThreshold 直接子节点事件数达到该值的目录合并为一次目录对账
+     * @param minCollapseDepth  可以合并的最小目录深度(相对根目录)
+     */
+    List<Work> drain(int collapseThreshold, int minCollapseDepth) {
+        List<Work> works = new ArrayList<>();
+        collect(root, false, collapseThreshold, minCollapseDepth, works);
+        return works;
+    }
+
+    private void collect(Node node, boolean covered, int collapseThreshold, int minCollapseDepth, List<Work> works) {
+        if (node.flags != 0) {
+            boolean exists = Files.exists(node.path, LinkOption.NOFOLLOW_LINKS);
+            if (node.has(CREATE) && exists && Files.isDirectory(node.path)) {
+                // 新目录下的事件都包含在整棵子树的对账中
+                if (!covered) {
+                    works.add(new Reconcile(node.path, true, true, childFlags(node)));
+                }
+                return;
+            }
+            if (!exists) {
+                // 已删除的目录, 其下的事件不再需要处理
+                if (!covered) {
+                    works.add(new Change(node.path, node.flags));
+                }
+                return;
+            }
+            if (!covered) {
+                works.add(new Change(node.path, node.flags));
+            }
+        }
+        if (node.children == null) {
+            return;
+        }
+        boolean collapse = node.depth >= minCollapseDepth && node.childEvents >= collapseThreshold;
+        if (collapse) {
+            works.add(new Reconcile(node.path, false, false, childFlags(node)));
+        }
+        for (Node child : node.children.values()) {
+            collect(child, collapse, collapseThreshold, minCollapseDepth, works);
+        }
+    }
+
+    private static Map<Path, Integer> childFlags(Node node) {
+        if (node.children == null) {
+            return Collections.emptyMap();
+        }
+        Map<Path, Integer> flags = HashMap.newHashMap(node.childEvents);
+        for (Node child : node.children.values()) {
+            if (child.flags != 0) {
+                flags.put(child.path, child.flags);
+            }
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,186 @@
+package com.jmal.clouddisk.lucene;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+import java.io.IOException;
+
+/**
+ * 文件内容的流式 N-Gram 分词器
+ * <p>
+ * 与 ngramAnalyzer(KeywordTokenizer -> LowerCaseFilter -> NGramTokenFilter) 生成相同的词项,
+ * 但不需要把整段内容读成一个 Token: 只保留一个 maxGram 长度的滑动窗口, 每个起始位置输出 minGram..maxGram 长度的 N-Gram。
+ * 内存占用与内容长度无关, 超过 maxBytes(按UTF-8计算)的内容不再索引。
+ */
+final class ContentNGramTokenizer extends Tokenizer {
+
+    private static final int IO_BUFFER_SIZE = 4096;
+
+    private static final int NO_CHAR = -2;
+
+    private final int minGram;
+    private final int maxGram;
+    private final long maxBytes;
+    private final boolean lowerCase;
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offsetAtt = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+
+    private final char[] ioBuffer = new char[IO_BUFFER_SIZE];
+    private int ioLength;
+    private int ioPosition;
+    private int pushback;
+
+    /**
+     * 滑动窗口中的码点及其在原文中的起始偏移
+     */
+    private final int[] window;
+    private final int[] windowOffsets;
+    private int head;
+    private int size;
+
+    private boolean exhausted;
+    private int gramLength;
+    private int charOffset;
+    private long consumedBytes;
+
+    ContentNGramTokenizer(int minGram, int maxGram, long maxBytes, boolean lowerCase) {
+        if (minGram < 1 || maxGram < minGram) {
+            throw new IllegalArgumentException("minGram: " + minGram + ", maxGram: " + maxGram);
+        }
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+        this.maxBytes = maxBytes;
+        this.lowerCase = lowerCase;
+        this.window = new int[maxGram];
+        this.windowOffsets = new int[maxGram];
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        clearAttributes();
+        while (true) {
+            fillWindow();
+            if (size < minGram) {
+                return false;
+            }
+            if (gramLength == 0) {
+                gramLength = minGram;
+            }
+            if (gramLength <= Math.min(maxGram, size)) {
+                emit(gramLength);
+                posIncAtt.setPositionIncrement(gramLength == minGram ? 1 : 0);
+                gramLength++;
+                return true;
+            }
+            // 当前起始位置的 N-Gram 已全部输出, 窗口右移一个码点
+            head = (head + 1) % maxGram;
+            size--;
+            gramLength = 0;
+        }
+    }
+
+    private void emit(int length) {
+        char[] buffer = termAtt.resizeBuffer(length * 2);
+        int termLength = 0;
+        int lastCodePoint = 0;
+        for (int i = 0; i < length; i++) {
+            lastCodePoint = window[(head + i) % maxGram];
+            termLength += Character.toChars(lastCodePoint, buffer, termLength);
+        }
+        termAtt.setLength(termLength);
+        int start = windowOffsets[head];
+        int end = windowOffsets[(head + length - 1) % maxGram] + Character.charCount(lastCodePoint);
+        offsetAtt.setOffset(correctOffset(start), correctOffset(end));
+    }
+
+    private void fillWindow() throws IOException {
+        while (!exhausted && size < maxGram) {
+            int offset = charOffset;
+            int codePoint = readCodePoint();
+            if (codePoint < 0) {
+                exhausted = true;
+                return;
+            }
+            consumedBytes += utf8Length(codePoint);
+            if (consumedBytes > maxBytes) {
+                exhausted = true;
+                return;
+            }
+            int index = (head + size) % maxGram;
+            window[index] = lowerCase ? Character.toLowerCase(codePoint) : codePoint;
+            windowOffsets[index] = offset;
+            size++;
+        }
+    }
+
+    private int readCodePoint() throws IOException {
+        int c = readChar();
+        if (c < 0 || !Character.isHighSurrogate((char) c)) {
+            return c;
+        }
+        int low = readChar();
+        if (low >= 0 && Character.isLowSurrogate((char) low)) {
+            return Character.toCodePoint((char) c, (char) low);
+        }
+        // 不成对的代理字符原样保留
+        if (low >= 0) {
+            pushback = low;
+            charOffset--;
+        }
+        return c;
+    }
+
+    private int readChar() throws IOException {
+        if (pushback != NO_CHAR) {
+            int c = pushback;
+            pushback = NO_CHAR;
+            charOffset++;
+            return c;
+        }
+        if (ioPosition >= ioLength) {
+            ioLength = input.read(ioBuffer, 0, ioBuffer.length);
+            ioPosition = 0;
+            if (ioLength <= 0) {
+                ioLength = 0;
+                return -1;
+            }
+        }
+        charOffset++;
+        return ioBuffer[ioPosition++];
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        int finalOffset = correctOffset(charOffset);
+        offsetAtt.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        ioLength = 0;
+        ioPosition = 0;
+        pushback = NO_CHAR;
+        head = 0;
+        size = 0;
+        exhausted = false;
+        gramLength = 0;
+        charOffset = 0;
+        consumedBytes = 0;
+    }
+}
@@ -0,0 +1,159 @@
+package com.jmal.clouddisk.lucene;
+
+import cn.hutool.core.util.CharUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 提取出的文件内容的缓冲区
+ * <p>
+ * 内容不超过 memoryLimit 个字符时保存在内存中, 超过后按UTF-8写入临时文件, 每个线程占用的内存与内容长度无关。
+ * 写入时同时记录是否有非空白字符, 不必再遍历一遍内容; 建立索引时通过 {@link #openReader()} 流式读取,
+ * 索引写入后调用 {@link #discard()} 删除临时文件。
+ */
+@Slf4j
+final class ContentSpool extends Writer {
+
+    private final Path spoolDir;
+    private final int memoryLimit;
+
+    private StringBuilder buffer = new StringBuilder();
+    private String memoryContent;
+    private Path spoolFile;
+    private Writer fileWriter;
+
+    private long length;
+    private boolean hasText;
+    private boolean finished;
+
+    ContentSpool(Path spoolDir, int memoryLimit) {
+        this.spoolDir = spoolDir;
+        this.memoryLimit = memoryLimit;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("ContentSpool closed");
+        }
+        if (!hasText) {
+            for (int i = off; i < off + len; i++) {
+                if (!CharUtil.isBlankChar(cbuf[i])) {
+                    hasText = true;
+                    break;
+                }
+            }
+        }
+        if (fileWriter == null && buffer.length() + len > memoryLimit) {
+            spill();
+        }
+        if (fileWriter != null) {
+            fileWriter.write(cbuf, off, len);
+        } else {
+            buffer.append(cbuf, off, len);
+        }
+        length += len;
+    }
+
+    /**
+     * 超过内存上限, 将已缓冲的内容转存到临时文件
+     */
+    private void spill() throws IOException {
+        Files.createDirectories(spoolDir);
+        spoolFile = Files.createTempFile(spoolDir, "content-", ".txt");
+        fileWriter = Files.newBufferedWriter(spoolFile, StandardCharsets.UTF_8);
+        fileWriter.append(buffer);
+        buffer = null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileWriter != null) {
+            fileWriter.flush();
+        }
+    }
+
+    /**
+     * 结束写入, 之后才能读取内容
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (fileWriter != null) {
+            fileWriter.close();
+        } else {
+            memoryContent = buffer.toString();
+            buffer = null;
+        }
+    }
+
+    /**
+     * 是否包含非空白字符
+     */
+    boolean hasText() {
+        return hasText;
+    }
+
+    /**
+     * 内容长度(字符数)
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * 读取内容, 文件在第一次读取时才打开, 排队等待写入的文档不占用文件句柄
+     */
+    Reader openReader() {
+        return new Reader() {
+            private Reader delegate;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (delegate == null) {
+                    if (!finished) {
+                        throw new IOException("ContentSpool not closed");
+                    }
+                    delegate = spoolFile == null ? new StringReader(memoryContent) : Files.newBufferedReader(spoolFile, StandardCharsets.UTF_8);
+                }
+                return delegate.read(cbuf, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (delegate != null) {
+                    delegate.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * 释放内容并删除临时文件
+     */
+    void discard() {
+        memoryContent = null;
+        buffer = null;
+        try {
+            if (fileWriter != null && !finished) {
+                finished = true;
+                fileWriter.close();
+            }
+            if (spoolFile != null) {
+                Files.deleteIfExists(spoolFile);
+            }
+        } catch (IOException e) {
+            log.warn("删除索引内容临时文件失败, file: {}, {}", spoolFile, e.getMessage());
+        }
+    }
+}
@@ -7,6 +7,7 @@ import cn.hutool.core.util.ObjectUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IEtagDAO;
 import com.jmal.clouddisk.model.file.dto.FileBaseEtagDTO;
+import com.jmal.clouddisk.model.file.dto.FolderSizeDTO;
 import com.jmal.clouddisk.service.impl.CommonUserService;
 import com.jmal.clouddisk.util.CaffeineUtil;
 import com.jmal.clouddisk.util.HashUtil;
@@ -22,14 +23,15 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.Comparator;
-import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * EtagService
@@ -37,6 +39,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 异步处理文件变化和删除的 ETag 更新
  * 后台 Worker 处理标记为需要更新 ETag 的文件夹
  * ETag 计算和更新的内部方法
+ * <p>
+ * 文件夹按深度自底向上处理, 不同的顶层子树并行处理, 同一子树内按深度串行。
+ * 文件夹的 size 和 childrenCount 由直接子项(子文件夹已是汇总值)累加得到, 不再扫描整个子树。
+ * 文件夹保存直接子项哈希之和(etagHash), 子项 ETag 变化时只合并新旧哈希的差值, 不再逐个读取子项;
+ * 子项被删除、服务重启后差值丢失等无法确定差值的情况, 才全量扫描直接子项修复。
+ * 短时间内对同一文件夹的重复标记会被合并为一次。
  */
 @Service
 @RequiredArgsConstructor
@@ -54,6 +62,21 @@ public class EtagService {
     private static final String EMPTY_FOLDER_ETAG_BASE_STRING = "EMPTY_FOLDER_REPRESENTATION_MONGO_V2";
     private static final int MAX_ETAG_UPDATE_ATTEMPTS = 5; // 最大失败重试次数
 
+    /**
+     * 每轮从数据库中取出的待更新文件夹数量
+     */
+    private static final int MARKED_FOLDERS_BATCH_SIZE = 256;
+
+    /**
+     * 合并重复标记的时间窗口(毫秒)
+     */
+    private static final long MARK_COALESCE_WINDOW_MILLIS = 500L;
+
+    /**
+     * 组合哈希的模数 2^256
+     */
+    private static final BigInteger COMBINED_HASH_MODULUS = BigInteger.ONE.shiftLeft(256);
+
     private final AtomicBoolean processingScheduled = new AtomicBoolean(false);
 
     /**
@@ -61,6 +84,49 @@ public class EtagService {
      */
     private ExecutorService executorMarkedFoldersService;
 
+    /**
+     * 并行处理各个子树的线程池
+     */
+    private ExecutorService executorSubtreeService;
+
+    /**
+     * 延迟写入文件夹标记的调度器
+     */
+    private final ScheduledExecutorService markScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "EtagMark");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 等待写入数据库的文件夹标记
+     */
+    private final Set<FolderMark> pendingMarks = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean markFlushScheduled = new AtomicBoolean(false);
+
+    /**
+     * 等待合并到文件夹 etagHash 的子项哈希差值
+     * key: userId + 文件夹路径(如 /A/B/)
+     */
+    private final Map<String, BigInteger> pendingHashDeltas = new ConcurrentHashMap<>();
+
+    /**
+     * 需要全量扫描直接子项的文件夹
+     * key: userId + 文件夹路径(如 /A/B/)
+     */
+    private final Set<String> rescanFolders = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 待标记的文件夹
+     *
+     * @param userId 用户ID
+     * @param path   文件夹所在路径
+     * @param name   文件夹名称
+     */
+    private record FolderMark(String userId, String path, String name) {
+    }
+
     @EventListener(ContextRefreshedEvent.class)
     public void onApplicationReady(ContextRefreshedEvent event) {
         if (event.getApplicationContext().getParent() != null) {
@@ -73,6 +139,10 @@ public class EtagService {
         if (executorMarkedFoldersService == null) {
             executorMarkedFoldersService = ThreadUtil.newFixedExecutor(1, 1, "EtagWorker-", false);
         }
+        if (executorSubtreeService == null) {
+            int threads = Math.clamp(Runtime.getRuntime().availableProcessors(), 2, 4);
+            executorSubtreeService = ThreadUtil.newFixedExecutor(threads, MARKED_FOLDERS_BATCH_SIZE, "EtagSubtreeWorker-", true);
+        }
         Completable.fromAction(() -> {
                     long countOfFoldersWithoutEtag = etagDAO.countFoldersWithoutEtag();
                     if (countOfFoldersWithoutEtag > 0) {
@@ -180,7 +250,14 @@ public class EtagService {
             String oldEtag = etagDAO.findEtagByUserIdAndPathAndName(userId, relativePath, fileName);
 
             if (!ObjectUtil.equals(newEtag, oldEtag)) {
-                etagDAO.setEtagByUserIdAndPathAndName(userId, relativePath, fileName, newEtag);
+                // 先记录差值再写入, 父文件夹在写入前后全量扫描都不会重复计算
+                addHashDelta(userId, relativePath, fileName, oldEtag, newEtag);
+                try {
+                    etagDAO.setEtagByUserIdAndPathAndName(userId, relativePath, fileName, newEtag);
+                } catch (RuntimeException e) {
+                    requestRescan(userId, relativePath);
+                    throw e;
+                }
                 log.debug("File ETag updated for {}: {} -> {}", relativePath + fileName, oldEtag, newEtag);
 
                 // 标记父文件夹需要更新ETag
@@ -244,7 +321,14 @@ public class EtagService {
             if (!hasChildren) {
                 // 如果没有内容，则设置初始ETag
                 String initialEtag = HashUtil.sha256(EMPTY_FOLDER_ETAG_BASE_STRING);
-                etagDAO.setEtagByUserIdAndPathAndName(userId, relativePath, fileName, initialEtag);
+                String oldEtag = etagDAO.findEtagByUserIdAndPathAndName(userId, relativePath, fileName);
+                addHashDelta(userId, relativePath, fileName, oldEtag, initialEtag);
+                try {
+                    etagDAO.setEtagByUserIdAndPathAndName(userId, relativePath, fileName, initialEtag);
+                } catch (DataAccessException e) {
+                    requestRescan(userId, relativePath);
+                    throw e;
+                }
                 log.debug("Initial ETag set for new folder {}: {}", currentFolderNormalizedPath, initialEtag);
             }
             // 标记父文件夹需要更新ETag
@@ -267,15 +351,18 @@ public class EtagService {
         if (relativePath == null) {
             return;
         }
-
+        String userId = userService.getUserIdByUserName(username);
+        // 被删除子项的 ETag 已无法获取, 父文件夹全量扫描
+        requestRescan(userId, relativePath);
         // 标记父文件夹需要更新ETag
-        markFolderForEtagUpdate(userService.getUserIdByUserName(username), relativePath);
+        markFolderForEtagUpdate(userId, relativePath);
     }
 
     /**
      * 处理根目录下文件的ETag
      */
     private void processRootFolderFiles() {
+        Map<String, String> usernames = new HashMap<>();
         boolean run = true;
         while (run) {
             long count = etagDAO.countRootDirFilesWithoutEtag();
@@ -291,7 +378,7 @@ public class EtagService {
             }
             log.debug("Found {} files marked for ETag update. Processing...", tasks.size());
             for (FileBaseEtagDTO fileDoc : tasks) {
-                String username = userService.getUserNameById(fileDoc.getUserId());
+                String username = usernames.computeIfAbsent(fileDoc.getUserId(), userService::getUserNameById);
                 Path path = Paths.get(fileProperties.getRootDir(), username, fileDoc.getPath(), fileDoc.getName());
 
                 if (Files.exists(path)) {
@@ -304,76 +391,139 @@ public class EtagService {
     /**
      * 实际处理标记为需要更新ETag的文件夹的循环。
      * 此方法由 ensureProcessingMarkedFolders 提交的任务在 EtagWorker 线程中执行。
+     * 每一批文件夹按顶层子树分组, 各组并行处理, 组内按深度从深到浅处理。
      *
      * @param workerId 当前worker的唯一标识
      */
     private void processMarkedFoldersLoop(String workerId) {
-        boolean run = true;
-        while (run && !Thread.currentThread().isInterrupted()) {
-            List<FileBaseEtagDTO> tasks = etagDAO.findFileBaseEtagDTOByNeedUpdateFolder();
+        while (!Thread.currentThread().isInterrupted()) {
+            List<FileBaseEtagDTO> tasks = etagDAO.findFileBaseEtagDTOByNeedUpdateFolder(MARKED_FOLDERS_BATCH_SIZE);
             if (tasks.isEmpty()) {
-                run = false;
-                continue;
+                break;
             }
-            log.debug("[Worker {}] Found {} folders marked for ETag update. Processing...", workerId, tasks.size());
+            Map<String, List<FileBaseEtagDTO>> subtrees = tasks.stream()
+                    .collect(Collectors.groupingBy(EtagService::getSubtreeKey, LinkedHashMap::new, Collectors.toList()));
+            log.debug("[Worker {}] Found {} folders in {} subtrees marked for ETag update. Processing...", workerId, tasks.size(), subtrees.size());
 
-            for (FileBaseEtagDTO folderDoc : tasks) {
-                if (Thread.currentThread().isInterrupted()) {
-                    log.warn("[Worker {}] ETag processing loop was interrupted.", workerId);
-                    run = false; // 尊重中断信号
-                    break;
+            List<Future<?>> futures = new ArrayList<>(subtrees.size());
+            for (List<FileBaseEtagDTO> subtree : subtrees.values()) {
+                futures.add(executorSubtreeService.submit(() -> processSubtree(workerId, subtree)));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
                 }
+            } catch (InterruptedException e) {
+                log.warn("[Worker {}] ETag processing loop was interrupted.", workerId);
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.error("[Worker {}] Error processing ETag subtree: {}", workerId, e.getMessage(), e);
+            }
+            log.debug("[Worker {}] Finished processing batch of {} folders.", workerId, tasks.size());
+        }
+        log.debug("[Worker {}] ETag processing loop finished or paused.", workerId);
+    }
 
-                String folderPath = folderDoc.getPath();
-                String docId = folderDoc.getId();
-                String userId = folderDoc.getUserId();
-                log.debug("[Worker {}] Processing ETag for folder: {} (ID: {})", workerId, folderPath, docId);
+    /**
+     * 处理同一子树下的文件夹, 按深度从深到浅依次处理, 保证子文件夹先于父文件夹完成
+     */
+    private void processSubtree(String workerId, List<FileBaseEtagDTO> folders) {
+        List<FileBaseEtagDTO> sorted = new ArrayList<>(folders);
+        sorted.sort(Comparator.comparingInt((FileBaseEtagDTO folder) -> getDepth(folder.getPath())).reversed());
+        // 本组中尚未处理的文件夹, 它们的父文件夹如果也在本组中, 就不需要再次标记
+        Set<String> pending = new HashSet<>();
+        for (FileBaseEtagDTO folder : sorted) {
+            pending.add(folder.getUserId() + folder.getPath() + folder.getName() + "/");
+        }
+        for (FileBaseEtagDTO folderDoc : sorted) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.warn("[Worker {}] ETag processing loop was interrupted.", workerId);
+                return;
+            }
+            pending.remove(folderDoc.getUserId() + folderDoc.getPath() + folderDoc.getName() + "/");
+            processMarkedFolder(workerId, folderDoc, pending);
+        }
+    }
 
-                try {
-                    EtagCalculationResult result = calculateAndUpdateSingleFolderEtagInternal(folderDoc, workerId);
-
-                    switch (result) {
-                        case UPDATED:
-                            // 成功更新，清除标记并标记父文件夹
-                            etagDAO.clearMarkUpdateById(docId);
-                            log.debug("[Worker {}] Cleared ETag update mark for folder: {}", workerId, folderPath + folderDoc.getName());
-                            markFolderForEtagUpdate(userId, folderPath);
-                            break;
-                        case NOT_CHANGED:
-                            // ETag未变，只需清除标记
-                            etagDAO.clearMarkUpdateById(docId);
-                            log.debug("[Worker {}] Cleared ETag update mark for folder: {} as ETag was unchanged.", workerId, folderPath + folderDoc.getName());
-                            break;
-                        case SKIPPED_CHILD_NULL:
-                            // 计算失败，设置一个短暂的延迟后重试
-                            int attempts = etagDAO.findEtagUpdateFailedAttemptsById(docId); // 获取已失败次数
-                            // 简单的线性退避，每次延迟 3 秒 * 失败次数
-                            long delayMillis = 3000L * (attempts + 1);
-                            Instant nextRetryTime = Instant.now().plusMillis(delayMillis);
-                            etagDAO.setRetryAtById(docId, nextRetryTime, attempts + 1);
-                            if (attempts > 10) {
-                                log.warn("[Worker {}] ETag calculation for folder {} skipped due to null child ETag. Will retry after {} (attempt {}).", workerId, folderPath + folderDoc.getName(), nextRetryTime, attempts + 1);
-                            }
-                            if (attempts >= 50) {
-                                // 对目录 folderPath + folderDoc.getName() 重建索引
-                                String username = userService.getUserNameById(userId);
-                                String path = Paths.get(fileProperties.getRootDir(), username, folderPath + folderDoc.getName()).toString();
-                                eventPublisher.publishEvent(new RebuildIndexEvent(this, username, path));
-                            }
-                            break;
-                        case ERROR:
-                            // 出现预料之外的错误
-                            handleProcessingError(docId, folderPath, new RuntimeException("Calculation returned ERROR state"), workerId);
-                            break;
+    private void processMarkedFolder(String workerId, FileBaseEtagDTO folderDoc, Set<String> pending) {
+        String folderPath = folderDoc.getPath();
+        String docId = folderDoc.getId();
+        String userId = folderDoc.getUserId();
+        log.debug("[Worker {}] Processing ETag for folder: {} (ID: {})", workerId, folderPath, docId);
+
+        try {
+            EtagCalculationResult result = calculateAndUpdateSingleFolderEtagInternal(folderDoc, workerId);
+
+            switch (result) {
+                case UPDATED:
+                    // 成功更新，清除标记并标记父文件夹
+                    etagDAO.clearMarkUpdateById(docId);
+                    log.debug("[Worker {}] Cleared ETag update mark for folder: {}", workerId, folderPath + folderDoc.getName());
+                    if (!pending.contains(userId + folderPath)) {
+                        markFolderForEtagUpdate(userId, folderPath);
                     }
-                } catch (Exception e) {
-                    log.error("[Worker {}] Critical error processing ETag for folder {}: {}", workerId, folderPath, e.getMessage(), e);
-                    handleProcessingError(docId, folderPath, e, workerId);
-                }
+                    break;
+                case NOT_CHANGED:
+                    // ETag未变，只需清除标记
+                    etagDAO.clearMarkUpdateById(docId);
+                    log.debug("[Worker {}] Cleared ETag update mark for folder: {} as ETag was unchanged.", workerId, folderPath + folderDoc.getName());
+                    break;
+                case SKIPPED_CHILD_NULL:
+                    // 计算失败，设置一个短暂的延迟后重试
+                    int attempts = etagDAO.findEtagUpdateFailedAttemptsById(docId); // 获取已失败次数
+                    // 简单的线性退避，每次延迟 3 秒 * 失败次数
+                    long delayMillis = 3000L * (attempts + 1);
+                    Instant nextRetryTime = Instant.now().plusMillis(delayMillis);
+                    etagDAO.setRetryAtById(docId, nextRetryTime, attempts + 1);
+                    if (attempts > 10) {
+                        log.warn("[Worker {}] ETag calculation for folder {} skipped due to null child ETag. Will retry after {} (attempt {}).", workerId, folderPath + folderDoc.getName(), nextRetryTime, attempts + 1);
+                    }
+                    if (attempts >= 50) {
+                        // 对目录 folderPath + folderDoc.getName() 重建索引
+                        String username = userService.getUserNameById(userId);
+                        String path = Paths.get(fileProperties.getRootDir(), username, folderPath + folderDoc.getName()).toString();
+                        eventPublisher.publishEvent(new RebuildIndexEvent(this, username, path));
+                    }
+                    break;
+                case ERROR:
+                    // 出现预料之外的错误
+                    handleProcessingError(docId, folderPath, new RuntimeException("Calculation returned ERROR state"), workerId);
+                    break;
             }
-            log.debug("[Worker {}] Finished processing batch of {} folders.", workerId, tasks.size());
+        } catch (Exception e) {
+            log.error("[Worker {}] Critical error processing ETag for folder {}: {}", workerId, folderPath, e.getMessage(), e);
+            handleProcessingError(docId, folderPath, e, workerId);
         }
-        log.debug("[Worker {}] ETag processing loop finished or paused.", workerId);
+    }
+
+    /**
+     * 获取文件夹所属的顶层子树, 例如 /A/B/ 下的文件夹属于 userId:A
+     */
+    private static String getSubtreeKey(FileBaseEtagDTO folderDoc) {
+        String path = folderDoc.getPath();
+        if (CharSequenceUtil.isBlank(path) || "/".equals(path)) {
+            return folderDoc.getUserId() + ":" + folderDoc.getName();
+        }
+        int end = path.indexOf('/', 1);
+        return folderDoc.getUserId() + ":" + (end > 0 ? path.substring(1, end) : path.substring(1));
+    }
+
+    /**
+     * 根据路径计算深度, 例如 / 为 0, /A/B/ 为 2
+     */
+    private static int getDepth(String path) {
+        if (path == null) {
+            return 0;
+        }
+        int depth = 0;
+        for (int i = 1; i < path.length(); i++) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
     }
 
     /**
@@ -389,22 +539,42 @@ public class EtagService {
         }
         String folderName = Paths.get(currentFolderPath).getFileName().toString();
 
-        try {
-            boolean modifiedOrMatch = etagDAO.setMarkUpdateByUserIdAndPathAndName(userId, parentFolderPath, folderName);
-            if (modifiedOrMatch) {
-                log.debug("Marked folder for ETag update: {}", currentFolderPath);
-                ensureProcessingMarkedFolders();
-            } else {
-                log.debug("Folder not found to mark for ETag update: {}", currentFolderPath);
+        pendingMarks.add(new FolderMark(userId, parentFolderPath, folderName));
+        if (markFlushScheduled.compareAndSet(false, true)) {
+            markScheduler.schedule(this::flushPendingMarks, MARK_COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 将时间窗口内合并后的文件夹标记写入数据库
+     */
+    private void flushPendingMarks() {
+        markFlushScheduled.set(false);
+        boolean marked = false;
+        Iterator<FolderMark> iterator = pendingMarks.iterator();
+        while (iterator.hasNext()) {
+            FolderMark mark = iterator.next();
+            iterator.remove();
+            try {
+                if (etagDAO.setMarkUpdateByUserIdAndPathAndName(mark.userId(), mark.path(), mark.name())) {
+                    log.debug("Marked folder for ETag update: {}", mark.path() + mark.name());
+                    marked = true;
+                } else {
+                    log.debug("Folder not found to mark for ETag update: {}", mark.path() + mark.name());
+                }
+            } catch (Exception e) {
+                log.error("DB error marking folder for ETag update {}: {}", mark.path() + mark.name(), e.getMessage(), e);
             }
-        } catch (DataAccessException e) {
-            log.error("DB error marking folder for ETag update {}: {}", currentFolderPath, e.getMessage(), e);
+        }
+        if (marked) {
+            ensureProcessingMarkedFolders();
         }
     }
 
     /**
      * 内部方法：计算并更新单个文件夹的ETag。
      * 被 processMarkedFolders 调用。
+     * 有待合并的子项差值时在 etagHash 上合并差值, 否则全量扫描直接子项。
      *
      * @return true 如果ETag实际发生了变化并被更新
      */
@@ -412,50 +582,166 @@ public class EtagService {
         String folderPath = folderDoc.getPath();
         String oldEtag = folderDoc.getEtag();
         String userId = folderDoc.getUserId();
-        String newCalculatedEtag;
-
         String currentFolderNormalizedPath = folderDoc.getPath() + folderDoc.getName() + "/";
-        List<FileBaseEtagDTO> children = etagDAO.findFileBaseEtagDTOByUserIdAndPath(userId, currentFolderNormalizedPath);
-        long folderSize = 0;
-        int childrenCount = 0;
-        if (children.isEmpty()) {
-            newCalculatedEtag = HashUtil.sha256(EMPTY_FOLDER_ETAG_BASE_STRING);
-        } else {
-            List<String> childRepresentations = children.stream()
-                    .sorted(Comparator.comparing(FileBaseEtagDTO::getName)) // 按名称排序
-                    .map(child -> formatChildRepresentation(workerId, child, currentFolderNormalizedPath))
-                    .toList();
-            StringBuilder combinedRepresentation = new StringBuilder();
-            for (String rep : childRepresentations) {
-                if (rep == null) {
+        String folderKey = userId + currentFolderNormalizedPath;
+
+        boolean rescan = rescanFolders.remove(folderKey);
+        BigInteger delta = pendingHashDeltas.remove(folderKey);
+        boolean saved = false;
+        try {
+            FolderEtag folderEtag;
+            if (!rescan && delta != null && folderDoc.getEtagHash() != null) {
+                folderEtag = applyHashDelta(folderDoc, currentFolderNormalizedPath, delta);
+            } else {
+                folderEtag = rescanChildren(workerId, folderDoc, currentFolderNormalizedPath);
+                if (folderEtag == null) {
                     return EtagCalculationResult.SKIPPED_CHILD_NULL;
                 }
-                if (CharSequenceUtil.isNotBlank(rep)) {
-                    combinedRepresentation.append(rep).append(";");
+                if (pendingHashDeltas.remove(folderKey) != null) {
+                    // 扫描期间有子项变化, 无法确定扫描结果是否已包含这些差值, 下次重新扫描
+                    rescanFolders.add(folderKey);
                 }
             }
-            newCalculatedEtag = HashUtil.sha256(combinedRepresentation.toString());
-
-            // 计算文件夹大小
-            folderSize = getFolderSize(userId, currentFolderNormalizedPath);
-            // 计算子项数量
-            childrenCount = countFilesInFolder(userId, currentFolderNormalizedPath);
-        }
-
-        if (!newCalculatedEtag.equals(oldEtag)) {
+            String newCalculatedEtag = folderEtag.etag();
+            String newEtagHash = folderEtag.etagHash();
+
+            boolean etagChanged = !newCalculatedEtag.equals(oldEtag);
+            if (!etagChanged && newEtagHash.equals(folderDoc.getEtagHash())) {
+                saved = true;
+                log.debug("[Worker {}] Folder ETag for {} did not change (calculated: {}, current: {}).", workerId, folderPath, newCalculatedEtag, oldEtag);
+                return EtagCalculationResult.NOT_CHANGED;
+            }
+            if (etagChanged) {
+                // 先记录父文件夹的差值再写入
+                addHashDelta(userId, folderPath, folderDoc.getName(), oldEtag, newCalculatedEtag);
+            }
             // 更新文件夹大小(如果使用乐观锁，需要检查版本号)
-            long modifiedCount = etagDAO.updateEtagAndSizeById(folderDoc.getId(), newCalculatedEtag, folderSize, childrenCount);
+            long modifiedCount;
+            try {
+                modifiedCount = etagDAO.updateEtagAndSizeById(folderDoc.getId(), newCalculatedEtag, newEtagHash, folderEtag.size(), folderEtag.childrenCount());
+            } catch (RuntimeException e) {
+                if (etagChanged) {
+                    requestRescan(userId, folderPath);
+                }
+                throw e;
+            }
+            saved = true;
+            if (!etagChanged) {
+                return EtagCalculationResult.NOT_CHANGED;
+            }
             if (modifiedCount > 0) {
                 log.debug("[Worker {}] Folder ETag updated for {}: {} -> {}", workerId, folderPath + folderDoc.getName(), oldEtag, newCalculatedEtag);
                 return EtagCalculationResult.UPDATED;
             } else {
                 // 可能在计算和写入之间，该文档被其他worker处理了（如果ETag已更新为相同值）或版本冲突
                 log.warn("[Worker {}] Folder ETag for {} was calculated as {} (old: {}), but DB update reported no modification. Possible race condition or already up-to-date.", workerId, folderPath, newCalculatedEtag, oldEtag);
+                requestRescan(userId, folderPath);
                 return EtagCalculationResult.NOT_CHANGED; // 没有实际修改数据库
             }
+        } finally {
+            if (!saved) {
+                // 取出的差值没有写入, 下次全量扫描
+                rescanFolders.add(folderKey);
+            }
+        }
+    }
+
+    /**
+     * 在文件夹已保存的 etagHash 上合并子项差值, size 和 childrenCount 由数据库汇总直接子项得到
+     */
+    private FolderEtag applyHashDelta(FileBaseEtagDTO folderDoc, String currentFolderNormalizedPath, BigInteger delta) {
+        BigInteger combinedHash = new BigInteger(folderDoc.getEtagHash(), 16).add(delta).mod(COMBINED_HASH_MODULUS);
+        FolderSizeDTO folderSize = etagDAO.sumSizeAndCountByUserIdAndPath(folderDoc.getUserId(), currentFolderNormalizedPath);
+        long size = folderSize.size() == null ? 0 : folderSize.size();
+        long count = folderSize.count() == null ? 0 : folderSize.count();
+        return new FolderEtag(combinedHash, count, size, Math.toIntExact(folderSize.childrenCount()));
+    }
+
+    /**
+     * 全量扫描直接子项计算文件夹的 etagHash, 用于没有可用差值时修复
+     *
+     * @return 有子项的 ETag 为空时返回 null
+     */
+    private FolderEtag rescanChildren(String workerId, FileBaseEtagDTO folderDoc, String currentFolderNormalizedPath) {
+        List<FileBaseEtagDTO> children = etagDAO.findFileBaseEtagDTOByUserIdAndPath(folderDoc.getUserId(), currentFolderNormalizedPath);
+        String username = children.isEmpty() ? null : userService.getUserNameById(folderDoc.getUserId());
+        // 组合哈希: 各子项 sha256 之和(mod 2^256), 与子项顺序无关, 无需排序和拼接
+        BigInteger combinedHash = BigInteger.ZERO;
+        long folderSize = 0;
+        long count = 0;
+        int childrenCount = 0;
+        for (FileBaseEtagDTO child : children) {
+            String rep = formatChildRepresentation(workerId, child, currentFolderNormalizedPath, username);
+            if (rep == null) {
+                return null;
+            }
+            if (CharSequenceUtil.isBlank(rep)) {
+                continue;
+            }
+            combinedHash = combinedHash.add(new BigInteger(1, HashUtil.sha256Bytes(rep)));
+            // 子文件夹的 size 和 childrenCount 已是其子树的汇总值
+            folderSize += child.getSize() == null ? 0 : child.getSize();
+            count++;
+            childrenCount++;
+            if (Boolean.TRUE.equals(child.getIsFolder()) && child.getChildrenCount() != null) {
+                childrenCount += child.getChildrenCount();
+            }
+        }
+        return new FolderEtag(combinedHash.mod(COMBINED_HASH_MODULUS), count, folderSize, childrenCount);
+    }
+
+    /**
+     * 子项 ETag 变化时记录父文件夹 etagHash 的差值, 需要在写入子项新的 ETag 之前调用
+     *
+     * @param userId     用户ID
+     * @param folderPath 父文件夹路径, 如 /A/B/
+     * @param childName  子项名称
+     * @param oldEtag    旧的 ETag, 为空表示之前未计入
+     * @param newEtag    新的 ETag
+     */
+    private void addHashDelta(String userId, String folderPath, String childName, String oldEtag, String newEtag) {
+        if (getParentDbPath(folderPath) == null) {
+            // 根目录没有对应的文件夹
+            return;
+        }
+        BigInteger delta = childHash(childName, newEtag).subtract(childHash(childName, oldEtag));
+        pendingHashDeltas.merge(userId + folderPath, delta, BigInteger::add);
+    }
+
+    private void requestRescan(String userId, String folderPath) {
+        if (getParentDbPath(folderPath) == null) {
+            return;
+        }
+        rescanFolders.add(userId + folderPath);
+    }
+
+    private static BigInteger childHash(String name, String etag) {
+        if (etag == null) {
+            return BigInteger.ZERO;
+        }
+        return new BigInteger(1, HashUtil.sha256Bytes(name + ":" + etag));
+    }
+
+    /**
+     * 文件夹的 ETag 计算结果
+     *
+     * @param combinedHash  直接子项哈希之和(mod 2^256)
+     * @param count         计入的直接子项数量
+     * @param size          文件夹大小
+     * @param childrenCount 其下所有子文件/文件夹的数量
+     */
+    private record FolderEtag(BigInteger combinedHash, long count, long size, int childrenCount) {
+
+        String etag() {
+            if (count == 0) {
+                return HashUtil.sha256(EMPTY_FOLDER_ETAG_BASE_STRING);
+            }
+            return HashUtil.sha256(combinedHash.toString(16));
+        }
+
+        String etagHash() {
+            return combinedHash.toString(16);
         }
-        log.debug("[Worker {}] Folder ETag for {} did not change (calculated: {}, current: {}).", workerId, folderPath, newCalculatedEtag, oldEtag);
-        return EtagCalculationResult.NOT_CHANGED;
     }
 
     private void handleProcessingError(String docId, String folderPath, Exception e, String workerId) {
@@ -503,9 +789,10 @@ public class EtagService {
      * @param workerId         工作线程ID
      * @param child            子项的文档对象
      * @param parentFolderPath 父文件夹的路径
+     * @param username         子项所属的用户名
      * @return 子项的表示字符串 (name:etag)，如果子项未就绪则返回null，如果子项应被忽略则返回空字符串。
      */
-    private String formatChildRepresentation(String workerId, FileBaseEtagDTO child, String parentFolderPath) {
+    private String formatChildRepresentation(String workerId, FileBaseEtagDTO child, String parentFolderPath, String username) {
         String ossPath = CaffeineUtil.getOssPath(Paths.get(child.getId()));
         if (ossPath != null) {
             return HashUtil.sha256(child.getId());
@@ -526,15 +813,13 @@ public class EtagService {
                 // 标记该子文件夹需要更新ETag，以便它能尽快被处理。
                 markFolderForEtagUpdate(child.getUserId(), child.getPath() + child.getName() + "/");
             } else {
-                String username = userService.getUserNameById(child.getUserId());
                 updateFileEtagAndMarkParentAsync(username, Paths.get(fileProperties.getRootDir(), username, child.getPath(), child.getName()).toFile());
             }
             return null;
         }
 
         // 2. 检查物理文件是否存在 (作为一种数据一致性的校验)
-        // 注意：这个检查会与文件系统交互，如果性能要求极高且能保证DB与FS同步，可以考虑移除。
-        String username = userService.getUserNameById(child.getUserId());
+        // 注意：这个检查会与文件系统交互, 只在全量扫描(修复)时执行。
         Path path = Paths.get(fileProperties.getRootDir(), username, child.getPath(), child.getName());
         if (!Files.exists(path)) {
             log.debug("[Worker {}] Child item '{}' found in DB but does not exist on filesystem at path '{}'. It will be ignored for ETag calculation.",
@@ -552,9 +837,13 @@ public class EtagService {
 
     @PreDestroy
     public void cleanup() {
+        markScheduler.shutdown();
         if (executorMarkedFoldersService != null) {
             executorMarkedFoldersService.shutdown();
         }
+        if (executorSubtreeService != null) {
+            executorSubtreeService.shutdown();
+        }
     }
 
 }
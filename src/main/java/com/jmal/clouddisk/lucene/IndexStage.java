@@ -0,0 +1,162 @@
+package com.jmal.clouddisk.lucene;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 索引流水线中的一个阶段
+ * <p>
+ * 每个阶段有自己的有界队列和固定数量的工作线程, 工作线程每次从队列中取出最多 maxBatch 个元素批量处理。
+ * 上游通过 {@link #offer(Object)} 非阻塞提交, 或在流水线内部通过 {@link #put(Object)} 阻塞提交以形成背压。
+ *
+ * @param <T> 元素类型
+ */
+@Slf4j
+class IndexStage<T> {
+
+    @Getter
+    private final String name;
+
+    private final BlockingQueue<T> queue;
+
+    private final int maxBatch;
+
+    private final Consumer<List<T>> handler;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final LongAdder processed = new LongAdder();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * 已提交但还没有处理完成的元素数, 入队前增加, 处理完成后减少
+     * 工作线程从队列取出元素到开始处理之间也计算在内, 避免 {@link #isIdle()} 误判
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    private long lastProcessed;
+
+    private long lastSnapshotNanos = System.nanoTime();
+
+    IndexStage(String name, int capacity, int concurrency, int maxBatch, Consumer<List<T>> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.handler = handler;
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofPlatform().name(name + "-" + i).daemon(true).start(this::runWorker));
+        }
+    }
+
+    /**
+     * 非阻塞提交
+     *
+     * @return 队列已满时返回 false
+     */
+    boolean offer(T item) {
+        if (!running) {
+            return false;
+        }
+        pending.incrementAndGet();
+        if (queue.offer(item)) {
+            return true;
+        }
+        pending.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * 阻塞提交, 队列满时等待下游消费
+     */
+    void put(T item) throws InterruptedException {
+        pending.incrementAndGet();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void runWorker() {
+        List<T> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                active.incrementAndGet();
+                try {
+                    handler.accept(batch);
+                } finally {
+                    active.decrementAndGet();
+                    processed.add(batch.size());
+                    pending.addAndGet(-batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("{} 处理失败: {}", name, e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 没有排队或正在处理的元素
+     */
+    boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * 当前阶段的队列深度、并发和吞吐量, 吞吐量按距离上次调用的时间计算
+     */
+    synchronized String snapshot() {
+        long now = System.nanoTime();
+        long total = processed.sum();
+        double seconds = Math.max(1e-3, (now - lastSnapshotNanos) / 1e9);
+        double throughput = (total - lastProcessed) / seconds;
+        lastProcessed = total;
+        lastSnapshotNanos = now;
+        return String.format("队列: %d, 处理中: %d, %.1f/s, 已处理: %d", queue.size(), active.get(), throughput, total);
+    }
+
+    /**
+     * 停止接收新元素, 等待队列中剩余的元素处理完成
+     */
+    void shutdown(long timeoutSeconds) {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (Thread worker : workers) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !worker.join(Duration.ofNanos(remaining))) {
+                    log.warn("{} 未能在{}秒内完成, 剩余: {}", name, timeoutSeconds, queue.size());
+                    worker.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -10,7 +10,11 @@ import com.jmal.clouddisk.service.IUserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
@@ -18,17 +22,26 @@ import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.FieldExistsQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermInSetQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -37,7 +50,10 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 import static com.jmal.clouddisk.lucene.LuceneService.FIELD_TAG_NAME_FUZZY;
 
@@ -53,6 +69,8 @@ public class LuceneQueryService {
     private final Analyzer analyzer;
     private final FileProperties fileProperties;
 
+    private static final Set<String> ID_FIELDS = Set.of("id");
+
     public boolean existsSha256(String key, String fileIndexHash) {
         return exists(getEtagQuery(key, fileIndexHash));
     }
@@ -141,26 +159,46 @@ public class LuceneQueryService {
     }
 
     public Page<String> find(Query query, SearchDTO searchDTO) {
+        CursorPage cursorPage = findPage(query, searchDTO);
+        int pageNum = searchDTO.getPage();
+        int pageSize = searchDTO.getPageSize();
+        return new PageImpl<>(cursorPage.fileIds(), Pageable.ofSize(pageSize).withPage(pageNum - 1), cursorPage.total());
+    }
+
+    /**
+     * 分页查询
+     * 如果 searchDTO 带有上一页返回的游标, 则直接从游标位置继续查询(searchAfter), 翻页开销与页码无关;
+     * 否则按页码跳过前面的结果。总数在同一次查询中统计。
+     *
+     * @param query     查询条件
+     * @param searchDTO 分页、排序参数
+     * @return 当前页的文件id、总数和下一页游标
+     */
+    public CursorPage findPage(Query query, SearchDTO searchDTO) {
         IndexSearcher indexSearcher = null;
         try {
             searcherManager.maybeRefresh();
             indexSearcher = searcherManager.acquire();
-            ScoreDoc lastScoreDoc = null;
             int pageNum = searchDTO.getPage();
             int pageSize = searchDTO.getPageSize();
             Sort sort = getSort(searchDTO);
-            if (pageNum > 1) {
-                int totalHitsToSkip = (pageNum - 1) * pageSize;
-                TopDocs topDocs = indexSearcher.search(query, totalHitsToSkip, sort);
-                if (topDocs.scoreDocs.length == totalHitsToSkip) {
-                    lastScoreDoc = topDocs.scoreDocs[totalHitsToSkip - 1];
-                }
+            FieldDoc after = SearchCursor.decode(searchDTO.getCursor(), sort);
+            int numHits = after != null ? pageSize : Math.multiplyExact(pageNum, pageSize);
+            // totalHitsThreshold 设为最大值, 在同一次收集中得到准确的总数
+            TopFieldCollectorManager collectorManager = new TopFieldCollectorManager(sort, numHits, after, Integer.MAX_VALUE);
+            TopFieldDocs topDocs = indexSearcher.search(query, collectorManager);
+            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+            if (after == null && pageNum > 1) {
+                int skip = Math.min(scoreDocs.length, (pageNum - 1) * pageSize);
+                scoreDocs = Arrays.copyOfRange(scoreDocs, skip, scoreDocs.length);
             }
-            int count = indexSearcher.count(query);
-            TopDocs topDocs = indexSearcher.searchAfter(lastScoreDoc, query, pageSize, sort);
-            List<String> fileIds = getFileIds(indexSearcher, topDocs);
-            return new PageImpl<>(fileIds, Pageable.ofSize(pageSize).withPage(pageNum - 1), count);
-        } catch (IOException e) {
+            String nextCursor = null;
+            if (scoreDocs.length == pageSize) {
+                nextCursor = SearchCursor.encode((FieldDoc) scoreDocs[scoreDocs.length - 1], sort);
+            }
+            List<String> fileIds = getFileIds(indexSearcher, scoreDocs);
+            return new CursorPage(fileIds, topDocs.totalHits.value(), nextCursor);
+        } catch (IOException | ArithmeticException e) {
             log.error("查询失败, query: {}", query, e);
         } finally {
             if (indexSearcher != null) {
@@ -171,7 +209,17 @@ public class LuceneQueryService {
                 }
             }
         }
-        return Page.empty();
+        return new CursorPage(List.of(), 0, null);
+    }
+
+    /**
+     * 分页查询结果
+     *
+     * @param fileIds    当前页的文件id
+     * @param total      总数
+     * @param nextCursor 下一页游标, 没有下一页时为 null
+     */
+    public record CursorPage(List<String> fileIds, long total, String nextCursor) {
     }
 
     public List<String> find(Query query) {
@@ -180,7 +228,7 @@ public class LuceneQueryService {
             searcherManager.maybeRefresh();
             indexSearcher = searcherManager.acquire();
             TopDocs topDocs = indexSearcher.search(query, Integer.MAX_VALUE);
-            return getFileIds(indexSearcher, topDocs);
+            return getFileIds(indexSearcher, topDocs.scoreDocs);
         } catch (IOException e) {
             log.error("查询失败, query: {}", query, e);
         } finally {
@@ -195,12 +243,40 @@ public class LuceneQueryService {
         return List.of();
     }
 
-    private List<String> getFileIds(IndexSearcher indexSearcher, TopDocs topDocs) throws IOException {
-        List<String> fileIds = new ArrayList<>();
-        StoredFields storedFields = indexSearcher.storedFields();
-        for (ScoreDoc hit : topDocs.scoreDocs) {
-            Document doc = storedFields.document(hit.doc);
-            String id = doc.get("id");
+    /**
+     * 读取命中文档的id
+     * 优先从 id 的 DocValues 读取, 不需要加载整个存储文档; 旧索引中没有 DocValues 的文档再回退到存储字段
+     */
+    private List<String> getFileIds(IndexSearcher indexSearcher, ScoreDoc[] hits) throws IOException {
+        // DocValues 只能按 docId 递增的顺序访问
+        Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> hits[i].doc));
+
+        String[] ids = new String[hits.length];
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        StoredFields storedFields = null;
+        LeafReaderContext leaf = null;
+        SortedDocValues idDocValues = null;
+        for (int i : order) {
+            int doc = hits[i].doc;
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                idDocValues = leaf.reader().getSortedDocValues(LuceneService.FIELD_ID_DV);
+            }
+            if (idDocValues != null && idDocValues.advanceExact(doc - leaf.docBase)) {
+                ids[i] = idDocValues.lookupOrd(idDocValues.ordValue()).utf8ToString();
+            } else {
+                if (storedFields == null) {
+                    storedFields = indexSearcher.storedFields();
+                }
+                ids[i] = storedFields.document(doc, ID_FIELDS).get("id");
+            }
+        }
+        List<String> fileIds = new ArrayList<>(hits.length);
+        for (String id : ids) {
             if (id != null) {
                 fileIds.add(id);
             }
@@ -375,23 +451,93 @@ public class LuceneQueryService {
         // 检查path最后一个字符是否有/, 如果没有，则添加
         path = path.endsWith("/") ? path : path + "/";
         BooleanQuery.Builder pathQueryBuilder = new BooleanQuery.Builder();
-        Term pathTerm = new Term("path", path);
-        PrefixQuery prefixQuery = new PrefixQuery(pathTerm);
-        pathQueryBuilder.add(new TermQuery(pathTerm), BooleanClause.Occur.SHOULD);
-        pathQueryBuilder.add(prefixQuery, BooleanClause.Occur.SHOULD);
+        // path 以 DocValues 为准, 重命名文件夹时只原地更新 DocValues
+        pathQueryBuilder.add(new PathPrefixDocValuesQuery(LuceneService.FIELD_PATH_DV, path), BooleanClause.Occur.SHOULD);
+        // 旧索引中没有 path DocValues 的文档
+        BooleanQuery.Builder legacyQueryBuilder = new BooleanQuery.Builder();
+        legacyQueryBuilder.add(new PrefixQuery(new Term(Constants.PATH_FIELD, path)), BooleanClause.Occur.MUST);
+        legacyQueryBuilder.add(new FieldExistsQuery(LuceneService.FIELD_PATH_DV), BooleanClause.Occur.MUST_NOT);
+        pathQueryBuilder.add(legacyQueryBuilder.build(), BooleanClause.Occur.SHOULD);
         return pathQueryBuilder.build();
     }
 
     /**
-     * 获取排序规则
+     * 索引中某个路径下的文档
+     *
+     * @param fileId fileId
+     * @param path   DocValues 中的 path, 旧索引中没有 path DocValues 时为 null
+     */
+    public record IndexedPath(String fileId, String path) {
+    }
+
+    /**
+     * 查找用户某个路径下的所有文档, 逐段遍历命中的文档, 只读取 DocValues
+     *
+     * @param userId     userId
+     * @param pathPrefix 路径前缀, 以"/"结尾
+     * @return 命中的文档
+     */
+    public List<IndexedPath> findIndexedPathsByPathPrefix(String userId, String pathPrefix) throws IOException {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(getUserIdQuery(userId), BooleanClause.Occur.FILTER);
+        builder.add(getPathQueryBuilder(pathPrefix), BooleanClause.Occur.FILTER);
+        searcherManager.maybeRefresh();
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            Weight weight = indexSearcher.createWeight(indexSearcher.rewrite(builder.build()), ScoreMode.COMPLETE_NO_SCORES, 1f);
+            List<IndexedPath> indexedPaths = new ArrayList<>();
+            for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+                Scorer scorer = weight.scorer(leaf);
+                if (scorer == null) {
+                    continue;
+                }
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                SortedDocValues idDocValues = DocValues.getSorted(leaf.reader(), LuceneService.FIELD_ID_DV);
+                BinaryDocValues pathDocValues = DocValues.getBinary(leaf.reader(), LuceneService.FIELD_PATH_DV);
+                StoredFields storedFields = null;
+                DocIdSetIterator iterator = scorer.iterator();
+                for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    String fileId;
+                    if (idDocValues.advanceExact(doc)) {
+                        fileId = idDocValues.lookupOrd(idDocValues.ordValue()).utf8ToString();
+                    } else {
+                        if (storedFields == null) {
+                            storedFields = leaf.reader().storedFields();
+                        }
+                        fileId = storedFields.document(doc, ID_FIELDS).get("id");
+                    }
+                    String path = pathDocValues.advanceExact(doc) ? pathDocValues.binaryValue().utf8ToString() : null;
+                    if (fileId != null) {
+                        indexedPaths.add(new IndexedPath(fileId, path));
+                    }
+                }
+            }
+            return indexedPaths;
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * 获取排序规则, 最后按 id 排序, 保证排序是确定的, 游标只需要记录排序值, 不依赖会随刷新变化的 docId
      *
      * @param searchDTO searchDTO
      * @return Sort
      */
     private static Sort getSort(SearchDTO searchDTO) {
+        SortField[] sortFields = getSortFields(searchDTO);
+        SortField[] withId = Arrays.copyOf(sortFields, sortFields.length + 1);
+        withId[sortFields.length] = new SortField(LuceneService.FIELD_ID_DV, SortField.Type.STRING);
+        return new Sort(withId);
+    }
+
+    private static SortField[] getSortFields(SearchDTO searchDTO) {
         // 如果 searchDTO 为 null，返回默认相关度倒序排序
         if (searchDTO == null) {
-            return Sort.RELEVANCE;
+            return new SortField[]{SortField.FIELD_SCORE};
         }
 
         String sortProp = searchDTO.getSortProp();
@@ -399,7 +545,7 @@ public class LuceneQueryService {
 
         // 如果排序属性或顺序为空，默认按相关度倒序排序
         if (CharSequenceUtil.isBlank(sortProp) || CharSequenceUtil.isBlank(sortOrder)) {
-            return Sort.RELEVANCE;
+            return new SortField[]{SortField.FIELD_SCORE};
         }
 
         // 确定排序方向
@@ -422,15 +568,15 @@ public class LuceneQueryService {
                 break;
             case "name":
                 if (CharSequenceUtil.isNotBlank(searchDTO.getKeyword())) {
-                    return reverse ? Sort.RELEVANCE : new Sort(new SortField(null, SortField.Type.SCORE, true));
+                    return new SortField[]{reverse ? SortField.FIELD_SCORE : new SortField(null, SortField.Type.SCORE, true)};
                 }
                 sortField = new SortField("name_sort", SortField.Type.STRING, reverse);
                 break;
             default:
                 // 对于不支持的排序字段，默认按相关度倒序
-                return Sort.RELEVANCE;
+                return new SortField[]{SortField.FIELD_SCORE};
         }
 
-        return new Sort(new SortField("is_folder_sort", SortField.Type.LONG, true), sortField);
+        return new SortField[]{new SortField("is_folder_sort", SortField.Type.LONG, true), sortField};
     }
 }
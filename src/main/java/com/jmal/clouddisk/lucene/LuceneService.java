@@ -18,6 +18,7 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
@@ -31,29 +32,30 @@ import org.apache.lucene.util.BytesRef;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -80,21 +82,14 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     private final RebuildIndexTaskService rebuildIndexTaskService;
     private final LuceneQueryService luceneQueryService;
     private final EtagService esTagService;
+    private final TaskProgressService taskProgressService;
 
     public static final String MONGO_INDEX_FIELD = "index";
 
     /**
-     * 创建索引线程池
+     * 处理待索引文件内容的线程池
      */
     private ExecutorService executorCreateIndexService;
-    /**
-     * 更新索引内容线程池
-     */
-    private ExecutorService executorUpdateContentIndexService;
-    /**
-     * 更新大文件索引内容线程池
-     */
-    private ExecutorService executorUpdateBigContentIndexService;
 
     /**
      * 定时任务线程池
@@ -107,14 +102,73 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     private static final int CREATE_INDEX_QUEUE_SIZE = 40960;
 
     /**
-     * 新建索引文件缓冲队列
+     * 每批从数据库读取的文件数
+     */
+    private static final int METADATA_BATCH_SIZE = 256;
+
+    /**
+     * 写入阶段的队列大小和每批写入的文档数
+     */
+    private static final int WRITE_QUEUE_SIZE = 1024;
+    private static final int WRITE_BATCH_SIZE = 256;
+
+    /**
+     * 读取文件内容时按文件大小估算的内存放大倍数(解析pdf、office等文档时的内存占用)
      */
-    private ArrayBlockingQueue<String> indexFileQueue;
+    private static final int CONTENT_MEMORY_FACTOR = 3;
 
     /**
-     * 新建索引文件内容缓冲队列
+     * 提取出的内容在内存中最多保留的字符数, 超过后写入临时文件
      */
-    private ArrayBlockingQueue<String> indexFileContentQueue;
+    private static final int CONTENT_SPOOL_MEMORY_CHARS = 256 * 1024;
+
+    /**
+     * 内容临时文件目录, 位于缓存目录下
+     */
+    private static final String CONTENT_SPOOL_DIR = ".luceneContent";
+
+    /**
+     * 阶段一: 读取文件元数据, 建立不带内容的索引
+     */
+    private IndexStage<String> metadataStage;
+
+    /**
+     * 阶段二: 读取文件内容
+     */
+    private IndexStage<FileBaseLuceneDTO> contentStage;
+
+    /**
+     * 阶段三: 批量写入 IndexWriter
+     */
+    private IndexStage<IndexDocument> writeStage;
+
+    /**
+     * 已在元数据队列中等待的文件id, 用于去重
+     */
+    private final Set<String> pendingFileIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 元数据队列已满时溢出的文件id, 由定时任务标记为待索引, 交给内容阶段处理
+     */
+    private final Queue<String> overflowFileIds = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 内容阶段的内存预算(MB), 按文件大小申请, 替代按线程数估算内存
+     */
+    private Semaphore contentMemoryPermits;
+
+    private int contentMemoryBudgetMB;
+
+    /**
+     * @param content     文档内容字段的缓冲区, 写入索引后删除, 没有内容时为null
+     * @param markIndexed 写入索引后是否将文件标记为已索引
+     */
+    private record IndexDocument(String fileId, Document document, ContentSpool content, boolean markIndexed) {
+
+        IndexDocument(String fileId, Document document) {
+            this(fileId, document, null, false);
+        }
+    }
 
     private final AtomicBoolean processingUnIndexedScheduled = new AtomicBoolean(false);
 
@@ -126,42 +180,46 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     public static final String FIELD_FILENAME_FUZZY = "filename";
     public static final String FIELD_TAG_NAME_FUZZY = "tagName";
     public static final String FIELD_TAG_ID = "tagId";
-
-    // 定义分段大小
-    private static final int CHUNK_SIZE_CHARS = 1024; // 例如，每 1KB 左右一个块，或者按行数
-    private static final int CHUNK_OVERLAP_CHARS = 7; // 段落间的重叠字符数，防止边界切割问题 (NGramTokenFilter本身可能处理部分边界，但显式重叠更保险)
+    /**
+     * path 的 DocValues, 可以原地更新
+     */
+    public static final String FIELD_PATH_DV = "path_dv";
+    /**
+     * id 的 DocValues, 用于读取id和分页排序的最后一个排序字段
+     * 旧索引中 id 是没有 DocValues 的 StringField, 同名字段不能再加 DocValues, 所以单独用一个字段
+     */
+    public static final String FIELD_ID_DV = "id_dv";
 
     public static final int BYTES_PER_MB = 1024 * 1024;
-    private static final int BIG_FILE_BYTES_MB = 10 * BYTES_PER_MB; // 10MB
-    private static final long MEMORY_PER_SMALL_THREAD_MB = 500;
-    private static final long MEMORY_PER_BIG_THREAD_MB = 4096;
 
     @PostConstruct
     public void init() {
+        int processors = Runtime.getRuntime().availableProcessors();
         if (executorCreateIndexService == null) {
-            int processors = Runtime.getRuntime().availableProcessors() / 2;
-            executorCreateIndexService = ThreadUtil.newFixedExecutor(Math.max(processors, 2), 100, "createIndexFileTask", true);
-        }
-        // 获取jvm可用内存
-        long maxMemory = Runtime.getRuntime().maxMemory();
-        if (executorUpdateContentIndexService == null) {
-            // 获取可用处理器数量
-            int smallProcessors = Runtime.getRuntime().availableProcessors() / 2;
-            // 设置线程数, 假设每个线程占用内存为500M
-            int maxSmallProcessors = Math.toIntExact((maxMemory / BYTES_PER_MB) / MEMORY_PER_SMALL_THREAD_MB);
-            if (smallProcessors > maxSmallProcessors) {
-                smallProcessors = maxSmallProcessors;
-            }
-            smallProcessors = Math.max(smallProcessors, 1);
-            executorUpdateContentIndexService = ThreadUtil.newFixedExecutor(smallProcessors, 20, "updateContentIndexTask", true);
-        }
-        if (executorUpdateBigContentIndexService == null) {
-            // 设置线程数, 假设每个线程占用内存为4G
-            int bigProcessors = Math.toIntExact((maxMemory / BYTES_PER_MB) / MEMORY_PER_BIG_THREAD_MB);
-            bigProcessors = Math.max(bigProcessors, 1);
-            executorUpdateBigContentIndexService = ThreadUtil.newFixedExecutor(bigProcessors, 100, "updateBigContentIndexTask", true);
+            executorCreateIndexService = ThreadUtil.newFixedExecutor(2, 100, "createIndexFileTask", true);
         }
-        log.debug("NGRAM_MAX_CONTENT_LENGTH_MB:{}, NGRAM_MIN_SIZE: {}, ngramMaxSize: {}", fileProperties.getNgramMaxContentLengthMB(), fileProperties.getNgramMinSize(), fileProperties.getNgramMaxSize());
+        // 内容阶段最多使用 jvm 可用内存的 1/4
+        long maxMemoryMB = Runtime.getRuntime().maxMemory() / BYTES_PER_MB;
+        contentMemoryBudgetMB = Math.clamp(maxMemoryMB / 4, 64, Integer.MAX_VALUE);
+        contentMemoryPermits = new Semaphore(contentMemoryBudgetMB);
+
+        writeStage = new IndexStage<>("luceneWrite", WRITE_QUEUE_SIZE, 1, WRITE_BATCH_SIZE, this::writeDocuments);
+        contentStage = new IndexStage<>("luceneContent", Math.max(processors, 8), Math.max(processors / 2, 1), 1,
+                batch -> batch.forEach(this::updateContentIndex));
+        metadataStage = new IndexStage<>("luceneMetadata", CREATE_INDEX_QUEUE_SIZE, Math.max(processors / 2, 2), METADATA_BATCH_SIZE, this::createIndexFiles);
+
+        scheduler = new ScheduledThreadPoolExecutor(1, ThreadUtil.createThreadFactory("luceneScheduler"));
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                flushOverflowFileIds();
+                // 更新任务进度
+                rebuildIndexTaskService.updateTaskProgress();
+                reportStageProgress();
+            } catch (Exception e) {
+                log.error("创建索引失败", e);
+            }
+        }, 1000, 1000, TimeUnit.MILLISECONDS);
+        log.debug("NGRAM_MAX_CONTENT_LENGTH_MB:{}, NGRAM_MIN_SIZE: {}, ngramMaxSize: {}, contentMemoryBudgetMB: {}", fileProperties.getNgramMaxContentLengthMB(), fileProperties.getNgramMinSize(), fileProperties.getNgramMaxSize(), contentMemoryBudgetMB);
     }
 
     @Override
@@ -176,6 +234,7 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
 
     /**
      * 推送至新建索引文件缓存队列
+     * 不会阻塞调用方, 队列中已有相同的文件id时直接忽略; 队列已满时转为待索引标记, 稍后由内容阶段处理
      *
      * @param fileId fileId
      */
@@ -183,143 +242,195 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
         if (CharSequenceUtil.isBlank(fileId)) {
             return;
         }
-        try {
-            getIndexFileQueue().put(fileId);
-        } catch (InterruptedException e) {
-            log.error("推送新建索引队列失败, fileId: {}, {}", fileId, e.getMessage(), e);
-            Thread.currentThread().interrupt();
+        if (!pendingFileIds.add(fileId)) {
+            return;
+        }
+        if (!metadataStage.offer(fileId)) {
+            pendingFileIds.remove(fileId);
+            overflowFileIds.add(fileId);
         }
     }
 
     /**
-     * 推送至新建索引文件缓存队列
-     *
-     * @param fileId fileId
+     * 将溢出的文件标记为待索引
      */
-    public void pushCreateIndexContentQueue(String fileId) {
-        if (CharSequenceUtil.isBlank(fileId)) {
+    private void flushOverflowFileIds() {
+        if (overflowFileIds.isEmpty()) {
             return;
         }
-        try {
-            getIndexFileContentQueue().put(fileId);
-        } catch (InterruptedException e) {
-            log.error("推送新建索引内容队列失败, fileId: {}, {}", fileId, e.getMessage(), e);
-            Thread.currentThread().interrupt();
+        List<String> fileIdList = new ArrayList<>();
+        String fileId;
+        while (fileIdList.size() < CREATE_INDEX_QUEUE_SIZE && (fileId = overflowFileIds.poll()) != null) {
+            fileIdList.add(fileId);
         }
-    }
-
-    private ArrayBlockingQueue<String> getIndexFileQueue() {
-        if (indexFileQueue == null) {
-            indexFileQueue = new ArrayBlockingQueue<>(CREATE_INDEX_QUEUE_SIZE);
-            if (scheduler == null) {
-                scheduler = new ScheduledThreadPoolExecutor(1, ThreadUtil.createThreadFactory("luceneScheduler"));
-            }
-            createIndexFileTask();
-        }
-        return indexFileQueue;
-    }
-
-    private ArrayBlockingQueue<String> getIndexFileContentQueue() {
-        if (indexFileContentQueue == null) {
-            indexFileContentQueue = new ArrayBlockingQueue<>(CREATE_INDEX_QUEUE_SIZE);
-        }
-        return indexFileContentQueue;
+        log.debug("索引队列已满, {} 个文件转为待索引", fileIdList.size());
+        rebuildIndexTaskService.removeDeletedFlag(fileIdList);
+        addToBeIndexedFlagOfDoc(fileIdList);
     }
 
     /**
-     * 新建索引文件任务
+     * 各阶段的队列深度和吞吐量, 通过任务进度推送
      */
-    private void createIndexFileTask() {
-        getIndexFileQueue();
-        getIndexFileContentQueue();
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                List<String> fileIdList = new ArrayList<>(indexFileQueue.size());
-                List<String> toBeIndexedFileIdList = new ArrayList<>(indexFileContentQueue.size());
-                executorCreateIndexService.execute(() -> {
-                    // 添加待索引标记
-                    indexFileContentQueue.drainTo(toBeIndexedFileIdList);
-                    addToBeIndexedFlagOfDoc(toBeIndexedFileIdList);
-
-                    // 添加不带文件内容的索引
-                    indexFileQueue.drainTo(fileIdList);
-                    if (!fileIdList.isEmpty()) {
-                        createIndexFiles(fileIdList);
-                    }
-                });
-                // 更新任务进度
-                rebuildIndexTaskService.updateTaskProgress();
-            } catch (Exception e) {
-                log.error("创建索引失败", e);
+    private void reportStageProgress() {
+        for (IndexStage<?> stage : List.of(metadataStage, contentStage, writeStage)) {
+            String taskId = "lucene-" + stage.getName();
+            if (stage.isIdle()) {
+                taskProgressService.removeTaskProgress(taskId);
+            } else {
+                taskProgressService.addTaskProgress(taskId, TaskType.INDEX, stage.getName(), stage.snapshot());
             }
-        }, 0, 1000, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * 创建索引
+     * 阶段一: 批量读取元数据并建立不带内容的索引, 需要读取内容的文件标记为待索引
      *
      * @param fileIdList fileIdList
      */
     private void createIndexFiles(List<String> fileIdList) {
-        // 提取出fileIdList
+        fileIdList.forEach(pendingFileIds::remove);
         List<FileBaseLuceneDTO> fileBaseLuceneDTOList = fileDAO.findFileBaseLuceneDTOByIdIn(fileIdList);
+        List<String> indexedFileIds = new ArrayList<>(fileBaseLuceneDTOList.size());
+        List<String> contentFileIds = new ArrayList<>();
         for (FileBaseLuceneDTO fileBaseLuceneDTO : fileBaseLuceneDTOList) {
             rebuildIndexTaskService.incrementNotIndexTaskSize();
-            updateIndex(false, fileBaseLuceneDTO);
+            try {
+                File file = getFileByFileBaseLuceneDTO(fileBaseLuceneDTO);
+                if (checkFileContent(file)) {
+                    contentFileIds.add(fileBaseLuceneDTO.getId());
+                } else {
+                    indexedFileIds.add(fileBaseLuceneDTO.getId());
+                    rebuildIndexTaskService.incrementIndexedTaskSize();
+                }
+                FileIndex fileIndex = new FileIndex(file, fileBaseLuceneDTO);
+                setFileIndex(fileIndex);
+                // 检查是否已存在相同的索引
+                String fileIndexHash = fileIndex.getFileIndexHash(null);
+                if (luceneQueryService.existsSha256(Constants.NO_CONTENT_ETAG, fileIndexHash)) {
+                    continue;
+                }
+                writeStage.put(new IndexDocument(fileIndex.getFileId(), buildDocument(fileIndex, null, fileIndexHash)));
+                // 更新文件etag
+                String username = userService.getUserNameById(fileBaseLuceneDTO.getUserId());
+                esTagService.updateFileEtagAsync(username, file);
+                log.debug("添加索引, filepath: {}", file.getAbsoluteFile());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("updateIndexError: {}", e.getMessage(), e);
+            }
+        }
+        if (!indexedFileIds.isEmpty()) {
+            fileDAO.updateLuceneIndexStatusByIdIn(indexedFileIds, IndexStatus.INDEXED.getStatus());
         }
         rebuildIndexTaskService.removeDeletedFlag(fileIdList);
+        addToBeIndexedFlagOfDoc(contentFileIds);
     }
 
-    private void updateIndex(boolean readContent, FileBaseLuceneDTO fileBaseLuceneDTO) {
+    /**
+     * 阶段二: 读取文件内容, 按文件大小申请内存预算
+     */
+    private void updateContentIndex(FileBaseLuceneDTO fileBaseLuceneDTO) {
+        int permits = getContentMemoryPermits(fileBaseLuceneDTO.getSize());
         try {
-            File file = getFileByFileBaseLuceneDTO(fileBaseLuceneDTO);
-            boolean isContent = checkFileContent(file);
-            if (!readContent && isContent) {
-                pushCreateIndexContentQueue(fileBaseLuceneDTO.getId());
-            }
-            if (!readContent && !isContent) {
-                rebuildIndexTaskService.incrementIndexedTaskSize();
+            contentMemoryPermits.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            updateIndex(fileBaseLuceneDTO);
+        } finally {
+            contentMemoryPermits.release(permits);
+        }
+    }
+
+    private int getContentMemoryPermits(Long size) {
+        long sizeMB = size == null ? 0 : size * CONTENT_MEMORY_FACTOR / BYTES_PER_MB;
+        return Math.clamp(sizeMB + 1, 1, contentMemoryBudgetMB);
+    }
+
+    /**
+     * 阶段三: 批量写入索引
+     */
+    private void writeDocuments(List<IndexDocument> documents) {
+        List<String> indexedFileIds = new ArrayList<>();
+        for (IndexDocument indexDocument : documents) {
+            try {
+                indexWriter.updateDocument(new Term("id", indexDocument.fileId()), indexDocument.document());
+                if (indexDocument.markIndexed()) {
+                    indexedFileIds.add(indexDocument.fileId());
+                }
+            } catch (IOException e) {
+                log.error("更新索引失败, fileId: {}, {}", indexDocument.fileId(), e.getMessage(), e);
+            } finally {
+                if (indexDocument.content() != null) {
+                    indexDocument.content().discard();
+                }
             }
+        }
+        if (!indexedFileIds.isEmpty()) {
+            fileDAO.updateLuceneIndexStatusByIdIn(indexedFileIds, IndexStatus.INDEXED.getStatus());
+        }
+    }
+
+    /**
+     * 读取文件内容并建立包含内容的索引
+     * 没有内容的文件(例如元数据队列溢出后转过来的文件)只建立基础索引
+     * 交给写入阶段的文档在写入索引后才标记为已索引, 其余情况(索引未变化、读取失败)在这里标记
+     */
+    private void updateIndex(FileBaseLuceneDTO fileBaseLuceneDTO) {
+        boolean queued = false;
+        try {
+            File file = getFileByFileBaseLuceneDTO(fileBaseLuceneDTO);
             FileIndex fileIndex = new FileIndex(file, fileBaseLuceneDTO);
             setFileIndex(fileIndex);
 
             // 检查是否已存在相同的索引
-            String hash = readContent ? "1" : null;
-            String fileIndexHash = fileIndex.getFileIndexHash(hash);
-            String etagType = (hash == null) ? Constants.NO_CONTENT_ETAG : Constants.ETAG;
-            if (luceneQueryService.existsSha256(etagType, fileIndexHash)) {
+            String fileIndexHash = fileIndex.getFileIndexHash("1");
+            if (luceneQueryService.existsSha256(Constants.ETAG, fileIndexHash)) {
                 return;
             }
 
-            if (readContent) {
-                try (StringWriter contentWriter = new StringWriter()) {
-                    readFileContent(file, fileBaseLuceneDTO.getId(), contentWriter);
-                    String fullContent = contentWriter.toString();
-
-                    if (CharSequenceUtil.isBlank(fullContent)) {
-                        return;
+            ContentSpool content = new ContentSpool(getContentSpoolDir(), CONTENT_SPOOL_MEMORY_CHARS);
+            try {
+                try (content) {
+                    readFileContent(file, fileBaseLuceneDTO.getId(), content);
+                }
+                if (!content.hasText()) {
+                    String noContentHash = fileIndex.getFileIndexHash(null);
+                    if (!luceneQueryService.existsSha256(Constants.NO_CONTENT_ETAG, noContentHash)) {
+                        writeStage.put(new IndexDocument(fileIndex.getFileId(), buildDocument(fileIndex, null, noContentHash), null, true));
+                        queued = true;
                     }
-                    // 建立包含内容的索引
-                    updateIndexDocument(indexWriter, fileIndex, fullContent, fileIndexHash);
+                } else {
+                    // 建立包含内容的索引, 内容在写入阶段从缓冲区流式读取
+                    writeStage.put(new IndexDocument(fileIndex.getFileId(), buildDocument(fileIndex, content, fileIndexHash), content, true));
+                    queued = true;
                     startProcessFilesToBeIndexed();
-                } catch (IOException e) {
-                    log.warn("读取文件内容失败: file={}, {}", file.getAbsolutePath(), e.getMessage(), e);
                 }
-            } else {
-                // 不读取内容只建立基础索引
-                updateIndexDocument(indexWriter, fileIndex, null, fileIndexHash);
-                // 更新文件etag
-                String username = userService.getUserNameById(fileBaseLuceneDTO.getUserId());
-                esTagService.updateFileEtagAsync(username, getFileByFileBaseLuceneDTO(fileBaseLuceneDTO));
+            } catch (IOException e) {
+                log.warn("读取文件内容失败: file={}, {}", file.getAbsolutePath(), e.getMessage(), e);
+            } finally {
+                if (!queued || !content.hasText()) {
+                    content.discard();
+                }
+            }
+            if (queued) {
+                // 元数据队列溢出的文件没有经过阶段一, 在这里更新文件etag
+                esTagService.updateFileEtagAsync(userService.getUserNameById(fileBaseLuceneDTO.getUserId()), file);
+                log.debug("添加索引, filepath: {}", file.getAbsoluteFile());
             }
-            log.debug("添加索引, filepath: {}", file.getAbsoluteFile());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.warn("updateIndexError: {}", e.getMessage(), e);
         } finally {
-            updateIndexStatus(fileBaseLuceneDTO, IndexStatus.INDEXED);
-            if (readContent) {
-                rebuildIndexTaskService.incrementIndexedTaskSize();
+            if (!queued) {
+                updateIndexStatus(fileBaseLuceneDTO, IndexStatus.INDEXED);
             }
+            rebuildIndexTaskService.incrementIndexedTaskSize();
         }
     }
 
@@ -333,6 +444,10 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
         fileDAO.updateLuceneIndexStatusByIdIn(Collections.singletonList(fileBaseLuceneDTO.getId()), indexStatus.getStatus());
     }
 
+    private Path getContentSpoolDir() {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), CONTENT_SPOOL_DIR);
+    }
+
     private File getFileByFileBaseLuceneDTO(FileBaseLuceneDTO fileBaseLuceneDTO) {
         String username = userService.getUserNameById(fileBaseLuceneDTO.getUserId());
         return Paths.get(fileProperties.getRootDir(), username, fileBaseLuceneDTO.getPath(), fileBaseLuceneDTO.getName()).toFile();
@@ -467,160 +582,116 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     }
 
     /**
-     * 添加/更新索引
+     * 文件夹重命名后更新其下所有文档的path
+     * 只原地更新 path 的 DocValues, 不重新读取文件内容; 旧索引中没有 path DocValues 的文档重新建立索引
      *
-     * @param indexWriter   indexWriter
-     * @param fileIndex     FileIndex
-     * @param fullContent   fullContent
-     * @param fileIndexHash 文件索引哈希值
+     * @param userId        userId
+     * @param oldPathPrefix 原路径前缀, 以"/"结尾
+     * @param newPathPrefix 新路径前缀, 以"/"结尾
      */
-    public void updateIndexDocument(IndexWriter indexWriter, FileIndex fileIndex, String fullContent, String fileIndexHash) {
-        String fileId = fileIndex.getFileId();
+    public void updateIndexPathPrefix(String userId, String oldPathPrefix, String newPathPrefix) {
         try {
-            String fileName = (fileIndex.getName() == null ? "" : fileIndex.getName()) + " " + fileIndex.getRemark();
-            String tagName = fileIndex.getTagName();
-            Boolean isFolder = fileIndex.getIsFolder();
-            Boolean isFavorite = fileIndex.getIsFavorite();
-            String path = fileIndex.getPath();
-            Document newDocument = new Document();
-            newDocument.add(new StringField("id", fileId, Field.Store.YES));
-            newDocument.add(new StringField(IUserService.USER_ID, fileIndex.getUserId(), Field.Store.NO));
-
-            newDocument.add(new StringField(Constants.NO_CONTENT_ETAG, fileIndex.getFileIndexHash(null), Field.Store.NO));
-            newDocument.add(new StringField(Constants.ETAG, fileIndexHash, Field.Store.NO));
-
-            if (fileIndex.getType() != null) {
-                newDocument.add(new StringField("type", fileIndex.getType(), Field.Store.NO));
-            }
-            if (CharSequenceUtil.isNotBlank(fileName)) {
-                newDocument.add(new Field(FIELD_FILENAME_NGRAM, fileName, TextField.TYPE_NOT_STORED));
-                newDocument.add(new TextField(FIELD_FILENAME_FUZZY, fileName, Field.Store.NO));
-                int extractIndex = Math.min(fileName.length() - 1, 2);
-                newDocument.add(new SortedDocValuesField("name_sort", new BytesRef(fileName.substring(0, extractIndex).toLowerCase().getBytes(StandardCharsets.UTF_8))));
-            }
-            if (isFolder != null) {
-                newDocument.add(new IntPoint(Constants.IS_FOLDER, isFolder ? 1 : 0));
-                newDocument.add(new NumericDocValuesField("is_folder_sort", isFolder ? 1 : 0));
-            }
-            if (isFavorite != null) {
-                newDocument.add(new IntPoint(Constants.IS_FAVORITE, isFavorite ? 1 : 0));
-            }
-            if (path != null) {
-                newDocument.add(new StringField(Constants.PATH_FIELD, path, Field.Store.NO));
-            }
-            if (CharSequenceUtil.isNotBlank(tagName)) {
-                newDocument.add(new Field(FIELD_TAG_NAME_NGRAM, tagName, TextField.TYPE_NOT_STORED));
-                newDocument.add(new TextField(FIELD_TAG_NAME_FUZZY, tagName, Field.Store.NO));
-            }
-            if (fileIndex.getTagIds() != null && !fileIndex.getTagIds().isEmpty()) {
-                for (String tagId : fileIndex.getTagIds()) {
-                    if (CharSequenceUtil.isNotBlank(tagId)) {
-                        newDocument.add(new StringField(FIELD_TAG_ID, tagId, Field.Store.NO));
-                    }
+            List<LuceneQueryService.IndexedPath> indexedPaths = luceneQueryService.findIndexedPathsByPathPrefix(userId, oldPathPrefix);
+            int updated = 0;
+            for (LuceneQueryService.IndexedPath indexedPath : indexedPaths) {
+                String path = indexedPath.path();
+                if (path == null || !path.startsWith(oldPathPrefix)) {
+                    pushCreateIndexQueue(indexedPath.fileId());
+                    continue;
                 }
+                String newPath = newPathPrefix + path.substring(oldPathPrefix.length());
+                indexWriter.updateBinaryDocValue(new Term("id", indexedPath.fileId()), FIELD_PATH_DV, new BytesRef(newPath));
+                updated++;
             }
-            if (CharSequenceUtil.isNotBlank(fullContent)) {
-                newDocument.add(new TextField(FIELD_CONTENT_FUZZY, fullContent, Field.Store.NO));
-            }
-            if (CharSequenceUtil.isNotBlank(fullContent) && fileProperties.getExactSearch()) {
-                String contentForNgram;
-                // 将完整内容字符串转换为内存中的输入流
-                try (InputStream contentStream = new ByteArrayInputStream(fullContent.getBytes(StandardCharsets.UTF_8))) {
-                    // 调用内存高效的流式截断方法
-                    contentForNgram = getContentForNgram(contentStream, fileIndex);
-                } catch (IOException e) {
-                    log.error("Error creating ByteArrayInputStream: {}", e.getMessage(), e);
-                    return;
-                }
-
-                if (CharSequenceUtil.isNotBlank(contentForNgram)) {
-                    List<String> chunks = segmentContent(contentForNgram);
-                    for (String chunk : chunks) {
-                        if (CharSequenceUtil.isNotBlank(chunk)) {
-                            newDocument.add(new Field(FIELD_CONTENT_NGRAM, chunk, TextField.TYPE_NOT_STORED));
-                        }
-                    }
+            if (updated > 0) {
+                synchronized (commitLock) {
+                    indexWriter.commit();
                 }
             }
-
-            if (fileIndex.getModified() != null) {
-                newDocument.add(new NumericDocValuesField("modified", fileIndex.getModified()));
-            }
-            if (fileIndex.getCreated() != null) {
-                newDocument.add(new NumericDocValuesField("created", fileIndex.getCreated()));
-            }
-            if (fileIndex.getSize() != null) {
-                newDocument.add(new NumericDocValuesField(Constants.SIZE, fileIndex.getSize()));
-            }
-            indexWriter.updateDocument(new Term("id", fileId), newDocument);
+            log.debug("更新索引路径, {} -> {}, 更新: {}, 重建: {}", oldPathPrefix, newPathPrefix, updated, indexedPaths.size() - updated);
         } catch (IOException e) {
-            log.error("更新索引失败, fileId: {}, {}", fileId, e.getMessage(), e);
+            log.error("更新索引路径失败, {} -> {}, {}", oldPathPrefix, newPathPrefix, e.getMessage(), e);
         }
     }
 
     /**
-     * 从输入流中高效地截取用于N-Gram的内容，避免OOM。
+     * 构建索引文档
      *
-     * @param contentStream 内容的输入流
-     * @param fileIndex     文件元数据，用于日志记录
-     * @return 截断后的UTF-8字符串
-     * @throws IOException 读取流异常
+     * @param fileIndex     FileIndex
+     * @param content       文件内容, 没有内容时为null
+     * @param fileIndexHash 文件索引哈希值
      */
-    private String getContentForNgram(InputStream contentStream, FileIndex fileIndex) throws IOException {
-        int maxContentLengthInBytes = fileProperties.getNgramMaxContentLength();
-        byte[] buffer = new byte[8192]; // 8KB的读取缓冲区
-        int bytesRead;
-
-        // 使用 ByteArrayOutputStream 来存储截取的结果
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(maxContentLengthInBytes)) {
-            while ((bytesRead = contentStream.read(buffer)) != -1) {
-                int remainingCapacity = maxContentLengthInBytes - baos.size();
-                if (bytesRead > remainingCapacity) {
-                    baos.write(buffer, 0, remainingCapacity);
-                    log.warn("内容已截断以进行N-Gram索引（截断至 {} 字节）, 文件大小: {}MB 文件: {}", maxContentLengthInBytes, fileIndex.getSize() / BYTES_PER_MB, Paths.get(fileIndex.getPath(), fileIndex.getName()));
-                    break; // 已达到上限
+    private Document buildDocument(FileIndex fileIndex, ContentSpool content, String fileIndexHash) {
+        String fileId = fileIndex.getFileId();
+        String fileName = (fileIndex.getName() == null ? "" : fileIndex.getName()) + " " + fileIndex.getRemark();
+        String tagName = fileIndex.getTagName();
+        Boolean isFolder = fileIndex.getIsFolder();
+        Boolean isFavorite = fileIndex.getIsFavorite();
+        String path = fileIndex.getPath();
+        Document newDocument = new Document();
+        newDocument.add(new StringField("id", fileId, Field.Store.YES));
+        // 分页查询时从 DocValues 读取id, 不必加载存储字段
+        newDocument.add(new SortedDocValuesField(FIELD_ID_DV, new BytesRef(fileId)));
+        newDocument.add(new StringField(IUserService.USER_ID, fileIndex.getUserId(), Field.Store.NO));
+
+        newDocument.add(new StringField(Constants.NO_CONTENT_ETAG, fileIndex.getFileIndexHash(null), Field.Store.NO));
+        newDocument.add(new StringField(Constants.ETAG, fileIndexHash, Field.Store.NO));
+
+        if (fileIndex.getType() != null) {
+            newDocument.add(new StringField("type", fileIndex.getType(), Field.Store.NO));
+        }
+        if (CharSequenceUtil.isNotBlank(fileName)) {
+            newDocument.add(new Field(FIELD_FILENAME_NGRAM, fileName, TextField.TYPE_NOT_STORED));
+            newDocument.add(new TextField(FIELD_FILENAME_FUZZY, fileName, Field.Store.NO));
+            int extractIndex = Math.min(fileName.length() - 1, 2);
+            newDocument.add(new SortedDocValuesField("name_sort", new BytesRef(fileName.substring(0, extractIndex).toLowerCase().getBytes(StandardCharsets.UTF_8))));
+        }
+        if (isFolder != null) {
+            newDocument.add(new IntPoint(Constants.IS_FOLDER, isFolder ? 1 : 0));
+            newDocument.add(new NumericDocValuesField("is_folder_sort", isFolder ? 1 : 0));
+        }
+        if (isFavorite != null) {
+            newDocument.add(new IntPoint(Constants.IS_FAVORITE, isFavorite ? 1 : 0));
+        }
+        if (path != null) {
+            newDocument.add(new StringField(Constants.PATH_FIELD, path, Field.Store.NO));
+            newDocument.add(new BinaryDocValuesField(FIELD_PATH_DV, new BytesRef(path)));
+        }
+        if (CharSequenceUtil.isNotBlank(tagName)) {
+            newDocument.add(new Field(FIELD_TAG_NAME_NGRAM, tagName, TextField.TYPE_NOT_STORED));
+            newDocument.add(new TextField(FIELD_TAG_NAME_FUZZY, tagName, Field.Store.NO));
+        }
+        if (fileIndex.getTagIds() != null && !fileIndex.getTagIds().isEmpty()) {
+            for (String tagId : fileIndex.getTagIds()) {
+                if (CharSequenceUtil.isNotBlank(tagId)) {
+                    newDocument.add(new StringField(FIELD_TAG_ID, tagId, Field.Store.NO));
                 }
-                baos.write(buffer, 0, bytesRead);
-            }
-
-            byte[] contentBytes = baos.toByteArray();
-
-            // 进行UTF-8字符边界检查，防止乱码
-            int effectiveLength = contentBytes.length;
-            while (effectiveLength > 0 && (contentBytes[effectiveLength - 1] & 0xC0) == 0x80) {
-                effectiveLength--;
             }
-
-            if (effectiveLength == 0) {
-                return "";
+        }
+        if (content != null && content.hasText()) {
+            newDocument.add(new TextField(FIELD_CONTENT_FUZZY, content.openReader()));
+        }
+        if (content != null && content.hasText() && fileProperties.getExactSearch()) {
+            int maxContentLengthInBytes = fileProperties.getNgramMaxContentLength();
+            if (content.length() > maxContentLengthInBytes) {
+                log.warn("内容已截断以进行N-Gram索引（截断至 {} 字节）, 文件大小: {}MB 文件: {}", maxContentLengthInBytes, fileIndex.getSize() / BYTES_PER_MB, Paths.get(fileIndex.getPath(), fileIndex.getName()));
             }
-
-            return new String(contentBytes, 0, effectiveLength, StandardCharsets.UTF_8);
+            // 直接从内容流生成 N-Gram, 不复制内容也不切分成字符串
+            ContentNGramTokenizer ngramTokenizer = new ContentNGramTokenizer(fileProperties.getNgramMinSize(), fileProperties.getNgramMaxSize(), maxContentLengthInBytes, LuceneConfig.IGNORE_CASE_FOR_NGRAM);
+            ngramTokenizer.setReader(content.openReader());
+            newDocument.add(new TextField(FIELD_CONTENT_NGRAM, ngramTokenizer));
         }
-    }
 
-    private List<String> segmentContent(String content) {
-        List<String> chunks = new ArrayList<>();
-        if (content == null || content.isEmpty()) {
-            return chunks;
+        if (fileIndex.getModified() != null) {
+            newDocument.add(new NumericDocValuesField("modified", fileIndex.getModified()));
         }
-        int length = content.length();
-        if (length <= CHUNK_SIZE_CHARS) { // 如果内容本身小于或等于块大小，则作为一个块
-            chunks.add(content);
-            return chunks;
+        if (fileIndex.getCreated() != null) {
+            newDocument.add(new NumericDocValuesField("created", fileIndex.getCreated()));
         }
-
-        // 确保步进大于0
-        int step = CHUNK_SIZE_CHARS - CHUNK_OVERLAP_CHARS;
-
-        for (int i = 0; i < length; i += step) {
-            int end = Math.min(i + CHUNK_SIZE_CHARS, length);
-            chunks.add(content.substring(i, end));
-            if (end == length) {
-                break; // 已到达内容末尾
-            }
+        if (fileIndex.getSize() != null) {
+            newDocument.add(new NumericDocValuesField(Constants.SIZE, fileIndex.getSize()));
         }
-        return chunks;
+        return newDocument;
     }
 
     /**
@@ -666,20 +737,16 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     }
 
     private void processFileThreaded(FileBaseLuceneDTO fileBaseLuceneDTO) {
-        long size = fileBaseLuceneDTO.getSize();
-
         if (RebuildIndexTaskService.isSyncFile()) {
             // 单线程处理
-            updateIndex(true, fileBaseLuceneDTO);
-        } else {
-            // 根据文件大小选择多线程处理
-            if (size > BIG_FILE_BYTES_MB) {
-                // 大文件，使用特定线程池处理
-                executorUpdateBigContentIndexService.execute(() -> updateIndex(true, fileBaseLuceneDTO));
-            } else {
-                // 小文件，使用普通线程池处理
-                executorUpdateContentIndexService.execute(() -> updateIndex(true, fileBaseLuceneDTO));
-            }
+            updateIndex(fileBaseLuceneDTO);
+            return;
+        }
+        try {
+            // 内容阶段队列已满时在这里等待
+            contentStage.put(fileBaseLuceneDTO);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -700,10 +767,14 @@ public class LuceneService implements ApplicationListener<LuceneIndexQueueEvent>
     @PreDestroy
     public void destroy() {
         log.debug("开始关闭 LuceneService 线程池...");
-        shutdownExecutor(executorCreateIndexService, "createIndexFileTask");
-        shutdownExecutor(executorUpdateContentIndexService, "updateContentIndexTask");
-        shutdownExecutor(executorUpdateBigContentIndexService, "updateBigContentIndexTask");
         shutdownExecutor(scheduler, "luceneScheduler");
+        shutdownExecutor(executorCreateIndexService, "createIndexFileTask");
+        // 按流水线顺序关闭, 上游处理完的文档仍能写入
+        for (IndexStage<?> stage : List.of(metadataStage, contentStage, writeStage)) {
+            if (stage != null) {
+                stage.shutdown(60);
+            }
+        }
 
         // 最后提交所有待处理的索引
         try {
@@ -0,0 +1,94 @@
+package com.jmal.clouddisk.lucene;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * 按 BinaryDocValues 前缀匹配的查询
+ * <p>
+ * path 的 BinaryDocValues 可以通过 {@link org.apache.lucene.index.IndexWriter#updateBinaryDocValue} 原地更新,
+ * 重命名文件夹时不需要重建文档, 查询时逐个比较前缀, 适合和 userId 等选择性较高的条件组合使用
+ */
+public final class PathPrefixDocValuesQuery extends Query {
+
+    private final String field;
+
+    private final BytesRef prefix;
+
+    public PathPrefixDocValuesQuery(String field, String prefix) {
+        this.field = Objects.requireNonNull(field);
+        this.prefix = new BytesRef(prefix);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+        return new ConstantScoreWeight(this, boost) {
+
+            @Override
+            public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
+                FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+                if (fieldInfo == null) {
+                    return null;
+                }
+                BinaryDocValues values = DocValues.getBinary(context.reader(), field);
+                TwoPhaseIterator iterator = new TwoPhaseIterator(values) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        return StringHelper.startsWith(values.binaryValue(), prefix);
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        return prefix.length;
+                    }
+                };
+                return new DefaultScorerSupplier(new ConstantScoreScorer(score(), scoreMode, iterator));
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext ctx) {
+                return DocValues.isCacheable(ctx, field);
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        if (visitor.acceptField(field)) {
+            visitor.visitLeaf(this);
+        }
+    }
+
+    @Override
+    public String toString(String defaultField) {
+        return field + ":" + prefix.utf8ToString() + "*";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other)
+                && field.equals(((PathPrefixDocValuesQuery) other).field)
+                && prefix.equals(((PathPrefixDocValuesQuery) other).prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(classHash(), field, prefix);
+    }
+}
@@ -1,13 +1,17 @@
 package com.jmal.clouddisk.lucene;
 
 import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.date.TimeInterval;
 import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.StrUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.model.file.dto.FileBaseAllDTO;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import com.jmal.clouddisk.ocr.OcrService;
 import com.jmal.clouddisk.service.Constants;
 import com.jmal.clouddisk.service.impl.CommonFileService;
@@ -23,12 +27,9 @@ import com.jmal.clouddisk.util.ThrottleExecutor;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import jakarta.annotation.PreDestroy;
-import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.index.IndexWriter;
-import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
@@ -36,22 +37,27 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.math.RoundingMode;
-import java.nio.file.FileVisitOption;
-import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -90,7 +96,7 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
 
     private final ThrottledTaskExecutor syncFileVisitorService = new ThrottledTaskExecutor(Constants.MAX_CONCURRENT_PROCESSING_NUMBER);
 
-    private SyncFileVisitor syncFileVisitor;
+    private volatile SyncProgress syncProgress;
 
     private double totalCount;
 
@@ -116,6 +122,11 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
 
     private static final long SCAN_TERMINATION_TIMEOUT_MINUTES = 60;
 
+    /**
+     * 并行扫描目录的线程数
+     */
+    private static final int SCAN_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
     /**
      * 同步文件操作锁, 防止重复操作
      */
@@ -222,36 +233,46 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
             if (DELAY_DELETE_TAG_TIMER != null) {
                 DELAY_DELETE_TAG_TIMER.cancel();
             }
-            Set<FileVisitOption> fileVisitOptions = EnumSet.noneOf(FileVisitOption.class);
-            fileVisitOptions.add(FileVisitOption.FOLLOW_LINKS);
             // 先移除删除标记, 以免因为扫描路径的不同导致删除标记未移除
             removeDeletedFlag(null);
             // 添加删除标记, 扫描完后如果标记还在则删除
             addDeleteFlagOfDoc(path, isDelIndex);
             // 重置索引状态
             resetIndexStatus();
-            FileCountVisitor fileCountVisitor = new FileCountVisitor();
-            Files.walkFileTree(path, fileVisitOptions, Integer.MAX_VALUE, fileCountVisitor);
-            totalCount = fileCountVisitor.getCount();
-            log.info("path: {}, 开始扫描, 文件数: {}", path, totalCount);
+            // 以数据库中待扫描的文件数作为总数的估计值, 不再单独遍历一次文件树计数
+            totalCount = fileDAO.countByDelTag(1);
+            log.info("path: {}, 开始扫描, 预计文件数: {}", path, totalCount);
             timeInterval.start();
-            if (syncFileVisitor == null) {
-                syncFileVisitor = new SyncFileVisitor(totalCount);
+            syncProgress = new SyncProgress(totalCount);
+            Queue<FolderState> folderStates = new ConcurrentLinkedQueue<>();
+            String username = pathService.getUsernameByAbsolutePath(path);
+            if (StrUtil.isNotBlank(username)) {
+                syncFile(username, path);
             }
-            Files.walkFileTree(path, fileVisitOptions, Integer.MAX_VALUE, syncFileVisitor);
+            if (Files.isDirectory(path)) {
+                try (ForkJoinPool pool = new ForkJoinPool(SCAN_PARALLELISM)) {
+                    pool.invoke(new SyncDirectoryTask(path, null, isDelIndex, folderStates));
+                }
+            }
+            totalCount = Math.max(totalCount, syncProgress.processCount.get());
             // 等待线程池里所有任务完成
-            waitTaskCompleted();
+            if (waitTaskCompleted()) {
+                saveFolderStates(folderStates);
+            }
             deleteDocWithDeleteFlag();
-        } catch (IOException e) {
+        } catch (Exception e) {
             log.error("{}{}", e.getMessage(), path, e);
         } finally {
             setPercentMap(100d, getIndexedPercentValue());
-            syncFileVisitor = null;
+            syncProgress = null;
             log.info("扫描完成, 耗时: {}s", Convert.toDouble(timeInterval.intervalMs() / 1000));
         }
     }
 
-    private void waitTaskCompleted() {
+    /**
+     * @return 是否所有任务都已完成
+     */
+    private boolean waitTaskCompleted() {
         try {
             log.info("等待扫描文件完成");
             // 等待线程池里所有任务完成
@@ -259,10 +280,28 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
                 log.warn("扫描文件超时, 尝试强制停止所有任务");
                 // 移除删除标记, 以免误删索引
                 removeDeletedFlag(null);
+                return false;
             }
+            return true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 扫描完成后记录目录的修改时间, 下次增量扫描时修改时间未变的目录不再列出目录项
+     */
+    private void saveFolderStates(Queue<FolderState> folderStates) {
+        for (FolderState folderState : folderStates) {
+            try {
+                UpdateFile updateFile = new UpdateFile();
+                updateFile.setScannedMtime(folderState.scannedMtime());
+                fileDAO.updateFileByUserIdAndPathAndName(folderState.userId(), folderState.path(), folderState.name(), updateFile);
+            } catch (Exception e) {
+                log.warn("更新目录修改时间失败: {}{}, {}", folderState.path(), folderState.name(), e.getMessage());
+            }
         }
     }
 
@@ -399,10 +438,11 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
      * 获取同步进度
      */
     private double getSyncPercent() {
-        if (syncFileVisitor == null) {
+        SyncProgress progress = syncProgress;
+        if (progress == null) {
             return PERCENT_MAP.getOrDefault(SYNC_PERCENT, 100d);
         }
-        double percent = syncFileVisitor.getPercent();
+        double percent = progress.getPercent();
         if (percent > 100) {
             return 100;
         }
@@ -430,81 +470,254 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         return NumberUtil.round((double) INDEXED_TASK_SIZE.get() / totalCount * 100, 2, RoundingMode.DOWN).doubleValue();
     }
 
-    private class SyncFileVisitor extends SimpleFileVisitor<Path> {
+    /**
+     * 扫描进度
+     * <p>
+     * 总数以数据库中的文件数为初始估计, 扫描到的文件超过估计值后按已扫描目录的平均子项数和剩余目录数推算。
+     */
+    private static class SyncProgress {
+
+        private final double estimatedCount;
 
-        @Getter
-        public final double totalCount;
+        private final AtomicLong processCount = new AtomicLong();
 
-        private final AtomicInteger processCount;
+        private final AtomicLong visitedDirCount = new AtomicLong();
 
-        public SyncFileVisitor(double totalCount) {
-            this.totalCount = totalCount;
-            this.processCount = new AtomicInteger(0);
+        private final AtomicLong pendingDirCount = new AtomicLong();
+
+        SyncProgress(double estimatedCount) {
+            this.estimatedCount = estimatedCount;
         }
 
-        public double getPercent() {
-            return NumberUtil.round(processCount.get() / totalCount * 100, 2).doubleValue();
+        double getPercent() {
+            long processed = processCount.get();
+            long visited = Math.max(1, visitedDirCount.get());
+            double total = Math.max(estimatedCount, processed + (double) pendingDirCount.get() * processed / visited);
+            if (total <= 0) {
+                return 0;
+            }
+            return NumberUtil.round(processed / total * 100, 2).doubleValue();
         }
+    }
 
-        @NotNull
-        @Override
-        public FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) throws IOException {
-            log.error(exc.getMessage(), exc);
-            return super.visitFileFailed(file, exc);
+    /**
+     * 需要在扫描完成后记录的目录修改时间
+     */
+    private record FolderState(String userId, String path, String name, LocalDateTime scannedMtime) {
+    }
+
+    /**
+     * 扫描一个目录, 子目录拆分为新的任务由 ForkJoinPool 窃取执行
+     * <p>
+     * 每个目录只查询一次数据库中的子项, 与磁盘上的目录项比较后只同步新增或变化(大小、修改时间)的文件。
+     * 增量扫描时, 如果目录的修改时间与数据库中记录的一致, 说明目录项没有增减, 直接按数据库中的子目录继续扫描, 不再列出该目录。
+     */
+    private class SyncDirectoryTask extends RecursiveAction {
+
+        private final Path dir;
+
+        /**
+         * 该目录在数据库中的记录, 扫描根目录和用户目录为 null
+         */
+        private final FileBaseAllDTO record;
+
+        /**
+         * 是否同步所有文件, 不跳过未变化的文件
+         */
+        private final boolean force;
+
+        private final Queue<FolderState> folderStates;
+
+        SyncDirectoryTask(Path dir, FileBaseAllDTO record, boolean force, Queue<FolderState> folderStates) {
+            this.dir = dir;
+            this.record = record;
+            this.force = force;
+            this.folderStates = folderStates;
+            progress().pendingDirCount.incrementAndGet();
         }
 
-        @NotNull
-        @Override
-        public FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) throws IOException {
-            // 跳过临时文件目录
-            FileVisitResult skipTempDirectory = skipTempDirectory(dir);
-            if (skipTempDirectory != null) return skipTempDirectory;
-            String username = pathService.getUsernameByAbsolutePath(dir);
-            processCount.incrementAndGet();
-            if (StrUtil.isBlank(username)) {
-                return super.visitFile(dir, attrs);
-            }
-            processFile(dir, username);
-            return super.preVisitDirectory(dir, attrs);
+        private SyncProgress progress() {
+            SyncProgress progress = syncProgress;
+            return progress != null ? progress : new SyncProgress(0);
         }
 
-        @NotNull
         @Override
-        public FileVisitResult visitFile(Path file, @NotNull BasicFileAttributes attrs) throws IOException {
-            // 判断文件名是否在monitorIgnoreFilePrefix中
-            String filename = file.getFileName().toString();
-            if (fileProperties.getMonitorIgnoreFilePrefix().stream().anyMatch(filename::startsWith)) {
-                log.debug("忽略文件:{}", file.getFileName());
-                return super.visitFile(file, attrs);
-            }
-            processCount.incrementAndGet();
-            String username = pathService.getUsernameByAbsolutePath(file);
-            if (StrUtil.isBlank(username)) {
-                return super.visitFile(file, attrs);
+        protected void compute() {
+            SyncProgress progress = progress();
+            try {
+                if (isSkipDirectory(dir)) {
+                    return;
+                }
+                List<SyncDirectoryTask> subTasks = new ArrayList<>();
+                String username = ownerOfDir(dir);
+                if (StrUtil.isBlank(username)) {
+                    // 根目录, 只扫描子目录
+                    listSubDirs(subTasks);
+                } else {
+                    syncDir(username, progress, subTasks);
+                }
+                invokeAll(subTasks);
+            } finally {
+                progress.pendingDirCount.decrementAndGet();
+                progress.visitedDirCount.incrementAndGet();
             }
-            processFile(file, username);
-            return super.visitFile(file, attrs);
         }
 
-        private void processFile(Path file, String username) {
-            syncFileVisitorService.execute(() -> createFile(username, file));
+        private void listSubDirs(List<SyncDirectoryTask> subTasks) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isDirectory)) {
+                for (Path child : stream) {
+                    subTasks.add(new SyncDirectoryTask(child, null, force, folderStates));
+                }
+            } catch (IOException e) {
+                log.error("{}{}", e.getMessage(), dir, e);
+            }
         }
 
-        private void createFile(String username, Path file) {
-            try {
-                commonUserFileService.createFile(username, file.toFile(), null, null);
-            } catch (Exception e) {
-                log.error("createFile error {}{}", e.getMessage(), file, e);
-                FileBaseDTO fileBaseDTO = commonFileService.getFileBaseDTO(username, file.toFile().getAbsolutePath());
-                String fileId = fileDAO.findIdByUserIdAndPathAndName(fileBaseDTO.getUserId(), fileBaseDTO.getName(), fileBaseDTO.getPath());
-                if (fileId != null) {
-                    // 需要移除删除标记
-                    removeDeletedFlag(Collections.singletonList(fileId));
+        private void syncDir(String username, SyncProgress progress, List<SyncDirectoryTask> subTasks) {
+            String userId = commonUserService.getUserIdByUserName(username);
+            if (StrUtil.isBlank(userId)) {
+                return;
+            }
+            String relativePath = getDbPath(username, dir);
+            List<FileBaseAllDTO> children = fileDAO.findAllFileBaseAllDTOByUserIdAndPath(userId, relativePath);
+            LocalDateTime lastModifiedTime = CommonUserFileService.getFileLastModifiedTime(dir.toFile());
+            if (!force && record != null && isSameTime(record.getScannedMtime(), lastModifiedTime)) {
+                // 目录项没有变化, 按数据库中的子目录继续扫描
+                List<String> fileIds = new ArrayList<>(children.size());
+                for (FileBaseAllDTO child : children) {
+                    fileIds.add(child.getId());
+                    if (BooleanUtil.isTrue(child.getIsFolder())) {
+                        subTasks.add(new SyncDirectoryTask(dir.resolve(child.getName()), child, false, folderStates));
+                    }
+                }
+                unsetDeletedFlag(fileIds);
+                progress.processCount.addAndGet(children.size());
+                return;
+            }
+            Map<String, FileBaseAllDTO> childMap = HashMap.newHashMap(children.size());
+            for (FileBaseAllDTO child : children) {
+                childMap.put(child.getName(), child);
+            }
+            List<String> existingIds = new ArrayList<>(children.size());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    BasicFileAttributes attrs = readAttributes(file);
+                    if (attrs == null) {
+                        continue;
+                    }
+                    FileBaseAllDTO child = childMap.get(file.getFileName().toString());
+                    if (attrs.isDirectory()) {
+                        if (isSkipDirectory(file) || isLinkLoop(file)) {
+                            continue;
+                        }
+                        subTasks.add(new SyncDirectoryTask(file, child, force, folderStates));
+                    } else {
+                        // 判断文件名是否在monitorIgnoreFilePrefix中
+                        String filename = file.getFileName().toString();
+                        if (fileProperties.getMonitorIgnoreFilePrefix().stream().anyMatch(filename::startsWith)) {
+                            log.debug("忽略文件:{}", file.getFileName());
+                            continue;
+                        }
+                    }
+                    progress.processCount.incrementAndGet();
+                    if (child != null) {
+                        existingIds.add(child.getId());
+                    }
+                    if (force || child == null || (!attrs.isDirectory() && isModified(child, attrs))) {
+                        syncFile(username, file);
+                    }
                 }
+            } catch (IOException e) {
+                log.error("{}{}", e.getMessage(), dir, e);
+                // 目录没有完整扫描, 不记录修改时间
+                unsetDeletedFlag(existingIds);
+                return;
+            }
+            unsetDeletedFlag(existingIds);
+            if (record != null) {
+                folderStates.add(new FolderState(userId, record.getPath(), record.getName(), lastModifiedTime));
             }
         }
     }
 
+    private void syncFile(String username, Path file) {
+        syncFileVisitorService.execute(() -> createFile(username, file));
+    }
+
+    private void createFile(String username, Path file) {
+        try {
+            commonUserFileService.createFile(username, file.toFile(), null, null);
+        } catch (Exception e) {
+            log.error("createFile error {}{}", e.getMessage(), file, e);
+            FileBaseDTO fileBaseDTO = commonFileService.getFileBaseDTO(username, file.toFile().getAbsolutePath());
+            String fileId = fileDAO.findIdByUserIdAndPathAndName(fileBaseDTO.getUserId(), fileBaseDTO.getName(), fileBaseDTO.getPath());
+            if (fileId != null) {
+                // 需要移除删除标记
+                removeDeletedFlag(Collections.singletonList(fileId));
+            }
+        }
+    }
+
+    private void unsetDeletedFlag(List<String> fileIds) {
+        if (!fileIds.isEmpty()) {
+            removeDeletedFlag(fileIds);
+        }
+    }
+
+    private static boolean isModified(FileBaseAllDTO fileBaseAllDTO, BasicFileAttributes attrs) {
+        if (fileBaseAllDTO.getSize() == null || fileBaseAllDTO.getSize() != attrs.size()) {
+            return true;
+        }
+        return !isSameTime(fileBaseAllDTO.getUpdateDate(), LocalDateTimeUtil.of(attrs.lastModifiedTime().toInstant()));
+    }
+
+    /**
+     * 数据库中的时间精度可能只到秒
+     */
+    private static boolean isSameTime(LocalDateTime stored, LocalDateTime actual) {
+        return stored != null && Math.abs(Duration.between(stored, actual).toMillis()) < 1000;
+    }
+
+    private static BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.error("{}{}", e.getMessage(), file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 指向上级目录的符号链接, 跟随会造成死循环
+     */
+    private static boolean isLinkLoop(Path dir) {
+        if (!Files.isSymbolicLink(dir)) {
+            return false;
+        }
+        try {
+            Path target = dir.toRealPath();
+            return dir.getParent().toRealPath().startsWith(target);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private String ownerOfDir(Path dir) {
+        Path root = Paths.get(fileProperties.getRootDir());
+        if (!dir.startsWith(root) || dir.getNameCount() <= root.getNameCount()) {
+            return null;
+        }
+        return dir.getName(root.getNameCount()).toString();
+    }
+
+    private String getDbPath(String username, Path dir) {
+        Path relativePath = Paths.get(fileProperties.getRootDir(), username).relativize(dir);
+        if (relativePath.toString().isEmpty()) {
+            return "/";
+        }
+        return "/" + relativePath + "/";
+    }
+
     private void setPercentMap(Double syncPercent, Double indexingPercent) {
         if (syncPercent == null) {
             syncPercent = getSyncPercent();
@@ -524,49 +737,17 @@ public class RebuildIndexTaskService implements ApplicationListener<RebuildIndex
         log.debug("索引进度: {}, isSyncFile: {}, INDEXED_TASK_SIZE, {}, NOT_INDEX_TASK_SIZE: {}", PERCENT_MAP, isSyncFile(), INDEXED_TASK_SIZE.get(), NOT_INDEX_TASK_SIZE.get());
     }
 
-    private class FileCountVisitor extends SimpleFileVisitor<Path> {
-        private final AtomicLong count = new AtomicLong(0);
-
-        public long getCount() {
-            return count.get();
-        }
-
-        @NotNull
-        @Override
-        public FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) throws IOException {
-            // 跳过临时文件目录
-            FileVisitResult skipTempDirectory = skipTempDirectory(dir);
-            if (skipTempDirectory != null) return skipTempDirectory;
-            String username = pathService.getUsernameByAbsolutePath(dir);
-            count.addAndGet(1);
-            if (StrUtil.isBlank(username)) {
-                return super.visitFile(dir, attrs);
-            }
-            return super.preVisitDirectory(dir, attrs);
-        }
-
-        @NotNull
-        @Override
-        public FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) throws IOException {
-            count.addAndGet(1);
-            return super.visitFile(file, attrs);
-        }
-    }
-
-    private @Nullable FileVisitResult skipTempDirectory(Path dir) {
+    private boolean isSkipDirectory(Path dir) {
         // 跳过临时文件目录
         if (dir.startsWith(Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir()))) {
-            return FileVisitResult.SKIP_SUBTREE;
+            return true;
         }
         // 跳过lucene索引目录
         if (dir.startsWith(Paths.get(fileProperties.getRootDir(), fileProperties.getLuceneIndexDir()))) {
-            return FileVisitResult.SKIP_SUBTREE;
+            return true;
         }
         // 跳过 jmalcloud 目录
-        if (dir.startsWith(Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir()))) {
-            return FileVisitResult.SKIP_SUBTREE;
-        }
-        return null;
+        return dir.startsWith(Paths.get(fileProperties.getRootDir(), fileProperties.getJmalcloudDBDir()));
     }
 
     public boolean checkIndexExists() {
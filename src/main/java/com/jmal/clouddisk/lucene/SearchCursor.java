@@ -0,0 +1,137 @@
+package com.jmal.clouddisk.lucene;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Lucene 分页游标
+ * <p>
+ * 将上一页最后一条结果的排序值(FieldDoc)编码为不透明的字符串, 下一页通过 searchAfter 从该位置继续查询。
+ * 游标中带有排序规则的摘要, 排序规则变化后旧游标失效。
+ * 排序的最后一个字段是 id, 排序值已经能唯一确定位置, 游标中不记录 docId(索引刷新后 docId 会变化)。
+ */
+@Slf4j
+final class SearchCursor {
+
+    private static final byte VERSION = 2;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_BYTES = 5;
+
+    private static final int MAX_BYTES_LENGTH = 32 * 1024;
+
+    private SearchCursor() {
+    }
+
+    /**
+     * 编码游标
+     *
+     * @return 游标, 最后一条结果没有 id 排序值(升级前建立的索引)时无法唯一定位, 返回 null
+     */
+    static String encode(FieldDoc fieldDoc, Sort sort) {
+        if (fieldDoc.fields.length == 0 || fieldDoc.fields[fieldDoc.fields.length - 1] == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeInt(sort.toString().hashCode());
+            out.writeFloat(fieldDoc.score);
+            out.writeInt(fieldDoc.fields.length);
+            for (Object field : fieldDoc.fields) {
+                switch (field) {
+                    case null -> out.writeByte(TYPE_NULL);
+                    case Long value -> {
+                        out.writeByte(TYPE_LONG);
+                        out.writeLong(value);
+                    }
+                    case Integer value -> {
+                        out.writeByte(TYPE_INT);
+                        out.writeInt(value);
+                    }
+                    case Float value -> {
+                        out.writeByte(TYPE_FLOAT);
+                        out.writeFloat(value);
+                    }
+                    case Double value -> {
+                        out.writeByte(TYPE_DOUBLE);
+                        out.writeDouble(value);
+                    }
+                    case BytesRef value -> {
+                        out.writeByte(TYPE_BYTES);
+                        out.writeInt(value.length);
+                        out.write(value.bytes, value.offset, value.length);
+                    }
+                    default -> {
+                        return null;
+                    }
+                }
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析游标
+     *
+     * @return FieldDoc, 游标为空、格式错误或与排序规则不匹配时返回 null
+     */
+    static FieldDoc decode(String cursor, Sort sort) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (in.readByte() != VERSION || in.readInt() != sort.toString().hashCode()) {
+                return null;
+            }
+            float score = in.readFloat();
+            int length = in.readInt();
+            if (length != sort.getSort().length) {
+                return null;
+            }
+            Object[] fields = new Object[length];
+            for (int i = 0; i < length; i++) {
+                byte type = in.readByte();
+                fields[i] = switch (type) {
+                    case TYPE_NULL -> null;
+                    case TYPE_LONG -> in.readLong();
+                    case TYPE_INT -> in.readInt();
+                    case TYPE_FLOAT -> in.readFloat();
+                    case TYPE_DOUBLE -> in.readDouble();
+                    case TYPE_BYTES -> {
+                        int size = in.readInt();
+                        if (size < 0 || size > MAX_BYTES_LENGTH) {
+                            throw new IOException("invalid field length: " + size);
+                        }
+                        byte[] value = new byte[size];
+                        in.readFully(value);
+                        yield new BytesRef(value);
+                    }
+                    default -> throw new IOException("unknown field type: " + type);
+                };
+            }
+            // 排序值唯一, docId 不参与比较
+            return new FieldDoc(Integer.MAX_VALUE, score, fields);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("无效的分页游标: {}", cursor);
+            return null;
+        }
+    }
+}
@@ -31,7 +31,6 @@ import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -67,19 +66,24 @@ public class SearchFileService {
         ResponseResult<List<FileIntroVO>> result = ResultUtil.genResult();
         try {
             beforeQuery(searchDTO);
+            Map<String, Object> props = new HashMap<>();
             if (!searchDTO.getUserId().equals(userLoginHolder.getUserId())) {
-                Map<String, Object> props = new HashMap<>();
                 props.put("fileUsername", userService.getUserNameById(searchDTO.getUserId()));
-                result.setProps(props);
             }
 
             Query query = getQuery(searchDTO);
 
-            Page<String> page = luceneQueryService.find(query, searchDTO);
+            LuceneQueryService.CursorPage page = luceneQueryService.findPage(query, searchDTO);
 
-            List<FileIntroVO> fileIntroVOList = fileQueryDAO.findAllFileIntroVOByIdIn(page.getContent());
+            List<FileIntroVO> fileIntroVOList = fileQueryDAO.findAllFileIntroVOByIdIn(page.fileIds());
             result.setData(fileIntroVOList);
-            result.setCount(page.getTotalElements());
+            result.setCount(page.total());
+            if (page.nextCursor() != null) {
+                props.put("nextCursor", page.nextCursor());
+            }
+            if (!props.isEmpty()) {
+                result.setProps(props);
+            }
 
             String userId = userLoginHolder.getUserId();
             // 添加搜索历史
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Service;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 @Service
@@ -66,6 +67,29 @@ public class TaskProgressService {
         addTaskProgress(taskProgress);
     }
 
+    /**
+     * 添加不关联文件的任务进度, 推送给管理员
+     * @param taskId 任务id
+     * @param taskType 任务类型
+     * @param name 任务名称
+     * @param progress 进度
+     */
+    public void addTaskProgress(String taskId, TaskType taskType, String name, String progress) {
+        String username = getDefaultUsername();
+        if (username == null) {
+            return;
+        }
+        TaskProgress taskProgress = getTaskProgress(taskId);
+        if (taskProgress == null) {
+            taskProgress = new TaskProgress(taskId, username, taskType, name, progress);
+        } else if (Objects.equals(taskProgress.getProgress(), progress)) {
+            return;
+        } else {
+            taskProgress.setProgress(progress);
+        }
+        addTaskProgress(taskProgress);
+    }
+
     /**
      * 移除任务进度
      * @param file 文件
@@ -86,7 +110,11 @@ public class TaskProgressService {
         return SecureUtil.md5(file.getAbsoluteFile().toString());
     }
 
-    private void removeTaskProgress(String taskId) {
+    /**
+     * 移除任务进度
+     * @param taskId 任务id
+     */
+    public void removeTaskProgress(String taskId) {
         if (checkTaskProgress(taskId)) {
             TaskProgress taskProgress = getTaskProgress(taskId);
             taskProgress.setProgress(null);
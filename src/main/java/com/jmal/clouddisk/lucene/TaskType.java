@@ -14,7 +14,15 @@ public enum TaskType {
     /**
      * 视频转码
      */
-    TRANSCODE_VIDEO("视频转码");
+    TRANSCODE_VIDEO("视频转码"),
+    /**
+     * 建立索引
+     */
+    INDEX("建立索引"),
+    /**
+     * 对象存储复制
+     */
+    OSS_COPY("对象存储复制");
 
     private final String type;
 
@@ -0,0 +1,32 @@
+package com.jmal.clouddisk.media;
+
+import com.jmal.clouddisk.config.Reflective;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ABR 码率阶梯中的一档
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema
+public class AbrRendition implements Reflective {
+
+    @NotNull(message = "高度不能为空")
+    @Max(value = 10000, message = "高度不能超过 10000")
+    @Min(value = 100, message = "高度不能低于 100")
+    @Schema(description = "视频高度(视频宽度随高度等比例缩放)")
+    private Integer height;
+
+    @NotNull(message = "码率不能为空")
+    @Max(value = 1000000, message = "码率不能超过 1000000 kbps")
+    @Min(value = 100, message = "码率不能低于 100 kbps")
+    @Schema(description = "视频码率(kbps)")
+    private Integer bitrate;
+}
@@ -13,6 +13,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static com.jmal.clouddisk.util.FFMPEGUtils.printErrorInfo;
@@ -202,6 +205,166 @@ public class FFMPEGCommand {
         );
     }
 
+    /**
+     * 多码率转码, 只解码一次, 解码后的画面分别缩放编码为码率阶梯中的每一档, 同时输出vtt缩略图
+     * <p>
+     * 每一档输出 {@code <name>.m3u8} 和 {@code <name>-%03d.ts}, 主播放列表由调用方生成
+     * @param fileAbsolutePath 视频文件
+     * @param renditions 码率阶梯, 每一档对应一个输出
+     * @param names 每一档的名称
+     * @param hasAudio 原始视频是否有音频
+     * @param videoCacheDir 输出目录
+     * @param vttInterval 缩略图间隔
+     * @param thumbnailPattern 缩略图文件名格式
+     * @return ProcessBuilder
+     */
+    static ProcessBuilder ladderTranscoding(Path fileAbsolutePath, List<Rendition> renditions, List<String> names, boolean hasAudio, String videoCacheDir, int vttInterval, String thumbnailPattern) {
+        int size = renditions.size();
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(size + 1);
+        for (int i = 0; i < size; i++) {
+            filter.append("[s").append(i).append(']');
+        }
+        filter.append("[st];");
+        for (int i = 0; i < size; i++) {
+            Rendition rendition = renditions.get(i);
+            filter.append("[s").append(i).append(']')
+                    .append(String.format("fps=%.2f,scale=-2:%d", rendition.frameRate(), rendition.height()))
+                    .append("[v").append(i).append("];");
+        }
+        filter.append(String.format("[st]scale=%s:-2,fps=1/%d[thumb]", thumbnailWidth, vttInterval));
+
+        List<String> command = new ArrayList<>();
+        command.add(Constants.FFMPEG);
+        command.add("-i");
+        command.add(fileAbsolutePath.toString());
+        command.add("-filter_complex");
+        command.add(filter.toString());
+        StringBuilder varStreamMap = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            Rendition rendition = renditions.get(i);
+            command.add("-map");
+            command.add("[v" + i + "]");
+            command.add("-b:v:" + i);
+            command.add(Convert.toStr(rendition.bitrate()));
+            command.add("-maxrate:v:" + i);
+            command.add(Convert.toStr(rendition.bitrate() * 3 / 2));
+            command.add("-bufsize:v:" + i);
+            command.add(Convert.toStr(rendition.bitrate() * 2));
+            if (hasAudio) {
+                command.add("-map");
+                command.add("0:a:0");
+            }
+            if (!varStreamMap.isEmpty()) {
+                varStreamMap.append(' ');
+            }
+            varStreamMap.append("v:").append(i);
+            if (hasAudio) {
+                varStreamMap.append(",a:").append(i);
+            }
+            varStreamMap.append(",name:").append(names.get(i));
+        }
+        Collections.addAll(command,
+                "-c:v", "libx264",
+                "-profile:v", "main",
+                "-pix_fmt", "yuv420p",
+                "-level", "4.0",
+                "-preset", "medium",
+                "-g", "48",
+                "-sc_threshold", "0");
+        if (hasAudio) {
+            Collections.addAll(command,
+                    "-c:a", "aac",
+                    "-ac", "2",
+                    "-b:a", "128k");
+        }
+        Collections.addAll(command,
+                "-start_number", "0",
+                "-hls_time", "10",
+                "-hls_list_size", "0",
+                "-f", "hls",
+                "-var_stream_map", varStreamMap.toString(),
+                "-hls_segment_filename", Paths.get(videoCacheDir, "%v-%03d.ts").toString(),
+                Paths.get(videoCacheDir, "%v.m3u8").toString(),
+                "-map", "[thumb]",
+                thumbnailPattern);
+        return new ProcessBuilder(command);
+    }
+
+    /**
+     * 判断视频是否包含音频流
+     *
+     * @param videoPath 视频路径
+     */
+    static boolean hasAudioStream(String videoPath) {
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(
+                    "ffprobe", "-v", "error", "-select_streams", "a:0", "-show_entries", "stream=index", "-of", "csv=p=0", videoPath);
+            Process process = processBuilder.start();
+            String output;
+            try (InputStream inputStream = process.getInputStream();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+                output = reader.lines().collect(Collectors.joining()).trim();
+            }
+            if (process.waitFor() != 0) {
+                printErrorInfo(processBuilder, process);
+                return false;
+            }
+            return !output.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * 转码视频的一段, 输出为连续编号的ts分片, 用于按需转码
+     * @param fileAbsolutePath 视频文件
+     * @param startSeconds 开始时间(秒)
+     * @param durationSeconds 转码时长(秒)
+     * @param startNumber 第一个分片的编号
+     * @param segmentSeconds 分片时长(秒)
+     * @param rendition 输出参数
+     * @param segmentPattern 分片文件名格式
+     * @return ProcessBuilder
+     */
+    static ProcessBuilder segmentTranscoding(Path fileAbsolutePath, int startSeconds, int durationSeconds, int startNumber, int segmentSeconds, Rendition rendition, String segmentPattern) {
+        return new ProcessBuilder(
+                Constants.FFMPEG,
+                "-y",
+                "-ss", Convert.toStr(startSeconds),
+                "-i", fileAbsolutePath.toString(),
+                "-t", Convert.toStr(durationSeconds),
+                "-map", "0:v:0",
+                "-map", "0:a:0?",
+                "-c:v", "libx264",
+                "-profile:v", "main",
+                "-pix_fmt", "yuv420p",
+                "-level", "4.0",
+                "-vf", "scale=-2:" + rendition.height(),
+                "-b:v", Convert.toStr(rendition.bitrate()),
+                "-preset", "veryfast",
+                "-r", String.format("%.2f", rendition.frameRate()),
+                // 每个分片从关键帧开始, 保证分片边界与播放列表一致
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-sc_threshold", "0",
+                "-c:a", "aac",
+                "-ac", "2",
+                "-b:a", "128k",
+                // 保持时间戳与整个视频一致, 分片之间可以无缝衔接
+                "-output_ts_offset", Convert.toStr(startSeconds),
+                "-f", "segment",
+                "-segment_format", "mpegts",
+                "-segment_time", Convert.toStr(segmentSeconds),
+                "-segment_start_number", Convert.toStr(startNumber),
+                // 每完成一个分片向标准输出写一行分片文件名
+                "-segment_list", "pipe:1",
+                "-segment_list_type", "flat",
+                segmentPattern
+        );
+    }
+
     static ProcessBuilder useNvencCuda(String fileId, Path fileAbsolutePath, int bitrate, int height, String videoCacheDir, String outputPath, double frameRate) {
         // 使用CUDA硬件加速和NVENC编码器
         return new ProcessBuilder(
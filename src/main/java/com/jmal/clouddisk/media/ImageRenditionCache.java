@@ -0,0 +1,273 @@
+package com.jmal.clouddisk.media;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jmal.clouddisk.config.FileProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 图片衍生文件(剪裁、webp、HEIC/DNG/TIFF预览)的磁盘缓存
+ * <p>
+ * 缓存文件位于 ${rootDir}/${chunkFileDir}/${imageCacheDir}, 以 源文件etag + 操作参数 的摘要作为文件名,
+ * 源文件变化后 key 随之变化, 旧的缓存文件会在空间超限时按最近访问时间淘汰。
+ * 相同 key 的并发请求只会执行一次 ImageMagick 处理, 其余请求等待同一个结果;
+ * 处理失败的 key 在 {@link #FAILURE_TTL_MINUTES} 分钟内不再重复处理。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImageRenditionCache {
+
+    private static final long BYTES_PER_MB = 1024L * 1024;
+
+    /**
+     * 淘汰后保留的空间比例
+     */
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    /**
+     * 访问时间的刷新间隔, 避免每次命中都写一次文件元数据
+     */
+    private static final long TOUCH_INTERVAL_MILLIS = 60_000L;
+
+    /**
+     * ImageMagick 处理失败的记录保留时间
+     */
+    private static final long FAILURE_TTL_MINUTES = 5;
+
+    private final FileProperties fileProperties;
+
+    /**
+     * 正在生成中的衍生文件
+     * key: 缓存key
+     */
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * ImageMagick 处理失败(没有输出内容)的缓存key, 过期前的请求直接返回失败
+     */
+    private final Cache<String, Boolean> failedKeys = Caffeine.newBuilder()
+            .expireAfterWrite(FAILURE_TTL_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 缓存目录当前占用的大小, -1 表示尚未统计
+     */
+    private final AtomicLong cacheSize = new AtomicLong(-1);
+
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    /**
+     * 生成衍生文件
+     */
+    @FunctionalInterface
+    public interface RenditionWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param sourceEtag 源文件etag, 可以为空
+     * @param source     源文件
+     * @param operation  操作类型
+     * @param params     操作参数(q/w/h/format等)
+     * @return 缓存key, 同时也作为衍生文件的ETag
+     */
+    public static String renditionKey(String sourceEtag, File source, String operation, String... params) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(CharSequenceUtil.nullToEmpty(sourceEtag)).append('|')
+                .append(source.lastModified()).append('|')
+                .append(source.length()).append('|')
+                .append(operation);
+        for (String param : params) {
+            sb.append('|').append(CharSequenceUtil.nullToEmpty(param));
+        }
+        return SecureUtil.sha256(sb.toString());
+    }
+
+    /**
+     * 获取缓存的衍生文件, 不存在则生成
+     *
+     * @param key    缓存key {@link #renditionKey(String, File, String, String...)}
+     * @param writer 生成衍生文件
+     * @return 衍生文件, 生成失败时返回 null
+     */
+    public Path getOrCreate(String key, RenditionWriter writer) {
+        Path target = getRenditionPath(key);
+        if (Files.isRegularFile(target)) {
+            touch(target);
+            return target;
+        }
+        if (isFailed(key)) {
+            return null;
+        }
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                return null;
+            }
+        }
+        try {
+            Path result = create(target, writer);
+            if (result == null) {
+                failedKeys.put(key, Boolean.TRUE);
+            }
+            future.complete(result);
+            return result;
+        } catch (Exception e) {
+            log.warn("生成图片缓存失败, key: {}, {}", key, e.getMessage());
+            future.completeExceptionally(e);
+            return null;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * ImageMagick 最近是否处理失败
+     *
+     * @param key 缓存key
+     */
+    public boolean isFailed(String key) {
+        return failedKeys.getIfPresent(key) != null;
+    }
+
+    private Path create(Path target, RenditionWriter writer) throws IOException {
+        // 可能在等待期间已经被其他请求生成
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp" + Thread.currentThread().threadId());
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temp)) {
+                writer.write(outputStream);
+            }
+            long size = Files.size(temp);
+            if (size == 0) {
+                // ImageMagick 执行失败时不会抛出异常, 只会输出空内容
+                return null;
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            addSize(size);
+            return target;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getRenditionPath(String key) {
+        return getCacheDir().resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private Path getCacheDir() {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), fileProperties.getImageCacheDir());
+    }
+
+    private static void touch(Path path) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(path).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            log.debug("更新图片缓存访问时间失败: {}", path);
+        }
+    }
+
+    private void addSize(long size) {
+        if (cacheSize.get() < 0) {
+            cacheSize.compareAndSet(-1, calculateCacheSize());
+        } else {
+            cacheSize.addAndGet(size);
+        }
+        if (cacheSize.get() > getMaxSize()) {
+            Thread.ofVirtual().name("imageCacheEvict").start(this::evict);
+        }
+    }
+
+    private long getMaxSize() {
+        return fileProperties.getImageCacheMaxSizeMB() * BYTES_PER_MB;
+    }
+
+    private long calculateCacheSize() {
+        Path cacheDir = getCacheDir();
+        if (!Files.isDirectory(cacheDir)) {
+            return 0;
+        }
+        return FileUtil.size(cacheDir.toFile());
+    }
+
+    /**
+     * 按最近访问时间淘汰缓存文件, 直到占用空间低于上限的 {@link #EVICT_TARGET_RATIO}
+     */
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> stream = Files.walk(getCacheDir())) {
+                stream.filter(Files::isRegularFile)
+                        .filter(path -> !path.getFileName().toString().contains(".tmp"))
+                        .forEach(files::add);
+            }
+            files.sort(Comparator.comparingLong(ImageRenditionCache::lastModified));
+            long total = 0;
+            for (Path file : files) {
+                total += FileUtil.size(file.toFile());
+            }
+            long target = (long) (getMaxSize() * EVICT_TARGET_RATIO);
+            for (Path file : files) {
+                if (total <= target) {
+                    break;
+                }
+                long size = FileUtil.size(file.toFile());
+                if (Files.deleteIfExists(file)) {
+                    total -= size;
+                }
+            }
+            cacheSize.set(total);
+            log.debug("图片缓存淘汰完成, 当前占用: {}MB", total / BYTES_PER_MB);
+        } catch (IOException e) {
+            log.warn("图片缓存淘汰失败: {}", e.getMessage());
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+}
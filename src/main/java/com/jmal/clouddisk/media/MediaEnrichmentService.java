@@ -0,0 +1,487 @@
+package com.jmal.clouddisk.media;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.config.jpa.DataSourceProperties;
+import com.jmal.clouddisk.dao.DataSourceType;
+import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.dao.impl.jpa.FilePersistenceService;
+import com.jmal.clouddisk.lucene.LuceneIndexQueueEvent;
+import com.jmal.clouddisk.lucene.RebuildIndexTaskService;
+import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import com.jmal.clouddisk.model.file.dto.UpdateFile;
+import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.service.impl.CommonUserService;
+import com.jmal.clouddisk.service.impl.MessageService;
+import com.jmal.clouddisk.util.AudioFileUtils;
+import com.jmal.clouddisk.util.CaffeineUtil;
+import com.jmal.clouddisk.util.FileContentTypeUtils;
+import com.jmal.clouddisk.util.ImageExifUtil;
+import com.jmal.clouddisk.util.MyFileUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 媒体处理流水线
+ * <p>
+ * 文件登记时只写入基本属性, 缩略图、Exif、尺寸、视频封面、音频信息和 WebP 转换由本服务异步处理。
+ * 图片/视频/音频各有独立的通道和并发数; 用户操作产生的任务优先于同步任务处理;
+ * 同一个文件在排队或处理中时重复的事件会被合并; 处理失败时延迟重试, 多次失败后标记为 {@link MediaStatus#FAILED}。
+ * 通道已满的文件保持 {@link MediaStatus#PENDING}, 由定时任务从数据库中重新提交, 重启后未完成的文件也会重新提交
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MediaEnrichmentService {
+
+    /**
+     * 每个通道最多排队的任务数
+     */
+    private static final int LANE_CAPACITY = 10_000;
+
+    /**
+     * 最多尝试次数
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * 重试的基础延迟, 每次重试翻倍
+     */
+    private static final long RETRY_DELAY_SECONDS = 10;
+
+    /**
+     * 每次从数据库中重新提交的待处理文件数
+     */
+    private static final int RESUBMIT_BATCH_SIZE = 1000;
+
+    private final FileProperties fileProperties;
+
+    private final IFileDAO fileDAO;
+
+    private final CommonUserService commonUserService;
+
+    private final MessageService messageService;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ImageMagickProcessor imageMagickProcessor;
+
+    private final VideoProcessService videoProcessService;
+
+    private final AudioFileUtils audioFileUtils;
+
+    private final DataSourceProperties dataSourceProperties;
+
+    private final FilePersistenceService filePersistenceService;
+
+    private final Map<MediaType, MediaLane<MediaTask>> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * 排队中或处理中的任务
+     * key: fileId
+     */
+    private final Map<String, MediaTask> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 数据库中可能有未提交的待处理文件, 启动时为 true
+     */
+    private final AtomicBoolean hasPendingInDb = new AtomicBoolean(true);
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    enum MediaType {
+        IMAGE, VIDEO, AUDIO
+    }
+
+    /**
+     * 处理任务
+     *
+     * @param refresh     已登记过的文件, 只刷新Exif/视频信息
+     * @param convertWebp 是否先转换为WebP
+     * @param priority    优先级, 越小越先处理
+     * @param attempt     已尝试次数
+     */
+    private record MediaTask(String fileId, String username, String userId, String path, String name,
+                             String contentType, String suffix, MediaType mediaType, boolean refresh,
+                             boolean convertWebp, int priority, long seq, int attempt) implements Comparable<MediaTask> {
+
+        MediaTask nextAttempt() {
+            return new MediaTask(fileId, username, userId, path, name, contentType, suffix, mediaType, refresh,
+                    convertWebp, priority, seq, attempt + 1);
+        }
+
+        @Override
+        public int compareTo(MediaTask other) {
+            int compare = Integer.compare(priority, other.priority);
+            return compare != 0 ? compare : Long.compare(seq, other.seq);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        lanes.put(MediaType.IMAGE, new MediaLane<>("mediaImage", LANE_CAPACITY, Math.max(processors / 2, 2), this::process));
+        lanes.put(MediaType.VIDEO, new MediaLane<>("mediaVideo", LANE_CAPACITY, 2, this::process));
+        lanes.put(MediaType.AUDIO, new MediaLane<>("mediaAudio", LANE_CAPACITY, 2, this::process));
+        scheduler = new ScheduledThreadPoolExecutor(1, ThreadUtil.createThreadFactory("mediaScheduler"));
+        scheduler.scheduleWithFixedDelay(this::resubmitPending, 30, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 是否需要媒体处理
+     *
+     * @param contentType contentType
+     * @param suffix      suffix
+     * @param convertWebp 是否需要转换为WebP
+     */
+    public static boolean needsProcessing(String contentType, String suffix, boolean convertWebp) {
+        return getMediaType(contentType, suffix, convertWebp) != null;
+    }
+
+    private static MediaType getMediaType(String contentType, String suffix, boolean convertWebp) {
+        if (contentType == null) {
+            return null;
+        }
+        if (convertWebp || ImageExifUtil.isImageType(contentType, suffix)) {
+            return MediaType.IMAGE;
+        }
+        if (contentType.contains(Constants.VIDEO)) {
+            return MediaType.VIDEO;
+        }
+        if (contentType.contains(Constants.AUDIO)) {
+            return MediaType.AUDIO;
+        }
+        return null;
+    }
+
+    /**
+     * 提交新登记文件的媒体处理
+     *
+     * @param fileDocument 已登记的文件, mediaStatus 为 {@link MediaStatus#PENDING}
+     * @param username     username
+     * @param convertWebp  是否先转换为WebP
+     */
+    public void submit(FileDocument fileDocument, String username, boolean convertWebp) {
+        MediaType mediaType = getMediaType(fileDocument.getContentType(), fileDocument.getSuffix(), convertWebp);
+        if (mediaType == null) {
+            return;
+        }
+        submit(new MediaTask(fileDocument.getId(), username, fileDocument.getUserId(), fileDocument.getPath(),
+                fileDocument.getName(), fileDocument.getContentType(), fileDocument.getSuffix(), mediaType, false,
+                convertWebp, getPriority(), sequence.incrementAndGet(), 0));
+    }
+
+    /**
+     * 已登记的文件发生变化, 刷新图片的Exif信息和视频信息
+     *
+     * @param fileExists  已登记的文件
+     * @param username    username
+     * @param contentType 当前的contentType
+     * @param suffix      当前的suffix
+     */
+    public void submitRefresh(FileDocument fileExists, String username, String contentType, String suffix) {
+        if (Objects.equals(fileExists.getMediaStatus(), MediaStatus.PENDING.getStatus())) {
+            // 尚未完成首次处理, 由首次处理或定时任务负责
+            return;
+        }
+        boolean syncFile = RebuildIndexTaskService.isSyncFile();
+        boolean image = ImageExifUtil.isImageType(contentType, suffix) && (fileExists.getExif() == null || syncFile);
+        boolean video = contentType.contains(Constants.VIDEO) && (fileExists.getVideo() == null || syncFile);
+        if (!image && !video) {
+            return;
+        }
+        submit(new MediaTask(fileExists.getId(), username, fileExists.getUserId(), fileExists.getPath(),
+                fileExists.getName(), contentType, suffix, image ? MediaType.IMAGE : MediaType.VIDEO, true,
+                false, getPriority(), sequence.incrementAndGet(), 0));
+    }
+
+    /**
+     * 同步文件产生的任务优先级低于用户操作
+     */
+    private static int getPriority() {
+        return RebuildIndexTaskService.isSyncFile() ? 1 : 0;
+    }
+
+    private void submit(MediaTask task) {
+        if (inFlight.putIfAbsent(task.fileId(), task) != null) {
+            // 同一个文件正在排队或处理中
+            return;
+        }
+        if (!lanes.get(task.mediaType()).offer(task)) {
+            inFlight.remove(task.fileId());
+            markPending(task);
+        }
+    }
+
+    /**
+     * 通道已满, 转为待处理状态, 稍后由定时任务重新提交
+     */
+    private void markPending(MediaTask task) {
+        FileDocument mediaInfo = new FileDocument();
+        mediaInfo.setMediaStatus(MediaStatus.PENDING.getStatus());
+        fileDAO.setMediaInfoById(task.fileId(), mediaInfo);
+        hasPendingInDb.set(true);
+    }
+
+    private void process(MediaTask task) {
+        try {
+            File file = Paths.get(fileProperties.getRootDir(), task.username(), task.path(), task.name()).toFile();
+            if (!file.isFile()) {
+                // 处理前文件已被删除或移动
+                log.debug("媒体处理跳过, 文件不存在: {}", file.getAbsolutePath());
+                inFlight.remove(task.fileId());
+                requeueIfMoved(task);
+                return;
+            }
+            if (task.refresh()) {
+                refresh(task, file);
+            } else {
+                enrich(task, file);
+            }
+            inFlight.remove(task.fileId());
+        } catch (Exception e) {
+            retryOrFail(task, e);
+        }
+    }
+
+    /**
+     * 文件已移动到其他位置时重新标记为待处理, 由定时任务按新路径重新提交
+     */
+    private void requeueIfMoved(MediaTask task) {
+        FileBaseDTO fileBaseDTO = fileDAO.findFileBaseDTOById(task.fileId());
+        if (fileBaseDTO == null) {
+            // 文件已删除
+            return;
+        }
+        if (Objects.equals(fileBaseDTO.getPath(), task.path()) && Objects.equals(fileBaseDTO.getName(), task.name())) {
+            return;
+        }
+        markPending(task);
+    }
+
+    private void retryOrFail(MediaTask task, Exception e) {
+        MediaTask next = task.nextAttempt();
+        if (next.attempt() >= MAX_ATTEMPTS) {
+            inFlight.remove(task.fileId());
+            log.error("媒体处理失败, fileId: {}, file: {}, {}", task.fileId(), Paths.get(task.path(), task.name()), e.getMessage(), e);
+            if (!task.refresh()) {
+                FileDocument mediaInfo = new FileDocument();
+                mediaInfo.setMediaStatus(MediaStatus.FAILED.getStatus());
+                fileDAO.setMediaInfoById(task.fileId(), mediaInfo);
+            }
+            return;
+        }
+        long delay = RETRY_DELAY_SECONDS << task.attempt();
+        log.warn("媒体处理失败, {}秒后第{}次重试, file: {}, {}", delay, next.attempt(), Paths.get(task.path(), task.name()), e.getMessage());
+        scheduler.schedule(() -> {
+            inFlight.put(next.fileId(), next);
+            if (!lanes.get(next.mediaType()).offer(next)) {
+                inFlight.remove(next.fileId());
+                if (!next.refresh()) {
+                    markPending(next);
+                }
+            }
+        }, delay, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 已登记的文件只刷新Exif/视频信息
+     */
+    private void refresh(MediaTask task, File file) {
+        UpdateFile updateFile = new UpdateFile();
+        if (task.mediaType() == MediaType.IMAGE) {
+            updateFile.setExif(ImageExifUtil.getExif(file));
+        } else {
+            updateFile.setVideo(videoProcessService.getVideoInfo(file).toVideoInfoDO());
+        }
+        fileDAO.updateFileByUserIdAndPathAndName(task.userId(), task.path(), task.name(), updateFile);
+    }
+
+    /**
+     * 新登记文件的完整处理
+     */
+    private void enrich(MediaTask task, File file) {
+        FileDocument mediaInfo = new FileDocument();
+        mediaInfo.setId(task.fileId());
+        String name = task.name();
+        switch (task.mediaType()) {
+            case IMAGE -> {
+                if (task.convertWebp()) {
+                    file = convertWebp(task, file, mediaInfo);
+                    name = file.getName();
+                }
+                String suffix = MyFileUtils.extName(name);
+                String contentType = CharSequenceUtil.blankToDefault(mediaInfo.getContentType(), task.contentType());
+                if (ImageExifUtil.isImageType(contentType, suffix)) {
+                    processImage(file, mediaInfo);
+                }
+            }
+            case VIDEO -> setMediaCover(task, mediaInfo);
+            case AUDIO -> mediaInfo.setMusic(audioFileUtils.readAudio(mediaInfo, file));
+        }
+        mediaInfo.setMediaStatus(MediaStatus.PROCESSED.getStatus());
+        fileDAO.setMediaInfoById(task.fileId(), mediaInfo);
+        if (!name.equals(task.name())) {
+            // 文件名已变化, 重建索引
+            eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, task.fileId()));
+        }
+        FileDocument fileDocument = fileDAO.findByUserIdAndPathAndName(task.userId(), task.path(), name);
+        if (fileDocument != null) {
+            fileDocument.setContent(null);
+            messageService.pushMessage(task.username(), fileDocument, Constants.UPDATE_FILE);
+        }
+    }
+
+    /**
+     * 转换为WebP
+     * 先修改数据库中的文件名再删除原图, 原图的删除事件不会再找到该文件; 目标文件已存在或转换失败时保留原图
+     *
+     * @return 处理后的文件
+     */
+    private File convertWebp(MediaTask task, File file, FileDocument mediaInfo) {
+        String fileNameWithoutSuffix = StrUtil.removeSuffix(file.getName(), "." + FileUtil.getSuffix(file.getName()));
+        File outputFile = new File(file.getParentFile().getAbsoluteFile(), fileNameWithoutSuffix + Constants.POINT_SUFFIX_WEBP);
+        if (outputFile.exists()) {
+            log.debug("WebP文件已存在, 保留原图: {}", file.getAbsolutePath());
+            return file;
+        }
+        // 生成的WebP文件不由文件监听登记, 由下面修改原记录的文件名
+        CaffeineUtil.setUploadFileCache(outputFile.getAbsolutePath());
+        ImageMagickProcessor.replaceWebp(file, outputFile, false);
+        if (!outputFile.isFile() || outputFile.length() == 0) {
+            FileUtil.del(outputFile);
+            log.warn("转换WebP失败, 保留原图: {}", file.getAbsolutePath());
+            return file;
+        }
+        String webpName = outputFile.getName();
+        long size = outputFile.length();
+        fileDAO.setNameAndSuffixById(webpName, Constants.SUFFIX_WEBP, task.fileId());
+        // 内容已变化
+        fileDAO.setContentHashById(task.fileId(), null);
+        mediaInfo.setContentType(FileContentTypeUtils.getContentType(outputFile, Constants.SUFFIX_WEBP));
+        mediaInfo.setSize(size);
+        mediaInfo.setMd5(size + task.path() + webpName);
+        FileUtil.del(file);
+        return outputFile;
+    }
+
+    private void processImage(File file, FileDocument mediaInfo) {
+        // 获取图片尺寸
+        ImageMagickProcessor.ImageFormat imageFormat = ImageMagickProcessor.identifyFormat(file);
+        if (imageFormat != null) {
+            int srcWidth = imageFormat.getWidth();
+            int srcHeight = imageFormat.getHeight();
+            if (srcWidth > 0 && srcHeight > 0) {
+                mediaInfo.setW(Convert.toStr(srcWidth));
+                mediaInfo.setH(Convert.toStr(srcHeight));
+            }
+        }
+        // 获取图片Exif信息
+        mediaInfo.setExif(ImageExifUtil.getExif(file));
+        // 生成缩略图
+        imageMagickProcessor.generateThumbnail(file, mediaInfo);
+    }
+
+    private void setMediaCover(MediaTask task, FileDocument mediaInfo) {
+        VideoInfo videoInfo = videoProcessService.getVideoCover(task.fileId(), task.username(), task.path(), task.name());
+        String coverPath = videoInfo.getCovertPath();
+        log.debug("\r\ncoverPath:{}", coverPath);
+        if (CharSequenceUtil.isBlank(coverPath) || !FileUtil.exist(coverPath)) {
+            mediaInfo.setMediaCover(false);
+            return;
+        }
+        Path contentPath = Paths.get(coverPath);
+        if (dataSourceProperties.getType() == DataSourceType.mongodb) {
+            mediaInfo.setContent(PathUtil.readBytes(contentPath));
+        } else {
+            mediaInfo.setContent(new byte[0]);
+            filePersistenceService.persistContent(task.fileId(), contentPath);
+        }
+        mediaInfo.setVideo(videoInfo.toVideoInfoDO());
+        mediaInfo.setMediaCover(true);
+        FileUtil.del(coverPath);
+        videoProcessService.convertToM3U8(task.fileId());
+    }
+
+    /**
+     * 从数据库中重新提交待处理的文件
+     */
+    private void resubmitPending() {
+        try {
+            if (!hasPendingInDb.get()) {
+                return;
+            }
+            for (MediaLane<MediaTask> lane : lanes.values()) {
+                if (lane.size() > LANE_CAPACITY / 2) {
+                    return;
+                }
+            }
+            List<String> fileIds = fileDAO.findIdsByMediaStatus(MediaStatus.PENDING.getStatus(), RESUBMIT_BATCH_SIZE);
+            if (fileIds.size() < RESUBMIT_BATCH_SIZE) {
+                hasPendingInDb.set(false);
+            }
+            fileIds = fileIds.stream().filter(fileId -> !inFlight.containsKey(fileId)).toList();
+            if (fileIds.isEmpty()) {
+                return;
+            }
+            log.debug("重新提交待处理的媒体文件: {}", fileIds.size());
+            for (FileBaseDTO fileBaseDTO : fileDAO.findAllFileBaseDTOByIdIn(fileIds)) {
+                resubmit(fileBaseDTO);
+            }
+        } catch (Exception e) {
+            log.error("重新提交待处理的媒体文件失败", e);
+        }
+    }
+
+    private void resubmit(FileBaseDTO fileBaseDTO) {
+        String username = commonUserService.getUserNameById(fileBaseDTO.getUserId());
+        if (CharSequenceUtil.isBlank(username)) {
+            return;
+        }
+        File file = Paths.get(fileProperties.getRootDir(), username, fileBaseDTO.getPath(), fileBaseDTO.getName()).toFile();
+        String suffix = MyFileUtils.extName(fileBaseDTO.getName());
+        String contentType = FileContentTypeUtils.getContentType(file, suffix);
+        // WebP 只在上传时转换
+        MediaType mediaType = getMediaType(contentType, suffix, false);
+        if (mediaType == null) {
+            FileDocument mediaInfo = new FileDocument();
+            mediaInfo.setMediaStatus(MediaStatus.PROCESSED.getStatus());
+            fileDAO.setMediaInfoById(fileBaseDTO.getId(), mediaInfo);
+            return;
+        }
+        submit(new MediaTask(fileBaseDTO.getId(), username, fileBaseDTO.getUserId(), fileBaseDTO.getPath(),
+                fileBaseDTO.getName(), contentType, suffix, mediaType, false, false, 1, sequence.incrementAndGet(), 0));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        lanes.values().forEach(lane -> lane.shutdown(30));
+    }
+}
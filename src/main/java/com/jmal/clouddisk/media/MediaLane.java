@@ -0,0 +1,106 @@
+package com.jmal.clouddisk.media;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 媒体处理流水线中某一类媒体的通道
+ * <p>
+ * 每个通道有自己的优先级队列和固定数量的工作线程, 图片/视频/音频互不阻塞。
+ * 队列按优先级出队, 同优先级先进先出; 队列长度达到 capacity 后 {@link #offer} 返回 false, 由调用方转为待处理状态稍后再提交
+ *
+ * @param <T> 元素类型
+ */
+@Slf4j
+class MediaLane<T extends Comparable<T>> {
+
+    @Getter
+    private final String name;
+
+    private final int capacity;
+
+    private final PriorityBlockingQueue<T> queue = new PriorityBlockingQueue<>();
+
+    private final Consumer<T> handler;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    MediaLane(String name, int capacity, int concurrency, Consumer<T> handler) {
+        this.name = name;
+        this.capacity = capacity;
+        this.handler = handler;
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(Thread.ofPlatform().name(name + "-" + i).daemon(true).start(this::runWorker));
+        }
+    }
+
+    /**
+     * 非阻塞提交
+     *
+     * @return 队列已满时返回 false
+     */
+    boolean offer(T item) {
+        if (!running || queue.size() >= capacity) {
+            return false;
+        }
+        return queue.offer(item);
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                T item = queue.poll(1, TimeUnit.SECONDS);
+                if (item == null) {
+                    continue;
+                }
+                active.incrementAndGet();
+                try {
+                    handler.accept(item);
+                } finally {
+                    active.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("{} 处理失败: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    int size() {
+        return queue.size() + active.get();
+    }
+
+    /**
+     * 停止处理, 等待正在处理的元素完成; 队列中剩余的元素保持待处理状态, 下次启动后重新提交
+     */
+    void shutdown(long timeoutSeconds) {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (Thread worker : workers) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !worker.join(Duration.ofNanos(remaining))) {
+                    log.warn("{} 未能在{}秒内完成", name, timeoutSeconds);
+                    worker.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.jmal.clouddisk.media;
+
+import lombok.Getter;
+
+/**
+ * 媒体处理状态(缩略图/Exif/尺寸/封面/WebP), 不需要处理的文件为 null
+ */
+@Getter
+public enum MediaStatus {
+    /**
+     * 待处理
+     */
+    PENDING(0),
+    /**
+     * 已完成处理
+     */
+    PROCESSED(1),
+    /**
+     * 多次重试后仍处理失败
+     */
+    FAILED(2);
+
+    private final int status;
+
+    MediaStatus(int status) {
+        this.status = status;
+    }
+
+}
@@ -0,0 +1,580 @@
+package com.jmal.clouddisk.media;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.dao.ITranscodeConfigDAO;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import com.jmal.clouddisk.service.impl.CommonUserService;
+import com.jmal.clouddisk.service.impl.PathService;
+import com.jmal.clouddisk.util.MyThreadUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按需转码
+ * <p>
+ * 开启后转码任务只根据视频时长生成播放列表, 播放器请求某个分片时才从该位置开始转码一段(最多 {@link #WINDOW_SEGMENTS} 个分片)。
+ * 转码完成的分片缓存在视频缓存目录下, 文件名与完整转码时相同。
+ * 播放器正在等待的分片优先于预转码, 同优先级的任务按与播放位置的距离排序;
+ * 超过 {@link #IDLE_TIMEOUT} 没有分片请求的视频不再预转码, 正在执行的转码进程也会被终止。
+ * 播放列表中带有 {@link #ON_DEMAND_MARKER} 标记, 关闭按需转码后, 已经生成的按需播放列表仍然可以继续播放。
+ */
+@Slf4j
+@Service
+@Lazy
+@RequiredArgsConstructor
+public class OnDemandTranscodeService {
+
+    /**
+     * 分片时长(秒)
+     */
+    static final int SEGMENT_SECONDS = 6;
+
+    /**
+     * 每个转码进程最多生成的分片数
+     */
+    private static final int WINDOW_SEGMENTS = 10;
+
+    /**
+     * 预转码到播放位置之后的分片数
+     */
+    private static final int PREFETCH_SEGMENTS = 30;
+
+    private static final Duration IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * 请求分片时的最长等待时间, 超时后让播放器稍后重试, 不长时间占用请求线程
+     */
+    private static final Duration SEGMENT_WAIT_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * 按需转码生成的播放列表的标记(HLS 注释行), 完整转码会覆盖播放列表, 标记随之消失
+     */
+    static final String ON_DEMAND_MARKER = "#JMAL-ON-DEMAND";
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final FileProperties fileProperties;
+
+    private final PathService pathService;
+
+    private final IFileDAO fileDAO;
+
+    private final CommonUserService userService;
+
+    private final ITranscodeConfigDAO transcodeConfigDAO;
+
+    /**
+     * 正在播放的视频
+     * key: fileId
+     */
+    private final Cache<String, Session> sessions = Caffeine.newBuilder()
+            .expireAfterAccess(10, TimeUnit.MINUTES)
+            .removalListener((String _, Session session, RemovalCause _) -> {
+                if (session != null) {
+                    session.stop();
+                }
+            })
+            .build();
+
+    private final PriorityBlockingQueue<SegmentJob> jobs = new PriorityBlockingQueue<>();
+
+    private final AtomicLong jobSequence = new AtomicLong();
+
+    private final ScheduledExecutorService idleChecker = ThreadUtil.createScheduledExecutor(1);
+
+    private volatile Semaphore workers;
+
+    @PostConstruct
+    public void init() {
+        idleChecker.scheduleWithFixedDelay(this::stopIdleSessions, 5, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 根据视频时长生成播放列表, 并删除旧的分片
+     *
+     * @param fileId        fileId
+     * @param videoCacheDir 视频缓存目录
+     * @param videoInfo     视频信息
+     * @return 视频时长未知时返回 false, 需要完整转码
+     */
+    public boolean createPlaylist(String fileId, String videoCacheDir, VideoInfo videoInfo) throws IOException {
+        int duration = videoInfo.getDuration();
+        if (duration <= 0) {
+            return false;
+        }
+        sessions.invalidate(fileId);
+        Path cacheDir = Paths.get(videoCacheDir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, fileId + "-[0-9]*.ts*")) {
+            for (Path segment : stream) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        Path playlist = cacheDir.resolve(fileId + ".m3u8");
+        Path temp = cacheDir.resolve(fileId + ".m3u8" + PART_SUFFIX);
+        int segmentCount = segmentCount(duration);
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("#EXTM3U\n");
+            writer.write(ON_DEMAND_MARKER + "\n");
+            writer.write("#EXT-X-VERSION:3\n");
+            writer.write("#EXT-X-TARGETDURATION:" + SEGMENT_SECONDS + "\n");
+            writer.write("#EXT-X-MEDIA-SEQUENCE:0\n");
+            writer.write("#EXT-X-PLAYLIST-TYPE:VOD\n");
+            for (int i = 0; i < segmentCount; i++) {
+                int segmentDuration = Math.min(SEGMENT_SECONDS, duration - i * SEGMENT_SECONDS);
+                writer.write(String.format(Locale.ROOT, "#EXTINF:%d.000000,%n", segmentDuration));
+                writer.write(segmentName(fileId, i) + "\n");
+            }
+            writer.write("#EXT-X-ENDLIST\n");
+        }
+        Files.move(temp, playlist, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * 分片的状态
+     */
+    public enum SegmentStatus {
+        /**
+         * 分片已生成
+         */
+        READY,
+        /**
+         * 正在转码, 稍后重试
+         */
+        PENDING,
+        /**
+         * 不是按需转码的视频或转码失败
+         */
+        UNAVAILABLE
+    }
+
+    /**
+     * 获取分片, 分片不存在时从该位置开始转码, 最多等待 {@link #SEGMENT_WAIT_TIMEOUT}
+     *
+     * @param username 用户名
+     * @param fileId   fileId
+     * @param index    分片序号
+     * @return 分片状态, 等待超时但仍在转码时返回 {@link SegmentStatus#PENDING}
+     */
+    public SegmentStatus awaitSegment(String username, String fileId, int index) {
+        Session session = sessions.get(fileId, _ -> createSession(username, fileId));
+        if (session == null || !Objects.equals(session.username, username) || index < 0 || index >= session.segmentCount) {
+            return SegmentStatus.UNAVAILABLE;
+        }
+        session.touch(index);
+        Path segment = session.segmentPath(index);
+        if (Files.exists(segment)) {
+            schedulePrefetch(session);
+            return SegmentStatus.READY;
+        }
+        synchronized (session) {
+            if (!session.isCovering(index)) {
+                // 跳转到了正在转码的范围之外, 终止当前的转码进程, 从新的位置开始
+                session.cancel();
+                enqueue(session, index, true);
+            }
+        }
+        dispatch();
+        long deadline = System.nanoTime() + SEGMENT_WAIT_TIMEOUT.toNanos();
+        try {
+            synchronized (session) {
+                while (!Files.exists(segment)) {
+                    if (session.running == null && session.pending == null) {
+                        // 转码已结束但没有生成该分片
+                        return SegmentStatus.UNAVAILABLE;
+                    }
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        log.debug("分片还在转码中, 稍后重试: {}", segment.getFileName());
+                        return SegmentStatus.PENDING;
+                    }
+                    session.wait(Math.min(remaining, 1000));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SegmentStatus.UNAVAILABLE;
+        }
+        return SegmentStatus.READY;
+    }
+
+    /**
+     * 只为按需转码生成的播放列表创建会话, 与是否开启按需转码无关, 关闭后已生成的播放列表仍可播放
+     */
+    private Session createSession(String username, String fileId) {
+        FileBaseDTO fileBaseDTO = fileDAO.findFileBaseDTOById(fileId);
+        if (fileBaseDTO == null || !Objects.equals(userService.getUserIdByUserName(username), fileBaseDTO.getUserId())) {
+            return null;
+        }
+        Path source = Paths.get(fileProperties.getRootDir(), username, fileBaseDTO.getPath(), fileBaseDTO.getName());
+        Path cacheDir = Paths.get(pathService.getVideoCacheDir(username, fileId));
+        if (!Files.exists(source) || !isOnDemandPlaylist(cacheDir.resolve(fileId + ".m3u8"))) {
+            return null;
+        }
+        VideoInfo videoInfo = FFMPEGCommand.getVideoInfo(source.toString());
+        if (videoInfo.getDuration() <= 0) {
+            return null;
+        }
+        return new Session(username, fileId, source, cacheDir, videoInfo.getDuration(), Rendition.fit(videoInfo, getTranscodeConfig()));
+    }
+
+    private static boolean isOnDemandPlaylist(Path playlist) {
+        if (!Files.exists(playlist)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(playlist, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            return ON_DEMAND_MARKER.equals(reader.readLine());
+        } catch (IOException e) {
+            log.debug("读取播放列表失败: {}, {}", playlist, e.getMessage());
+            return false;
+        }
+    }
+
+    private TranscodeConfig getTranscodeConfig() {
+        TranscodeConfig config = transcodeConfigDAO.findTranscodeConfig();
+        return config == null ? new TranscodeConfig() : config;
+    }
+
+    private Semaphore getWorkers() {
+        Semaphore semaphore = workers;
+        if (semaphore == null) {
+            synchronized (this) {
+                if (workers == null) {
+                    workers = new Semaphore(getTranscodeConfig().getMaxThreads());
+                }
+                semaphore = workers;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * 需在 session 锁内调用
+     */
+    private void enqueue(Session session, int start, boolean urgent) {
+        if (session.pending != null) {
+            jobs.remove(session.pending);
+        }
+        SegmentJob job = new SegmentJob(session, start, urgent, jobSequence.incrementAndGet());
+        session.pending = job;
+        jobs.offer(job);
+    }
+
+    /**
+     * 播放位置之后还有未转码的分片时继续预转码
+     */
+    private void schedulePrefetch(Session session) {
+        if (session.isIdle()) {
+            return;
+        }
+        int end = Math.min(session.segmentCount, session.playhead + PREFETCH_SEGMENTS);
+        for (int i = session.playhead; i < end; i++) {
+            if (!Files.exists(session.segmentPath(i))) {
+                synchronized (session) {
+                    if (session.running == null && session.pending == null) {
+                        enqueue(session, i, false);
+                    }
+                }
+                dispatch();
+                return;
+            }
+        }
+    }
+
+    private void dispatch() {
+        Semaphore semaphore = getWorkers();
+        while (semaphore.tryAcquire()) {
+            SegmentJob job = jobs.poll();
+            if (job == null) {
+                semaphore.release();
+                return;
+            }
+            Thread.ofVirtual().name("hlsSegment-" + job.session.fileId).start(() -> {
+                try {
+                    runJob(job);
+                } finally {
+                    semaphore.release();
+                    dispatch();
+                }
+            });
+        }
+    }
+
+    private void runJob(SegmentJob job) {
+        Session session = job.session;
+        synchronized (session) {
+            if (session.pending == job) {
+                session.pending = null;
+            }
+            if (job.cancelled || session.isIdle()) {
+                return;
+            }
+            session.running = job;
+        }
+        Process process = null;
+        try {
+            int end = job.start;
+            while (end < session.segmentCount && end - job.start < WINDOW_SEGMENTS && !Files.exists(session.segmentPath(end))) {
+                end++;
+            }
+            if (end == job.start) {
+                return;
+            }
+            int startSeconds = job.start * SEGMENT_SECONDS;
+            int durationSeconds = Math.min(end * SEGMENT_SECONDS, session.duration) - startSeconds;
+            String segmentPattern = session.cacheDir.resolve(session.fileId + "-%03d.ts" + PART_SUFFIX).toString();
+            ProcessBuilder processBuilder = FFMPEGCommand.segmentTranscoding(session.source, startSeconds, durationSeconds, job.start, SEGMENT_SECONDS, session.rendition, segmentPattern);
+            processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+            process = processBuilder.start();
+            synchronized (session) {
+                session.process = process;
+                if (job.cancelled) {
+                    process.destroy();
+                }
+            }
+            log.debug("按需转码: {}, 分片: {} - {}", session.source.getFileName(), job.start, end - 1);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    completeSegment(session, job, line.trim());
+                }
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0 && !job.cancelled) {
+                log.warn("按需转码失败: {}, 分片: {}, exitCode: {}", session.source.getFileName(), job.next, exitCode);
+            }
+        } catch (IOException e) {
+            log.error("按需转码失败: {}, {}", session.source.getFileName(), e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (process != null && process.isAlive()) {
+                process.destroyForcibly();
+            }
+            synchronized (session) {
+                if (session.running == job) {
+                    session.running = null;
+                    session.process = null;
+                }
+                session.notifyAll();
+            }
+            deletePartFiles(session);
+        }
+        if (!job.cancelled) {
+            schedulePrefetch(session);
+        }
+    }
+
+    /**
+     * ffmpeg 每完成一个分片输出一行分片文件名, 完成后去掉 .part 后缀
+     */
+    private void completeSegment(Session session, SegmentJob job, String partName) throws IOException {
+        String prefix = session.fileId + "-";
+        if (!partName.startsWith(prefix) || !partName.endsWith(".ts" + PART_SUFFIX)) {
+            return;
+        }
+        Path part = session.cacheDir.resolve(partName);
+        Path segment = session.cacheDir.resolve(partName.substring(0, partName.length() - PART_SUFFIX.length()));
+        Files.move(part, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (session) {
+            job.next++;
+            session.notifyAll();
+            if (session.isIdle()) {
+                // 没有人在观看, 释放转码进程
+                session.cancel();
+            }
+        }
+    }
+
+    private static void deletePartFiles(Session session) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(session.cacheDir, session.fileId + "-*" + PART_SUFFIX)) {
+            for (Path part : stream) {
+                Files.deleteIfExists(part);
+            }
+        } catch (IOException e) {
+            log.debug("删除临时分片失败: {}", e.getMessage());
+        }
+    }
+
+    private void stopIdleSessions() {
+        for (Session session : sessions.asMap().values()) {
+            if (session.isIdle()) {
+                session.stop();
+            }
+        }
+    }
+
+    private static int segmentCount(int duration) {
+        return (duration + SEGMENT_SECONDS - 1) / SEGMENT_SECONDS;
+    }
+
+    private static String segmentName(String fileId, int index) {
+        return String.format("%s-%03d.ts", fileId, index);
+    }
+
+    /**
+     * 正在播放的视频
+     */
+    private final class Session {
+
+        private final String username;
+        private final String fileId;
+        private final Path source;
+        private final Path cacheDir;
+        private final int duration;
+        private final int segmentCount;
+        private final Rendition rendition;
+
+        /**
+         * 最近一次请求的分片序号
+         */
+        private volatile int playhead;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        /**
+         * 以下字段由 session 锁保护
+         */
+        private SegmentJob running;
+        private SegmentJob pending;
+        private Process process;
+
+        private Session(String username, String fileId, Path source, Path cacheDir, int duration, Rendition rendition) {
+            this.username = username;
+            this.fileId = fileId;
+            this.source = source;
+            this.cacheDir = cacheDir;
+            this.duration = duration;
+            this.segmentCount = segmentCount(duration);
+            this.rendition = rendition;
+        }
+
+        private Path segmentPath(int index) {
+            return cacheDir.resolve(segmentName(fileId, index));
+        }
+
+        private void touch(int index) {
+            playhead = index;
+            lastAccessNanos = System.nanoTime();
+        }
+
+        private boolean isIdle() {
+            return System.nanoTime() - lastAccessNanos > IDLE_TIMEOUT.toNanos();
+        }
+
+        /**
+         * 正在执行或等待执行的任务是否会生成该分片, 需在 session 锁内调用
+         */
+        private boolean isCovering(int index) {
+            if (running != null && !running.cancelled && index >= running.next && index < running.start + WINDOW_SEGMENTS) {
+                return true;
+            }
+            if (pending != null && index >= pending.start && index < pending.start + WINDOW_SEGMENTS) {
+                if (!pending.urgent) {
+                    // 预转码任务有人在等待了, 提升优先级
+                    enqueue(this, pending.start, true);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 终止正在执行的任务, 需在 session 锁内调用
+         */
+        private void cancel() {
+            if (running != null) {
+                running.cancelled = true;
+            }
+            if (process != null) {
+                process.destroy();
+            }
+        }
+
+        private void stop() {
+            synchronized (this) {
+                cancel();
+                if (pending != null) {
+                    pending.cancelled = true;
+                    jobs.remove(pending);
+                    pending = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 转码任务, 有人等待的任务优先, 其次按与播放位置的距离排序
+     */
+    private static final class SegmentJob implements Comparable<SegmentJob> {
+
+        private final Session session;
+        private final int start;
+        private final boolean urgent;
+        private final long sequence;
+
+        /**
+         * 下一个将要生成的分片
+         */
+        private int next;
+        private volatile boolean cancelled;
+
+        private SegmentJob(Session session, int start, boolean urgent, long sequence) {
+            this.session = session;
+            this.start = start;
+            this.urgent = urgent;
+            this.sequence = sequence;
+            this.next = start;
+        }
+
+        private int distance() {
+            return Math.abs(start - session.playhead);
+        }
+
+        @Override
+        public int compareTo(SegmentJob other) {
+            if (urgent != other.urgent) {
+                return urgent ? -1 : 1;
+            }
+            int compare = Integer.compare(distance(), other.distance());
+            if (compare != 0) {
+                return compare;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sessions.asMap().values().forEach(Session::stop);
+        MyThreadUtil.shutdownExecutor(idleChecker, "OnDemandTranscodeIdleChecker");
+    }
+}
@@ -0,0 +1,40 @@
+package com.jmal.clouddisk.media;
+
+/**
+ * 转码输出的视频参数
+ *
+ * @param height    视频高度
+ * @param bitrate   视频码率(bps)
+ * @param frameRate 视频帧率
+ */
+record Rendition(int height, int bitrate, double frameRate) {
+
+    /**
+     * 按原始视频调整目标参数, 不超过原始视频的高度、码率和帧率
+     *
+     * @param videoInfo   原始视频信息
+     * @param height      目标高度
+     * @param bitrateKbps 目标码率(kbps)
+     * @param frameRate   目标帧率
+     */
+    static Rendition fit(VideoInfo videoInfo, int height, int bitrateKbps, double frameRate) {
+        // 如果视频的码率小于配置码率，则使用视频的原始码率
+        int bitrate = bitrateKbps * 1000;
+        if (videoInfo.getBitrate() < bitrate && videoInfo.getBitrate() > 0) {
+            bitrate = videoInfo.getBitrate();
+        }
+        // 如果视频的高度小于配置高度，则使用视频的原始高度
+        if (videoInfo.getHeight() < height) {
+            height = videoInfo.getHeight();
+        }
+        // 如果视频的帧率小于配置帧率，则使用视频的原始帧率
+        if (videoInfo.getFrameRate() < frameRate) {
+            frameRate = videoInfo.getFrameRate();
+        }
+        return new Rendition(height, bitrate, frameRate);
+    }
+
+    static Rendition fit(VideoInfo videoInfo, TranscodeConfig transcodeConfig) {
+        return fit(videoInfo, transcodeConfig.getHeight(), transcodeConfig.getBitrate(), transcodeConfig.getFrameRate());
+    }
+}
@@ -3,6 +3,7 @@ package com.jmal.clouddisk.media;
 import com.jmal.clouddisk.config.Reflective;
 import com.jmal.clouddisk.config.jpa.AuditableTimeEntity;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.validation.Valid;
@@ -10,8 +11,12 @@ import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 /**
  * 转码配置
  */
@@ -70,6 +75,18 @@ public class TranscodeConfig extends AuditableTimeEntity implements Reflective {
     @Schema(description = "是否重新转码, 转码参数变化后对已经转码过的视频重新转码, 默认开启")
     private Boolean isReTranscode;
 
+    @Schema(description = "按需转码, 只生成播放列表, 播放时再转码播放位置附近的分片, 默认关闭")
+    private Boolean onDemand;
+
+    @Schema(description = "多码率自适应(ABR), 一次解码同时输出码率阶梯中的多个清晰度, 默认关闭")
+    private Boolean abrEnable;
+
+    @Valid
+    @Column(name = "abr_ladder")
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Schema(description = "ABR 码率阶梯, 高于原始视频的档位会被跳过, 默认 1080p/5000kbps, 720p/2500kbps, 480p/1200kbps, 360p/800kbps")
+    private List<AbrRendition> abrLadder;
+
     public Boolean getEnable() {
         if (enable == null)
             return false;
@@ -129,4 +146,22 @@ public class TranscodeConfig extends AuditableTimeEntity implements Reflective {
             return true;
         return isReTranscode;
     }
+
+    public Boolean getOnDemand() {
+        if (onDemand == null)
+            return false;
+        return onDemand;
+    }
+
+    public Boolean getAbrEnable() {
+        if (abrEnable == null)
+            return false;
+        return abrEnable;
+    }
+
+    public List<AbrRendition> getAbrLadder() {
+        if (abrLadder == null || abrLadder.isEmpty())
+            return List.of(new AbrRendition(1080, 5000), new AbrRendition(720, 2500), new AbrRendition(480, 1200), new AbrRendition(360, 800));
+        return abrLadder;
+    }
 }
@@ -61,6 +61,8 @@ public class VideoProcessService implements ApplicationListener<ContextRefreshed
 
     private final IFileDAO fileDAO;
 
+    private final OnDemandTranscodeService onDemandTranscodeService;
+
     /**
      * 视频转码线程池
      */
@@ -232,6 +234,9 @@ public class VideoProcessService implements ApplicationListener<ContextRefreshed
         dao.setFrameRateCond(dto.getFrameRateCond());
         dao.setVttThumbnailCount(dto.getVttThumbnailCount());
         dao.setIsReTranscode(dto.getIsReTranscode());
+        dao.setOnDemand(dto.getOnDemand());
+        dao.setAbrEnable(dto.getAbrEnable());
+        dao.setAbrLadder(dto.getAbrLadder());
     }
 
     public TranscodeConfig getTranscodeConfig() {
@@ -438,22 +443,16 @@ public class VideoProcessService implements ApplicationListener<ContextRefreshed
         if (!FFMPEGUtils.needTranscode(videoInfo, transcodeConfig)) {
             return;
         }
-        // 如果视频的码率小于配置码率，则使用视频的原始码率
-        int SD_VIDEO_BITRATE = transcodeConfig.getBitrate() * 1000;
-        int bitrate = SD_VIDEO_BITRATE;
-        if (videoInfo.getBitrate() < SD_VIDEO_BITRATE && videoInfo.getBitrate() > 0) {
-            bitrate = videoInfo.getBitrate();
-        }
-        // 如果视频的高度小于配置高度，则使用视频的原始高度
-        int targetHeight = transcodeConfig.getHeight();
-        if (videoInfo.getHeight() < targetHeight) {
-            targetHeight = videoInfo.getHeight();
-        }
-        // 如果视频的帧率小于配置帧率，则使用视频的原始帧率
-        double frameRate = transcodeConfig.getFrameRate();
-        if (videoInfo.getFrameRate() < frameRate) {
-            frameRate = videoInfo.getFrameRate();
+        // 按需转码只生成播放列表, 分片在播放时再转码
+        if (BooleanUtil.isTrue(transcodeConfig.getOnDemand()) && onDemandTranscodeService.createPlaylist(fileId, videoCacheDir, videoInfo)) {
+            log.info("生成按需转码播放列表: {}", fileName);
+            startConvert(username, relativePath, fileName, fileId, transcodeConfig);
+            return;
         }
+        Rendition rendition = Rendition.fit(videoInfo, transcodeConfig);
+        int bitrate = rendition.bitrate();
+        int targetHeight = rendition.height();
+        double frameRate = rendition.frameRate();
 
         // 计算缩略图间隔
         int vttInterval = FFMPEGUtils.getVttInterval(videoInfo, transcodeConfig.getVttThumbnailCount());
@@ -463,22 +462,33 @@ public class VideoProcessService implements ApplicationListener<ContextRefreshed
         }
         String thumbnailPattern = Paths.get(vttPath.toString(), "thumb_%03d.png").toString();
 
-        ProcessBuilder processBuilder = FFMPEGCommand.cpuTranscoding(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, vttInterval, thumbnailPattern, frameRate);
-        if (!onlyCPU && FFMPEGCommand.checkNvidiaDrive()) {
-            log.info("use NVENC hardware acceleration");
-            processBuilder = FFMPEGCommand.useNvencCuda(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, frameRate);
-            generateVttOfNvidia(fileAbsolutePath, vttInterval, thumbnailPattern, videoInfo);
-        }
-        if (!onlyCPU && FFMPEGCommand.checkMacAppleSilicon()) {
-            log.info("use videotoolbox hardware acceleration");
-            processBuilder = FFMPEGCommand.useVideotoolbox(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, vttInterval, thumbnailPattern, frameRate);
+        ProcessBuilder processBuilder;
+        // 第一个ts文件
+        String firstTS = fileId + "-001.ts";
+        List<Rendition> ladder = onlyCPU ? List.of() : getAbrLadder(videoInfo, transcodeConfig);
+        if (ladder.size() > 1) {
+            // 多码率自适应, 一次解码输出多个清晰度, 失败时回退为单一清晰度转码
+            List<String> names = ladder.stream().map(VideoProcessService::getRenditionName).toList();
+            boolean hasAudio = FFMPEGCommand.hasAudioStream(fileAbsolutePath.toString());
+            processBuilder = FFMPEGCommand.ladderTranscoding(fileAbsolutePath, ladder, names, hasAudio, videoCacheDir, vttInterval, thumbnailPattern);
+            writeMasterPlaylist(fileId, outputPath, videoInfo, ladder, names, hasAudio);
+            firstTS = names.getFirst() + "-001.ts";
+        } else {
+            processBuilder = FFMPEGCommand.cpuTranscoding(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, vttInterval, thumbnailPattern, frameRate);
+            if (!onlyCPU && FFMPEGCommand.checkNvidiaDrive()) {
+                log.info("use NVENC hardware acceleration");
+                processBuilder = FFMPEGCommand.useNvencCuda(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, frameRate);
+                generateVttOfNvidia(fileAbsolutePath, vttInterval, thumbnailPattern, videoInfo);
+            }
+            if (!onlyCPU && FFMPEGCommand.checkMacAppleSilicon()) {
+                log.info("use videotoolbox hardware acceleration");
+                processBuilder = FFMPEGCommand.useVideotoolbox(fileId, fileAbsolutePath, bitrate, targetHeight, videoCacheDir, outputPath, vttInterval, thumbnailPattern, frameRate);
+            }
         }
         processBuilder.redirectErrorStream(true);
         Process process = processBuilder.start();
         processesTasks.add(process);
         boolean pushMessage = false;
-        // 第一个ts文件
-        String firstTS = fileId + "-001.ts";
         try (InputStream inputStream = process.getInputStream();
              BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
             // 读取命令的输出信息
@@ -523,6 +533,47 @@ public class VideoProcessService implements ApplicationListener<ContextRefreshed
         }
     }
 
+    /**
+     * 获取需要输出的码率阶梯, 未开启多码率时返回空
+     * <p>
+     * 每一档按原始视频调整, 高度相同的档位只保留码率最高的一档
+     */
+    private static List<Rendition> getAbrLadder(VideoInfo videoInfo, TranscodeConfig transcodeConfig) {
+        if (!BooleanUtil.isTrue(transcodeConfig.getAbrEnable())) {
+            return List.of();
+        }
+        Map<Integer, Rendition> renditions = new LinkedHashMap<>();
+        transcodeConfig.getAbrLadder().stream()
+                .filter(abrRendition -> abrRendition.getHeight() != null && abrRendition.getBitrate() != null)
+                .sorted(Comparator.comparing(AbrRendition::getHeight).reversed())
+                .map(abrRendition -> Rendition.fit(videoInfo, abrRendition.getHeight(), abrRendition.getBitrate(), transcodeConfig.getFrameRate()))
+                .forEach(rendition -> renditions.merge(rendition.height(), rendition, (a, b) -> a.bitrate() >= b.bitrate() ? a : b));
+        return new ArrayList<>(renditions.values());
+    }
+
+    private static String getRenditionName(Rendition rendition) {
+        return rendition.height() + "p";
+    }
+
+    /**
+     * 生成多码率主播放列表, 各清晰度的播放列表位于 {@code fileId/<name>.m3u8}
+     */
+    private static void writeMasterPlaylist(String fileId, String outputPath, VideoInfo videoInfo, List<Rendition> ladder, List<String> names, boolean hasAudio) {
+        StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (int i = 0; i < ladder.size(); i++) {
+            Rendition rendition = ladder.get(i);
+            int bandwidth = rendition.bitrate() + (hasAudio ? 128000 : 0);
+            int width = videoInfo.getHeight() > 0 ? (int) Math.round((double) videoInfo.getWidth() * rendition.height() / videoInfo.getHeight() / 2) * 2 : 0;
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(bandwidth);
+            if (width > 0) {
+                playlist.append(",RESOLUTION=").append(width).append('x').append(rendition.height());
+            }
+            playlist.append(String.format(",FRAME-RATE=%.3f", rendition.frameRate())).append('\n');
+            playlist.append(fileId).append('/').append(names.get(i)).append(".m3u8\n");
+        }
+        FileUtil.writeUtf8String(playlist.toString(), outputPath);
+    }
+
     private void generateVttOfNvidia(Path fileAbsolutePath, int vttInterval, String thumbnailPattern, VideoInfo videoInfo) throws IOException {
         // 生成vtt缩略图, nvidia加速时要单独生成vtt缩略图
         taskProgressService.addTaskProgress(fileAbsolutePath.toFile(), TaskType.TRANSCODE_VIDEO, "vtt生成中...");
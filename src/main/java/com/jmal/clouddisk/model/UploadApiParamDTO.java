@@ -1,11 +1,14 @@
 package com.jmal.clouddisk.model;
 
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.BooleanUtil;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.jmal.clouddisk.config.Reflective;
 import com.jmal.clouddisk.dao.util.PageableUtil;
 import com.jmal.clouddisk.model.query.QueryBaseDTO;
 import com.jmal.clouddisk.model.query.SearchDTO;
 import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.service.impl.CommonFileService;
 import com.jmal.clouddisk.util.FileNameUtils;
 import lombok.Data;
 import org.springframework.data.domain.Pageable;
@@ -47,6 +50,10 @@ public class UploadApiParamDTO implements Reflective {
      * 文件唯一标识MD5
      */
     String identifier;
+    /**
+     * 文件内容的SHA-256(小写十六进制), 可选, 提供时才能秒传; 分片、断点续传仍以 identifier 为标识
+     */
+    String contentHash;
     /***
      * 文件或文件夹名
      */
@@ -158,6 +165,10 @@ public class UploadApiParamDTO implements Reflective {
      * 要查询的排序顺序
      */
     String order;
+    /**
+     * 目录列表的游标, 上一页返回的 nextCursor, 不为空时从游标之后查询下一页(不使用 pageIndex), 不再统计总数
+     */
+    String cursor;
     /**
      * 是否显示文件夹大小
      */
@@ -323,6 +334,19 @@ public class UploadApiParamDTO implements Reflective {
         return searchDTO;
     }
 
+    /**
+     * 是否为按目录查询的文件列表(不是按类型、收藏、标签等条件查询), 只有目录列表支持游标分页
+     */
+    public boolean isDirectoryListing() {
+        if (CharSequenceUtil.isNotBlank(queryFileType)) {
+            return !List.of(Constants.AUDIO, Constants.VIDEO, Constants.CONTENT_TYPE_IMAGE, Constants.DOCUMENT, "text", CommonFileService.TRASH_COLLECTION_NAME).contains(queryFileType);
+        }
+        if (currentDirectory != null && currentDirectory.length() < 2) {
+            return isFolder == null && !BooleanUtil.isTrue(isFavorite) && !BooleanUtil.isTrue(isMount) && CharSequenceUtil.isBlank(tagId);
+        }
+        return true;
+    }
+
     public Pageable getPageable() {
         return PageableUtil.buildPageable(toSearchDTO());
     }
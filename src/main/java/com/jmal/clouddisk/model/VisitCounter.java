@@ -0,0 +1,38 @@
+package com.jmal.clouddisk.model;
+
+import com.jmal.clouddisk.config.Reflective;
+import com.jmal.clouddisk.config.jpa.AuditableEntity;
+import com.jmal.clouddisk.service.impl.VisitCounterService;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * 页面访问次数, 每个url一条记录
+ */
+@Getter
+@Setter
+@Document(collection = VisitCounterService.COLLECTION_NAME)
+@CompoundIndexes({
+        @CompoundIndex(name = "url_1", def = "{'url': 1}", unique = true)
+})
+@Entity
+@Table(name = VisitCounterService.COLLECTION_NAME,
+        indexes = {
+                @Index(name = "visit_counters_url", columnList = "url", unique = true)
+        }
+)
+public class VisitCounter extends AuditableEntity implements Reflective {
+
+    @Column(nullable = false, length = 512)
+    private String url;
+
+    @Column(nullable = false)
+    private Long visits;
+}
@@ -0,0 +1,12 @@
+package com.jmal.clouddisk.model.dto;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * 按url分组统计的访问次数
+ *
+ * @param url    url
+ * @param visits 访问次数
+ */
+public record UrlVisitsDTO(String url, Long visits) implements Reflective {
+}
@@ -39,6 +39,9 @@ import java.util.Objects;
         @CompoundIndex(name = "user_contentType", def = "{'userId': 1, 'contentType': 1}"),
         @CompoundIndex(name = "doc_tags", def = "{'tags.tagId': 1}"),
         @CompoundIndex(name = "process_marked_folders", def = "{ 'needsEtagUpdate': 1, 'isFolder': 1, 'lastEtagUpdateRequestAt': 1 }"),
+        @CompoundIndex(name = "mediaStatus_1", def = "{'mediaStatus': 1}", sparse = true),
+        @CompoundIndex(name = "contentHash_size", def = "{'contentHash': 1, 'size': 1}", sparse = true),
+        @CompoundIndex(name = "user_path_isFolder_sortKey_id", def = "{'userId': 1, 'path': 1, 'isFolder': -1, 'sortKey': 1, '_id': 1}"),
 })
 public class FileDocument extends FileBase implements Reflective {
     private String userId;
@@ -214,6 +217,21 @@ public class FileDocument extends FileBase implements Reflective {
 
     private Integer transcodeVideo;
 
+    /**
+     * 媒体处理状态, {@link com.jmal.clouddisk.media.MediaStatus}
+     */
+    private Integer mediaStatus;
+
+    /**
+     * 文件内容的SHA-256, 为空表示尚未计算, 文件内容变化后清空
+     */
+    private String contentHash;
+
+    /**
+     * 文件名的排序键, {@link com.jmal.clouddisk.util.SortKeyUtil}
+     */
+    private String sortKey;
+
     /**
      * 操作权限
      */
@@ -224,6 +242,16 @@ public class FileDocument extends FileBase implements Reflective {
      */
     private String etag;
 
+    /**
+     * 仅文件夹有效, 直接子项哈希之和(mod 2^256)的十六进制, ETag 由它计算, 子项变化时按差值更新
+     */
+    private String etagHash;
+
+    /**
+     * 仅文件夹有效, 上次同步扫描时目录的修改时间, 与磁盘上一致时增量扫描不再列出该目录
+     */
+    private LocalDateTime scannedMtime;
+
     /**
      * 重试时间点
      */
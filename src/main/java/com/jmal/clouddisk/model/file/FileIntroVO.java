@@ -1,6 +1,7 @@
 package com.jmal.clouddisk.model.file;
 
 import cn.hutool.core.util.BooleanUtil;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.jmal.clouddisk.config.Reflective;
 import com.jmal.clouddisk.media.VideoInfoDO;
 import com.jmal.clouddisk.model.Music;
@@ -120,7 +121,11 @@ public class FileIntroVO extends FileBase implements Reflective {
     private List<OperationPermission> operationPermissionList;
 
     private Set<String> tagIds;
-
+    /**
+     * 文件名的排序键, 只用于生成目录列表的游标, 不返回给前端
+     */
+    @JsonIgnore
+    private String sortKey;
 
     public void setMusicInfo(MusicInfo music) {
         if (music != null) {
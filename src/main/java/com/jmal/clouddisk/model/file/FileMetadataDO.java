@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.jmal.clouddisk.config.Reflective;
 import com.jmal.clouddisk.config.jpa.AuditablePerformanceEntity;
+import com.jmal.clouddisk.util.SortKeyUtil;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -38,6 +39,9 @@ import java.time.LocalDateTime;
                 @Index(name = "files_path", columnList = "path"),
                 @Index(name = "files_mount_file_id", columnList = "mountFileId"),
                 @Index(name = "files_del_tag", columnList = "delTag"),
+                @Index(name = "files_media_status", columnList = "mediaStatus"),
+                @Index(name = "files_content_hash_size", columnList = "contentHash, size"),
+                @Index(name = "files_user_id_path_is_folder_sort_key_public_id", columnList = "userId, path, isFolder, sortKey, publicId"),
         }
 )
 public class FileMetadataDO extends AuditablePerformanceEntity implements Reflective {
@@ -91,9 +95,29 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
 
     private Integer luceneIndex;
 
+    /**
+     * 媒体处理状态, {@link com.jmal.clouddisk.media.MediaStatus}
+     */
+    private Integer mediaStatus;
+
+    /**
+     * 文件内容的SHA-256
+     */
+    @Column(length = 64)
+    private String contentHash;
+
+    /**
+     * 文件名的排序键, {@link com.jmal.clouddisk.util.SortKeyUtil}
+     */
+    @Column(length = SortKeyUtil.MAX_LENGTH)
+    private String sortKey;
+
     // =========================== ETag相关字段 ===========================
     @Column(length = 64)
     private String etag;
+    @Column(length = 64)
+    private String etagHash;
+    private LocalDateTime scannedMtime;
     private Instant retryAt;
     private Integer etagUpdateFailedAttempts;
     private Boolean needsEtagUpdate;
@@ -124,6 +148,7 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         this.path = fileDocument.getPath();
         this.isFolder = fileDocument.getIsFolder();
         this.name = fileDocument.getName();
+        this.sortKey = SortKeyUtil.getSortKey(this.name);
         this.size = fileDocument.getSize();
         this.childrenCount = fileDocument.getChildrenCount();
         this.contentType = fileDocument.getContentType();
@@ -134,6 +159,8 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         this.mountFileId = fileDocument.getMountFileId();
         this.ossFolder = fileDocument.getOssFolder();
         this.etag = fileDocument.getEtag();
+        this.etagHash = fileDocument.getEtagHash();
+        this.scannedMtime = fileDocument.getScannedMtime();
         this.retryAt = fileDocument.getRetryAt();
         this.etagUpdateFailedAttempts = fileDocument.getEtagUpdateFailedAttempts();
         this.needsEtagUpdate = fileDocument.getNeedsEtagUpdate();
@@ -144,6 +171,8 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         this.hasContentText = CharSequenceUtil.isNotBlank(fileDocument.getContentText());
         this.hasHtml = CharSequenceUtil.isNotBlank(fileDocument.getHtml());
         this.luceneIndex = fileDocument.getIndex();
+        this.mediaStatus = fileDocument.getMediaStatus();
+        this.contentHash = fileDocument.getContentHash();
     }
 
     public FileDocument toFileDocument() {
@@ -171,7 +200,12 @@ public class FileMetadataDO extends AuditablePerformanceEntity implements Reflec
         }
         fileDocument.setDelete(this.getDelTag());
         fileDocument.setIndex(this.getLuceneIndex());
+        fileDocument.setMediaStatus(this.mediaStatus);
+        fileDocument.setContentHash(this.contentHash);
+        fileDocument.setSortKey(this.sortKey);
         fileDocument.setEtag(this.etag);
+        fileDocument.setEtagHash(this.etagHash);
+        fileDocument.setScannedMtime(this.scannedMtime);
         fileDocument.setRetryAt(this.retryAt);
         fileDocument.setEtagUpdateFailedAttempts(this.etagUpdateFailedAttempts);
         fileDocument.setNeedsEtagUpdate(this.needsEtagUpdate);
@@ -95,22 +95,26 @@ public class FilePropsDO extends AuditablePerformanceEntity implements Reflectiv
     }
 
     public void toFileIntroVOFragment(FileIntroVO fileDocument) {
-        if (this.shareProps != null) {
-            fileDocument.setIsShare(this.shareProps.getIsShare());
-            fileDocument.setIsPrivacy(this.shareProps.getIsPrivacy());
-            fileDocument.setExpiresAt(this.shareProps.getExpiresAt());
-            fileDocument.setOperationPermissionList(this.shareProps.getOperationPermissionList());
+        toFileIntroVOFragment(this.shareProps, this.props, fileDocument);
+    }
+
+    public static void toFileIntroVOFragment(ShareProperties shareProps, OtherProperties props, FileIntroVO fileDocument) {
+        if (shareProps != null) {
+            fileDocument.setIsShare(shareProps.getIsShare());
+            fileDocument.setIsPrivacy(shareProps.getIsPrivacy());
+            fileDocument.setExpiresAt(shareProps.getExpiresAt());
+            fileDocument.setOperationPermissionList(shareProps.getOperationPermissionList());
         }
-        if (this.props != null) {
-            fileDocument.setOssPlatform(this.props.getOssPlatform());
-            fileDocument.setMusicInfo(this.props.getMusic());
-            fileDocument.setExif(this.props.getExif());
-            fileDocument.setVideo(this.props.getVideo());
-            fileDocument.setW(this.props.getW());
-            fileDocument.setH(this.props.getH());
-            fileDocument.setMediaCover(this.props.getMediaCover());
-            fileDocument.setM3u8(this.props.getM3u8());
-            fileDocument.setShowCover(this.props.getShowCover());
+        if (props != null) {
+            fileDocument.setOssPlatform(props.getOssPlatform());
+            fileDocument.setMusicInfo(props.getMusic());
+            fileDocument.setExif(props.getExif());
+            fileDocument.setVideo(props.getVideo());
+            fileDocument.setW(props.getW());
+            fileDocument.setH(props.getH());
+            fileDocument.setMediaCover(props.getMediaCover());
+            fileDocument.setM3u8(props.getM3u8());
+            fileDocument.setShowCover(props.getShowCover());
         }
     }
 
@@ -5,6 +5,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.LocalDateTime;
+
 /**
  * @author jmal
  * @Description 文件模型基类
@@ -18,13 +20,16 @@ public class FileBaseAllDTO extends FileBaseDTO implements Reflective {
     private String suffix;
     private Long size;
     private String contentType;
+    private LocalDateTime updateDate;
+    private LocalDateTime scannedMtime;
 
-
-    public FileBaseAllDTO(String id, String name, String path, String userId, Boolean isFolder, String suffix, Long size, String contentType) {
+    public FileBaseAllDTO(String id, String name, String path, String userId, Boolean isFolder, String suffix, Long size, String contentType, LocalDateTime updateDate, LocalDateTime scannedMtime) {
         super(id, name, path, userId, isFolder);
         this.size = size;
         this.suffix = suffix;
         this.contentType = contentType;
+        this.updateDate = updateDate;
+        this.scannedMtime = scannedMtime;
     }
 
 
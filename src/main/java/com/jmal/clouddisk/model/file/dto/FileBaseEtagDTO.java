@@ -19,6 +19,21 @@ public class FileBaseEtagDTO extends FileBaseDTO implements Reflective {
 
     private String etag;
 
+    /**
+     * 仅文件夹有效, 直接子项哈希之和(mod 2^256)的十六进制
+     */
+    private String etagHash;
+
+    /**
+     * 文件大小, 文件夹为其下所有文件的大小之和
+     */
+    private Long size;
+
+    /**
+     * 仅文件夹有效, 其下所有子文件/文件夹的数量
+     */
+    private Integer childrenCount;
+
     public FileBaseEtagDTO(String id, String name, String path, String userId) {
         super(id, name, path, userId);
     }
@@ -28,11 +43,24 @@ public class FileBaseEtagDTO extends FileBaseDTO implements Reflective {
         this.etag = etag;
     }
 
+    public FileBaseEtagDTO(String id, String name, String path, String userId, String etag, String etagHash) {
+        super(id, name, path, userId);
+        this.etag = etag;
+        this.etagHash = etagHash;
+    }
+
     public FileBaseEtagDTO(String id, String name, String path, String userId, Boolean isFolder, String etag) {
         super(id, name, path, userId, isFolder);
         this.etag = etag;
     }
 
+    public FileBaseEtagDTO(String id, String name, String path, String userId, Boolean isFolder, String etag, Long size, Integer childrenCount) {
+        super(id, name, path, userId, isFolder);
+        this.etag = etag;
+        this.size = size;
+        this.childrenCount = childrenCount;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -0,0 +1,62 @@
+package com.jmal.clouddisk.model.file.dto;
+
+import com.jmal.clouddisk.config.Reflective;
+import com.jmal.clouddisk.model.Tag;
+import com.jmal.clouddisk.model.file.FileIntroVO;
+import com.jmal.clouddisk.model.file.FilePropsDO;
+import com.jmal.clouddisk.model.file.OtherProperties;
+import com.jmal.clouddisk.model.file.ShareProperties;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 文件列表的投影, 只查询 {@link FileIntroVO} 需要的字段, 不加载 FileMetadataDO/FilePropsDO 实体
+ */
+public record FileIntroDTO(String id,
+                           String name,
+                           Boolean isFolder,
+                           String md5,
+                           Long size,
+                           Integer childrenCount,
+                           String contentType,
+                           LocalDateTime uploadDate,
+                           LocalDateTime updateDate,
+                           String userId,
+                           String path,
+                           String sortKey,
+                           String suffix,
+                           Boolean isFavorite,
+                           String mountFileId,
+                           String ossFolder,
+                           Boolean shareBase,
+                           Boolean subShare,
+                           List<Tag> tags,
+                           ShareProperties shareProps,
+                           OtherProperties props) implements Reflective {
+
+    public FileIntroVO toFileIntroVO() {
+        FileIntroVO fileIntroVO = new FileIntroVO();
+        fileIntroVO.setId(this.id);
+        fileIntroVO.setIsFolder(this.isFolder);
+        fileIntroVO.setName(this.name);
+        fileIntroVO.setMd5(this.md5);
+        fileIntroVO.setSize(this.size);
+        fileIntroVO.setChildrenCount(this.childrenCount);
+        fileIntroVO.setContentType(this.contentType);
+        fileIntroVO.setUploadDate(this.uploadDate);
+        fileIntroVO.setUpdateDate(this.updateDate);
+        fileIntroVO.setUserId(this.userId);
+        fileIntroVO.setPath(this.path);
+        fileIntroVO.setSortKey(this.sortKey);
+        fileIntroVO.setSuffix(this.suffix);
+        fileIntroVO.setIsFavorite(this.isFavorite);
+        fileIntroVO.setShareBase(this.shareBase);
+        fileIntroVO.setSubShare(this.subShare);
+        fileIntroVO.setTags(this.tags);
+        FilePropsDO.toFileIntroVOFragment(this.shareProps, this.props, fileIntroVO);
+        fileIntroVO.setMountFileId(this.mountFileId);
+        fileIntroVO.setOssFolder(this.ossFolder);
+        return fileIntroVO;
+    }
+}
@@ -0,0 +1,17 @@
+package com.jmal.clouddisk.model.file.dto;
+
+import com.jmal.clouddisk.config.Reflective;
+
+/**
+ * 文件夹直接子项的汇总
+ *
+ * @param size            直接子项的大小之和, 子文件夹的大小已是其子树的汇总值
+ * @param count           直接子项的数量
+ * @param descendantCount 子文件夹的 childrenCount 之和
+ */
+public record FolderSizeDTO(Long size, Long count, Long descendantCount) implements Reflective {
+
+    public long childrenCount() {
+        return (count == null ? 0 : count) + (descendantCount == null ? 0 : descendantCount);
+    }
+}
@@ -15,12 +15,14 @@ public class UpdateFile {
     private String contentType;
     private String suffix;
     private LocalDateTime updateDate;
+    private LocalDateTime scannedMtime;
 
     public boolean isNotEmpty() {
         return exif != null ||
                 video != null ||
                 contentType != null ||
                 suffix != null ||
-                updateDate != null;
+                updateDate != null ||
+                scannedMtime != null;
     }
 }
@@ -109,6 +109,11 @@ public class SearchDTO extends QueryBaseDTO implements Reflective {
      */
     Boolean includeFileContent;
 
+    /**
+     * 分页游标, 上一页返回的 nextCursor, 有值时忽略页码直接查询下一页
+     */
+    String cursor;
+
     public String getSearchUserId() {
         if (CharSequenceUtil.isEmpty(mountUserId)) {
             return userId;
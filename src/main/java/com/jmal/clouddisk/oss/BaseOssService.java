@@ -41,17 +41,9 @@ public class BaseOssService {
 
     private final FileProperties fileProperties;
     /**
-     * 目录下文件名列表缓存 </br>
-     * key: objectName </br>
-     * value: object下的文件名列表 </br>
-     */
-    private final Cache<String, List<FileInfo>> fileInfoListCache;
-    /**
-     * object缓存 </br>
-     * key: objectName </br>
-     * value: FileInfo </br>
+     * 目录树缓存, 缓存object的FileInfo和目录下的文件列表
      */
-    private final Cache<String, FileInfo> fileInfoCache;
+    private final OssListingCache listingCache;
     /**
      * 临时文件缓存 </br>
      * key: objectName </br>
@@ -76,6 +68,27 @@ public class BaseOssService {
 
     private final Set<String> objectNameLock = new CopyOnWriteArraySet<>();
 
+    /**
+     * 上传失败的次数 </br>
+     * key: objectName </br>
+     * value: 失败次数 </br>
+     */
+    private final Map<String, Integer> uploadFailures = new ConcurrentHashMap<>();
+
+    /**
+     * 上传失败后最多重试的次数
+     */
+    private static final int MAX_UPLOAD_RETRIES = 3;
+
+    private final OssUploadPipeline uploadPipeline;
+
+    /**
+     * 默认的目录列表缓存时间(秒)
+     */
+    private static final long DEFAULT_LIST_CACHE_TTL = 60;
+
+    private final ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
+
     private final String bucketName;
 
     private final IOssService ossService;
@@ -88,15 +101,25 @@ public class BaseOssService {
         this.bucketName = bucketName;
         this.proxyEnabled = BooleanUtil.isTrue(ossConfigDTO.getProxyEnabled());
         this.fileProperties = fileProperties;
+        this.scheduledThreadPoolExecutor = scheduledThreadPoolExecutor;
         scheduledThreadPoolExecutor.scheduleWithFixedDelay(this::checkUpload, 1, 1, TimeUnit.SECONDS);
-        this.fileInfoListCache = Caffeine.newBuilder().initialCapacity(128).maximumSize(1024).expireAfterWrite(5, TimeUnit.SECONDS).build();
-        this.fileInfoCache = Caffeine.newBuilder().initialCapacity(128).maximumSize(1024).expireAfterWrite(5, TimeUnit.SECONDS).build();
+        this.listingCache = new OssListingCache(TimeUnit.SECONDS.toMillis(getListCacheTtl(ossConfigDTO)));
+        scheduledThreadPoolExecutor.scheduleWithFixedDelay(listingCache::evictExpired, 1, 1, TimeUnit.MINUTES);
         this.tempFileCache = Caffeine.newBuilder().build();
         this.tempFileListCache = Caffeine.newBuilder().build();
         this.waitingUploadCache = Caffeine.newBuilder().build();
+        this.uploadPipeline = new OssUploadPipeline(ossService);
         log.info("{}配置加载成功, bucket: {}, username: {}, {}", ossService.getPlatform().getValue(), bucketName, ossConfigDTO.getUsername(), ossService.hashCode());
     }
 
+    /**
+     * 目录列表缓存时间(秒), 未配置时为 {@link #DEFAULT_LIST_CACHE_TTL}
+     */
+    private static long getListCacheTtl(OssConfigDTO ossConfigDTO) {
+        Integer listCacheTtl = ossConfigDTO.getListCacheTtl();
+        return listCacheTtl == null || listCacheTtl < 0 ? DEFAULT_LIST_CACHE_TTL : listCacheTtl;
+    }
+
     public String getUploadId(String objectName) {
         String uploadId;
         if (updateIdCache.containsKey(objectName)) {
@@ -205,15 +228,7 @@ public class BaseOssService {
     }
 
     public List<FileInfo> getFileInfoListCache(String objectName) {
-        return fileInfoListCache.get(objectName, _ -> {
-            List<FileInfo> fileInfos = ossService.getFileInfoList(objectName);
-            if (fileInfos != null && !fileInfos.isEmpty()) {
-                for (FileInfo fileInfo : fileInfos) {
-                    setFileInfoCache(fileInfo.getKey(), fileInfo);
-                }
-            }
-            return fileInfos;
-        });
+        return listingCache.getListing(objectName, ossService::getFileInfoList);
     }
 
     public AbstractOssObject getObject(String objectName) {
@@ -242,40 +257,7 @@ public class BaseOssService {
      */
     private void onDeleteSuccess(String objectName) {
         log.debug("delete success: {}", objectName);
-        FileInfo fileInfo = getFileInfoCache(objectName);
-        if (fileInfo != null) {
-            clearFileCache(objectName);
-            clearFileListCache(objectName);
-        }
-    }
-
-    private void clearFileListCache(String objectName) {
-        Path objectNamePath = Paths.get(objectName);
-        if (objectNamePath.getNameCount() > 1) {
-            String pathObjectName = objectNamePath.getParent().toString() + MyWebdavServlet.PATH_DELIMITER;
-            fileInfoListCache.invalidate(pathObjectName);
-            for (String key : fileInfoListCache.asMap().keySet()) {
-                if (key.startsWith(objectName)) {
-                    fileInfoListCache.invalidate(key);
-                }
-            }
-        } else {
-            fileInfoListCache.invalidate(objectName);
-            fileInfoListCache.invalidate("");
-        }
-    }
-
-    private void clearFileCache(String objectName) {
-        if (objectName.endsWith("/")) {
-            fileInfoCache.invalidate(objectName.substring(0,objectName.length() - 1));
-            for (String key : fileInfoCache.asMap().keySet()) {
-                if (key.startsWith(objectName)) {
-                    fileInfoCache.invalidate(key);
-                }
-            }
-        } else {
-            fileInfoCache.invalidate(objectName);
-        }
+        listingCache.onRemoved(objectName);
     }
 
     /**
@@ -285,9 +267,8 @@ public class BaseOssService {
      */
     public void onUploadSuccess(String objectName, Path tempFileAbsolutePath) {
         log.debug("put file success: {}", objectName);
-        setFileInfoCache(objectName, newFileInfo(objectName, tempFileAbsolutePath.toFile()));
+        listingCache.onChanged(objectName, newFileInfo(objectName, tempFileAbsolutePath.toFile()));
         clearTempFileCache(objectName);
-        clearFileListCache(objectName);
         removeWaitingUploadCache(objectName);
     }
 
@@ -298,9 +279,8 @@ public class BaseOssService {
      */
     public void onUploadSuccess(String objectName, Long fileSize) {
         log.debug("upload file success: {}", objectName);
-        setFileInfoCache(objectName, newFileInfo(objectName, fileSize));
+        listingCache.onChanged(objectName, newFileInfo(objectName, fileSize));
         clearTempFileCache(objectName);
-        clearFileListCache(objectName);
         removeWaitingUploadCache(objectName);
     }
 
@@ -311,8 +291,7 @@ public class BaseOssService {
      */
     private void onMkdirSuccess(String objectName, FileInfo fileInfo) {
         log.debug("mkdir success: {}", objectName);
-        setFileInfoCache(objectName, fileInfo);
-        clearFileListCache(objectName);
+        listingCache.onChanged(objectName, fileInfo);
     }
 
     /**
@@ -366,7 +345,7 @@ public class BaseOssService {
             // 临时文件的最后修改时间大于5秒就上传
             if ((System.currentTimeMillis() - lastModified) > 5000) {
                 removeWaitingUploadCache(objectName);
-                Completable.fromAction(() -> ossService.uploadFile(tempFileAbsolutePath, objectName))
+                Completable.fromAction(() -> uploadWaitingFile(objectName, tempFileAbsolutePath))
                         .subscribeOn(Schedulers.io())
                         .doOnError(e -> log.error(e.getMessage(), e))
                         .onErrorComplete()
@@ -375,6 +354,55 @@ public class BaseOssService {
         });
     }
 
+    /**
+     * 上传等待上传的临时文件, 失败后重新放回等待队列, 大文件的分片上传会从已上传的分片继续
+     * @param objectName objectName
+     * @param tempFileAbsolutePath 临时文件绝对路径
+     */
+    private void uploadWaitingFile(String objectName, Path tempFileAbsolutePath) {
+        if (!Files.exists(tempFileAbsolutePath)) {
+            uploadFailures.remove(objectName);
+            return;
+        }
+        printOperation(ossService.getPlatform().getKey(), "upload", objectName);
+        if (uploadPipeline.upload(tempFileAbsolutePath, objectName)) {
+            uploadFailures.remove(objectName);
+            return;
+        }
+        int failures = uploadFailures.merge(objectName, 1, Integer::sum);
+        if (failures > MAX_UPLOAD_RETRIES) {
+            uploadFailures.remove(objectName);
+            // 不再续传, 删除已上传的分片
+            uploadPipeline.abort(objectName);
+            log.error("上传失败, 已重试 {} 次: {}", MAX_UPLOAD_RETRIES, objectName);
+            return;
+        }
+        log.warn("上传失败, 稍后第 {} 次重试: {}", failures, objectName);
+        scheduledThreadPoolExecutor.schedule(() -> setWaitingUploadCache(objectName, tempFileAbsolutePath), 5L * failures, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 上传本地文件, 大文件分片并行上传
+     * @param file 本地文件
+     * @param objectName objectName
+     * @return 是否上传成功
+     */
+    public boolean transferFile(Path file, String objectName) {
+        printOperation(ossService.getPlatform().getKey(), "transferFile", objectName);
+        return uploadPipeline.upload(file, objectName);
+    }
+
+    /**
+     * 并发上传多个本地文件
+     * @param files key: 本地文件, value: objectName
+     * @param progress 上传进度
+     * @return 上传成功的objectName列表
+     */
+    public List<String> transferFiles(Map<Path, String> files, BulkProgress progress) {
+        printOperation(ossService.getPlatform().getKey(), "transferFiles", String.valueOf(files.size()));
+        return uploadPipeline.uploadAll(files, progress);
+    }
+
     public void addFileInfoList(String objectName, List<FileInfo> fileInfoList, S3ObjectSummary s3ObjectSummary) {
         if (!s3ObjectSummary.getKey().equals(objectName)) {
             FileInfo fileInfo = getFileInfo(s3ObjectSummary);
@@ -447,17 +475,14 @@ public class BaseOssService {
     }
 
     private void setFileInfoCache(String key, FileInfo fileInfo) {
-        if (key.length() > 1 && key.endsWith("/")) {
-            key = key.substring(0, key.length() - 1);
-        }
-        fileInfoCache.put(key, fileInfo);
+        listingCache.putFileInfo(key, fileInfo);
     }
 
     private FileInfo getFileInfoCache(String key) {
         if (key.length() > 1 && key.endsWith("/")) {
             key = key.substring(0, key.length() - 1);
         }
-        FileInfo fileInfo = fileInfoCache.getIfPresent(key);
+        FileInfo fileInfo = listingCache.getFileInfo(key);
         if (fileInfo == null) {
             Path path = getTempFileCache(key);
             if (path != null) {
@@ -566,8 +591,7 @@ public class BaseOssService {
     }
 
     public void clearCache(String objectName) {
-        clearFileCache(objectName);
-        clearFileListCache(objectName);
+        listingCache.invalidate(objectName);
     }
 
     public void closePrint() {
@@ -0,0 +1,19 @@
+package com.jmal.clouddisk.oss;
+
+/**
+ * 对象存储批量操作(复制/删除目录)的进度回调
+ * <p>
+ * 列举和处理同时进行, total 为目前已列举的对象数, 列举完成前会不断增加
+ */
+@FunctionalInterface
+public interface BulkProgress {
+
+    BulkProgress NONE = (_, _) -> {
+    };
+
+    /**
+     * @param completed 已处理的对象数
+     * @param total     已列举的对象数
+     */
+    void onProgress(long completed, long total);
+}
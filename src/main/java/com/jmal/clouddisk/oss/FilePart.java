@@ -0,0 +1,37 @@
+package com.jmal.clouddisk.oss;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 本地文件中的一个分片
+ *
+ * @param file     本地文件
+ * @param position 分片在文件中的起始位置
+ * @param size     分片大小
+ */
+public record FilePart(Path file, long position, int size) {
+
+    /**
+     * 打开分片的输入流, 直接从 FileChannel 读取, 每次调用都返回新的流, 使用后需要关闭
+     */
+    public InputStream openStream() throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            channel.position(position);
+            return BoundedInputStream.builder()
+                    .setInputStream(Channels.newInputStream(channel))
+                    .setMaxCount(size)
+                    .get();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.jmal.clouddisk.oss;
 
 import com.jmal.clouddisk.model.GridFSBO;
+import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -167,6 +170,38 @@ public interface IOssService {
      */
     boolean uploadFile(InputStream inputStream, String objectName, long inputStreamLength);
 
+    /**
+     * 上传本地文件到 OSS, 直接从文件读取, 不经过内存或临时文件缓冲
+     * @param file       本地文件
+     * @param objectName object key
+     * @param fileSize   文件大小
+     * @return 是否上传成功
+     */
+    default boolean uploadFile(Path file, String objectName, long fileSize) {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return uploadFile(inputStream, objectName, fileSize);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(IOssService.class).error("Error uploading file: {}", objectName, e);
+            return false;
+        }
+    }
+
+    /**
+     * 上传本地文件到 OSS, 大文件分片并行上传, 上传中断后再次上传时跳过已上传的分片
+     * @param file       本地文件
+     * @param objectName object key
+     * @return 是否上传成功
+     */
+    boolean transferFile(Path file, String objectName);
+
+    /**
+     * 并发上传多个本地文件到 OSS
+     * @param files    key: 本地文件, value: object key
+     * @param progress 上传进度
+     * @return 上传成功的objectName列表
+     */
+    List<String> transferFiles(Map<Path, String> files, BulkProgress progress);
+
     /**
      * 检查Bucket是否存在，并且验证配置是否可用，用于创建OSS配置时使用
      */
@@ -210,6 +245,23 @@ public interface IOssService {
      */
     boolean uploadPart(InputStream inputStream, String objectName, int partSize, int partNumber, String uploadId);
 
+    /**
+     * 从本地文件上传分片
+     * @param filePart   文件分片
+     * @param objectName objectName
+     * @param partNumber 分片编号
+     * @param uploadId   uploadId
+     * @return 分片是否上传成功
+     */
+    default boolean uploadPart(FilePart filePart, String objectName, int partNumber, String uploadId) {
+        try (InputStream inputStream = filePart.openStream()) {
+            return uploadPart(inputStream, objectName, filePart.size(), partNumber, uploadId);
+        } catch (IOException e) {
+            LoggerFactory.getLogger(IOssService.class).error("Error uploading part #{} for object: {}", partNumber, objectName, e);
+            return false;
+        }
+    }
+
     /**
      * 取消分片上传
      * @param objectName objectName
@@ -223,8 +275,9 @@ public interface IOssService {
      * @param objectName objectName
      * @param uploadId   uploadId
      * @param fileTotalSize 文件总大小
+     * @return 是否合并成功
      */
-    void completeMultipartUpload(String objectName, String uploadId, Long fileTotalSize);
+    boolean completeMultipartUpload(String objectName, String uploadId, Long fileTotalSize);
 
     void completeMultipartUploadWithParts(String objectName, String uploadId, List<PartInfo> partInfoList, Long fileTotalSize);
 
@@ -285,6 +338,20 @@ public interface IOssService {
      */
     List<String> copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey);
 
+    /**
+     * 拷贝对象(不同Bucket之间拷贝), 并回调复制进度
+     *
+     * @param sourceBucketName      源Bucket
+     * @param sourceKey             源objectName
+     * @param destinationBucketName 目标Bucket
+     * @param destinationKey        目标objectName
+     * @param progress              复制进度
+     * @return 复制成功的objectName列表
+     */
+    default List<String> copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey, BulkProgress progress) {
+        return copyObject(sourceBucketName, sourceKey, destinationBucketName, destinationKey);
+    }
+
     /**
      * 锁对象
      * @param objectName objectName
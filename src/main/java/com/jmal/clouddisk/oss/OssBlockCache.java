@@ -0,0 +1,339 @@
+package com.jmal.clouddisk.oss;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jmal.clouddisk.config.FileProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * oss 对象范围读取的磁盘块缓存
+ * <p>
+ * 对象按 {@link #BLOCK_SIZE} 对齐分块, 缓存文件位于 ${rootDir}/${chunkFileDir}/${ossBlockCacheDir},
+ * 以 ossPath + objectName + etag + 对象大小 的摘要作为目录名, 块序号作为文件名, 对象变化后 etag 随之变化, 旧的块在空间超限时按最近访问时间淘汰。
+ * 同一个块的并发读取只会请求一次 oss, 检测到顺序读取时预读后面的块。
+ * 每次请求最多从缓存输出 {@link #MAX_RANGE_BLOCKS} 个块, 不限结束位置的范围(视频拖动)和大范围只缓存开头的部分, 其余部分由调用方直接读取 oss。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OssBlockCache {
+
+    /**
+     * 块大小
+     */
+    static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * 顺序读取时预读的块数
+     */
+    private static final int READ_AHEAD_BLOCKS = 2;
+
+    /**
+     * 每次请求最多从缓存输出的块数, 超出的部分(如整个文件的下载)直接读取 oss, 避免占满缓存
+     */
+    static final int MAX_RANGE_BLOCKS = 4;
+
+    private static final long BYTES_PER_MB = 1024L * 1024;
+
+    /**
+     * 淘汰后保留的空间比例
+     */
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    /**
+     * 访问时间的刷新间隔, 避免每次命中都写一次文件元数据
+     */
+    private static final long TOUCH_INTERVAL_MILLIS = 60_000L;
+
+    private final FileProperties fileProperties;
+
+    /**
+     * 正在从 oss 读取的块
+     * key: 对象key + 块序号
+     */
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 对象最近一次读取的块序号, 用于识别顺序读取
+     * key: 对象key
+     */
+    private final Cache<String, Long> lastBlockCache = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .expireAfterAccess(30, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 缓存目录当前占用的大小, -1 表示尚未统计
+     */
+    private final AtomicLong cacheSize = new AtomicLong(-1);
+
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    /**
+     * 通过块缓存输出对象一段内容的开头部分
+     *
+     * @param ossPath      oss路径前缀
+     * @param ossService   ossService
+     * @param objectName   objectName
+     * @param eTag         对象的etag, 为空时不使用缓存
+     * @param length       对象大小
+     * @param rangeStart   开始位置(包含)
+     * @param rangeEnd     结束位置(包含)
+     * @param outputStream 输出流
+     * @return 下一个还未输出的位置, 大于 rangeEnd 时已全部输出, 否则调用方需要从该位置开始直接读取 oss
+     */
+    public long copyRange(String ossPath, IOssService ossService, String objectName, String eTag, long length,
+                          long rangeStart, long rangeEnd, OutputStream outputStream) throws IOException {
+        if (CharSequenceUtil.isBlank(eTag) || length <= 0 || rangeStart > rangeEnd) {
+            return rangeStart;
+        }
+        long firstBlock = rangeStart / BLOCK_SIZE;
+        long lastBlock = Math.min(rangeEnd / BLOCK_SIZE, firstBlock + MAX_RANGE_BLOCKS - 1);
+        // 剩余部分直接读取 oss 时不需要预读
+        boolean readAhead = lastBlock == rangeEnd / BLOCK_SIZE;
+        String objectKey = SecureUtil.sha256(ossPath + "|" + objectName + "|" + eTag + "|" + length);
+        byte[] buffer = new byte[64 * 1024];
+        long position = rangeStart;
+        for (long index = firstBlock; index <= lastBlock; index++) {
+            readAhead(ossService, objectName, objectKey, length, index, readAhead);
+            Path block = getBlock(ossService, objectName, objectKey, length, index);
+            if (block == null) {
+                // 剩余部分由调用方直接读取
+                return position;
+            }
+            long blockStart = index * BLOCK_SIZE;
+            long from = position - blockStart;
+            long to = Math.min(rangeEnd, blockStart + BLOCK_SIZE - 1) - blockStart;
+            writeBlock(block, from, to - from + 1, buffer, outputStream);
+            position = blockStart + to + 1;
+        }
+        return position;
+    }
+
+    private static void writeBlock(Path block, long position, long count, byte[] buffer, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(block, StandardOpenOption.READ)) {
+            channel.position(position);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long remaining = count;
+            while (remaining > 0) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, remaining));
+                int read = channel.read(byteBuffer);
+                if (read < 0) {
+                    throw new IOException("缓存块不完整: " + block);
+                }
+                outputStream.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * 读取的块紧跟在上一次读取的块之后时, 认为是顺序读取, 异步预读后面的块
+     *
+     * @param prefetch 是否预读, 为 false 时只记录读取位置
+     */
+    private void readAhead(IOssService ossService, String objectName, String objectKey, long length, long index, boolean prefetch) {
+        Long previous = lastBlockCache.getIfPresent(objectKey);
+        lastBlockCache.put(objectKey, index);
+        if (!prefetch || previous == null || index != previous + 1) {
+            return;
+        }
+        long blockCount = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (long next = index + 1; next <= index + READ_AHEAD_BLOCKS && next < blockCount; next++) {
+            long blockIndex = next;
+            if (Files.isRegularFile(getBlockPath(objectKey, blockIndex)) || inFlight.containsKey(objectKey + blockIndex)) {
+                continue;
+            }
+            Thread.ofVirtual().name("ossReadAhead").start(() -> getBlock(ossService, objectName, objectKey, length, blockIndex));
+        }
+    }
+
+    /**
+     * 获取缓存的块, 不存在则从 oss 读取
+     *
+     * @return 块文件, 读取失败时返回 null
+     */
+    private Path getBlock(IOssService ossService, String objectName, String objectKey, long length, long index) {
+        Path target = getBlockPath(objectKey, index);
+        if (Files.isRegularFile(target)) {
+            touch(target);
+            return target;
+        }
+        String key = objectKey + index;
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                return null;
+            }
+        }
+        try {
+            Path result = fetch(ossService, objectName, target, length, index);
+            future.complete(result);
+            return result;
+        } catch (Exception e) {
+            log.warn("读取oss对象块失败, objectName: {}, block: {}, {}", objectName, index, e.getMessage());
+            future.completeExceptionally(e);
+            return null;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private Path fetch(IOssService ossService, String objectName, Path target, long length, long index) throws IOException {
+        // 可能在等待期间已经被其他请求读取
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        long start = index * BLOCK_SIZE;
+        long end = Math.min(start + BLOCK_SIZE, length) - 1;
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp" + Thread.currentThread().threadId());
+        try {
+            try (AbstractOssObject ossObject = ossService.getAbstractOssObject(objectName, start, end)) {
+                if (ossObject == null) {
+                    throw new IOException("oss对象不存在");
+                }
+                try (InputStream inputStream = ossObject.getInputStream()) {
+                    Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            long size = Files.size(temp);
+            if (size != end - start + 1) {
+                throw new IOException("读取的块大小不一致, 期望: " + (end - start + 1) + ", 实际: " + size);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            addSize(size);
+            return target;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getBlockPath(String objectKey, long index) {
+        return getCacheDir().resolve(objectKey.substring(0, 2)).resolve(objectKey).resolve(Long.toString(index));
+    }
+
+    private Path getCacheDir() {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), fileProperties.getOssBlockCacheDir());
+    }
+
+    private static void touch(Path path) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(path).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            log.debug("更新oss块缓存访问时间失败: {}", path);
+        }
+    }
+
+    private void addSize(long size) {
+        if (cacheSize.get() < 0) {
+            cacheSize.compareAndSet(-1, calculateCacheSize());
+        } else {
+            cacheSize.addAndGet(size);
+        }
+        if (cacheSize.get() > getMaxSize()) {
+            Thread.ofVirtual().name("ossBlockCacheEvict").start(this::evict);
+        }
+    }
+
+    private long getMaxSize() {
+        return fileProperties.getOssBlockCacheMaxSizeMB() * BYTES_PER_MB;
+    }
+
+    private long calculateCacheSize() {
+        Path cacheDir = getCacheDir();
+        if (!Files.isDirectory(cacheDir)) {
+            return 0;
+        }
+        return FileUtil.size(cacheDir.toFile());
+    }
+
+    /**
+     * 按最近访问时间淘汰块文件, 直到占用空间低于上限的 {@link #EVICT_TARGET_RATIO}
+     */
+    private void evict() {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> stream = Files.walk(getCacheDir())) {
+                stream.filter(Files::isRegularFile)
+                        .filter(path -> !path.getFileName().toString().contains(".tmp"))
+                        .forEach(files::add);
+            }
+            files.sort(Comparator.comparingLong(OssBlockCache::lastModified));
+            long total = 0;
+            for (Path file : files) {
+                total += FileUtil.size(file.toFile());
+            }
+            long target = (long) (getMaxSize() * EVICT_TARGET_RATIO);
+            for (Path file : files) {
+                if (total <= target) {
+                    break;
+                }
+                long size = FileUtil.size(file.toFile());
+                if (Files.deleteIfExists(file)) {
+                    total -= size;
+                    deleteIfEmpty(file.getParent());
+                }
+            }
+            cacheSize.set(total);
+            log.debug("oss块缓存淘汰完成, 当前占用: {}MB", total / BYTES_PER_MB);
+        } catch (IOException e) {
+            log.warn("oss块缓存淘汰失败: {}", e.getMessage());
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static void deleteIfEmpty(Path dir) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            if (!stream.iterator().hasNext()) {
+                Files.deleteIfExists(dir);
+            }
+        } catch (IOException e) {
+            log.debug("删除oss块缓存目录失败: {}", dir);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+}
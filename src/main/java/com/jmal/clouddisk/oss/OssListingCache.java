@@ -0,0 +1,337 @@
+package com.jmal.clouddisk.oss;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * oss 目录树缓存
+ * <p>
+ * 按路径分段组织节点, 每个节点缓存对象自身的 {@link FileInfo} 和目录下的文件列表。
+ * 查找和按前缀失效都只需要沿路径走一遍, 复杂度为路径深度, 与缓存的对象数无关。
+ * 本服务对对象的修改(上传/创建文件夹/删除)直接写入缓存, 外部对 bucket 的修改在缓存过期后可见
+ */
+class OssListingCache {
+
+    /**
+     * 最多缓存的节点数, 超出后清空
+     */
+    private static final int MAX_NODES = 100_000;
+
+    private final long ttlMillis;
+
+    private volatile Node root = new Node();
+
+    private final AtomicInteger nodeCount = new AtomicInteger();
+
+    OssListingCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private volatile Cached<FileInfo> fileInfo;
+        private volatile Cached<List<FileInfo>> listing;
+        /**
+         * 每次修改递增, 用于丢弃修改前发起的列举结果
+         */
+        private final AtomicLong version = new AtomicLong();
+    }
+
+    private record Cached<T>(T value, long expireAt) {
+        boolean isValid(long now) {
+            return now < expireAt;
+        }
+    }
+
+    /**
+     * 获取对象的 FileInfo
+     *
+     * @param objectName objectName, 结尾带不带"/"都可以
+     * @return FileInfo, 不存在或已过期时返回 null
+     */
+    FileInfo getFileInfo(String objectName) {
+        Node node = find(objectName);
+        if (node == null) {
+            return null;
+        }
+        Cached<FileInfo> cached = node.fileInfo;
+        return cached != null && cached.isValid(System.currentTimeMillis()) ? cached.value() : null;
+    }
+
+    void putFileInfo(String objectName, FileInfo fileInfo) {
+        findOrCreate(objectName).fileInfo = new Cached<>(fileInfo, expireAt());
+    }
+
+    /**
+     * 获取目录下的文件列表, 不存在或已过期时通过 loader 列举
+     *
+     * @param objectName 目录的objectName, 以"/"结尾, 根目录为 "" 或 "/"
+     * @param loader     列举方法
+     * @return 文件列表
+     */
+    List<FileInfo> getListing(String objectName, Function<String, List<FileInfo>> loader) {
+        if (!isDirectory(objectName)) {
+            // 不是目录的前缀, 列举结果不属于某个目录, 不缓存
+            List<FileInfo> fileInfoList = loader.apply(objectName);
+            putChildren(fileInfoList);
+            return fileInfoList;
+        }
+        Node node = findOrCreate(objectName);
+        List<FileInfo> fileInfoList = getValidListing(node);
+        if (fileInfoList != null) {
+            return fileInfoList;
+        }
+        // 同一个目录同时只列举一次
+        synchronized (node) {
+            fileInfoList = getValidListing(node);
+            if (fileInfoList != null) {
+                return fileInfoList;
+            }
+            long version = node.version.get();
+            fileInfoList = loader.apply(objectName);
+            if (fileInfoList == null) {
+                return null;
+            }
+            putChildren(fileInfoList);
+            if (node.version.get() == version) {
+                node.listing = new Cached<>(fileInfoList, expireAt());
+            }
+            return fileInfoList;
+        }
+    }
+
+    /**
+     * 本服务新增或修改了对象, 更新对象自身和父目录的文件列表
+     *
+     * @param objectName objectName
+     * @param fileInfo   FileInfo
+     */
+    void onChanged(String objectName, FileInfo fileInfo) {
+        putFileInfo(objectName, fileInfo);
+        String parentName = getParentName(objectName);
+        Node parent = find(parentName);
+        if (parent == null) {
+            return;
+        }
+        parent.version.incrementAndGet();
+        Cached<List<FileInfo>> cached = parent.listing;
+        if (cached != null && cached.isValid(System.currentTimeMillis())) {
+            String key = trimSlash(objectName);
+            List<FileInfo> fileInfoList = new ArrayList<>(cached.value().size() + 1);
+            for (FileInfo info : cached.value()) {
+                if (!trimSlash(info.getKey()).equals(key)) {
+                    fileInfoList.add(info);
+                }
+            }
+            fileInfoList.add(fileInfo);
+            parent.listing = new Cached<>(fileInfoList, cached.expireAt());
+        }
+        invalidateMissingAncestors(parentName);
+    }
+
+    /**
+     * 上传到尚不存在的目录时, oss 中会隐式出现上级目录, 已缓存的上级目录列表中没有这些目录时使其失效
+     *
+     * @param objectName 新对象所在的目录
+     */
+    private void invalidateMissingAncestors(String objectName) {
+        String key = trimSlash(objectName);
+        while (!key.isEmpty()) {
+            String parentName = getParentName(key);
+            Node parent = find(parentName);
+            if (parent == null) {
+                return;
+            }
+            Cached<List<FileInfo>> cached = parent.listing;
+            if (cached != null && cached.isValid(System.currentTimeMillis())) {
+                String childKey = key;
+                if (cached.value().stream().anyMatch(info -> trimSlash(info.getKey()).equals(childKey))) {
+                    return;
+                }
+                parent.version.incrementAndGet();
+                parent.listing = null;
+            }
+            key = trimSlash(parentName);
+        }
+    }
+
+    /**
+     * 本服务删除了对象, 移除对象及其下的所有缓存, 并从父目录的文件列表中移除
+     *
+     * @param objectName objectName
+     */
+    void onRemoved(String objectName) {
+        detach(objectName);
+        Node parent = find(getParentName(objectName));
+        if (parent == null) {
+            return;
+        }
+        parent.version.incrementAndGet();
+        Cached<List<FileInfo>> cached = parent.listing;
+        if (cached == null || !cached.isValid(System.currentTimeMillis())) {
+            return;
+        }
+        String key = trimSlash(objectName);
+        List<FileInfo> fileInfoList = cached.value().stream().filter(info -> !trimSlash(info.getKey()).equals(key)).toList();
+        parent.listing = new Cached<>(new ArrayList<>(fileInfoList), cached.expireAt());
+    }
+
+    /**
+     * 使对象及其下的所有缓存失效, 同时使父目录的文件列表失效
+     *
+     * @param objectName objectName
+     */
+    void invalidate(String objectName) {
+        if (trimSlash(objectName).isEmpty()) {
+            clear();
+            return;
+        }
+        detach(objectName);
+        Node parent = find(getParentName(objectName));
+        if (parent != null) {
+            parent.version.incrementAndGet();
+            parent.listing = null;
+        }
+    }
+
+    void clear() {
+        root = new Node();
+        nodeCount.set(0);
+    }
+
+    /**
+     * 清理过期的缓存和没有缓存内容的节点
+     */
+    void evictExpired() {
+        long now = System.currentTimeMillis();
+        nodeCount.set(evictExpired(root, now));
+    }
+
+    /**
+     * @return 剩余的子孙节点数
+     */
+    private int evictExpired(Node node, long now) {
+        int count = 0;
+        Iterator<Node> iterator = node.children.values().iterator();
+        while (iterator.hasNext()) {
+            Node child = iterator.next();
+            int descendants = evictExpired(child, now);
+            Cached<FileInfo> fileInfo = child.fileInfo;
+            if (fileInfo != null && !fileInfo.isValid(now)) {
+                child.fileInfo = null;
+            }
+            Cached<List<FileInfo>> listing = child.listing;
+            if (listing != null && !listing.isValid(now)) {
+                child.listing = null;
+            }
+            if (descendants == 0 && child.fileInfo == null && child.listing == null) {
+                iterator.remove();
+            } else {
+                count += descendants + 1;
+            }
+        }
+        return count;
+    }
+
+    private List<FileInfo> getValidListing(Node node) {
+        Cached<List<FileInfo>> cached = node.listing;
+        return cached != null && cached.isValid(System.currentTimeMillis()) ? cached.value() : null;
+    }
+
+    private void putChildren(List<FileInfo> fileInfoList) {
+        if (fileInfoList == null) {
+            return;
+        }
+        for (FileInfo fileInfo : fileInfoList) {
+            putFileInfo(fileInfo.getKey(), fileInfo);
+        }
+    }
+
+    /**
+     * 从父节点上摘除对象的节点, 其下的所有节点随之失效
+     */
+    private void detach(String objectName) {
+        String[] segments = segments(objectName);
+        if (segments.length == 0) {
+            clear();
+            return;
+        }
+        Node parent = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            parent = parent.children.get(segments[i]);
+            if (parent == null) {
+                return;
+            }
+        }
+        Node node = parent.children.remove(segments[segments.length - 1]);
+        if (node != null) {
+            node.version.incrementAndGet();
+        }
+    }
+
+    private Node find(String objectName) {
+        Node node = root;
+        for (String segment : segments(objectName)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node findOrCreate(String objectName) {
+        if (nodeCount.get() > MAX_NODES) {
+            clear();
+        }
+        Node node = root;
+        for (String segment : segments(objectName)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = node.children.computeIfAbsent(segment, _ -> {
+                    nodeCount.incrementAndGet();
+                    return new Node();
+                });
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private long expireAt() {
+        return System.currentTimeMillis() + ttlMillis;
+    }
+
+    private static boolean isDirectory(String objectName) {
+        return objectName.isEmpty() || objectName.endsWith("/");
+    }
+
+    private static String[] segments(String objectName) {
+        String key = trimSlash(objectName);
+        return key.isEmpty() ? new String[0] : key.split("/");
+    }
+
+    private static String getParentName(String objectName) {
+        String key = trimSlash(objectName);
+        int index = key.lastIndexOf('/');
+        return index < 0 ? "" : key.substring(0, index + 1);
+    }
+
+    private static String trimSlash(String objectName) {
+        int start = 0;
+        int end = objectName.length();
+        while (start < end && objectName.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && objectName.charAt(end - 1) == '/') {
+            end--;
+        }
+        return objectName.substring(start, end);
+    }
+}
@@ -0,0 +1,229 @@
+package com.jmal.clouddisk.oss;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 本地文件上传到 oss 的传输管道
+ * <p>
+ * 大文件按固定大小分片, 各分片直接从 FileChannel 读取并行上传; 小文件直接 put, 多个文件并发上传。
+ * 所有请求共用 {@link #MAX_CONNECTIONS} 个连接的额度, 避免占满 oss 客户端的连接池。
+ * 分片上传失败时不取消, 文件未变化的情况下再次上传会通过 {@link IOssService#getListParts} 跳过已上传的分片
+ */
+@Slf4j
+class OssUploadPipeline {
+
+    /**
+     * 超过该大小使用分片上传
+     */
+    static final long MULTIPART_THRESHOLD = 64 * 1024 * 1024L;
+
+    /**
+     * 最小分片大小
+     */
+    private static final int MIN_PART_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 最大分片数
+     */
+    private static final int MAX_PART_COUNT = 10000;
+
+    /**
+     * 同时进行的 oss 请求数
+     */
+    private static final int MAX_CONNECTIONS = 16;
+
+    /**
+     * 批量上传时同时上传的文件数
+     */
+    private static final int FILE_PARALLELISM = 16;
+
+    private final IOssService ossService;
+
+    private final Semaphore connections = new Semaphore(MAX_CONNECTIONS);
+
+    /**
+     * 未完成的分片上传
+     * key: objectName
+     */
+    private final Map<String, MultipartPlan> multipartPlans = new ConcurrentHashMap<>();
+
+    /**
+     * 分片上传计划, 文件大小或修改时间变化后不能续传
+     */
+    private record MultipartPlan(String uploadId, long fileSize, long lastModified, int partSize) {
+    }
+
+    OssUploadPipeline(IOssService ossService) {
+        this.ossService = ossService;
+    }
+
+    /**
+     * 上传单个文件
+     *
+     * @return 是否上传成功
+     */
+    boolean upload(Path file, String objectName) {
+        long fileSize;
+        long lastModified;
+        try {
+            fileSize = Files.size(file);
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            log.warn("读取文件失败: {}, {}", file, e.getMessage());
+            return false;
+        }
+        if (fileSize <= MULTIPART_THRESHOLD) {
+            return withConnection(() -> ossService.uploadFile(file, objectName, fileSize));
+        }
+        return multipartUpload(file, objectName, fileSize, lastModified);
+    }
+
+    /**
+     * 并发上传多个文件
+     *
+     * @param files key: 本地文件, value: objectName
+     * @return 上传成功的objectName列表
+     */
+    List<String> uploadAll(Map<Path, String> files, BulkProgress progress) {
+        Queue<String> uploaded = new ConcurrentLinkedQueue<>();
+        AtomicLong completed = new AtomicLong();
+        long total = files.size();
+        Semaphore permits = new Semaphore(FILE_PARALLELISM);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<Path, String> entry : files.entrySet()) {
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        if (upload(entry.getKey(), entry.getValue())) {
+                            uploaded.add(entry.getValue());
+                        }
+                    } finally {
+                        permits.release();
+                        progress.onProgress(completed.incrementAndGet(), total);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            log.warn("上传被中断, 已上传: {}/{}", uploaded.size(), total);
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(uploaded);
+    }
+
+    private boolean multipartUpload(Path file, String objectName, long fileSize, long lastModified) {
+        MultipartPlan plan = getMultipartPlan(objectName, fileSize, lastModified);
+        if (plan == null) {
+            return false;
+        }
+        int partCount = (int) ((fileSize + plan.partSize() - 1) / plan.partSize());
+        Set<Integer> uploadedParts = Set.copyOf(ossService.getListParts(objectName, plan.uploadId()));
+        if (!uploadedParts.isEmpty()) {
+            log.info("续传 {}, 已上传分片: {}/{}", objectName, uploadedParts.size(), partCount);
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> futures = new ArrayList<>(partCount);
+            for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+                if (uploadedParts.contains(partNumber)) {
+                    continue;
+                }
+                long position = (long) (partNumber - 1) * plan.partSize();
+                FilePart filePart = new FilePart(file, position, (int) Math.min(plan.partSize(), fileSize - position));
+                int number = partNumber;
+                futures.add(executor.submit(() -> withConnection(() -> ossService.uploadPart(filePart, objectName, number, plan.uploadId()))));
+            }
+            boolean success = true;
+            for (Future<Boolean> future : futures) {
+                success &= future.get();
+            }
+            if (!success) {
+                log.warn("分片上传未完成, 稍后可续传: {}", objectName);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.error("分片上传失败: {}", objectName, e.getCause());
+            return false;
+        }
+        if (!ossService.completeMultipartUpload(objectName, plan.uploadId(), fileSize)) {
+            log.error("合并分片失败: {}", objectName);
+            return false;
+        }
+        multipartPlans.remove(objectName);
+        return true;
+    }
+
+    /**
+     * 放弃未完成的分片上传, 删除已上传的分片
+     */
+    void abort(String objectName) {
+        MultipartPlan plan = multipartPlans.remove(objectName);
+        if (plan != null) {
+            ossService.abortMultipartUpload(objectName, plan.uploadId());
+        }
+    }
+
+    /**
+     * 获取分片上传计划, 文件未变化时沿用上次未完成的上传
+     */
+    private MultipartPlan getMultipartPlan(String objectName, long fileSize, long lastModified) {
+        MultipartPlan plan = multipartPlans.get(objectName);
+        if (plan != null) {
+            if (plan.fileSize() == fileSize && plan.lastModified() == lastModified) {
+                return plan;
+            }
+            ossService.abortMultipartUpload(objectName, plan.uploadId());
+            multipartPlans.remove(objectName);
+        }
+        String uploadId = ossService.initiateMultipartUpload(objectName);
+        if (uploadId == null) {
+            return null;
+        }
+        plan = new MultipartPlan(uploadId, fileSize, lastModified, getPartSize(fileSize));
+        multipartPlans.put(objectName, plan);
+        return plan;
+    }
+
+    /**
+     * 分片大小, 不小于 {@link #MIN_PART_SIZE}, 分片数不超过 {@link #MAX_PART_COUNT}, 按 1MB 对齐
+     */
+    private static int getPartSize(long fileSize) {
+        long unit = 1024 * 1024L;
+        long partSize = (fileSize + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+        partSize = (partSize + unit - 1) / unit * unit;
+        return (int) Math.max(MIN_PART_SIZE, partSize);
+    }
+
+    private boolean withConnection(BooleanSupplier request) {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            return request.getAsBoolean();
+        } finally {
+            connections.release();
+        }
+    }
+}
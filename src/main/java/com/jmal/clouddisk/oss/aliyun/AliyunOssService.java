@@ -46,6 +46,7 @@ import com.jmal.clouddisk.model.GridFSBO;
 import com.jmal.clouddisk.model.Metadata;
 import com.jmal.clouddisk.oss.AbstractOssObject;
 import com.jmal.clouddisk.oss.BaseOssService;
+import com.jmal.clouddisk.oss.BulkProgress;
 import com.jmal.clouddisk.oss.FileInfo;
 import com.jmal.clouddisk.oss.IOssService;
 import com.jmal.clouddisk.oss.PartInfo;
@@ -516,16 +517,22 @@ public class AliyunOssService implements IOssService {
     }
 
     @Override
-    public void completeMultipartUpload(String objectName, String uploadId, Long totalSize) {
+    public boolean completeMultipartUpload(String objectName, String uploadId, Long totalSize) {
         baseOssService.printOperation(getPlatform().getKey(), "completeMultipartUpload", objectName);
-        List<PartETag> partETags = getPartETagList(objectName, uploadId);
-        // 创建CompleteMultipartUploadRequest对象。
-        // 在执行完成分片上传操作时，需要提供所有有效的partETags。OSS收到提交的partETags后，会逐一验证每个分片的有效性。当所有的数据分片验证通过后，OSS将把这些分片组合成一个完整的文件。
-        CompleteMultipartUploadRequest completeMultipartUploadRequest =
-                new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, partETags);
-        // 完成分片上传。
-        ossClient.completeMultipartUpload(completeMultipartUploadRequest);
+        try {
+            List<PartETag> partETags = getPartETagList(objectName, uploadId);
+            // 创建CompleteMultipartUploadRequest对象。
+            // 在执行完成分片上传操作时，需要提供所有有效的partETags。OSS收到提交的partETags后，会逐一验证每个分片的有效性。当所有的数据分片验证通过后，OSS将把这些分片组合成一个完整的文件。
+            CompleteMultipartUploadRequest completeMultipartUploadRequest =
+                    new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, partETags);
+            // 完成分片上传。
+            ossClient.completeMultipartUpload(completeMultipartUploadRequest);
+        } catch (OSSException | ClientException e) {
+            log.error(e.getMessage(), e);
+            return false;
+        }
         baseOssService.onUploadSuccess(objectName, totalSize);
+        return true;
     }
 
     @Override
@@ -610,6 +617,31 @@ public class AliyunOssService implements IOssService {
         }
     }
 
+    @Override
+    public boolean uploadFile(Path file, String objectName, long fileSize) {
+        try {
+            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, objectName, file.toFile());
+            ossClient.putObject(putObjectRequest);
+            baseOssService.onUploadSuccess(objectName, fileSize);
+            return true;
+        } catch (OSSException oe) {
+            log.error(oe.getMessage(), oe);
+        } catch (ClientException ce) {
+            log.error(ce.getMessage(), ce);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean transferFile(Path file, String objectName) {
+        return baseOssService.transferFile(file, objectName);
+    }
+
+    @Override
+    public List<String> transferFiles(Map<Path, String> files, BulkProgress progress) {
+        return baseOssService.transferFiles(files, progress);
+    }
+
     @Override
     public boolean uploadFile(InputStream inputStream, String objectName, long inputStreamLength) {
         try {
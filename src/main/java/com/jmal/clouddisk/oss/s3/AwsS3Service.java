@@ -11,7 +11,9 @@ import com.jmal.clouddisk.model.GridFSBO;
 import com.jmal.clouddisk.model.Metadata;
 import com.jmal.clouddisk.oss.AbstractOssObject;
 import com.jmal.clouddisk.oss.BaseOssService;
+import com.jmal.clouddisk.oss.BulkProgress;
 import com.jmal.clouddisk.oss.FileInfo;
+import com.jmal.clouddisk.oss.FilePart;
 import com.jmal.clouddisk.oss.IOssService;
 import com.jmal.clouddisk.oss.PartInfo;
 import com.jmal.clouddisk.oss.PlatformOSS;
@@ -28,6 +30,7 @@ import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
@@ -43,7 +46,6 @@ import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
-import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
@@ -77,6 +79,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -100,6 +103,7 @@ public class AwsS3Service implements IOssService {
     private final S3Client s3Client;
     private final S3Presigner s3Presigner; // 用于生成预签名URL
     private final BaseOssService baseOssService;
+    private final S3BulkOperation s3BulkOperation;
     private final ScheduledThreadPoolExecutor scheduledThreadPoolExecutor;
     private boolean hasHistoryVersion = true;
 
@@ -134,6 +138,8 @@ public class AwsS3Service implements IOssService {
                 .region(Region.of(region))
                 .build();
 
+        this.s3BulkOperation = new S3BulkOperation(s3Client);
+
         scheduledThreadPoolExecutor = ThreadUtil.createScheduledExecutor(1);
         this.baseOssService = new BaseOssService(this, bucketName, fileProperties, scheduledThreadPoolExecutor, ossConfigDTO);
 
@@ -314,29 +320,10 @@ public class AwsS3Service implements IOssService {
     public boolean deleteDir(String objectName) {
         try {
             baseOssService.printOperation(getPlatform().getKey(), "deleteDir", objectName);
-            // 1. 列出目录下所有对象
-            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
-                    .bucket(bucketName)
-                    .prefix(objectName)
-                    .build();
-            List<ObjectIdentifier> keysToDelete = s3Client.listObjectsV2Paginator(listRequest)
-                    .contents().stream()
-                    .map(s3Object -> ObjectIdentifier.builder().key(s3Object.key()).build())
-                    .collect(Collectors.toList());
-
-            // 如果文件夹为空，直接返回成功
-            if (keysToDelete.isEmpty()) {
-                return true;
-            }
+            // 1. 边列举边删除目录下所有对象, 每批最多1000个
+            boolean deleted = s3BulkOperation.deletePrefix(bucketName, objectName, BulkProgress.NONE);
 
-            // 2. 批量删除
-            DeleteObjectsRequest deleteRequest = DeleteObjectsRequest.builder()
-                    .bucket(bucketName)
-                    .delete(Delete.builder().objects(keysToDelete).build())
-                    .build();
-            DeleteObjectsResponse response = s3Client.deleteObjects(deleteRequest);
-
-            // 3. 删除自身（如果有的话）
+            // 2. 删除自身（如果有的话）
             try {
                 DeleteObjectRequest selfDeleteRequest = DeleteObjectRequest.builder()
                         .bucket(bucketName)
@@ -346,14 +333,7 @@ public class AwsS3Service implements IOssService {
             } catch (Exception e) {
                 log.debug("No self object to delete for directory: {}", objectName);
             }
-
-            // 检查是否有删除失败的对象
-            if (response.hasErrors()) {
-                response.errors().forEach(error ->
-                        log.error("Error deleting object {}: {}", error.key(), error.message()));
-                return false;
-            }
-            return true;
+            return deleted;
         } catch (Exception e) {
             log.error("Error deleting directory: {}", objectName, e);
             return false;
@@ -445,6 +425,33 @@ public class AwsS3Service implements IOssService {
         return false;
     }
 
+    @Override
+    public boolean uploadFile(Path file, String objectName, long fileSize) {
+        try {
+            PutObjectRequest request = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(objectName)
+                    .contentType(baseOssService.getContentType(objectName))
+                    .build();
+            s3Client.putObject(request, RequestBody.fromFile(file));
+            baseOssService.onUploadSuccess(objectName, fileSize);
+            return true;
+        } catch (Exception e) {
+            log.error("Error uploading file: {}", objectName, e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean transferFile(Path file, String objectName) {
+        return baseOssService.transferFile(file, objectName);
+    }
+
+    @Override
+    public List<String> transferFiles(Map<Path, String> files, BulkProgress progress) {
+        return baseOssService.transferFiles(files, progress);
+    }
+
     /**
      * 一个智能的、适应不同 InputStream 来源的 RequestBody。
      * 这是解决 mark/reset 问题的核心。
@@ -543,6 +550,31 @@ public class AwsS3Service implements IOssService {
         }
     }
 
+    @Override
+    public boolean uploadPart(FilePart filePart, String objectName, int partNumber, String uploadId) {
+        try {
+            UploadPartRequest request = UploadPartRequest.builder()
+                    .bucket(bucketName)
+                    .key(objectName)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .build();
+            // 直接从文件读取分片, 重试时重新打开, 不需要缓冲
+            ContentStreamProvider provider = () -> {
+                try {
+                    return filePart.openStream();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            s3Client.uploadPart(request, RequestBody.fromContentProvider(provider, filePart.size(), "application/octet-stream"));
+            return true;
+        } catch (Exception e) {
+            log.error("Error uploading part #{} for object: {}", partNumber, objectName, e);
+            return false;
+        }
+    }
+
     private List<Part> getPartsList(String objectName, String uploadId) {
         try {
             ListPartsRequest request = ListPartsRequest.builder()
@@ -572,7 +604,7 @@ public class AwsS3Service implements IOssService {
     }
 
     @Override
-    public void completeMultipartUpload(String objectName, String uploadId, Long fileTotalSize) {
+    public boolean completeMultipartUpload(String objectName, String uploadId, Long fileTotalSize) {
         try {
             log.info("Completing multipart upload for object: {}, uploadId: {}", objectName, uploadId);
             List<Part> parts = getPartsList(objectName, uploadId);
@@ -592,8 +624,10 @@ public class AwsS3Service implements IOssService {
                     .build();
             s3Client.completeMultipartUpload(request);
             baseOssService.onUploadSuccess(objectName, fileTotalSize);
+            return true;
         } catch (Exception e) {
             log.error("Error completing multipart upload for: {}", objectName, e);
+            return false;
         }
     }
 
@@ -639,22 +673,24 @@ public class AwsS3Service implements IOssService {
 
     @Override
     public List<String> copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey) {
+        return copyObject(sourceBucketName, sourceKey, destinationBucketName, destinationKey, BulkProgress.NONE);
+    }
+
+    @Override
+    public List<String> copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey, BulkProgress progress) {
         baseOssService.setObjectNameLock(sourceBucketName);
         baseOssService.setObjectNameLock(destinationBucketName);
         List<String> copiedList = new ArrayList<>();
         try {
             if (sourceKey.endsWith("/")) {
-                // 复制文件夹
-                ListObjectsV2Request listRequest = ListObjectsV2Request.builder().bucket(sourceBucketName).prefix(sourceKey).build();
-                s3Client.listObjectsV2Paginator(listRequest).contents().forEach(s3Object -> {
-                    String destKey = destinationKey + s3Object.key().substring(sourceKey.length());
-                    copyObjectFile(sourceBucketName, s3Object.key(), destinationBucketName, destKey);
-                    copiedList.add(destKey);
-                });
+                // 复制文件夹, 边列举边并发复制
+                baseOssService.printOperation(getPlatform().getKey(), "copyObject", "from " + sourceKey + " to " + destinationKey);
+                copiedList = s3BulkOperation.copyPrefix(sourceBucketName, sourceKey, destinationBucketName, destinationKey, progress);
             } else {
                 // 复制文件
                 copyObjectFile(sourceBucketName, sourceKey, destinationBucketName, destinationKey);
                 copiedList.add(destinationKey);
+                progress.onProgress(1, 1);
             }
         } catch (Exception e) {
             log.error("Error copying object from {} to {}", sourceKey, destinationKey, e);
@@ -667,13 +703,8 @@ public class AwsS3Service implements IOssService {
 
     private void copyObjectFile(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey) {
         baseOssService.printOperation(getPlatform().getKey(), "copyObject", "from " + sourceKey + " to " + destinationKey);
-        CopyObjectRequest request = CopyObjectRequest.builder()
-                .sourceBucket(sourceBucketName)
-                .sourceKey(sourceKey)
-                .destinationBucket(destinationBucketName)
-                .destinationKey(destinationKey)
-                .build();
-        s3Client.copyObject(request);
+        HeadObjectResponse headObjectResponse = s3Client.headObject(HeadObjectRequest.builder().bucket(sourceBucketName).key(sourceKey).build());
+        s3BulkOperation.copyObject(sourceBucketName, sourceKey, destinationBucketName, destinationKey, headObjectResponse.contentLength());
     }
 
     @Override
@@ -0,0 +1,278 @@
+package com.jmal.clouddisk.oss.s3;
+
+import com.jmal.clouddisk.oss.BulkProgress;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * S3 批量操作
+ * <p>
+ * 分页列举的同时处理已列举的对象: 复制时并发执行, 大文件使用分片拷贝(UploadPartCopy), 不受 CopyObject 5GB 的限制;
+ * 删除时每 1000 个对象一批(DeleteObjects 的上限), 删除失败的对象会重试
+ */
+@Slf4j
+class S3BulkOperation {
+
+    /**
+     * 同时复制的对象数
+     */
+    private static final int COPY_PARALLELISM = 16;
+
+    /**
+     * 单个对象同时拷贝的分片数
+     */
+    private static final int PART_COPY_PARALLELISM = 8;
+
+    /**
+     * 超过该大小使用分片拷贝
+     */
+    private static final long MULTIPART_COPY_THRESHOLD = 512 * 1024 * 1024L;
+
+    /**
+     * 分片拷贝的最小分片大小
+     */
+    private static final long MULTIPART_COPY_PART_SIZE = 128 * 1024 * 1024L;
+
+    /**
+     * 最大分片数
+     */
+    private static final int MAX_PART_COUNT = 10000;
+
+    /**
+     * DeleteObjects 单次请求的最大对象数
+     */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * 删除失败的对象最多重试次数
+     */
+    private static final int DELETE_MAX_RETRIES = 3;
+
+    private final S3Client s3Client;
+
+    S3BulkOperation(S3Client s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /**
+     * 复制前缀下的所有对象
+     *
+     * @return 复制成功的目标objectName列表
+     */
+    List<String> copyPrefix(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey, BulkProgress progress) {
+        Queue<String> copied = new ConcurrentLinkedQueue<>();
+        AtomicLong completed = new AtomicLong();
+        long listed = 0;
+        Semaphore permits = new Semaphore(COPY_PARALLELISM);
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder().bucket(sourceBucketName).prefix(sourceKey).build();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (S3Object s3Object : s3Client.listObjectsV2Paginator(listRequest).contents()) {
+                String destKey = destinationKey + s3Object.key().substring(sourceKey.length());
+                long total = ++listed;
+                // 并发数已满时暂停列举
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        copyObject(sourceBucketName, s3Object.key(), destinationBucketName, destKey, s3Object.size());
+                        copied.add(destKey);
+                    } catch (Exception e) {
+                        log.error("复制对象失败, from {} to {}, {}", s3Object.key(), destKey, e.getMessage());
+                    } finally {
+                        permits.release();
+                        progress.onProgress(completed.incrementAndGet(), total);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            log.warn("复制被中断: {}", sourceKey);
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(copied);
+    }
+
+    /**
+     * 复制单个对象, 大文件使用分片拷贝
+     *
+     * @param size 对象大小, 未知时为 null
+     */
+    void copyObject(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey, Long size) {
+        if (size != null && size > MULTIPART_COPY_THRESHOLD) {
+            multipartCopy(sourceBucketName, sourceKey, destinationBucketName, destinationKey, size);
+            return;
+        }
+        CopyObjectRequest request = CopyObjectRequest.builder()
+                .sourceBucket(sourceBucketName)
+                .sourceKey(sourceKey)
+                .destinationBucket(destinationBucketName)
+                .destinationKey(destinationKey)
+                .build();
+        s3Client.copyObject(request);
+    }
+
+    private void multipartCopy(String sourceBucketName, String sourceKey, String destinationBucketName, String destinationKey, long size) {
+        // 分片拷贝不会复制对象的元数据, 需要从源对象取出后在创建时指定
+        HeadObjectResponse source = s3Client.headObject(HeadObjectRequest.builder()
+                .bucket(sourceBucketName)
+                .key(sourceKey)
+                .build());
+        String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                .bucket(destinationBucketName)
+                .key(destinationKey)
+                .contentType(source.contentType())
+                .contentDisposition(source.contentDisposition())
+                .contentEncoding(source.contentEncoding())
+                .cacheControl(source.cacheControl())
+                .metadata(source.metadata())
+                .build()).uploadId();
+        long partSize = Math.max(MULTIPART_COPY_PART_SIZE, (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT);
+        int partCount = (int) ((size + partSize - 1) / partSize);
+        CompletedPart[] parts = new CompletedPart[partCount];
+        Semaphore permits = new Semaphore(PART_COPY_PARALLELISM);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long start = i * partSize;
+                long end = Math.min(start + partSize, size) - 1;
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        String eTag = s3Client.uploadPartCopy(UploadPartCopyRequest.builder()
+                                .sourceBucket(sourceBucketName)
+                                .sourceKey(sourceKey)
+                                .destinationBucket(destinationBucketName)
+                                .destinationKey(destinationKey)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .copySourceRange("bytes=" + start + "-" + end)
+                                .build()).copyPartResult().eTag();
+                        parts[partNumber - 1] = CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(destinationBucketName)
+                    .key(destinationKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(Arrays.asList(parts)).build())
+                    .build());
+        } catch (InterruptedException e) {
+            abortMultipartUpload(destinationBucketName, destinationKey, uploadId);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("分片拷贝被中断: " + sourceKey, e);
+        } catch (ExecutionException | RuntimeException e) {
+            abortMultipartUpload(destinationBucketName, destinationKey, uploadId);
+            throw new IllegalStateException("分片拷贝失败: " + sourceKey, e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    private void abortMultipartUpload(String bucketName, String objectName, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(bucketName).key(objectName).uploadId(uploadId).build());
+        } catch (Exception e) {
+            log.warn("取消分片拷贝失败: {}, {}", objectName, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除前缀下的所有对象
+     *
+     * @return 是否全部删除成功
+     */
+    boolean deletePrefix(String bucketName, String prefix, BulkProgress progress) {
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder().bucket(bucketName).prefix(prefix).build();
+        List<ObjectIdentifier> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+        long listed = 0;
+        long completed = 0;
+        boolean success = true;
+        for (S3Object s3Object : s3Client.listObjectsV2Paginator(listRequest).contents()) {
+            batch.add(ObjectIdentifier.builder().key(s3Object.key()).build());
+            listed++;
+            if (batch.size() == DELETE_BATCH_SIZE) {
+                success &= deleteBatch(bucketName, batch);
+                completed += batch.size();
+                progress.onProgress(completed, listed);
+                batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            success &= deleteBatch(bucketName, batch);
+            completed += batch.size();
+            progress.onProgress(completed, listed);
+        }
+        return success;
+    }
+
+    /**
+     * 批量删除, 只重试删除失败的对象
+     */
+    private boolean deleteBatch(String bucketName, List<ObjectIdentifier> batch) {
+        List<ObjectIdentifier> pending = batch;
+        for (int attempt = 0; attempt <= DELETE_MAX_RETRIES; attempt++) {
+            if (attempt > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(200L << attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(pending).quiet(true).build())
+                        .build());
+                if (!response.hasErrors() || response.errors().isEmpty()) {
+                    return true;
+                }
+                pending = response.errors().stream()
+                        .filter(error -> !"NoSuchKey".equals(error.code()))
+                        .map(S3Error::key)
+                        .map(key -> ObjectIdentifier.builder().key(key).build())
+                        .toList();
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                log.warn("{} 个对象删除失败, 第 {} 次重试, 例如: {}", pending.size(), attempt + 1, response.errors().getFirst().message());
+            } catch (Exception e) {
+                log.warn("批量删除失败, 第 {} 次重试: {}", attempt + 1, e.getMessage());
+            }
+        }
+        log.error("{} 个对象删除失败, 例如: {}", pending.size(), pending.getFirst().key());
+        return false;
+    }
+}
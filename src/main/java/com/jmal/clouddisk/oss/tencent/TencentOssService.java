@@ -12,6 +12,7 @@ import com.jmal.clouddisk.model.GridFSBO;
 import com.jmal.clouddisk.model.Metadata;
 import com.jmal.clouddisk.oss.AbstractOssObject;
 import com.jmal.clouddisk.oss.BaseOssService;
+import com.jmal.clouddisk.oss.BulkProgress;
 import com.jmal.clouddisk.oss.FileInfo;
 import com.jmal.clouddisk.oss.IOssService;
 import com.jmal.clouddisk.oss.PartInfo;
@@ -555,14 +556,20 @@ public class TencentOssService implements IOssService {
         }
     }
 
-    public void completeMultipartUpload(String objectName, String uploadId, Long totalSize) {
+    public boolean completeMultipartUpload(String objectName, String uploadId, Long totalSize) {
         baseOssService.printOperation(getPlatform().getKey(), "completeMultipartUpload", objectName);
-        // 查询已上传的分片
-        List<PartETag> partETags = getPartETagList(objectName, uploadId);
-        // 完成分片上传
-        CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, partETags);
-        cosClient.completeMultipartUpload(completeMultipartUploadRequest);
+        try {
+            // 查询已上传的分片
+            List<PartETag> partETags = getPartETagList(objectName, uploadId);
+            // 完成分片上传
+            CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest(bucketName, objectName, uploadId, partETags);
+            cosClient.completeMultipartUpload(completeMultipartUploadRequest);
+        } catch (CosClientException e) {
+            log.error(e.getMessage(), e);
+            return false;
+        }
         baseOssService.onUploadSuccess(objectName, totalSize);
+        return true;
     }
 
     @Override
@@ -704,6 +711,30 @@ public class TencentOssService implements IOssService {
         }
     }
 
+    @Override
+    public boolean uploadFile(Path file, String objectName, long fileSize) {
+        try {
+            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, objectName, file.toFile());
+            putObjectRequest.setStorageClass(StorageClass.Standard);
+            cosClient.putObject(putObjectRequest);
+            baseOssService.onUploadSuccess(objectName, fileSize);
+            return true;
+        } catch (CosClientException e) {
+            log.error(e.getMessage(), e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean transferFile(Path file, String objectName) {
+        return baseOssService.transferFile(file, objectName);
+    }
+
+    @Override
+    public List<String> transferFiles(Map<Path, String> files, BulkProgress progress) {
+        return baseOssService.transferFiles(files, progress);
+    }
+
     @Override
     public boolean uploadFile(InputStream inputStream, String objectName, long inputStreamLength) {
         baseOssService.printOperation(getPlatform().getKey(), "uploadFile inputStream", objectName);
@@ -2,10 +2,13 @@ package com.jmal.clouddisk.oss.web;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.crypto.SecureUtil;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.lucene.TaskProgressService;
+import com.jmal.clouddisk.lucene.TaskType;
 import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
 import com.jmal.clouddisk.oss.*;
 import com.jmal.clouddisk.service.Constants;
@@ -24,15 +27,17 @@ import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
@@ -44,6 +49,12 @@ public class WebOssCopyFileService {
     private final CommonUserFileService commonUserFileService;
     private final FileProperties fileProperties;
     private final IFileDAO fileDAO;
+    private final TaskProgressService taskProgressService;
+
+    /**
+     * 复制进度推送的最小间隔(毫秒)
+     */
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
 
     /**
      * 从 oss 复制 到 oss
@@ -81,23 +92,29 @@ public class WebOssCopyFileService {
             return ResultUtil.warning(Constants.COPY_EXISTS_FILE);
         }
 
-        if (ossServiceFrom.getPlatform() == ossServiceTo.getPlatform()) {
-            // 同平台间复制
-            List<String> copiedList = ossServiceFrom.copyObject(bucketInfoFrom.getBucketName(), objectNameFrom, bucketInfoTo.getBucketName(), objectNameTo);
-            for (String objectName : copiedList) {
-                webOssCommonService.afterUploadComplete(objectName, ossPathTo, null);
-            }
-            if (copiedList.isEmpty()) {
-                throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "复制失败");
-            }
-        } else {
-            if (isFolder) {
-                // 复制文件夹
-                copyDir(ossServiceFrom, ossServiceTo, objectNameFrom, objectNameTo, ossPathTo);
+        String taskId = SecureUtil.md5(ossPathFrom + objectNameFrom + ossPathTo + objectNameTo);
+        BulkProgress progress = newBulkProgress(taskId, Paths.get(objectNameTo).getFileName().toString());
+        try {
+            if (ossServiceFrom.getPlatform() == ossServiceTo.getPlatform()) {
+                // 同平台间复制
+                List<String> copiedList = ossServiceFrom.copyObject(bucketInfoFrom.getBucketName(), objectNameFrom, bucketInfoTo.getBucketName(), objectNameTo, progress);
+                for (String objectName : copiedList) {
+                    webOssCommonService.afterUploadComplete(objectName, ossPathTo, null);
+                }
+                if (copiedList.isEmpty()) {
+                    throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "复制失败");
+                }
             } else {
-                // 复制文件
-                copyFile(ossServiceFrom, ossServiceTo, objectNameFrom, objectNameTo, ossPathTo);
+                if (isFolder) {
+                    // 复制文件夹
+                    copyDir(ossServiceFrom, ossServiceTo, objectNameFrom, objectNameTo, ossPathTo, progress);
+                } else {
+                    // 复制文件
+                    copyFile(ossServiceFrom, ossServiceTo, objectNameFrom, objectNameTo, ossPathTo);
+                }
             }
+        } finally {
+            taskProgressService.removeTaskProgress(taskId);
         }
         String finalObjectNameTo = objectNameTo;
         // 复制成功
@@ -119,8 +136,9 @@ public class WebOssCopyFileService {
      * @param objectNameFrom 源objectName
      * @param objectNameTo   目标objectName
      * @param ossPathTo      目标ossPath
+     * @param progress       复制进度
      */
-    private void copyDir(IOssService ossServiceFrom, IOssService ossServiceTo, String objectNameFrom, String objectNameTo, String ossPathTo) {
+    private void copyDir(IOssService ossServiceFrom, IOssService ossServiceTo, String objectNameFrom, String objectNameTo, String ossPathTo, BulkProgress progress) {
         // 锁对象
         ossServiceFrom.lock(objectNameFrom);
         try {
@@ -137,6 +155,8 @@ public class WebOssCopyFileService {
                     webOssCommonService.afterUploadComplete(destObjectName, ossPathTo, null);
                 });
                 // 再复制文件
+                long total = fileInfoList.stream().filter(fileInfo -> !fileInfo.isFolder()).count();
+                AtomicLong completed = new AtomicLong();
                 fileInfoList.stream().filter(fileInfo -> !fileInfo.isFolder()).parallel().forEach(fileInfo -> {
                     String relativePath = fileInfo.getKey().substring(objectNameFrom.length());
                     // 目标objectName
@@ -146,6 +166,7 @@ public class WebOssCopyFileService {
                         // 上传文件
                         ossServiceTo.uploadFile(inputStream, destObjectName, abstractOssObject.getContentLength());
                         webOssCommonService.afterUploadComplete(destObjectName, ossPathTo, null);
+                        progress.onProgress(completed.incrementAndGet(), total);
                     } catch (Exception e) {
                         throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), e.getMessage());
                     }
@@ -159,6 +180,24 @@ public class WebOssCopyFileService {
         }
     }
 
+    /**
+     * 复制进度, 通过任务进度推送, 推送间隔不小于 {@link #PROGRESS_INTERVAL_MILLIS}
+     *
+     * @param taskId 任务id
+     * @param name   任务名称
+     */
+    private BulkProgress newBulkProgress(String taskId, String name) {
+        AtomicLong lastPushTime = new AtomicLong();
+        return (completed, total) -> {
+            long now = System.currentTimeMillis();
+            long last = lastPushTime.get();
+            if (now - last < PROGRESS_INTERVAL_MILLIS || !lastPushTime.compareAndSet(last, now)) {
+                return;
+            }
+            taskProgressService.addTaskProgress(taskId, TaskType.OSS_COPY, name, completed + "/" + total);
+        };
+    }
+
     /**
      * 不同oss平台间的文件复制
      * 复制完成需要解锁 源objectName
@@ -323,7 +362,12 @@ public class WebOssCopyFileService {
         }
         if (isFolder) {
             // 复制文件夹
-            copyDir(fromFileDocument, ossServiceTo, objectNameTo, ossPathTo);
+            String taskId = SecureUtil.md5(fileId + ossPathTo + objectNameTo);
+            try {
+                copyDir(fromFileDocument, ossServiceTo, objectNameTo, ossPathTo, newBulkProgress(taskId, fromFileDocument.getName()));
+            } finally {
+                taskProgressService.removeTaskProgress(taskId);
+            }
         } else {
             // 复制文件
             copyFile(fromFileDocument, ossServiceTo, objectNameTo, ossPathTo);
@@ -349,20 +393,23 @@ public class WebOssCopyFileService {
 
     /**
      * 从本地复制文件夹到oss
+     * 先按目录顺序创建文件夹, 再并发上传所有文件
      *
      * @param fromFileDocument 源FileDocument
      * @param ossServiceTo     目标ossService
      * @param objectNameTo     目标objectName
      * @param ossPathTo        目标ossPath
+     * @param progress         复制进度
      */
-    private void copyDir(FileBaseDTO fromFileDocument, IOssService ossServiceTo, String objectNameTo, String ossPathTo) {
+    private void copyDir(FileBaseDTO fromFileDocument, IOssService ossServiceTo, String objectNameTo, String ossPathTo, BulkProgress progress) {
         // 锁文件
         CommonFileService.lockFile(fromFileDocument);
         Path fromPath = Paths.get(fileProperties.getRootDir(), fromFileDocument.getUsername(), fromFileDocument.getPath(), fromFileDocument.getName());
         try {
             // 首先在目标oss创建文件夹
             if (ossServiceTo.mkdir(objectNameTo)) {
-                // 遍历fromPath下的所有目录和文件上传至目标oss
+                // 遍历fromPath下的所有目录, 创建文件夹并收集需要上传的文件
+                Map<Path, String> files = new LinkedHashMap<>();
                 PathUtil.walkFiles(fromPath, new SimplePathVisitor() {
                     @NotNull
                     @Override
@@ -378,18 +425,20 @@ public class WebOssCopyFileService {
                     @NotNull
                     @Override
                     public FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) throws IOException {
-                        String objectName = objectNameTo + file.toString().substring(fromPath.toString().length());
-                        File fromFile = file.toFile();
-                        try (InputStream inputStream = new FileInputStream(fromFile)) {
-                            ossServiceTo.uploadFile(inputStream, objectName, fromFile.length());
-                            webOssCommonService.afterUploadComplete(objectName, ossPathTo, null);
-                        } catch (Exception e) {
-                            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), e.getMessage());
-                        }
+                        files.put(file, objectNameTo + file.toString().substring(fromPath.toString().length()));
                         return super.visitFile(file, attrs);
                     }
                 });
+                List<String> uploadedList = ossServiceTo.transferFiles(files, progress);
+                for (String objectName : uploadedList) {
+                    webOssCommonService.afterUploadComplete(objectName, ossPathTo, null);
+                }
+                if (uploadedList.size() < files.size()) {
+                    throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "部分文件上传失败: " + (files.size() - uploadedList.size()) + "/" + files.size());
+                }
             }
+        } catch (CommonException e) {
+            throw e;
         } catch (Exception e) {
             throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), e.getMessage());
         } finally {
@@ -410,12 +459,12 @@ public class WebOssCopyFileService {
         // 锁文件
         CommonFileService.lockFile(fromFileDocument);
         // 上传文件
-        File fromFile = Paths.get(fileProperties.getRootDir(), fromFileDocument.getUsername(), fromFileDocument.getPath(), fromFileDocument.getName()).toFile();
-        try (InputStream intStream = new FileInputStream(fromFile)) {
-            ossServiceTo.uploadFile(intStream, objectNameTo, fromFile.length());
+        Path fromFile = Paths.get(fileProperties.getRootDir(), fromFileDocument.getUsername(), fromFileDocument.getPath(), fromFileDocument.getName());
+        try {
+            if (!ossServiceTo.transferFile(fromFile, objectNameTo)) {
+                throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "上传失败");
+            }
             webOssCommonService.afterUploadComplete(objectNameTo, ossPathTo, null);
-        } catch (Exception e) {
-            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), e.getMessage());
         } finally {
             // 解锁文件
             CommonFileService.unLockFile(fromFileDocument);
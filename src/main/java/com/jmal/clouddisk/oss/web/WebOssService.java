@@ -404,7 +404,9 @@ public class WebOssService {
         assert chunks != null;
         if (upload.getTotalChunks() == chunks.size()) {
             // 文件不存在,并且已经上传了所有的分片,则合并保存文件
-            ossService.completeMultipartUpload(objectName, uploadId, upload.getTotalSize());
+            if (!ossService.completeMultipartUpload(objectName, uploadId, upload.getTotalSize())) {
+                throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "合并分片失败");
+            }
             // 清除缓存
             removeListPartsCache(uploadId);
             webOssCommonService.notifyCreateFile(upload.getUsername(), objectName, WebOssCommonService.getOssRootFolderName(ossPath));
@@ -426,7 +428,9 @@ public class WebOssService {
         IOssService ossService = OssConfigService.getOssStorageService(ossPath);
         String objectName = getObjectName(prePth, ossPath, false);
         String uploadId = ossService.getUploadId(objectName);
-        ossService.completeMultipartUpload(objectName, ossService.getUploadId(objectName), upload.getTotalSize());
+        if (!ossService.completeMultipartUpload(objectName, ossService.getUploadId(objectName), upload.getTotalSize())) {
+            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "合并分片失败");
+        }
         // 清除缓存
         removeListPartsCache(uploadId);
         webOssCommonService.notifyCreateFile(upload.getUsername(), objectName, WebOssCommonService.getOssRootFolderName(ossPath));
@@ -43,6 +43,10 @@ public class OssConfigDO extends AuditableTimeEntity implements Reflective {
      * 是否启用 S3 代理功能, 启用后上传下载流量会通过jmalcloud服务中转, 默认关闭
      */
     private Boolean proxyEnabled;
+    /**
+     * 目录列表缓存时间(秒), 为空时使用默认值
+     */
+    private Integer listCacheTtl;
 
     public OssConfigDTO toOssConfigDTO(TextEncryptor textEncryptor) {
         OssConfigDTO ossConfigDTO = new OssConfigDTO();
@@ -56,6 +60,7 @@ public class OssConfigDO extends AuditableTimeEntity implements Reflective {
         ossConfigDTO.setSecretKey(textEncryptor.decrypt(secretKey));
         ossConfigDTO.setPathStyleAccessEnabled(this.pathStyleAccessEnabled);
         ossConfigDTO.setProxyEnabled(this.proxyEnabled);
+        ossConfigDTO.setListCacheTtl(this.listCacheTtl);
         return ossConfigDTO;
     }
 
@@ -70,6 +75,7 @@ public class OssConfigDO extends AuditableTimeEntity implements Reflective {
         ossConfigDTO.setUserId(this.userId);
         ossConfigDTO.setProxyEnabled(this.proxyEnabled);
         ossConfigDTO.setPathStyleAccessEnabled(this.pathStyleAccessEnabled);
+        ossConfigDTO.setListCacheTtl(this.listCacheTtl);
         ossConfigDTO.setAccessKey(Constants.VO_KEY);
         ossConfigDTO.setSecretKey(Constants.VO_KEY);
         return ossConfigDTO;
@@ -3,6 +3,7 @@ package com.jmal.clouddisk.oss.web.model;
 import com.jmal.clouddisk.config.Reflective;
 import com.jmal.clouddisk.oss.PlatformOSS;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
@@ -50,6 +51,10 @@ public class OssConfigDTO implements Reflective {
     @Schema(name = "proxyEnabled", title = "proxyEnabled", description = "是否启用 S3 代理功能, 启用后上传下载流量会通过jmalcloud服务中转, 默认关闭")
     private Boolean proxyEnabled;
 
+    @Schema(name = "listCacheTtl", title = "listCacheTtl", description = "目录列表缓存时间(秒), 外部对bucket的修改在缓存过期后可见, 默认60秒")
+    @Min(value = 0, message = "listCacheTtl 不能小于0")
+    private Integer listCacheTtl;
+
     public OssConfigDO toOssConfigDO(OssConfigDO ossConfigDO, TextEncryptor textEncryptor) {
         ossConfigDO.setEndpoint(this.endpoint);
         ossConfigDO.setPlatform(PlatformOSS.getPlatform(this.platform));
@@ -59,6 +64,7 @@ public class OssConfigDTO implements Reflective {
         ossConfigDO.setUserId(this.userId);
         ossConfigDO.setProxyEnabled(this.proxyEnabled);
         ossConfigDO.setPathStyleAccessEnabled(this.pathStyleAccessEnabled);
+        ossConfigDO.setListCacheTtl(this.listCacheTtl);
         ossConfigDO.setAccessKey(textEncryptor.encrypt(accessKey));
         ossConfigDO.setSecretKey(textEncryptor.encrypt(secretKey));
         return ossConfigDO;
@@ -35,6 +35,8 @@ public class Constants {
     public static final String TAG_IDS = "tagIds";
     public static final String TOTAL_SIZE = "totalSize"; //totalSize
     public static final String ETAG = "etag";
+    public static final String ETAG_HASH = "etagHash";
+    public static final String SCANNED_MTIME = "scannedMtime";
     public static final String NO_CONTENT_ETAG = "no_content_etag";
     public static final String PATH_FIELD = "path";
     public static final String FILENAME_FIELD = "name";
@@ -92,6 +94,10 @@ public class Constants {
 
     public static final String SIZE = "size";
 
+    public static final String CONTENT_HASH = "contentHash";
+
+    public static final String SORT_KEY = "sortKey";
+
     public static final String CHILDREN_COUNT = "childrenCount";
 
     public static final String DELETE_FILE = "deleteFile";
@@ -0,0 +1,61 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 博客页面数据缓存
+ * <p>
+ * 缓存文章、文章列表、归档、分类、标签和站点地图的查询结果, 发布或修改文章、修改分类、标签或网站设置时整体失效。
+ * 缓存版本同时用于生成页面的 ETag, 页面没有变化时返回 304
+ */
+@Service
+public class ArticleCacheService {
+
+    /**
+     * 没有经过本服务的修改(例如删除文章文件、修改用户昵称)最多在这段时间后生效
+     */
+    private static final long EXPIRE_MINUTES = 10;
+
+    private final Cache<String, Object> cache = Caffeine.newBuilder()
+            .maximumSize(2000)
+            .expireAfterWrite(EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 缓存版本, 作为缓存key的前缀, 失效时加1, 失效前开始加载的旧数据不会再被读取到
+     */
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * 获取缓存, 不存在时加载, 加载结果为 null 时不缓存
+     *
+     * @param key    key
+     * @param loader 加载数据
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader) {
+        return (T) cache.get(version.get() + ":" + key, _ -> loader.get());
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * 页面的 ETag, 缓存失效或过期后变化
+     *
+     * @param variant 同一个url的不同页面, 例如 pjax 请求和主题
+     * @return 弱 ETag
+     */
+    public String getEtag(String variant) {
+        long period = System.currentTimeMillis() / TimeUnit.MINUTES.toMillis(EXPIRE_MINUTES);
+        return "W/\"" + Long.toHexString(version.get()) + "-" + Long.toHexString(period) + "-" + variant + "\"";
+    }
+}
@@ -29,6 +29,8 @@ public class CategoryService {
 
     private final ICategoryDAO categoryDAO;
 
+    private final ArticleCacheService articleCacheService;
+
     public static final String COLLECTION_NAME = "category";
 
     /***
@@ -240,6 +242,7 @@ public class CategoryService {
         CategoryDO categoryDO = new CategoryDO();
         BeanUtils.copyProperties(categoryDTO, categoryDO);
         categoryDAO.save(categoryDO);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -260,6 +263,7 @@ public class CategoryService {
         CategoryDO categoryDO = new CategoryDO();
         BeanUtils.copyProperties(categoryDTO, categoryDO);
         categoryDAO.upsert(categoryDO);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -284,6 +288,7 @@ public class CategoryService {
     public ResponseResult<Object> setDefault(String categoryId) {
         categoryDAO.updateSetDefaultFalseByDefaultIsTrue();
         categoryDAO.updateSetDefaultTrueById(categoryId);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -295,6 +300,7 @@ public class CategoryService {
         Set<String> allIds = findAllSubCategoryIds(categoryIdList);
         // 删除所有关联的分类
         categoryDAO.deleteAllByIdIn(allIds);
+        articleCacheService.invalidateAll();
     }
 
     private Set<String> findAllSubCategoryIds(List<String> initialCategoryIds) {
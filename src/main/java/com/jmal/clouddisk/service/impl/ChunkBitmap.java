@@ -0,0 +1,105 @@
+package com.jmal.clouddisk.service.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/***
+ * 已写入分片的位图, 每个分片占一位, 持久化在磁盘上, 重启后可以继续断点续传
+ */
+final class ChunkBitmap {
+
+    private final Path bitmapFile;
+    private final Path partFile;
+    private final int totalChunks;
+    private final BitSet bits;
+    private int count;
+
+    private ChunkBitmap(Path bitmapFile, Path partFile, int totalChunks, BitSet bits) {
+        this.bitmapFile = bitmapFile;
+        this.partFile = partFile;
+        this.totalChunks = totalChunks;
+        this.bits = bits;
+        this.count = bits.cardinality();
+    }
+
+    /***
+     * 加载已有的位图, 不存在则创建位图并预分配目标文件
+     */
+    static ChunkBitmap open(Path bitmapFile, Path partFile, int totalChunks, long totalSize) throws IOException {
+        ChunkBitmap bitmap = load(bitmapFile, partFile, totalChunks, totalSize);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        int bitmapLength = (totalChunks + 7) / 8;
+        Files.createDirectories(partFile.getParent());
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(partFile.toFile(), "rw")) {
+            randomAccessFile.setLength(totalSize);
+        }
+        Files.write(bitmapFile, new byte[bitmapLength]);
+        return new ChunkBitmap(bitmapFile, partFile, totalChunks, new BitSet(totalChunks));
+    }
+
+    /***
+     * 加载已有的位图
+     * @return 位图或目标文件不存在、大小不匹配时返回 null
+     */
+    static ChunkBitmap load(Path bitmapFile, Path partFile, int totalChunks, long totalSize) throws IOException {
+        int bitmapLength = (totalChunks + 7) / 8;
+        if (Files.exists(bitmapFile) && Files.exists(partFile)
+                && Files.size(bitmapFile) == bitmapLength && Files.size(partFile) == totalSize) {
+            BitSet bits = BitSet.valueOf(Files.readAllBytes(bitmapFile));
+            // 忽略超出分片总数的位
+            bits.clear(totalChunks, bitmapLength * 8);
+            return new ChunkBitmap(bitmapFile, partFile, totalChunks, bits);
+        }
+        return null;
+    }
+
+    Path getPartFile() {
+        return partFile;
+    }
+
+    synchronized boolean contains(int chunkNumber) {
+        return bits.get(chunkNumber - 1);
+    }
+
+    synchronized void set(int chunkNumber) throws IOException {
+        int index = chunkNumber - 1;
+        if (index < 0 || index >= totalChunks || bits.get(index)) {
+            return;
+        }
+        bits.set(index);
+        count++;
+        // 只回写该分片所在的字节
+        int byteIndex = index / 8;
+        byte value = 0;
+        for (int i = 0; i < 8; i++) {
+            if (bits.get(byteIndex * 8 + i)) {
+                value |= (byte) (1 << i);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(bitmapFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), byteIndex);
+        }
+    }
+
+    synchronized boolean isComplete() {
+        return count == totalChunks;
+    }
+
+    synchronized List<Integer> toList() {
+        List<Integer> list = new ArrayList<>(count);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            list.add(i + 1);
+        }
+        return list;
+    }
+}
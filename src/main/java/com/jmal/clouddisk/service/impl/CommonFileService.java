@@ -279,6 +279,31 @@ public class CommonFileService {
         messageService.pushMessage(username, relativePath, Constants.DELETE_FILE);
     }
 
+    /**
+     * 批量删除同一目录下已经不存在的文件
+     *
+     * @param username 用户名
+     * @param dir      所在目录
+     * @param removed  需要删除的文件(需在同一目录下)
+     */
+    public void deleteFiles(String username, File dir, List<? extends FileBaseDTO> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        List<String> fileIds = removed.stream().map(FileBaseDTO::getId).toList();
+        deleteDependencies(username, fileIds);
+        fileDAO.removeByIdIn(fileIds);
+        for (FileBaseDTO fileBaseDTO : removed) {
+            if (BooleanUtil.isTrue(fileBaseDTO.getIsFolder())) {
+                // 删除文件夹及其下的所有文件
+                fileDAO.removeAllByFolder(fileBaseDTO);
+            }
+        }
+        // update parent folder etag
+        etagService.handleItemDeletionAsync(username, new File(dir, removed.getFirst().getName()));
+        messageService.pushMessage(username, removed.getFirst().getPath(), Constants.DELETE_FILE);
+    }
+
     public void modifyFile(String username, File file) {
         // 判断文件是否存在
         if (!file.exists()) {
@@ -3,7 +3,6 @@ package com.jmal.clouddisk.service.impl;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.file.PathUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
@@ -15,12 +14,9 @@ import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.dao.impl.jpa.FilePersistenceService;
 import com.jmal.clouddisk.lucene.EtagService;
 import com.jmal.clouddisk.lucene.LuceneIndexQueueEvent;
-import com.jmal.clouddisk.lucene.RebuildIndexTaskService;
 import com.jmal.clouddisk.media.ImageMagickProcessor;
-import com.jmal.clouddisk.media.VideoInfo;
-import com.jmal.clouddisk.media.VideoInfoDO;
-import com.jmal.clouddisk.media.VideoProcessService;
-import com.jmal.clouddisk.model.Music;
+import com.jmal.clouddisk.media.MediaEnrichmentService;
+import com.jmal.clouddisk.media.MediaStatus;
 import com.jmal.clouddisk.model.OperationPermission;
 import com.jmal.clouddisk.model.ShareBaseInfoDTO;
 import com.jmal.clouddisk.model.UploadApiParamDTO;
@@ -29,7 +25,6 @@ import com.jmal.clouddisk.model.file.dto.UpdateFile;
 import com.jmal.clouddisk.model.rbac.ConsumerDO;
 import com.jmal.clouddisk.oss.OssConfigService;
 import com.jmal.clouddisk.service.Constants;
-import com.jmal.clouddisk.util.AudioFileUtils;
 import com.jmal.clouddisk.util.CaffeineUtil;
 import com.jmal.clouddisk.util.FileContentTypeUtils;
 import com.jmal.clouddisk.util.ImageExifUtil;
@@ -81,15 +76,13 @@ public class CommonUserFileService {
 
     private final CommonUserService commonUserService;
 
-    private final VideoProcessService videoProcessService;
-
-    private final ImageMagickProcessor imageMagickProcessor;
-
     private final DataSourceProperties dataSourceProperties;
 
     private final FilePersistenceService filePersistenceService;
 
-    private final AudioFileUtils audioFileUtils;
+    private final MediaEnrichmentService mediaEnrichmentService;
+
+    private final ContentHashService contentHashService;
 
     /**
      * 创建文件索引
@@ -115,13 +108,8 @@ public class CommonUserFileService {
         String fileName = file.getName();
         String suffix = MyFileUtils.extName(fileName);
         String contentType = CommonFileService.getContentType(file, FileContentTypeUtils.getContentType(file, suffix));
-        if (contentType.startsWith(Constants.CONTENT_TYPE_IMAGE)) {
-            // 换成webp格式的图片
-            file = replaceWebp(userId, file);
-            if (file == null) {
-                return null;
-            }
-        }
+        // 换成webp格式的图片, 由媒体处理异步完成
+        boolean convertWebp = file.isFile() && needConvertWebp(userId, contentType, suffix);
 
         String fileAbsolutePath = file.getAbsolutePath();
         Lock lock = uploadFileLockCache.get(fileAbsolutePath, _ -> new ReentrantLock());
@@ -139,13 +127,15 @@ public class CommonUserFileService {
                 // 添加文件索引
                 // 获取tagName
                 UpdateFile updateFile = new UpdateFile();
-                updateExifInfo(file, fileExists, contentType, suffix, updateFile);
-                updateVideoInfo(file, fileExists, contentType, updateFile);
                 updateOtherInfo(fileExists, contentType, suffix, updateFile);
                 updateLastModifiedTime(file, fileExists, updateFile);
                 if (updateFile.isNotEmpty()) {
                     fileDAO.updateFileByUserIdAndPathAndName(userId, relativePath, fileName, updateFile);
                 }
+                // 更新图片Exif信息和视频信息
+                mediaEnrichmentService.submitRefresh(fileExists, username, contentType, suffix);
+                // 内容变化后清空内容哈希
+                contentHashService.checkContentChanged(fileExists, file);
                 eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, fileExists.getId()));
                 return fileExists.getId();
             }
@@ -163,7 +153,10 @@ public class CommonUserFileService {
                 fileDocument.setIsPublic(true);
             }
             if (file.isFile()) {
-                setFileConfig(fileId, username, file, fileName, suffix, contentType, relativePath, fileDocument);
+                setFileConfig(file, fileName, suffix, contentType, relativePath, fileDocument);
+                if (MediaEnrichmentService.needsProcessing(contentType, suffix, convertWebp)) {
+                    fileDocument.setMediaStatus(MediaStatus.PENDING.getStatus());
+                }
             } else {
                 // 检查目录是否为OSS目录
                 checkOSSPath(username, relativePath, fileName, fileDocument);
@@ -174,6 +167,13 @@ public class CommonUserFileService {
             messageService.pushMessage(username, fileDocument, Constants.CREATE_FILE);
             // 添加文件索引
             eventPublisher.publishEvent(new LuceneIndexQueueEvent(this, fileId));
+            if (fileDocument.getMediaStatus() != null) {
+                // 缩略图、Exif、封面等媒体信息
+                if (upsertFileId != null) {
+                    fileDocument.setId(upsertFileId);
+                }
+                mediaEnrichmentService.submit(fileDocument, username, convertWebp);
+            }
             if (file.isDirectory()) {
                 etagService.handleNewFolderCreationAsync(username, file);
             }
@@ -291,35 +291,6 @@ public class CommonUserFileService {
         }
     }
 
-    /**
-     * 更新文档的Exif信息
-     *
-     * @param file        文件
-     * @param fileExists  文件信息
-     * @param contentType 文件类型
-     * @param suffix      文件后缀
-     */
-    private void updateExifInfo(File file, FileDocument fileExists, String contentType, String suffix, UpdateFile updateFile) {
-        if (!ImageExifUtil.isImageType(contentType, suffix)) {
-            return;
-        }
-        if (fileExists.getExif() == null || RebuildIndexTaskService.isSyncFile()) {
-            // 更新图片Exif信息
-            updateFile.setExif(ImageExifUtil.getExif(file));
-        }
-    }
-
-    private void updateVideoInfo(File file, FileDocument fileExists, String contentType, UpdateFile updateFile) {
-        if (!contentType.contains(Constants.VIDEO)) {
-            return;
-        }
-        if (fileExists.getVideo() == null || RebuildIndexTaskService.isSyncFile()) {
-            VideoInfo videoInfo = videoProcessService.getVideoInfo(file);
-            VideoInfoDO videoInfoDO = videoInfo.toVideoInfoDO();
-            updateFile.setVideo(videoInfoDO);
-        }
-    }
-
     public static LocalDateTime getFileLastModifiedTime(File file) {
         try {
             FileTime lastModifiedTime = Files.getLastModifiedTime(file.toPath());
@@ -330,23 +301,13 @@ public class CommonUserFileService {
         }
     }
 
-    private void setFileConfig(String fileId, String username, File file, String fileName, String suffix, String contentType, String relativePath, FileDocument fileDocument) {
+    private void setFileConfig(File file, String fileName, String suffix, String contentType, String relativePath, FileDocument fileDocument) {
         try {
             long size = file.length();
             fileDocument.setSize(size);
             fileDocument.setMd5(size + relativePath + fileName);
             fileDocument.setContentType(contentType);
             fileDocument.setSuffix(suffix);
-            if (contentType.contains(Constants.AUDIO)) {
-                setMusic(file, fileDocument);
-            }
-            if (contentType.contains(Constants.VIDEO)) {
-                setMediaCover(fileId, username, fileName, relativePath, fileDocument);
-            }
-            if (ImageExifUtil.isImageType(contentType, suffix)) {
-                // 处理图片
-                processImage(file, fileDocument);
-            }
             if (contentType.contains(Constants.CONTENT_TYPE_MARK_DOWN) || "md".equals(suffix)) {
                 // 写入markdown内容
                 String markDownContent = FileUtil.readString(file, MyFileUtils.getFileCharset(file));
@@ -363,64 +324,18 @@ public class CommonUserFileService {
         }
     }
 
-    private void setMusic(File file, FileDocument fileDocument) {
-        Music music = audioFileUtils.readAudio(fileDocument, file);
-        fileDocument.setMusic(music);
-    }
-
-    private void setMediaCover(String fileId, String username, String fileName, String relativePath, FileDocument fileDocument) {
-        VideoInfo videoInfo = videoProcessService.getVideoCover(fileId, username, relativePath, fileName);
-        String coverPath = videoInfo.getCovertPath();
-        log.debug("\r\ncoverPath:{}", coverPath);
-        if (!CharSequenceUtil.isBlank(coverPath)) {
-            Path contentPath = Paths.get(coverPath);
-
-            if (dataSourceProperties.getType() == DataSourceType.mongodb) {
-                fileDocument.setContent(PathUtil.readBytes(contentPath));
-            } else {
-                fileDocument.setContent(new byte[0]);
-                filePersistenceService.persistContent(fileDocument.getId(), contentPath);
-            }
-            fileDocument.setVideo(videoInfo.toVideoInfoDO());
-            videoProcessService.convertToM3U8(fileId);
-            fileDocument.setMediaCover(true);
-            FileUtil.del(coverPath);
-        } else {
-            fileDocument.setMediaCover(false);
-        }
-    }
-
-    private void processImage(File file, FileDocument fileDocument) {
-        // 获取图片尺寸
-        ImageMagickProcessor.ImageFormat imageFormat = ImageMagickProcessor.identifyFormat(file);
-        if (imageFormat != null) {
-            int srcWidth = imageFormat.getWidth();
-            int srcHeight = imageFormat.getHeight();
-            if (srcWidth > 0 && srcHeight > 0) {
-                fileDocument.setW(Convert.toStr(srcWidth));
-                fileDocument.setH(Convert.toStr(srcHeight));
-            }
-        }
-        // 获取图片Exif信息
-        fileDocument.setExif(ImageExifUtil.getExif(file));
-        // 生成缩略图
-        imageMagickProcessor.generateThumbnail(file, fileDocument);
-    }
-
-    private File replaceWebp(String userId, File file) {
-        String suffix = FileUtil.getSuffix(file).toLowerCase();
-
-        if (getDisabledWebp(userId) || ("ico".equals(suffix))) {
-            return file;
+    /**
+     * 图片是否需要转换为WebP格式
+     */
+    private boolean needConvertWebp(String userId, String contentType, String suffix) {
+        if (!contentType.startsWith(Constants.CONTENT_TYPE_IMAGE)) {
+            return false;
         }
-        if (Constants.SUFFIX_WEBP.equals(suffix)) {
-            return file;
+        String lowerSuffix = CharSequenceUtil.nullToEmpty(suffix).toLowerCase();
+        if ("ico".equals(lowerSuffix) || Constants.SUFFIX_WEBP.equals(lowerSuffix)) {
+            return false;
         }
-        // 去掉fileName中的后缀
-        String fileNameWithoutSuffix = StrUtil.removeSuffix(file.getName(), "." + FileUtil.getSuffix(file.getName()));
-        File outputFile = new File(file.getParentFile().getAbsoluteFile(), fileNameWithoutSuffix + Constants.POINT_SUFFIX_WEBP);
-        ImageMagickProcessor.replaceWebp(file, outputFile, true);
-        return outputFile;
+        return !getDisabledWebp(userId);
     }
 
     /**
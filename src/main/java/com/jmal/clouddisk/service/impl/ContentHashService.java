@@ -0,0 +1,467 @@
+package com.jmal.clouddisk.service.impl;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.system.SystemUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jmal.clouddisk.config.FileProperties;
+import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.model.file.FileDocument;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import com.jmal.clouddisk.util.TimeUntils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+/**
+ * 文件内容哈希(SHA-256)
+ * <p>
+ * 由服务端计算: 上传时随分片写入增量计算, 不需要在合并后再读一遍文件; 已有文件由后台任务限速补算。
+ * 内容哈希用于秒传: 上传前检查到当前用户已有相同哈希和大小的文件时, 直接从已有文件复制(文件系统支持时使用reflink)。
+ * 客户端提供的哈希不能证明持有文件内容, 所以秒传只在当前用户自己的文件中查找; (contentHash, size) 索引不区分用户, 用于查找重复文件。
+ * 文件内容变化时清空内容哈希, 等待重新计算
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContentHashService {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final Pattern SHA256_PATTERN = Pattern.compile("^[0-9a-f]{64}$");
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * 秒传时最多检查的候选文件数
+     */
+    private static final int MAX_CANDIDATES = 10;
+
+    /**
+     * 合并时最多补读的数据量, 超出后不再计算, 由后台任务补算
+     */
+    static final long MAX_CATCH_UP_BYTES = 64 * 1024 * 1024L;
+
+    private static final int BACKFILL_BATCH_SIZE = 200;
+
+    private final FileProperties fileProperties;
+
+    private final IFileDAO fileDAO;
+
+    private final CommonUserService commonUserService;
+
+    /**
+     * 上传中文件的增量哈希
+     * key: username/identifier
+     */
+    private final Cache<String, UploadDigest> uploadDigestCache = Caffeine.newBuilder().expireAfterAccess(1, TimeUnit.DAYS).build();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("content-hash-backfill").daemon(true).factory());
+
+    /**
+     * 后台补算的游标, 一轮结束后从头开始
+     */
+    private String backfillCursor;
+
+    /**
+     * 当前文件系统是否支持reflink, 第一次失败后不再尝试
+     */
+    private volatile boolean reflinkSupported = SystemUtil.getOsInfo().isLinux() || SystemUtil.getOsInfo().isMac();
+
+    @PostConstruct
+    public void init() {
+        scheduler.scheduleWithFixedDelay(this::backfill, 5, 30, TimeUnit.MINUTES);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    public UploadDigest getUploadDigest(String key) {
+        return uploadDigestCache.get(key, _ -> new UploadDigest());
+    }
+
+    public void removeUploadDigest(String key) {
+        uploadDigestCache.invalidate(key);
+    }
+
+    /**
+     * 记录文件内容的哈希
+     *
+     * @param fileId      fileId
+     * @param contentHash 服务端计算的文件内容哈希, 为空时忽略
+     */
+    public void setContentHash(String fileId, String contentHash) {
+        if (fileId == null || contentHash == null) {
+            return;
+        }
+        try {
+            fileDAO.setContentHashById(fileId, contentHash);
+        } catch (Exception e) {
+            log.warn("保存文件内容哈希失败, fileId: {}, {}", fileId, e.getMessage());
+        }
+    }
+
+    /**
+     * 文件内容可能已变化, 清空内容哈希
+     *
+     * @param fileExists 已登记的文件
+     * @param file       文件
+     */
+    public void checkContentChanged(FileDocument fileExists, File file) {
+        if (fileExists.getContentHash() == null) {
+            return;
+        }
+        if (!isUnchanged(fileExists, file.toPath())) {
+            fileDAO.setContentHashById(fileExists.getId(), null);
+        }
+    }
+
+    /**
+     * 在用户自己的文件中查找内容相同的文件, 用于秒传
+     * <p>
+     * 不查找其他用户的文件, 否则只要知道哈希和大小就能拿到别人的文件
+     *
+     * @param userId      userId
+     * @param username    username
+     * @param contentHash 客户端提供的文件内容SHA-256(上传参数 contentHash)
+     * @param size        文件大小
+     * @return 文件路径, 没有找到时返回 null
+     */
+    public Path findSameContentFile(String userId, String username, String contentHash, Long size) {
+        if (!Boolean.TRUE.equals(fileProperties.getInstantUpload()) || size == null || size <= 0) {
+            return null;
+        }
+        if (CharSequenceUtil.isBlank(userId) || CharSequenceUtil.isBlank(username)) {
+            return null;
+        }
+        if (contentHash == null || !SHA256_PATTERN.matcher(contentHash).matches()) {
+            return null;
+        }
+        for (FileDocument fileDocument : fileDAO.findAllByUserIdAndContentHashAndSize(userId, contentHash, size, MAX_CANDIDATES)) {
+            Path path = Paths.get(fileProperties.getRootDir(), username, fileDocument.getPath(), fileDocument.getName());
+            if (isUnchanged(fileDocument, path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 文件的大小和修改时间是否与登记时一致
+     */
+    private static boolean isUnchanged(FileDocument fileDocument, Path path) {
+        try {
+            if (!Files.isRegularFile(path) || fileDocument.getSize() == null || Files.size(path) != fileDocument.getSize()) {
+                return false;
+            }
+            return fileDocument.getUpdateDate() != null
+                    && TimeUntils.isWithinOneSecond(fileDocument.getUpdateDate(), CommonUserFileService.getFileLastModifiedTime(path.toFile()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 复制文件, 文件系统支持时使用reflink(写时复制), 不占用额外空间
+     * <p>
+     * 不使用硬链接, 文件可以被原地修改, 硬链接会使两个文件一起变化
+     *
+     * @param source 源文件
+     * @param target 目标文件, 已存在时覆盖
+     */
+    public void cloneFile(Path source, Path target) throws IOException {
+        if (reflinkSupported && reflink(source, target)) {
+            return;
+        }
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private boolean reflink(Path source, Path target) {
+        List<String> command = SystemUtil.getOsInfo().isMac()
+                ? List.of("cp", "-c", source.toString(), target.toString())
+                : List.of("cp", "--reflink=always", source.toString(), target.toString());
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                return true;
+            }
+            process.destroyForcibly();
+        } catch (IOException e) {
+            log.debug("reflink失败: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        log.info("文件系统不支持reflink, 秒传改为复制文件");
+        reflinkSupported = false;
+        try {
+            Files.deleteIfExists(target);
+        } catch (IOException e) {
+            log.warn("删除文件失败: {}", target, e);
+        }
+        return false;
+    }
+
+    /**
+     * 补算已有文件的内容哈希, 按 {@link FileProperties#getContentHashBackfillRateMB()} 限速
+     */
+    private void backfill() {
+        Long rateMB = fileProperties.getContentHashBackfillRateMB();
+        if (rateMB == null || rateMB <= 0) {
+            return;
+        }
+        try {
+            RateLimiter rateLimiter = new RateLimiter(rateMB * 1024 * 1024);
+            while (!Thread.currentThread().isInterrupted()) {
+                List<FileBaseDTO> list = fileDAO.findAllWithoutContentHash(backfillCursor, BACKFILL_BATCH_SIZE);
+                if (list.isEmpty()) {
+                    // 一轮结束, 下次从头开始, 之前跳过的文件(不存在/正在修改)会重新检查
+                    backfillCursor = null;
+                    return;
+                }
+                for (FileBaseDTO fileBaseDTO : list) {
+                    backfill(fileBaseDTO, rateLimiter);
+                    backfillCursor = fileBaseDTO.getId();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("补算文件内容哈希失败", e);
+        }
+    }
+
+    private void backfill(FileBaseDTO fileBaseDTO, RateLimiter rateLimiter) throws InterruptedException {
+        String username = commonUserService.getUserNameById(fileBaseDTO.getUserId());
+        if (CharSequenceUtil.isBlank(username)) {
+            return;
+        }
+        Path path = Paths.get(fileProperties.getRootDir(), username, fileBaseDTO.getPath(), fileBaseDTO.getName());
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            long size = Files.size(path);
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            MessageDigest digest = newDigest();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                    rateLimiter.acquire(read);
+                }
+            }
+            if (Files.size(path) != size || Files.getLastModifiedTime(path).toMillis() != lastModified) {
+                // 计算过程中文件被修改
+                return;
+            }
+            fileDAO.setContentHashById(fileBaseDTO.getId(), toHex(digest));
+        } catch (IOException e) {
+            log.debug("补算文件内容哈希失败: {}, {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 按字节数限速
+     */
+    private static final class RateLimiter {
+
+        private final long bytesPerSecond;
+
+        private final long startNanos = System.nanoTime();
+
+        private long bytes;
+
+        private RateLimiter(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(long permits) throws InterruptedException {
+            bytes += permits;
+            long expectedNanos = bytes * 1_000_000_000L / bytesPerSecond;
+            long sleepNanos = expectedNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        }
+    }
+
+    /**
+     * 上传中文件的增量哈希
+     * <p>
+     * 哈希只能按顺序计算, 按顺序到达的分片在写入时同时计算;
+     * 乱序到达的分片先写入, 等前面的分片都写入后再从刚写入的文件中补读(通常还在页缓存中)
+     */
+    public static final class UploadDigest {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private MessageDigest digest = newDigest();
+
+        /**
+         * 写入分片前的状态, 写入失败时恢复
+         */
+        private MessageDigest checkpoint;
+
+        private int nextChunk = 1;
+
+        private long digestedBytes;
+
+        private String hex;
+
+        /**
+         * 该分片是否为下一个需要计算的分片, 是则持有锁直到 {@link #endChunk} 或 {@link #abortChunk}
+         */
+        public boolean tryBeginChunk(int chunkNumber) {
+            if (!lock.tryLock()) {
+                return false;
+            }
+            if (digest == null || nextChunk != chunkNumber) {
+                lock.unlock();
+                return false;
+            }
+            try {
+                checkpoint = (MessageDigest) digest.clone();
+            } catch (CloneNotSupportedException e) {
+                checkpoint = null;
+            }
+            return true;
+        }
+
+        /**
+         * 计算即将写入的数据, 只能在 {@link #tryBeginChunk} 成功后调用, 不改变 buffer 的 position
+         */
+        public void update(ByteBuffer buffer) {
+            digest.update(buffer.duplicate());
+        }
+
+        public void endChunk(long chunkSize) {
+            nextChunk++;
+            digestedBytes += chunkSize;
+            checkpoint = null;
+            lock.unlock();
+        }
+
+        public void abortChunk() {
+            // 无法恢复时不再计算, 由后台任务补算
+            digest = checkpoint;
+            checkpoint = null;
+            lock.unlock();
+        }
+
+        /**
+         * 补读已写入但还未计算的分片
+         *
+         * @param partFile    目标文件
+         * @param written     分片是否已写入
+         * @param chunkSize   分片大小
+         * @param totalChunks 分片总数
+         * @param totalSize   文件总大小
+         * @param wait        是否等待其他线程完成计算
+         * @param maxBytes    最多补读的数据量
+         */
+        public void catchUp(Path partFile, IntPredicate written, int chunkSize, int totalChunks, long totalSize, boolean wait, long maxBytes) {
+            if (wait) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                // 持有锁的线程计算完后会继续补读
+                return;
+            }
+            try {
+                if (digest == null) {
+                    return;
+                }
+                long caughtUp = 0;
+                try (FileChannel channel = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    while (nextChunk <= totalChunks && written.test(nextChunk)) {
+                        long position = (long) (nextChunk - 1) * chunkSize;
+                        long length = Math.min(chunkSize, totalSize - position);
+                        if (caughtUp + length > maxBytes) {
+                            return;
+                        }
+                        long end = position + length;
+                        while (position < end) {
+                            buffer.clear();
+                            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                            int read = channel.read(buffer, position);
+                            if (read < 0) {
+                                throw new IOException("unexpected end of file: " + partFile);
+                            }
+                            buffer.flip();
+                            digest.update(buffer);
+                            position += read;
+                        }
+                        caughtUp += length;
+                        digestedBytes += length;
+                        nextChunk++;
+                    }
+                }
+            } catch (IOException e) {
+                // 读取到一半失败, 状态已无法恢复, 由后台任务补算
+                log.warn("计算文件内容哈希失败: {}, {}", partFile, e.getMessage());
+                digest = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 所有数据都已计算时返回哈希, 否则返回 null
+         *
+         * @param totalSize 文件总大小
+         */
+        public String getHex(long totalSize) {
+            lock.lock();
+            try {
+                if (hex == null && digest != null && digestedBytes == totalSize) {
+                    hex = toHex(digest);
+                    digest = null;
+                }
+                return hex;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
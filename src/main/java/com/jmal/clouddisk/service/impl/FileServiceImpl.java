@@ -7,7 +7,6 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.file.PathUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.crypto.SecureUtil;
 import cn.hutool.crypto.symmetric.AES;
@@ -17,6 +16,7 @@ import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.dao.IFileQueryDAO;
 import com.jmal.clouddisk.dao.IShareDAO;
 import com.jmal.clouddisk.dao.ITrashDAO;
+import com.jmal.clouddisk.dao.util.FileCursor;
 import com.jmal.clouddisk.exception.CommonException;
 import com.jmal.clouddisk.exception.ExceptionType;
 import com.jmal.clouddisk.interceptor.AuthInterceptor;
@@ -59,6 +59,7 @@ import com.jmal.clouddisk.util.FileContentUtil;
 import com.jmal.clouddisk.util.MyFileUtils;
 import com.jmal.clouddisk.util.ResponseResult;
 import com.jmal.clouddisk.util.ResultUtil;
+import com.jmal.clouddisk.util.StoredZipArchive;
 import com.jmal.clouddisk.util.TimeUntils;
 import com.jmal.clouddisk.webdav.MyWebdavServlet;
 import io.reactivex.rxjava3.core.Completable;
@@ -95,6 +96,8 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
@@ -139,6 +142,8 @@ public class FileServiceImpl implements IFileService {
 
     private final MultipartUpload multipartUpload;
 
+    private final ContentHashService contentHashService;
+
     private final WebOssService webOssService;
 
     private final WebOssCopyFileService webOssCopyFileService;
@@ -155,6 +160,8 @@ public class FileServiceImpl implements IFileService {
 
     private final LogService logService;
 
+    private final SortKeyBackfillService sortKeyBackfillService;
+
     private final ApplicationEventPublisher eventPublisher;
 
     private Constants.UploaderOption loadStoreUploaderOption;
@@ -286,9 +293,19 @@ public class FileServiceImpl implements IFileService {
         Page<FileIntroVO> page = fileQueryDAO.getFileIntroVO(upload);
         messageService.pushMessage(upload.getUsername(), loadStoreUploaderOption, Constants.UPLOADER_CHUNK_SIZE);
         result.setData(page.getContent());
-        result.setCount(page.getTotalElements());
-        if (upload.getProps() != null) {
-            result.setProps(upload.getProps());
+        boolean cursorPaging = upload.isDirectoryListing() && FileSortService.isSortByName(upload.getSortableProp(), upload.getOrder());
+        if (!cursorPaging || CharSequenceUtil.isBlank(upload.getCursor())) {
+            // 游标分页时不统计总数, 使用第一页返回的总数
+            result.setCount(page.getTotalElements());
+        }
+        Map<String, Object> props = upload.getProps() != null ? new HashMap<>(upload.getProps()) : new HashMap<>(2);
+        // 旧文件的排序键补全之前不提供游标
+        String nextCursor = cursorPaging && sortKeyBackfillService.isCompleted() ? FileCursor.next(page.getContent(), upload.getPageSize()) : null;
+        if (nextCursor != null) {
+            props.put("nextCursor", nextCursor);
+        }
+        if (!props.isEmpty()) {
+            result.setProps(props);
         }
         return result;
     }
@@ -686,14 +703,69 @@ public class FileServiceImpl implements IFileService {
             String fileUsername = userService.getUserNameById(fileDoc.getUserId());
             return Paths.get(fileProperties.getRootDir(), fileUsername, fileDoc.getPath(), fileDoc.getName());
         }).toList();
-        // 压缩传输
+        // 仅存储的压缩包, 总大小可以提前确定, 支持断点续传
+        StoredZipArchive archive = StoredZipArchive.of(selectFileList);
+        long length = archive.getLength();
+        String etag = "\"" + archive.getEtag() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (CharSequenceUtil.isNotBlank(ifRange) && !ifRange.equals(etag)) {
+            range = null;
+        }
         try {
-            CompressUtils.compress(selectFileList, response.getOutputStream());
+            long[] ranges = parsePackageRange(range, length);
+            if (ranges == null) {
+                response.setContentLengthLong(length);
+                archive.write(response.getOutputStream());
+                return;
+            }
+            if (ranges[0] >= length || ranges[0] > ranges[1]) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + ranges[0] + "-" + ranges[1] + "/" + length);
+            response.setContentLengthLong(ranges[1] - ranges[0] + 1);
+            archive.write(response.getOutputStream(), ranges[0], ranges[1]);
+        } catch (ClientAbortException ignored) {
+            // ignored error
         } catch (IOException e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    /**
+     * 解析打包下载的 Range 请求头, 只支持单个区间
+     *
+     * @param range  Range 请求头
+     * @param length 压缩包总大小
+     * @return [start, end], 无需按区间返回时为 null
+     */
+    private static long[] parsePackageRange(String range, long length) {
+        if (CharSequenceUtil.isBlank(range) || !range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+        String[] parts = range.substring("bytes=".length()).trim().split("-", -1);
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            if (parts[0].isEmpty()) {
+                // 后缀区间, 例如 bytes=-500
+                long suffix = Long.parseLong(parts[1]);
+                return new long[]{Math.max(0, length - suffix), length - 1};
+            }
+            long start = Long.parseLong(parts[0]);
+            long end = parts[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(parts[1]), length - 1);
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /***
      * 对下载的文件名转码 解决不同浏览器压缩包名字含有中文时乱码的问题
      *
@@ -808,17 +880,12 @@ public class FileServiceImpl implements IFileService {
             String filePath = fileProperties.getRootDir() + File.separator + username + currentDirectory;
             File file = new File(filePath + fileDocument.getName());
             if (Boolean.TRUE.equals(fileDocument.getIsFolder())) {
-                String searchPath = currentDirectory + fileDocument.getName();
-                String newPath = currentDirectory + newFileName;
-                List<FileBaseDTO> documentList = fileDAO.findAllByUserIdAndPathPrefix(
-                        userService.getUserIdByUserName(username), ReUtil.escape(searchPath + "/"));
-                // 修改该文件夹下的所有文件的path
-                documentList.parallelStream().forEach(rep -> {
-                    String path = rep.getPath();
-                    String newFilePath = replaceStart(path, searchPath, newPath);
-                    fileDAO.setPathById(rep.getId(), newFilePath);
-                    luceneService.pushCreateIndexQueue(rep.getId());
-                });
+                String searchPath = currentDirectory + fileDocument.getName() + "/";
+                String newPath = currentDirectory + newFileName + "/";
+                String userId = userService.getUserIdByUserName(username);
+                // 修改该文件夹下的所有文件的path, 索引只更新path
+                fileDAO.replacePathPrefix(userId, searchPath, newPath);
+                luceneService.updateIndexPathPrefix(userId, searchPath, newPath);
             }
             if (renameFileError(newFileName, id, filePath, file)) {
                 commonFileService.pushMessageOperationFileError(operator, "重命名失败", "重命名");
@@ -1635,10 +1702,6 @@ public class FileServiceImpl implements IFileService {
         return null;
     }
 
-    private static String replaceStart(String str, CharSequence searchStr, CharSequence replacement) {
-        return replacement + str.substring(searchStr.length());
-    }
-
     private boolean renameFileError(String newFileName, String fileId, String filePath, File file) {
         fileDAO.setNameAndSuffixById(newFileName, MyFileUtils.extName(newFileName), fileId);
         boolean isRename = false;
@@ -1688,13 +1751,15 @@ public class FileServiceImpl implements IFileService {
         }
 
         if (currentChunkSize == totalSize) {
-            // 没有分片,直接存
-            try (InputStream inputStream = file.getInputStream()) {
+            // 没有分片,直接存, 写入的同时计算MD5
+            MessageDigest digest = ContentHashService.newDigest();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
                 FileUtil.writeFromStream(inputStream, chunkFile);
             }
             // 设置文件最后修改时间
             CommonUserFileService.setLastModifiedTime(chunkFile.toPath(), upload.getLastModified());
-            uploadFile(upload.getUsername(), chunkFile);
+            String fileId = uploadFile(upload.getUsername(), chunkFile);
+            contentHashService.setContentHash(fileId, ContentHashService.toHex(digest));
             uploadResponse.setUpload(true);
             // 文件操作日志
             logService.syncAddLogFileOperation(upload.getUsername(), userDirectoryFilePath, "上传文件");
@@ -4,8 +4,12 @@ import cn.hutool.core.text.CharSequenceUtil;
 import com.jmal.clouddisk.model.file.FileBase;
 import com.jmal.clouddisk.model.file.FileIntroVO;
 import com.jmal.clouddisk.service.Constants;
+import com.jmal.clouddisk.util.SortKeyUtil;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
-import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 
@@ -14,19 +18,31 @@ public class FileSortService {
     public static List<FileIntroVO> sortByFileName(String sortableProp, List<FileIntroVO> fileIntroVOList, String order) {
         // 按文件名排序
         if (CharSequenceUtil.isBlank(order)) {
-            fileIntroVOList = fileIntroVOList.stream().sorted(FileSortService::compareByFileName).toList();
+            return sortByFileName(fileIntroVOList, false);
         }
-        if (!CharSequenceUtil.isBlank(order) && Constants.FILENAME_FIELD.equals(sortableProp)) {
-            fileIntroVOList = fileIntroVOList.stream().sorted(FileSortService::compareByFileName).toList();
-            if (Constants.DESCENDING.equals(order)) {
-                fileIntroVOList = fileIntroVOList.stream().sorted(FileSortService::desc).toList();
-            }
+        if (Constants.FILENAME_FIELD.equals(sortableProp)) {
+            return sortByFileName(fileIntroVOList, Constants.DESCENDING.equals(order));
         }
         return fileIntroVOList;
     }
 
-    public static int desc(FileBase f1, FileBase f2) {
-        return -1;
+    /**
+     * 文件夹在前, 按排序键排序, 每个文件只计算一次排序键
+     */
+    private static List<FileIntroVO> sortByFileName(List<FileIntroVO> fileIntroVOList, boolean descending) {
+        Comparator<SortEntry> comparator = Comparator.comparing(SortEntry::sortKey).thenComparing(entry -> entry.file().getName());
+        if (descending) {
+            comparator = comparator.reversed();
+        }
+        comparator = Comparator.comparing((SortEntry entry) -> !Boolean.TRUE.equals(entry.file().getIsFolder())).thenComparing(comparator);
+        return fileIntroVOList.stream()
+                .map(file -> new SortEntry(file, SortKeyUtil.getSortKey(CharSequenceUtil.nullToEmpty(file.getName()))))
+                .sorted(comparator)
+                .map(SortEntry::file)
+                .toList();
+    }
+
+    private record SortEntry(FileIntroVO file, String sortKey) {
     }
 
     /***
@@ -47,8 +63,58 @@ public class FileSortService {
     }
 
     public static int compareByName(FileBase f1, FileBase f2) {
-        Comparator<Object> cmp = Collator.getInstance(java.util.Locale.CHINA);
-        return cmp.compare(f1.getName(), f2.getName());
+        int result = SortKeyUtil.getSortKey(f1.getName()).compareTo(SortKeyUtil.getSortKey(f2.getName()));
+        return result != 0 ? result : f1.getName().compareTo(f2.getName());
+    }
+
+    /**
+     * 文件列表在 mongodb 中的排序, 按文件名排序时为 (isFolder desc, sortKey, _id), 与 {@link com.jmal.clouddisk.dao.util.FileCursor} 一致
+     *
+     * @param sortableProp 排序字段
+     * @param order        排序方式, 为空时按文件名升序
+     */
+    public static Sort getSort(String sortableProp, String order) {
+        Sort.Direction direction = isDescending(sortableProp, order) ? Sort.Direction.DESC : Sort.Direction.ASC;
+        if (isSortByName(sortableProp, order)) {
+            return Sort.by(Sort.Direction.DESC, Constants.IS_FOLDER).and(Sort.by(direction, Constants.SORT_KEY, "_id"));
+        }
+        return Sort.by(direction, sortableProp);
+    }
+
+    /**
+     * 是否降序, 与 {@link com.jmal.clouddisk.model.UploadApiParamDTO#toSearchDTO()} 一致, 排序字段和排序方式都指定时才生效, 否则按文件名升序
+     */
+    public static boolean isDescending(String sortableProp, String order) {
+        return CharSequenceUtil.isNotBlank(sortableProp) && Constants.DESCENDING.equals(order);
+    }
+
+    /**
+     * 是否按文件名排序, 没有指定排序方式时默认按文件名排序
+     */
+    public static boolean isSortByName(String sortableProp, String order) {
+        return CharSequenceUtil.isBlank(order) || CharSequenceUtil.isBlank(sortableProp) || Constants.FILENAME_FIELD.equals(sortableProp);
+    }
+
+    /**
+     * 把分页中按文件名排序替换为按 (sortKey, publicId) 排序, 与 {@link com.jmal.clouddisk.dao.util.FileCursor} 一致
+     *
+     * @param pageable Pageable
+     * @return Pageable
+     */
+    public static Pageable toSortKeyPageable(Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getSort().getOrderFor(Constants.FILENAME_FIELD) == null) {
+            return pageable;
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : pageable.getSort()) {
+            if (Constants.FILENAME_FIELD.equals(order.getProperty())) {
+                orders.add(order.withProperty(Constants.SORT_KEY));
+                orders.add(order.withProperty("publicId"));
+            } else {
+                orders.add(order);
+            }
+        }
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), Sort.by(orders));
     }
 
 }
@@ -306,15 +306,6 @@ public class LogService {
         return ResultUtil.success(logOperationDTOList).setCount(page.getTotalElements());
     }
 
-    /***
-     * 获取url的访问次数
-     * @param url url
-     * @return 访问次数
-     */
-    public long getVisitsByUrl(String url) {
-        return logDAO.countByUrl(url);
-    }
-
     @PreDestroy
     public void destroy() {
         if (ipSearcher != null) {
@@ -53,6 +53,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.jetbrains.annotations.NotNull;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.springframework.beans.BeanUtils;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
@@ -107,6 +110,12 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     private final IFileDAO fileDAO;
 
+    private final ArticleCacheService articleCacheService;
+
+    /**
+     * 发布时已经处理过的 html 的前缀, 没有这个前缀的是之前发布的文章, 读取时再处理
+     */
+    private static final String RENDERED_HTML_MARK = "<!--rendered-->";
 
     @Override
     public ResponseResult<FileDocument> getMarkDownOne(ArticleDTO articleDTO) {
@@ -125,14 +134,20 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public Page<List<MarkdownVO>> getArticles(Integer page, Integer pageSize) {
-        ArticleDTO articleDTO = new ArticleDTO();
-        articleDTO.setPageIndex(page);
-        articleDTO.setPageSize(pageSize);
-        return getArticles(articleDTO);
+        return articleCacheService.get("articles:" + page + ":" + pageSize, () -> {
+            ArticleDTO articleDTO = new ArticleDTO();
+            articleDTO.setPageIndex(page);
+            articleDTO.setPageSize(pageSize);
+            return getArticles(articleDTO);
+        });
     }
 
     @Override
     public Urlset getSitemapXml() {
+        return articleCacheService.get("sitemap.xml", this::buildSitemapXml);
+    }
+
+    private Urlset buildSitemapXml() {
         String siteUrl = getSiteUrl();
         List<FileDocument> fileDocumentList = getArticlesUrl();
         Urlset urlset = new Urlset();
@@ -157,6 +172,10 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public String getSitemapTxt() {
+        return articleCacheService.get("sitemap.txt", this::buildSitemapTxt);
+    }
+
+    private String buildSitemapTxt() {
         String siteUrl = getSiteUrl();
         List<FileDocument> fileDocumentList = getArticlesUrl();
         StringBuilder stringBuilder = new StringBuilder();
@@ -192,9 +211,11 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public List<MarkdownVO> getAlonePages() {
-        ArticleDTO articleDTO = new ArticleDTO();
-        articleDTO.setIsAlonePage(true);
-        return getMarkdownList(articleDTO).getData();
+        return articleCacheService.get("alone-pages", () -> {
+            ArticleDTO articleDTO = new ArticleDTO();
+            articleDTO.setIsAlonePage(true);
+            return getMarkdownList(articleDTO).getData();
+        });
     }
 
     private Page<List<MarkdownVO>> getArticles(ArticleDTO articleDTO) {
@@ -207,24 +228,28 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public Page<List<MarkdownVO>> getArticlesByCategoryId(Integer page, Integer pageSize, String categoryId) {
-        ArticleDTO articleDTO = new ArticleDTO();
-        articleDTO.setPageIndex(page);
-        articleDTO.setPageSize(pageSize);
-        if (!CharSequenceUtil.isBlank(categoryId)) {
-            articleDTO.setCategoryIds(new String[]{categoryId});
-        }
-        return getArticles(articleDTO);
+        return articleCacheService.get("category:" + categoryId + ":" + page + ":" + pageSize, () -> {
+            ArticleDTO articleDTO = new ArticleDTO();
+            articleDTO.setPageIndex(page);
+            articleDTO.setPageSize(pageSize);
+            if (!CharSequenceUtil.isBlank(categoryId)) {
+                articleDTO.setCategoryIds(new String[]{categoryId});
+            }
+            return getArticles(articleDTO);
+        });
     }
 
     @Override
     public Page<List<MarkdownVO>> getArticlesByTagId(int page, int pageSize, String tagId) {
-        ArticleDTO articleDTO = new ArticleDTO();
-        articleDTO.setPageIndex(page);
-        articleDTO.setPageSize(pageSize);
-        if (!CharSequenceUtil.isBlank(tagId)) {
-            articleDTO.setTagIds(new String[]{tagId});
-        }
-        return getArticles(articleDTO);
+        return articleCacheService.get("tag:" + tagId + ":" + page + ":" + pageSize, () -> {
+            ArticleDTO articleDTO = new ArticleDTO();
+            articleDTO.setPageIndex(page);
+            articleDTO.setPageSize(pageSize);
+            if (!CharSequenceUtil.isBlank(tagId)) {
+                articleDTO.setTagIds(new String[]{tagId});
+            }
+            return getArticles(articleDTO);
+        });
     }
 
     @Override
@@ -247,6 +272,10 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public Page<Object> getArchives(Integer page, Integer pageSize) {
+        return articleCacheService.get("archives:" + page + ":" + pageSize, () -> buildArchives(page, pageSize));
+    }
+
+    private Page<Object> buildArchives(Integer page, Integer pageSize) {
         boolean pagination = page != null && pageSize != null;
         org.springframework.data.domain.Page<ArchivesVO> archivesVOPage = articleDAO.getArchives(page, pageSize);
         Map<String, List<ArchivesVO>> resultMap = new LinkedHashMap<>();
@@ -280,11 +309,14 @@ public class MarkdownServiceImpl implements IMarkdownService {
 
     @Override
     public ArticleVO getMarkDownContentBySlug(String slug) {
-        ArticleVO articleVO;
         if (CharSequenceUtil.isBlank(slug)) {
             return null;
         }
-        articleVO = articleDAO.findBySlug(slug);
+        return articleCacheService.get("article:" + slug, () -> loadMarkDownContentBySlug(slug));
+    }
+
+    private ArticleVO loadMarkDownContentBySlug(String slug) {
+        ArticleVO articleVO = articleDAO.findBySlug(slug);
         if (articleVO == null) {
             articleVO = articleDAO.findByFileId(slug);
         }
@@ -296,9 +328,50 @@ public class MarkdownServiceImpl implements IMarkdownService {
         String filename = articleVO.getName();
         articleVO.setName(filename.substring(0, filename.length() - articleVO.getSuffix().length() - 1));
         setOtherProperties(articleVO);
+        if (articleVO.getHtml() != null && !articleVO.getHtml().startsWith(RENDERED_HTML_MARK)) {
+            articleVO.setHtml(renderHtml(articleVO.getHtml(), articleVO.getCover()));
+        }
         return articleVO;
     }
 
+    /**
+     * 处理文章的 html: 给标题添加 id, 图片改为懒加载
+     *
+     * @param html  html
+     * @param cover 文章封面, 懒加载图片的占位图, 为空时使用网站背景
+     * @return 处理后的 html
+     */
+    private String renderHtml(String html, String cover) {
+        // 使用 Jsoup 解析 HTML 内容, 使用parseBodyFragment 避免 Jsoup 自动添加 <html> 和 <body> 标签
+        Document document = Jsoup.parseBodyFragment(html);
+
+        // 关闭 "Pretty Print"（美化排版） 避免 Jsoup 自动格式化 HTML
+        document.outputSettings().prettyPrint(false);
+
+        // 遍历所有 h 标签（h1, h2, h3, h4, h5, h6）
+        for (Element header : document.select("h1, h2, h3, h4, h5, h6")) {
+            if (!header.hasAttr("id")) {
+                String textContent = header.text();
+                // 将非字母数字字符替换为下划线
+                String idValue = "header-" + textContent.replaceAll("[^a-zA-Z0-9一-龥\\s]", "").trim().replaceAll("\\s+", "_");
+                header.attr("id", idValue);
+            }
+        }
+
+        // default img
+        if (CharSequenceUtil.isBlank(cover)) {
+            cover = settingService.getWebsiteSetting().getBackgroundSite();
+        }
+
+        // 遍历所有 img 标签
+        for (Element img : document.select("img[src]")) {
+            img.attr("data-src", img.attr("src"));
+            img.addClass("lazy");
+            img.attr("src", CharSequenceUtil.nullToEmpty(cover));
+        }
+        return RENDERED_HTML_MARK + document.body().html();
+    }
+
     private void setOtherProperties(MarkdownBaseFile markdownBaseFile) {
         if (markdownBaseFile.getCategoryIds() != null) {
             List<CategoryDO> categories = categoryService.getCategoryListByIds(markdownBaseFile.getCategoryIds());
@@ -320,6 +393,7 @@ public class MarkdownServiceImpl implements IMarkdownService {
             list.add(fileDocument);
         }
         articleDAO.updatePageSort(list);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -417,7 +491,12 @@ public class MarkdownServiceImpl implements IMarkdownService {
         if (upload.getPageSort() != null) {
             fileDocument.setPageSort(upload.getPageSort());
         }
+        if (!BooleanUtil.isTrue(upload.getIsDraft()) && upload.getHtml() != null) {
+            // 发布时处理好 html, 访问文章时不需要再解析
+            upload.setHtml(renderHtml(upload.getHtml(), upload.getCover()));
+        }
         articleDAO.upsert(upload, isUpdate, fileDocument);
+        articleCacheService.invalidateAll();
         luceneService.pushCreateIndexQueue(upload.getFileId());
         return ResultUtil.success(upload.getFileId());
     }
@@ -463,6 +542,7 @@ public class MarkdownServiceImpl implements IMarkdownService {
     @Override
     public ResponseResult<Object> deleteDraft(String fileId, String username) {
         articleDAO.deleteDraft(fileId, username);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -3,7 +3,9 @@ package com.jmal.clouddisk.service.impl;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.file.PathUtil;
+import cn.hutool.core.text.CharSequenceUtil;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.dao.IFileDAO;
 import com.jmal.clouddisk.exception.CommonException;
@@ -18,12 +20,17 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -49,6 +56,8 @@ public class MultipartUpload {
 
     private final IFileDAO fileDAO;
 
+    private final ContentHashService contentHashService;
+
     /***
      * 断点恢复上传缓存(已上传的缓存)
      */
@@ -66,6 +75,31 @@ public class MultipartUpload {
      * 合并文件的写入锁缓存
      */
     private static final Cache<String, Lock> chunkWriteLockCache = CaffeineUtil.getChunkWriteLockCache();
+    /***
+     * 定位写入模式下已写入分片的位图
+     * key: username/md5
+     */
+    private static final Cache<String, ChunkBitmap> chunkBitmapCache = Caffeine.newBuilder().expireAfterAccess(1, TimeUnit.DAYS).build();
+
+    /**
+     * 定位写入模式下预分配的目标文件后缀, 位于 ${chunkFileDir}/${username}/${md5}.part
+     */
+    private static final String PART_FILE_SUFFIX = ".part";
+
+    /**
+     * 定位写入模式下已写入分片位图的文件后缀, 位于 ${chunkFileDir}/${username}/${md5}.chunks
+     */
+    private static final String BITMAP_FILE_SUFFIX = ".chunks";
+
+    /**
+     * 秒传时复制的临时文件后缀, 位于 ${chunkFileDir}/${username}/${md5}.instant
+     */
+    private static final String INSTANT_FILE_SUFFIX = ".instant";
+
+    /**
+     * 写入分片时的缓冲区大小
+     */
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
 
     /**
      * 上传分片文件
@@ -76,6 +110,15 @@ public class MultipartUpload {
      * @param file           MultipartFile
      */
     public void uploadChunkFile(UploadApiParamDTO upload, UploadResponse uploadResponse, String md5, MultipartFile file) throws IOException {
+        if (isPositionalMode(upload)) {
+            // 直接写入预分配文件的对应位置, 不再单独保存分片
+            ChunkBitmap bitmap = writeChunkAtPosition(upload, file);
+            uploadResponse.setUpload(true);
+            if (bitmap.isComplete()) {
+                uploadResponse.setMerge(true);
+            }
+            return;
+        }
         // 多个分片
         // 落地保存文件
         // 这时保存的每个块, 块先存好, 后续会调合并接口, 将所有块合成一个大文件
@@ -110,6 +153,29 @@ public class MultipartUpload {
         String md5 = upload.getIdentifier();
         Path file = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getFilename());
         Path outputFile = Paths.get(fileProperties.getRootDir(), upload.getUsername(), commonUserFileService.getUserDirectoryFilePath(upload));
+        Path partFile = getPartFile(upload);
+        ContentHashService.UploadDigest uploadDigest = contentHashService.getUploadDigest(getChunkBitmapKey(upload));
+        if (Files.exists(partFile)) {
+            // 定位写入模式, 所有分片已在目标位置, 合并只需要重命名
+            ChunkBitmap bitmap = chunkBitmapCache.getIfPresent(getChunkBitmapKey(upload));
+            if (bitmap == null && isPositionalMode(upload)) {
+                // 缓存已过期或服务已重启, 从磁盘加载位图
+                bitmap = ChunkBitmap.load(getBitmapFile(upload), partFile, upload.getTotalChunks(), upload.getTotalSize());
+            }
+            if (bitmap == null || !bitmap.isComplete()) {
+                // 无法确认所有分片都已写入, 拒绝合并
+                throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+            }
+            if (isPositionalMode(upload)) {
+                // 补上还未计算的分片
+                uploadDigest.catchUp(partFile, _ -> true, upload.getChunkSize(), upload.getTotalChunks(), upload.getTotalSize(), true, ContentHashService.MAX_CATCH_UP_BYTES);
+            }
+            file = partFile;
+            chunkBitmapCache.invalidate(getChunkBitmapKey(upload));
+            Files.deleteIfExists(getBitmapFile(upload));
+        }
+        String contentHash = Files.exists(file) ? uploadDigest.getHex(Files.size(file)) : null;
+        contentHashService.removeUploadDigest(getChunkBitmapKey(upload));
         // 清除缓存
         resumeCache.invalidate(md5);
         writtenCache.invalidate(md5);
@@ -122,16 +188,64 @@ public class MultipartUpload {
         }
         PathUtil.move(file, outputFile, true);
 
+        uploadResponse.setUpload(true);
+        createUploadedFile(upload, outputFile, contentHash);
+        return uploadResponse;
+    }
+
+    /**
+     * 登记上传完成的文件
+     *
+     * @param upload      UploadApiParamDTO
+     * @param outputFile  上传完成的文件
+     * @param contentHash 文件内容的哈希, 未知时为 null
+     */
+    private void createUploadedFile(UploadApiParamDTO upload, Path outputFile, String contentHash) throws IOException {
         // 设置文件最后修改时间
         CommonUserFileService.setLastModifiedTime(outputFile, upload.getLastModified());
-        uploadResponse.setUpload(true);
         CaffeineUtil.setUploadFileCache(outputFile.toFile().getAbsolutePath());
-        commonUserFileService.createFile(upload.getUsername(), outputFile.toFile(), null, null);
+        String fileId = commonUserFileService.createFile(upload.getUsername(), outputFile.toFile(), null, null);
+        contentHashService.setContentHash(fileId, contentHash);
 
         // 文件操作日志
         logService.syncAddLogFileOperation(upload.getUsername(), commonUserFileService.getUserDirectoryFilePath(upload), "上传文件");
+    }
 
-        return uploadResponse;
+    /**
+     * 秒传, 用户自己已有内容相同的文件时直接复制
+     * <p>
+     * 客户端在检查分片时额外提供 contentHash(文件内容的SHA-256)才能秒传, identifier 仍然是分片文件的标识
+     *
+     * @param upload UploadApiParamDTO
+     * @return 是否已完成上传
+     */
+    private boolean instantUpload(UploadApiParamDTO upload) {
+        String contentHash = upload.getContentHash();
+        if (CharSequenceUtil.isBlank(contentHash)) {
+            return false;
+        }
+        Path source = contentHashService.findSameContentFile(upload.getUserId(), upload.getUsername(), contentHash, upload.getTotalSize());
+        if (source == null) {
+            return false;
+        }
+        Path outputFile = Paths.get(fileProperties.getRootDir(), upload.getUsername(), commonUserFileService.getUserDirectoryFilePath(upload));
+        if (!Files.isDirectory(outputFile.getParent()) || CommonFileService.isLock(outputFile.toFile(), fileProperties.getRootDir(), upload.getUsername())) {
+            return false;
+        }
+        Path tempFile = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), contentHash + INSTANT_FILE_SUFFIX);
+        try {
+            Files.createDirectories(tempFile.getParent());
+            contentHashService.cloneFile(source, tempFile);
+            PathUtil.move(tempFile, outputFile, true);
+            // 与源文件登记的哈希相同, 由服务端计算
+            createUploadedFile(upload, outputFile, contentHash);
+            log.debug("秒传: {}", outputFile);
+            return true;
+        } catch (Exception e) {
+            log.warn("秒传失败, 改为正常上传: {}, {}", outputFile, e.getMessage());
+            PathUtil.del(tempFile);
+            return false;
+        }
     }
 
     /***
@@ -214,9 +328,17 @@ public class MultipartUpload {
             if (fileDAO.existsByUserIdAndPathAndMd5(upload.getUserId(), path, md5)) {
                 // 文件已存在
                 uploadResponse.setPass(true);
+            } else if (instantUpload(upload)) {
+                // 秒传
+                uploadResponse.setPass(true);
             } else {
                 int totalChunks = upload.getTotalChunks();
-                List<Integer> chunks = resumeCache.get(md5, _ -> createResumeCache(upload));
+                List<Integer> chunks;
+                if (isPositionalMode(upload)) {
+                    chunks = getChunkBitmap(upload).toList();
+                } else {
+                    chunks = resumeCache.get(md5, _ -> createResumeCache(upload));
+                }
                 // 返回已存在的分片
                 uploadResponse.setResume(chunks);
                 assert chunks != null;
@@ -250,14 +372,23 @@ public class MultipartUpload {
         File chunkFile = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), md5, String.valueOf(chunk)).toFile();
         // 目标文件
         File outputFile = Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getFilename()).toFile();
-        try (FileOutputStream fileOutputStream = new FileOutputStream(outputFile, true);
-             FileChannel outChannel = fileOutputStream.getChannel();
-             // 为源文件（分片）也创建一个输入流和通道
-             FileInputStream fileInputStream = new FileInputStream(chunkFile);
-             FileChannel inChannel = fileInputStream.getChannel()) {
-            // 使用 transferTo 方法直接从输入通道传输数据到输出通道
-            // transferTo(起始位置, 传输长度, 目标通道)
-            long transferredBytes = inChannel.transferTo(0, inChannel.size(), outChannel);
+        ContentHashService.UploadDigest uploadDigest = contentHashService.getUploadDigest(getChunkBitmapKey(upload));
+        boolean digesting = uploadDigest.tryBeginChunk(chunk);
+        try (FileChannel outChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             // 为源文件（分片）也创建一个通道
+             FileChannel inChannel = FileChannel.open(chunkFile.toPath(), StandardOpenOption.READ)) {
+            long transferredBytes;
+            if (digesting) {
+                // 追加的同时计算哈希
+                transferredBytes = copy(inChannel, outChannel, outChannel.size(), inChannel.size(), uploadDigest);
+                uploadDigest.endChunk(transferredBytes);
+                digesting = false;
+            } else {
+                // 使用 transferTo 方法直接从输入通道传输数据到输出通道
+                // transferTo(起始位置, 传输长度, 目标通道)
+                outChannel.position(outChannel.size());
+                transferredBytes = inChannel.transferTo(0, inChannel.size(), outChannel);
+            }
 
             if (transferredBytes != chunkFile.length()) {
                 log.error("transferredBytes: {}, chunkFileLength: {}", transferredBytes, chunkFile.length());
@@ -268,7 +399,36 @@ public class MultipartUpload {
             unWrittenCache.put(md5, unWrittenChunks);
         } catch (IOException e) {
             throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+        } finally {
+            if (digesting) {
+                uploadDigest.abortChunk();
+            }
+        }
+    }
+
+    /***
+     * 从输入通道读取 size 字节写入输出通道的 position 位置, 同时计算哈希
+     * @param uploadDigest 增量哈希, 为 null 时不计算
+     * @return 写入的字节数
+     */
+    private static long copy(ReadableByteChannel inChannel, FileChannel outChannel, long position, long size, ContentHashService.UploadDigest uploadDigest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long written = 0;
+        while (written < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - written));
+            if (inChannel.read(buffer) < 0) {
+                break;
+            }
+            buffer.flip();
+            if (uploadDigest != null) {
+                uploadDigest.update(buffer);
+            }
+            while (buffer.hasRemaining()) {
+                written += outChannel.write(buffer, position + written);
+            }
         }
+        return written;
     }
 
     /***
@@ -326,5 +486,92 @@ public class MultipartUpload {
         return resumeList;
     }
 
+    /***
+     * 是否使用定位写入模式
+     * 需要知道分片大小和文件总大小, 才能确定每个分片在目标文件中的位置
+     */
+    private static boolean isPositionalMode(UploadApiParamDTO upload) {
+        Integer chunkSize = upload.getChunkSize();
+        Long totalSize = upload.getTotalSize();
+        Integer totalChunks = upload.getTotalChunks();
+        if (chunkSize == null || chunkSize <= 0 || totalSize == null || totalChunks == null || totalChunks <= 0) {
+            return false;
+        }
+        return (long) chunkSize * (totalChunks - 1) < totalSize;
+    }
+
+    /***
+     * 将分片直接写入预分配文件的 (chunkNumber-1)*chunkSize 位置
+     * @return 已写入分片的位图
+     */
+    private ChunkBitmap writeChunkAtPosition(UploadApiParamDTO upload, MultipartFile file) throws IOException {
+        Integer chunkNumber = upload.getChunkNumber();
+        if (chunkNumber == null || chunkNumber < 1 || chunkNumber > upload.getTotalChunks()) {
+            throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+        }
+        ChunkBitmap bitmap = getChunkBitmap(upload);
+        if (bitmap.contains(chunkNumber)) {
+            return bitmap;
+        }
+        long position = (long) (chunkNumber - 1) * upload.getChunkSize();
+        long size = file.getSize();
+        // 除最后一个分片外都必须是完整的分片, 最后一个分片正好到文件末尾, 否则会留下未写入的空洞
+        long expectedSize = chunkNumber < upload.getTotalChunks() ? upload.getChunkSize() : upload.getTotalSize() - position;
+        if (size != expectedSize) {
+            log.warn("分片大小不正确, chunkNumber: {}, size: {}, expected: {}", chunkNumber, size, expectedSize);
+            throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+        }
+        // 按顺序到达的分片在写入的同时计算哈希
+        ContentHashService.UploadDigest uploadDigest = contentHashService.getUploadDigest(getChunkBitmapKey(upload));
+        boolean digesting = uploadDigest.tryBeginChunk(chunkNumber);
+        try {
+            try (InputStream inputStream = file.getInputStream();
+                 ReadableByteChannel inChannel = Channels.newChannel(inputStream);
+                 FileChannel outChannel = FileChannel.open(bitmap.getPartFile(), StandardOpenOption.WRITE)) {
+                long written = copy(inChannel, outChannel, position, size, digesting ? uploadDigest : null);
+                if (written != size) {
+                    log.error("transferredBytes: {}, chunkFileLength: {}", written, size);
+                    throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+                }
+                // 先落盘数据, 再记录位图, 保证重启后位图中的分片一定是完整的
+                outChannel.force(false);
+            }
+            bitmap.set(chunkNumber);
+            if (digesting) {
+                uploadDigest.endChunk(size);
+                digesting = false;
+            }
+        } finally {
+            if (digesting) {
+                uploadDigest.abortChunk();
+            }
+        }
+        // 补上之前乱序到达的分片
+        uploadDigest.catchUp(bitmap.getPartFile(), bitmap::contains, upload.getChunkSize(), upload.getTotalChunks(), upload.getTotalSize(), false, Long.MAX_VALUE);
+        return bitmap;
+    }
+
+    private ChunkBitmap getChunkBitmap(UploadApiParamDTO upload) {
+        return chunkBitmapCache.get(getChunkBitmapKey(upload), _ -> {
+            try {
+                return ChunkBitmap.open(getBitmapFile(upload), getPartFile(upload), upload.getTotalChunks(), upload.getTotalSize());
+            } catch (IOException e) {
+                log.error("打开分片位图失败: {}", e.getMessage(), e);
+                throw new CommonException(ExceptionType.FAIL_MERGE_FILE);
+            }
+        });
+    }
+
+    private static String getChunkBitmapKey(UploadApiParamDTO upload) {
+        return upload.getUsername() + "/" + upload.getIdentifier();
+    }
+
+    private Path getPartFile(UploadApiParamDTO upload) {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getIdentifier() + PART_FILE_SUFFIX);
+    }
+
+    private Path getBitmapFile(UploadApiParamDTO upload) {
+        return Paths.get(fileProperties.getRootDir(), fileProperties.getChunkFileDir(), upload.getUsername(), upload.getIdentifier() + BITMAP_FILE_SUFFIX);
+    }
 
 }
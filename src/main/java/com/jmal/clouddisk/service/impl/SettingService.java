@@ -53,6 +53,8 @@ public class SettingService {
 
     private final IWebsiteSettingDAO websiteSettingDAO;
 
+    private final ArticleCacheService articleCacheService;
+
     private final IHeartwingsDAO heartwingsDAO;
 
     private final IAccessTokenDAO accessTokenDAO;
@@ -144,6 +146,7 @@ public class SettingService {
         // 添加心语记录
         addHeartwings(websiteSettingDO);
         websiteSettingDAO.upsert(websiteSettingDO);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
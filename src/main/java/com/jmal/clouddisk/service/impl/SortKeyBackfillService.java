@@ -0,0 +1,72 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.jmal.clouddisk.dao.IFileDAO;
+import com.jmal.clouddisk.model.file.dto.FileBaseDTO;
+import com.jmal.clouddisk.util.SortKeyUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 补全旧数据的文件名排序键
+ * <p>
+ * 新增和重命名的文件在写入时生成排序键, 升级前已有的文件在启动后分批补全, 补全之前目录列表不使用游标分页
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SortKeyBackfillService {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final IFileDAO fileDAO;
+
+    /**
+     * 所有文件都已有排序键
+     */
+    private volatile boolean completed;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread.ofVirtual().name("sort-key-backfill").start(this::backfill);
+    }
+
+    /**
+     * 排序键是否已补全, 补全之前按排序键翻页可能遗漏没有排序键的文件
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    private void backfill() {
+        String afterId = null;
+        long count = 0;
+        try {
+            while (true) {
+                List<FileBaseDTO> list = fileDAO.findAllWithoutSortKey(afterId, BATCH_SIZE);
+                if (list.isEmpty()) {
+                    break;
+                }
+                Map<String, String> sortKeyMap = HashMap.newHashMap(list.size());
+                for (FileBaseDTO fileBaseDTO : list) {
+                    sortKeyMap.put(fileBaseDTO.getId(), SortKeyUtil.getSortKey(fileBaseDTO.getName()));
+                }
+                fileDAO.setSortKeys(sortKeyMap);
+                count += list.size();
+                afterId = list.getLast().getId();
+            }
+            completed = true;
+        } catch (Exception e) {
+            log.error("补全文件排序键失败", e);
+        }
+        if (count > 0) {
+            log.info("补全文件排序键完成, 共 {} 个文件", count);
+        }
+    }
+}
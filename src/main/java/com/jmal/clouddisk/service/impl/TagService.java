@@ -35,6 +35,8 @@ public class TagService {
 
     private final LuceneQueryService luceneQueryService;
 
+    private final ArticleCacheService articleCacheService;
+
     /**
      * 标签列表
      * @param userId userId
@@ -122,6 +124,7 @@ public class TagService {
         BeanUtils.copyProperties(tagDTO, tag);
         tag.setId(null);
         tagDAO.save(tag);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -147,6 +150,7 @@ public class TagService {
         TagDO tag = new TagDO();
         BeanUtils.copyProperties(tagDTO, tag);
         tagDAO.save(tag);
+        articleCacheService.invalidateAll();
         return ResultUtil.success();
     }
 
@@ -173,6 +177,7 @@ public class TagService {
      */
     public void delete(List<String> tagIdList) {
         tagDAO.removeByIdIn(tagIdList);
+        articleCacheService.invalidateAll();
     }
 
     /**
@@ -271,5 +276,6 @@ public class TagService {
             tagDTOList.add(tagDTO);
         }
         tagDTOList.parallelStream().forEach(tagDTO -> tagDAO.updateSortById(tagDTO.getId(), tagDTO.getSort()));
+        articleCacheService.invalidateAll();
     }
 }
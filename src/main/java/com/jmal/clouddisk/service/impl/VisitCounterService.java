@@ -0,0 +1,189 @@
+package com.jmal.clouddisk.service.impl;
+
+import com.jmal.clouddisk.dao.ILogDAO;
+import com.jmal.clouddisk.dao.IVisitCounterDAO;
+import com.jmal.clouddisk.model.dto.UrlVisitsDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 页面访问计数
+ * <p>
+ * 访问次数先累加在内存中, 由后台任务定时批量写入 visit_counters, 读取时直接取内存中的值, 文章页面不再记录访问日志。
+ * 升级后第一次启动时从已有的访问日志统计一次作为初始值, 确认写入后再单独写入 {@link #SEED_MARKER_URL} 标记, 失败时下次启动重试。
+ * 只有确定没有写入的次数才会重试, 写入结果未知(如等待超时)时不再重试, 宁可少计也不重复计数
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VisitCounterService {
+
+    public static final String COLLECTION_NAME = "visit_counters";
+
+    public static final String ARTICLE_URL_PREFIX = "/articles/s/";
+
+    public static final String ALONE_PAGE_URL_PREFIX = "/articles/o/";
+
+    private static final long FLUSH_INTERVAL_SECONDS = 10;
+
+    /**
+     * 初始化完成标记, 在初始值确认写入后写入
+     */
+    static final String SEED_MARKER_URL = "#seeded";
+
+    private final IVisitCounterDAO visitCounterDAO;
+
+    private final ILogDAO logDAO;
+
+    /**
+     * key: url
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * 初始化和写入都在这个线程中执行, 互相之间不需要加锁
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("visit-counter-flush").daemon(true).factory());
+
+    @PostConstruct
+    public void init() {
+        LocalDateTime startTime = LocalDateTime.now();
+        scheduler.execute(() -> seed(startTime));
+        scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 访问次数加1
+     *
+     * @param url url
+     * @return 加1后的访问次数
+     */
+    public long increment(String url) {
+        Counter counter = getCounter(url);
+        counter.pending.increment();
+        return counter.get();
+    }
+
+    private Counter getCounter(String url) {
+        return counters.computeIfAbsent(url, key -> new Counter(visitCounterDAO.findVisitsByUrl(key)));
+    }
+
+    /**
+     * 把内存中累加的访问次数批量写入数据库
+     */
+    private void flush() {
+        Map<String, Long> increments = new HashMap<>();
+        counters.forEach((url, counter) -> {
+            long delta = counter.pending.sum();
+            if (delta > 0) {
+                // 先加到已写入的次数上再从待写入中减去, 读取到的次数不会变小
+                counter.flushed.addAndGet(delta);
+                counter.pending.add(-delta);
+                increments.put(url, delta);
+            }
+        });
+        if (increments.isEmpty()) {
+            return;
+        }
+        Set<String> failedUrls;
+        try {
+            failedUrls = visitCounterDAO.incrementAll(increments);
+        } catch (Exception e) {
+            // 写入结果未知, 之后仍可能提交, 重试会重复计数
+            log.error("写入访问次数结果未知, 不再重试, {}", e.getMessage(), e);
+            return;
+        }
+        if (!failedUrls.isEmpty()) {
+            log.warn("写入访问次数失败, 下次重试, 页面数: {}", failedUrls.size());
+        }
+        // 确定没有写入的, 放回待写入中, 下次重试
+        failedUrls.forEach(url -> {
+            long delta = increments.get(url);
+            Counter counter = counters.get(url);
+            counter.pending.add(delta);
+            counter.flushed.addAndGet(-delta);
+        });
+    }
+
+    /**
+     * 从访问日志统计初始的访问次数, 只统计启动之前的日志, 启动之后的访问已经计入内存
+     *
+     * @param startTime 启动时间
+     */
+    private void seed(LocalDateTime startTime) {
+        try {
+            if (visitCounterDAO.findVisitsByUrl(SEED_MARKER_URL) > 0) {
+                return;
+            }
+            Map<String, Long> visitsMap = new HashMap<>();
+            for (String urlPrefix : List.of(ARTICLE_URL_PREFIX, ALONE_PAGE_URL_PREFIX)) {
+                for (UrlVisitsDTO urlVisitsDTO : logDAO.countGroupByUrlPrefix(urlPrefix, startTime)) {
+                    visitsMap.put(urlVisitsDTO.url(), urlVisitsDTO.visits());
+                }
+            }
+            // 写入结果未知时抛出异常, 不写入标记
+            Set<String> failedUrls = visitCounterDAO.incrementAll(visitsMap);
+            // 初始化之前已经加载过的计数, 重新读取数据库中的值
+            counters.forEach((url, counter) -> counter.flushed.set(visitCounterDAO.findVisitsByUrl(url)));
+            // 确定没有写入的初始值交给定时写入重试
+            failedUrls.forEach(url -> getCounter(url).pending.add(visitsMap.get(url)));
+            if (!visitCounterDAO.incrementAll(Map.of(SEED_MARKER_URL, 1L)).isEmpty()) {
+                // 初始值已写入, 下次启动会再统计一次
+                log.error("写入访问次数初始化标记失败");
+                return;
+            }
+            log.info("初始化访问次数完成, 共 {} 个页面", visitsMap.size());
+        } catch (Exception e) {
+            log.error("初始化访问次数失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private static final class Counter {
+
+        /**
+         * 已写入数据库的次数
+         */
+        private final AtomicLong flushed;
+
+        /**
+         * 还未写入数据库的次数
+         */
+        private final LongAdder pending = new LongAdder();
+
+        private Counter(long flushed) {
+            this.flushed = new AtomicLong(flushed);
+        }
+
+        private long get() {
+            return flushed.get() + pending.sum();
+        }
+    }
+}
@@ -34,4 +34,8 @@ public class HashUtil {
     public static String sha256(String str) {
         return SHA256.hashString(str, StandardCharsets.UTF_8).toString();
     }
+
+    public static byte[] sha256Bytes(String str) {
+        return SHA256.hashString(str, StandardCharsets.UTF_8).asBytes();
+    }
 }
@@ -0,0 +1,125 @@
+package com.jmal.clouddisk.util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * 文件名排序键
+ * <p>
+ * 把文件名拆分为数字段和文本段: 数字段按数值比较, 文本段按 {@link Locale#CHINA} 的 Collator 比较(中文按拼音, 不区分大小写)。
+ * 生成的排序键只包含 [0-9a-f], 在任何数据库排序规则下按字符串比较的结果都与自然排序一致, 可以直接在数据库中排序和分页。
+ * 排序键相同的文件(如 "a" 和 "A", "01" 和 "1")由调用方再按文件名排序
+ */
+public class SortKeyUtil {
+
+    /**
+     * 排序键的最大长度, 与数据库中 sort_key 字段的长度一致
+     */
+    public static final int MAX_LENGTH = 255;
+
+    /**
+     * 数字段标记, 数字段排在文本段之前
+     */
+    private static final char NUMBER_MARK = '1';
+
+    /**
+     * 文本段标记
+     */
+    private static final char TEXT_MARK = '2';
+
+    /**
+     * 文本段结束标记, 小于任何非零的排序权重
+     */
+    private static final String TEXT_END = "0000";
+
+    /**
+     * 数字段最多保留的位数, 长度用两位十六进制表示
+     */
+    private static final int MAX_DIGITS = 0xff;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator collator = Collator.getInstance(Locale.CHINA);
+        collator.setStrength(Collator.PRIMARY);
+        return collator;
+    });
+
+    private SortKeyUtil() {
+    }
+
+    /**
+     * 获取文件名的排序键
+     *
+     * @param name 文件名
+     * @return 排序键, name 为 null 时返回 null
+     */
+    public static String getSortKey(String name) {
+        if (name == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(Math.min(name.length() * 5 + 8, MAX_LENGTH + 8));
+        int length = name.length();
+        int i = 0;
+        while (i < length && key.length() < MAX_LENGTH) {
+            int start = i;
+            if (isDigit(name.charAt(i))) {
+                while (i < length && isDigit(name.charAt(i))) {
+                    i++;
+                }
+                appendNumber(key, name, start, i);
+            } else {
+                while (i < length && !isDigit(name.charAt(i))) {
+                    i++;
+                }
+                appendText(key, name.substring(start, i));
+            }
+        }
+        if (key.length() > MAX_LENGTH) {
+            key.setLength(MAX_LENGTH);
+        }
+        return key.toString();
+    }
+
+    private static void appendNumber(StringBuilder key, String name, int start, int end) {
+        // 去掉前导零, 位数多的数字更大, 位数相同时逐位比较
+        while (start < end - 1 && name.charAt(start) == '0') {
+            start++;
+        }
+        int digits = Math.min(end - start, MAX_DIGITS);
+        key.append(NUMBER_MARK);
+        appendHex(key, digits, 2);
+        key.append(name, start, start + digits);
+    }
+
+    private static void appendText(StringBuilder key, String text) {
+        CollationKey collationKey = COLLATOR.get().getCollationKey(text);
+        byte[] bytes = collationKey.toByteArray();
+        // 每个权重占两个字节, 去掉末尾的零(各级权重的分隔符)后按权重对齐, 只保留主要权重
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) {
+            end--;
+        }
+        if (end == 0) {
+            // 全部是可忽略字符
+            return;
+        }
+        end = Math.min(end + (end & 1), bytes.length);
+        key.append(TEXT_MARK);
+        for (int i = 0; i < end && key.length() < MAX_LENGTH; i++) {
+            appendHex(key, bytes[i] & 0xff, 2);
+        }
+        key.append(TEXT_END);
+    }
+
+    private static void appendHex(StringBuilder key, int value, int width) {
+        for (int shift = (width - 1) * 4; shift >= 0; shift -= 4) {
+            key.append(HEX[(value >> shift) & 0xf]);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,571 @@
+package com.jmal.clouddisk.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * 仅存储(STORE)的 ZIP 打包下载
+ * <p>
+ * 所有条目都不压缩, 因此整个压缩包的布局(每个条目的偏移、中央目录、ZIP64记录)在开始传输前就可以根据文件大小确定,
+ * 可以设置 Content-Length 并支持 Range 断点续传。
+ * 文件条目设置通用标志位3, CRC32 在传输文件数据的同时计算, 写在数据后面的数据描述符中, 每个文件只读取一次。
+ * 计算过的 CRC32 按 路径+大小+修改时间 缓存, 断点续传时数据描述符和中央目录需要的 CRC32 优先从缓存获取, 没有缓存时才读取文件计算。
+ *
+ * @author jmal
+ */
+@Slf4j
+public class StoredZipArchive {
+
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int LOCAL_ZIP64_EXTRA_LENGTH = 20;
+    private static final int CENTRAL_ZIP64_EXTRA_LENGTH = 28;
+    private static final int END_LENGTH = 22;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int DATA_DESCRIPTOR_LENGTH = 16;
+    private static final int ZIP64_DATA_DESCRIPTOR_LENGTH = 24;
+
+    /** 通用标志位: CRC32 写在文件数据后面的数据描述符中 */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+
+    /** 通用标志位: 文件名使用 UTF-8 编码 */
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** 压缩包布局的版本, 布局变化时使旧的 ETag 失效 */
+    private static final byte LAYOUT_VERSION = 2;
+
+    /**
+     * CRC32 缓存
+     * key: 绝对路径|文件大小|修改时间
+     */
+    private static final Cache<String, Long> CRC_CACHE = Caffeine.newBuilder()
+            .maximumSize(200_000)
+            .expireAfterAccess(1, TimeUnit.DAYS)
+            .build();
+
+    private final List<Entry> entries;
+
+    private final long centralDirectoryOffset;
+
+    private final long centralDirectoryLength;
+
+    /**
+     * 压缩包总大小
+     */
+    @Getter
+    private final long length;
+
+    /**
+     * 由条目名称、大小、修改时间计算出的ETag, 内容不变时保持不变, 用于 If-Range
+     */
+    @Getter
+    private final String etag;
+
+    private StoredZipArchive(List<Entry> entries) {
+        this.entries = entries;
+        long offset = 0;
+        for (Entry entry : entries) {
+            entry.offset = offset;
+            offset += entry.localHeaderLength() + entry.size + entry.dataDescriptorLength();
+        }
+        this.centralDirectoryOffset = offset;
+        long cdLength = 0;
+        for (Entry entry : entries) {
+            cdLength += entry.centralHeaderLength();
+        }
+        this.centralDirectoryLength = cdLength;
+        this.length = centralDirectoryOffset + centralDirectoryLength + endLength();
+        this.etag = computeEtag(entries);
+    }
+
+    /**
+     * 规划压缩包布局
+     *
+     * @param paths 要打包的文件/文件夹
+     * @return StoredZipArchive
+     */
+    public static StoredZipArchive of(List<Path> paths) {
+        if (paths == null || paths.isEmpty()) {
+            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "压缩路径列表不能为空");
+        }
+        List<Entry> entries = new ArrayList<>();
+        try {
+            for (Path path : paths) {
+                if (!Files.exists(path)) {
+                    log.warn("路径不存在，跳过: {}", path);
+                    continue;
+                }
+                if (Files.isSymbolicLink(path)) {
+                    log.warn("跳过符号链接: {}", path);
+                    continue;
+                }
+                if (Files.isDirectory(path)) {
+                    collectDirectory(path.getParent(), path, entries);
+                } else {
+                    entries.add(Entry.of(path.getParent(), path, Files.readAttributes(path, BasicFileAttributes.class)));
+                }
+            }
+        } catch (IOException e) {
+            log.error("打包文件失败", e);
+            throw new CommonException(ExceptionType.SYSTEM_ERROR.getCode(), "压缩文件失败: " + e.getMessage());
+        }
+        return new StoredZipArchive(entries);
+    }
+
+    private static void collectDirectory(Path rootDir, Path sourceDir, List<Entry> entries) throws IOException {
+        Files.walkFileTree(sourceDir, new SimpleFileVisitor<>() {
+            @NotNull
+            @Override
+            public FileVisitResult visitFile(@NotNull Path file, @NotNull BasicFileAttributes attrs) {
+                if (attrs.isSymbolicLink()) {
+                    log.warn("跳过符号链接文件: {}", file);
+                    return FileVisitResult.CONTINUE;
+                }
+                if (attrs.isRegularFile()) {
+                    entries.add(Entry.of(rootDir, file, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @NotNull
+            @Override
+            public FileVisitResult preVisitDirectory(@NotNull Path dir, @NotNull BasicFileAttributes attrs) {
+                if (Files.isSymbolicLink(dir)) {
+                    log.warn("跳过符号链接目录: {}", dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!dir.equals(sourceDir)) {
+                    entries.add(Entry.of(rootDir, dir, attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @NotNull
+            @Override
+            public FileVisitResult visitFileFailed(@NotNull Path file, @NotNull IOException exc) {
+                log.warn("访问文件失败: {}, 原因: {}", file, exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 输出整个压缩包
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        write(outputStream, 0, length - 1);
+    }
+
+    /**
+     * 输出压缩包的 [start, end] 区间
+     *
+     * @param outputStream 输出流
+     * @param start        起始位置(包含)
+     * @param end          结束位置(包含)
+     */
+    public void write(OutputStream outputStream, long start, long end) throws IOException {
+        if (start < 0 || end >= length || start > end) {
+            throw new IllegalArgumentException("range out of bounds: " + start + "-" + end + "/" + length);
+        }
+        long limit = end + 1;
+        // 本次输出中已知的 CRC32
+        Map<Entry, Long> crcs = new HashMap<>();
+        WritableByteChannel target = Channels.newChannel(outputStream);
+        for (Entry entry : entries) {
+            if (entry.offset >= limit) {
+                break;
+            }
+            long headerEnd = entry.offset + entry.localHeaderLength();
+            if (headerEnd > start) {
+                writeSlice(outputStream, entry.localHeader(), entry.offset, start, limit);
+            }
+            long dataEnd = headerEnd + entry.size;
+            if (entry.size > 0 && dataEnd > start && headerEnd < limit) {
+                long from = Math.max(start, headerEnd) - headerEnd;
+                long to = Math.min(limit, dataEnd) - headerEnd;
+                if (from == 0 && to == entry.size) {
+                    // 完整输出的文件, 传输的同时计算 CRC32
+                    crcs.put(entry, copyData(entry, outputStream));
+                } else {
+                    transferData(entry, from, to - from, target, outputStream);
+                }
+            }
+            long descriptorEnd = dataEnd + entry.dataDescriptorLength();
+            if (entry.dataDescriptorLength() > 0 && descriptorEnd > start && dataEnd < limit) {
+                writeSlice(outputStream, entry.dataDescriptor(crc(entry, crcs)), dataEnd, start, limit);
+            }
+        }
+        long cdOffset = centralDirectoryOffset;
+        for (Entry entry : entries) {
+            long cdEnd = cdOffset + entry.centralHeaderLength();
+            if (cdEnd > start && cdOffset < limit) {
+                writeSlice(outputStream, entry.centralHeader(crc(entry, crcs)), cdOffset, start, limit);
+            }
+            cdOffset = cdEnd;
+        }
+        if (length - endLength() < limit) {
+            writeSlice(outputStream, endRecords(), length - endLength(), start, limit);
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * 条目的 CRC32, 本次没有完整输出的文件从缓存获取或读取文件计算
+     */
+    private static long crc(Entry entry, Map<Entry, Long> crcs) throws IOException {
+        if (entry.directory) {
+            return 0;
+        }
+        Long crc = crcs.get(entry);
+        if (crc == null) {
+            crc = crc32(entry);
+            crcs.put(entry, crc);
+        }
+        return crc;
+    }
+
+    private static void writeSlice(OutputStream outputStream, byte[] bytes, long segmentOffset, long start, long limit) throws IOException {
+        int from = (int) Math.max(0, start - segmentOffset);
+        int to = (int) Math.min(bytes.length, limit - segmentOffset);
+        if (to > from) {
+            outputStream.write(bytes, from, to - from);
+        }
+    }
+
+    /**
+     * 传输文件数据, 文件在规划后变短时用0补齐, 保证压缩包长度与 Content-Length 一致
+     */
+    private static void transferData(Entry entry, long position, long count, WritableByteChannel target, OutputStream outputStream) throws IOException {
+        long transferred = 0;
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            while (transferred < count) {
+                long n = channel.transferTo(position + transferred, count - transferred, target);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+        }
+        if (transferred < count) {
+            log.warn("文件在打包过程中发生变化: {}", entry.file);
+            byte[] zeros = new byte[(int) Math.min(BUFFER_SIZE, count - transferred)];
+            while (transferred < count) {
+                int n = (int) Math.min(zeros.length, count - transferred);
+                outputStream.write(zeros, 0, n);
+                transferred += n;
+            }
+        }
+    }
+
+    /**
+     * 输出完整的文件数据并计算 CRC32, 文件在规划后变短时用0补齐
+     *
+     * @return CRC32
+     */
+    private static long copyData(Entry entry, OutputStream outputStream) throws IOException {
+        CRC32 crc32 = new CRC32();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long remaining = entry.size;
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, remaining));
+                int n = channel.read(buffer);
+                if (n <= 0) {
+                    break;
+                }
+                crc32.update(bytes, 0, n);
+                outputStream.write(bytes, 0, n);
+                remaining -= n;
+            }
+        }
+        if (remaining > 0) {
+            log.warn("文件在打包过程中发生变化: {}", entry.file);
+            Arrays.fill(bytes, (byte) 0);
+            while (remaining > 0) {
+                int n = (int) Math.min(BUFFER_SIZE, remaining);
+                crc32.update(bytes, 0, n);
+                outputStream.write(bytes, 0, n);
+                remaining -= n;
+            }
+        }
+        long value = crc32.getValue();
+        CRC_CACHE.put(crcCacheKey(entry), value);
+        return value;
+    }
+
+    private static String crcCacheKey(Entry entry) {
+        return entry.file.toAbsolutePath() + "|" + entry.size + "|" + entry.lastModified;
+    }
+
+    private static long crc32(Entry entry) throws IOException {
+        String key = crcCacheKey(entry);
+        Long cached = CRC_CACHE.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CRC32 crc32 = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long remaining = entry.size;
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(BUFFER_SIZE, remaining));
+                int n = channel.read(buffer);
+                if (n <= 0) {
+                    break;
+                }
+                buffer.flip();
+                crc32.update(buffer);
+                remaining -= n;
+            }
+        }
+        // 与 transferData 保持一致, 不足的部分按0计算
+        if (remaining > 0) {
+            byte[] zeros = new byte[BUFFER_SIZE];
+            while (remaining > 0) {
+                int n = (int) Math.min(BUFFER_SIZE, remaining);
+                crc32.update(zeros, 0, n);
+                remaining -= n;
+            }
+        }
+        long value = crc32.getValue();
+        CRC_CACHE.put(key, value);
+        return value;
+    }
+
+    private boolean isZip64() {
+        return entries.size() >= MAX_16 || centralDirectoryOffset >= MAX_32 || centralDirectoryLength >= MAX_32;
+    }
+
+    private int endLength() {
+        return isZip64() ? ZIP64_END_LENGTH + ZIP64_LOCATOR_LENGTH + END_LENGTH : END_LENGTH;
+    }
+
+    private byte[] endRecords() {
+        ByteBuffer buf = newBuffer(endLength());
+        long zip64EndOffset = centralDirectoryOffset + centralDirectoryLength;
+        boolean zip64 = isZip64();
+        if (zip64) {
+            buf.putInt(0x06064b50);
+            buf.putLong(ZIP64_END_LENGTH - 12L);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putLong(entries.size());
+            buf.putLong(entries.size());
+            buf.putLong(centralDirectoryLength);
+            buf.putLong(centralDirectoryOffset);
+            // zip64 end of central directory locator
+            buf.putInt(0x07064b50);
+            buf.putInt(0);
+            buf.putLong(zip64EndOffset);
+            buf.putInt(1);
+        }
+        buf.putInt(0x06054b50);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) (zip64 ? MAX_16 : entries.size()));
+        buf.putShort((short) (zip64 ? MAX_16 : entries.size()));
+        buf.putInt((int) (zip64 ? MAX_32 : centralDirectoryLength));
+        buf.putInt((int) (zip64 ? MAX_32 : centralDirectoryOffset));
+        buf.putShort((short) 0);
+        return buf.array();
+    }
+
+    private static String computeEtag(List<Entry> entries) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(LAYOUT_VERSION);
+            ByteBuffer buf = newBuffer(16);
+            for (Entry entry : entries) {
+                digest.update(entry.name);
+                buf.clear();
+                buf.putLong(entry.size).putLong(entry.lastModified);
+                digest.update(buf.array());
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer newBuffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class Entry {
+
+        private final Path file;
+        private final byte[] name;
+        private final long size;
+        private final long lastModified;
+        private final boolean directory;
+        private final int dosTime;
+        private final int dosDate;
+        private long offset;
+
+        private Entry(Path file, String name, long size, long lastModified, boolean directory) {
+            this.file = file;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneId.systemDefault());
+            if (time.getYear() < 1980) {
+                time = LocalDateTime.of(1980, 1, 1, 0, 0);
+            }
+            this.dosTime = (time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1);
+            this.dosDate = ((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth();
+        }
+
+        static Entry of(Path rootDir, Path path, BasicFileAttributes attrs) {
+            String name = rootDir.relativize(path).toString().replace("\\", "/");
+            if (attrs.isDirectory()) {
+                return new Entry(path, name + "/", 0, attrs.lastModifiedTime().toMillis(), true);
+            }
+            return new Entry(path, name, attrs.size(), attrs.lastModifiedTime().toMillis(), false);
+        }
+
+        boolean isLocalZip64() {
+            return size >= MAX_32;
+        }
+
+        boolean isCentralZip64() {
+            return size >= MAX_32 || offset >= MAX_32;
+        }
+
+        int localHeaderLength() {
+            return LOCAL_HEADER_LENGTH + name.length + (isLocalZip64() ? LOCAL_ZIP64_EXTRA_LENGTH : 0);
+        }
+
+        int centralHeaderLength() {
+            return CENTRAL_HEADER_LENGTH + name.length + (isCentralZip64() ? CENTRAL_ZIP64_EXTRA_LENGTH : 0);
+        }
+
+        /**
+         * 文件条目在数据后面写数据描述符, 目录没有数据, 不需要
+         */
+        int dataDescriptorLength() {
+            if (directory) {
+                return 0;
+            }
+            return isLocalZip64() ? ZIP64_DATA_DESCRIPTOR_LENGTH : DATA_DESCRIPTOR_LENGTH;
+        }
+
+        int flags() {
+            return directory ? FLAG_UTF8 : FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+        }
+
+        /**
+         * 本地文件头, CRC32 写在数据描述符中, 这里为0;
+         * 大小在规划时已确定, 仍然写入, 仅存储的条目没有大小时部分解压工具无法找到数据的结尾
+         */
+        byte[] localHeader() {
+            boolean zip64 = isLocalZip64();
+            ByteBuffer buf = newBuffer(localHeaderLength());
+            buf.putInt(0x04034b50);
+            buf.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buf.putShort((short) flags());
+            // STORE
+            buf.putShort((short) 0);
+            buf.putShort((short) dosTime);
+            buf.putShort((short) dosDate);
+            buf.putInt(0);
+            buf.putInt((int) (zip64 ? MAX_32 : size));
+            buf.putInt((int) (zip64 ? MAX_32 : size));
+            buf.putShort((short) name.length);
+            buf.putShort((short) (zip64 ? LOCAL_ZIP64_EXTRA_LENGTH : 0));
+            buf.put(name);
+            if (zip64) {
+                buf.putShort((short) 0x0001);
+                buf.putShort((short) (LOCAL_ZIP64_EXTRA_LENGTH - 4));
+                buf.putLong(size);
+                buf.putLong(size);
+            }
+            return buf.array();
+        }
+
+        byte[] dataDescriptor(long crc) {
+            boolean zip64 = isLocalZip64();
+            ByteBuffer buf = newBuffer(dataDescriptorLength());
+            buf.putInt(0x08074b50);
+            buf.putInt((int) crc);
+            if (zip64) {
+                buf.putLong(size);
+                buf.putLong(size);
+            } else {
+                buf.putInt((int) size);
+                buf.putInt((int) size);
+            }
+            return buf.array();
+        }
+
+        byte[] centralHeader(long crc) {
+            boolean zip64 = isCentralZip64();
+            ByteBuffer buf = newBuffer(centralHeaderLength());
+            buf.putInt(0x02014b50);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            buf.putShort((short) flags());
+            buf.putShort((short) 0);
+            buf.putShort((short) dosTime);
+            buf.putShort((short) dosDate);
+            buf.putInt((int) crc);
+            buf.putInt((int) (zip64 ? MAX_32 : size));
+            buf.putInt((int) (zip64 ? MAX_32 : size));
+            buf.putShort((short) name.length);
+            buf.putShort((short) (zip64 ? CENTRAL_ZIP64_EXTRA_LENGTH : 0));
+            // comment length, disk number start, internal attributes
+            buf.putShort((short) 0);
+            buf.putShort((short) 0);
+            buf.putShort((short) 0);
+            // external attributes: MS-DOS directory
+            buf.putInt(directory ? 0x10 : 0);
+            buf.putInt((int) (zip64 ? MAX_32 : offset));
+            buf.put(name);
+            if (zip64) {
+                buf.putShort((short) 0x0001);
+                buf.putShort((short) (CENTRAL_ZIP64_EXTRA_LENGTH - 4));
+                buf.putLong(size);
+                buf.putLong(size);
+                buf.putLong(offset);
+            }
+            return buf.array();
+        }
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.jmal.clouddisk.webdav;
 
+import cn.hutool.core.util.RandomUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.config.WebFilter;
 import com.jmal.clouddisk.service.impl.RoleService;
@@ -21,6 +25,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
@@ -51,6 +56,21 @@ public class MyRealm extends RealmBase {
 
     private static final List<String> DEFAULT_ROLES = List.of("webdav");
 
+    /**
+     * 已验证通过的凭据缓存, 避免每个 WebDAV 请求都计算一次 PBKDF2
+     * <p>
+     * key: 用户名 + 密码的 HMAC 摘要(密钥每次启动随机生成, 缓存中不保留明文密码)
+     * value: 验证时用户的密码哈希, 命中时与当前的密码哈希比较, 修改密码或删除用户后缓存自然失效
+     * <p>
+     * 只缓存验证成功的凭据, 错误的密码每次都要完整计算 PBKDF2
+     */
+    private final Cache<String, String> verifiedCredentialCache = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
+
+    private final byte[] credentialDigestKey = RandomUtil.randomBytes(32);
+
     @Override
     protected String getPassword(String username) {
         return null;
@@ -64,11 +84,19 @@ public class MyRealm extends RealmBase {
     @Override
     public Principal authenticate(String username, String password) {
         String hashPassword = userServiceObjectProvider.getObject().getHashPasswordUserName(username);
-        if (StrUtil.isBlank(hashPassword)) {
+        if (StrUtil.isBlank(hashPassword) || password == null) {
             return null;
         }
+        String cacheKey = username + ":" + SecureUtil.hmacSha256(credentialDigestKey).digestHex(password);
+        if (hashPassword.equals(verifiedCredentialCache.getIfPresent(cacheKey))) {
+            return getPrincipal(username);
+        }
         boolean valid = PasswordHash.validatePassword(password, hashPassword);
-        return valid ? getPrincipal(username) : null;
+        if (!valid) {
+            return null;
+        }
+        verifiedCredentialCache.put(cacheKey, hashPassword);
+        return getPrincipal(username);
     }
 
     @Override
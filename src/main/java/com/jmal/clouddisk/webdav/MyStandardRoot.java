@@ -6,6 +6,9 @@ import org.apache.catalina.WebResourceSet;
 import org.apache.catalina.webresources.StandardRoot;
 
 public class MyStandardRoot extends StandardRoot {
+
+    private FileResourceSet fileResourceSet;
+
     public MyStandardRoot(Context context) {
         super(context);
     }
@@ -19,9 +22,14 @@ public class MyStandardRoot extends StandardRoot {
             }
         }
         if (myDirResourceSet != null) {
+            fileResourceSet = myDirResourceSet;
             return myDirResourceSet;
         }
         return super.createMainResourceSet();
     }
 
+    public FileResourceSet getFileResourceSet() {
+        return fileResourceSet;
+    }
+
 }
@@ -7,6 +7,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.jmal.clouddisk.config.FileProperties;
 import com.jmal.clouddisk.oss.AbstractOssObject;
 import com.jmal.clouddisk.oss.IOssService;
+import com.jmal.clouddisk.oss.OssBlockCache;
 import com.jmal.clouddisk.oss.OssConfigService;
 import com.jmal.clouddisk.oss.OssInputStream;
 import com.jmal.clouddisk.oss.web.WebOssService;
@@ -31,6 +32,7 @@ import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * @author jmal
@@ -46,6 +48,8 @@ public class MyWebdavServlet extends WebdavServlet {
 
     private final transient ObjectProvider<IFileService> fileServiceObjectProvider;
 
+    private final transient OssBlockCache ossBlockCache;
+
     public static final String PATH_DELIMITER = "/";
 
     private static final Cache<String, Long> REQUEST_URI_GET_MAP = Caffeine.newBuilder().expireAfterWrite(3L, TimeUnit.SECONDS).build();
@@ -105,6 +109,18 @@ public class MyWebdavServlet extends WebdavServlet {
         return false;
     }
 
+    /**
+     * PROPFIND 时批量获取目录下的子资源, oss 目录只列举一次, 不再逐个获取文件信息
+     */
+    @Override
+    protected void listResources(String path, BiConsumer<String, WebResource> consumer) {
+        if (resources instanceof MyStandardRoot myStandardRoot && myStandardRoot.getFileResourceSet() != null) {
+            myStandardRoot.getFileResourceSet().listResources(path, consumer);
+            return;
+        }
+        super.listResources(path, consumer);
+    }
+
     @Override
     protected void copy(WebResource resource, long length, ServletOutputStream outStream, Ranges.Entry range) throws IOException {
         Path prePath = Paths.get(resource.getWebappPath());
@@ -114,7 +130,13 @@ public class MyWebdavServlet extends WebdavServlet {
             long rangeEnd = getEnd(range, length);
             IOssService ossService = OssConfigService.getOssStorageService(ossPath);
             String objectName = WebOssService.getObjectName(prePath, ossPath, false);
-            AbstractOssObject rangeObject = ossService.getAbstractOssObject(objectName, rangeStart, rangeEnd);
+            // 范围的开头从本地块缓存读取, 视频拖动等重复的范围读取不再请求 oss
+            // 不限结束位置的范围(如 bytes=N-)和大范围只有开头的块走缓存, 剩余部分直接读取 oss
+            long next = ossBlockCache.copyRange(ossPath, ossService, objectName, resource.getETag(), length, rangeStart, rangeEnd, outStream);
+            if (next > rangeEnd) {
+                return;
+            }
+            AbstractOssObject rangeObject = ossService.getAbstractOssObject(objectName, next, rangeEnd);
             super.copy(rangeObject.getInputStream(), outStream);
         } else {
             super.copy(resource, length, outStream, range);
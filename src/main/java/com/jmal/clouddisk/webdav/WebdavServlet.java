@@ -49,6 +49,7 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Servlet which adds support for <a href="https://tools.ietf.org/html/rfc4918">WebDAV</a>
@@ -146,6 +147,12 @@ public class WebdavServlet extends DefaultServlet {
     private static final int FIND_ALL_PROP = 1;
 
 
+    /**
+     * PROPFIND - Number of responses written before the buffered XML is sent to the client.
+     */
+    private static final int PROPFIND_FLUSH_SIZE = 256;
+
+
     /**
      * PROPFIND - Return property names.
      */
@@ -567,33 +574,40 @@ public class WebdavServlet extends DefaultServlet {
         generatedXML.writeElement("D", DEFAULT_NAMESPACE, "multistatus", XMLWriter.OPENING);
 
         if (depth == 0) {
-            parseProperties(req, generatedXML, path, type, properties);
+            parseProperties(req, generatedXML, path, resource, type, properties);
         } else {
             // The stack always contains the object of the current level
-            Deque<String> stack = new ArrayDeque<>();
-            stack.addFirst(path);
+            Deque<PropfindEntry> stack = new ArrayDeque<>();
+            stack.addFirst(new PropfindEntry(path, resource));
 
             // Stack of the objects one level below
-            Deque<String> stackBelow = new ArrayDeque<>();
+            Deque<PropfindEntry> stackBelow = new ArrayDeque<>();
 
             while ((!stack.isEmpty()) && (depth >= 0)) {
 
-                String currentPath = stack.remove();
-                parseProperties(req, generatedXML, currentPath, type, properties);
-
-                resource = resources.getResource(currentPath);
-
-                if (resource.isDirectory() && (depth > 0)) {
-
-                    String[] entries = resources.list(currentPath);
-                    for (String entry : entries) {
-                        String newPath = currentPath;
-                        if (!(newPath.endsWith("/"))) {
-                            newPath += "/";
+                PropfindEntry current = stack.remove();
+                String currentPath = current.path();
+                parseProperties(req, generatedXML, currentPath, current.resource(), type, properties);
+
+                if (current.resource().isDirectory() && (depth > 0)) {
+
+                    // Children which will not be expanded are written as soon as they are listed,
+                    // only the collections of the next level are kept
+                    Deque<PropfindEntry> below = stackBelow;
+                    boolean expand = depth > 1;
+                    int propFindType = type;
+                    List<String> propertyNames = properties;
+                    int[] written = {0};
+                    listResources(currentPath, (childPath, child) -> {
+                        if (expand && child.isDirectory()) {
+                            below.addFirst(new PropfindEntry(childPath, child));
+                            return;
                         }
-                        newPath += entry;
-                        stackBelow.addFirst(newPath);
-                    }
+                        parseProperties(req, generatedXML, childPath, child, propFindType, propertyNames);
+                        if (++written[0] % PROPFIND_FLUSH_SIZE == 0) {
+                            generatedXML.sendData();
+                        }
+                    });
 
                     // Displaying the lock-null resources present in that
                     // collection
@@ -1823,24 +1837,50 @@ public class WebdavServlet extends DefaultServlet {
     }
 
 
+    /**
+     * A resource waiting to be written by PROPFIND.
+     *
+     * @param path     Path of the resource
+     * @param resource The resource
+     */
+    private record PropfindEntry(String path, WebResource resource) {
+    }
+
+
+    /**
+     * List the children of a collection for PROPFIND. The default implementation resolves every child separately,
+     * subclasses may fetch the metadata of the whole collection in one bulk operation.
+     *
+     * @param path     Path of the collection
+     * @param consumer Receives the path and the resource of each child as they are listed
+     */
+    protected void listResources(String path, BiConsumer<String, WebResource> consumer) {
+        String[] entries = resources.list(path);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        for (String entry : entries) {
+            String childPath = prefix + entry;
+            consumer.accept(childPath, resources.getResource(childPath));
+        }
+    }
+
     /**
      * Propfind helper method.
      *
      * @param req          The servlet request
      * @param generatedXML XML response to the Propfind request
      * @param path         Path of the current resource
+     * @param resource     The current resource
      * @param type         Propfind type
      * @param properties   If the propfind type is find properties by name, then this List contains those properties
      */
-    private void parseProperties(HttpServletRequest req, XMLWriter generatedXML, String path, int type,
-                                 List<String> properties) {
+    private void parseProperties(HttpServletRequest req, XMLWriter generatedXML, String path, WebResource resource,
+                                 int type, List<String> properties) {
 
         // Exclude any resource in the /WEB-INF and /META-INF subdirectories
         if (isSpecialPath(path)) {
             return;
         }
 
-        WebResource resource = resources.getResource(path);
         if (!resource.exists()) {
             // File is in directory listing but doesn't appear to exist
             // Broken symlink or odd permission settings?
@@ -2531,4 +2571,5 @@ class WebdavStatus {
      * contain a valid Lock-Info header, or the Lock-Info header identifies a lock held by another principal.
      */
     public static final int SC_LOCKED = 423;
+
 }
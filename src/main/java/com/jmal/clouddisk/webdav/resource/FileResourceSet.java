@@ -2,8 +2,10 @@ package com.jmal.clouddisk.webdav.resource;
 
 import cn.hutool.core.io.IoUtil;
 import com.jmal.clouddisk.oss.FileInfo;
+import com.jmal.clouddisk.oss.IOssService;
 import com.jmal.clouddisk.oss.OssConfigService;
 import com.jmal.clouddisk.util.CaffeineUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.util.ResourceSet;
@@ -13,18 +15,24 @@ import org.apache.catalina.webresources.EmptyResource;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * @author jmal
  * @Description FileResourceSet
  * @date 2023/3/27 11:47
  */
+@Slf4j
 public class FileResourceSet extends AbstractFileResourceSet {
 
 
@@ -85,6 +93,59 @@ public class FileResourceSet extends AbstractFileResourceSet {
         return Objects.requireNonNullElse(result, EMPTY_STRING_ARRAY);
     }
 
+    /**
+     * 批量获取目录下的所有子资源, 用于 PROPFIND
+     * <p>
+     * oss 目录只分页列举一次, 直接用列举结果创建资源, 不再逐个获取文件信息; 本地目录只遍历一次目录流
+     *
+     * @param path     目录路径
+     * @param consumer 子资源路径和子资源, 按列举顺序逐个回调
+     */
+    public void listResources(String path, BiConsumer<String, WebResource> consumer) {
+        checkPath(path);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        String ossPath = CaffeineUtil.getOssPath(Paths.get(path));
+        if (ossPath != null) {
+            IOssService ossService = OssConfigService.getOssStorageService(ossPath);
+            String name = OssConfigService.getObjectName(path, ossPath);
+            // list 中包含尚未上传完成的临时文件, 这些文件不在列举结果中, 单独获取
+            String[] entries = ossService.list(name);
+            List<FileInfo> fileInfoList = ossService.getFileInfoListCache(name);
+            Map<String, FileInfo> fileInfoMap = fileInfoList == null ? Map.of() : HashMap.newHashMap(fileInfoList.size());
+            if (fileInfoList != null) {
+                fileInfoList.forEach(fileInfo -> fileInfoMap.put(fileInfo.getName(), fileInfo));
+            }
+            for (String entry : entries) {
+                String childPath = prefix + entry;
+                FileInfo fileInfo = fileInfoMap.get(entry);
+                if (fileInfo == null || Paths.get(childPath).getNameCount() <= 2) {
+                    consumer.accept(childPath, getResource(childPath));
+                    continue;
+                }
+                consumer.accept(childPath, new OssFileResource(getRoot(), childPath.substring(ossPath.length() + 1), fileInfo, isReadOnly(), getManifest(), ossService));
+            }
+            return;
+        }
+        File f = file(path, true);
+        if (f == null) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(f.toPath())) {
+            for (Path child : stream) {
+                String childPath = prefix + child.getFileName();
+                // 与 getResource 相同, 经过规范路径检查, 指向 base 之外的符号链接不返回
+                File file = file(childPath, true);
+                if (file == null) {
+                    continue;
+                }
+                String webAppPath = file.isDirectory() ? childPath + '/' : childPath;
+                consumer.accept(childPath, new LocalFileResource(getRoot(), webAppPath, file, isReadOnly(), getManifest()));
+            }
+        } catch (IOException e) {
+            log.warn("列举目录失败: {}, {}", path, e.getMessage());
+        }
+    }
+
     @Override
     public Set<String> listWebAppPaths(String path) {
         return new ResourceSet<>();
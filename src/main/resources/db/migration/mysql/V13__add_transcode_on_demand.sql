@@ -0,0 +1,2 @@
+ALTER TABLE transcode_config
+    ADD COLUMN on_demand bit(1); -- 按需转码
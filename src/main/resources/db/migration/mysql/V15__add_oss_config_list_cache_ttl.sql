@@ -0,0 +1,2 @@
+-- 在oss_config表中添加list_cache_ttl字段, 目录列表缓存时间(秒)
+ALTER TABLE oss_config ADD COLUMN list_cache_ttl INT;
@@ -0,0 +1,3 @@
+-- 目录列表按 (is_folder desc, sort_key, public_id) 游标分页, 索引包含 public_id 以免排序
+DROP INDEX files_user_id_path_is_folder_sort_key ON files;
+CREATE INDEX files_user_id_path_is_folder_sort_key_public_id ON files (user_id, path, is_folder, sort_key, public_id);
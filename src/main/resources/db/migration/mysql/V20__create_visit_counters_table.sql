@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS visit_counters (
+    id VARCHAR(24) NOT NULL,
+    url VARCHAR(512) NOT NULL,
+    visits BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE KEY visit_counters_url (url)
+);
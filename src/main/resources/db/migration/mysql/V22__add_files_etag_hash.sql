@@ -0,0 +1,2 @@
+-- 在files表中添加etag_hash字段, 文件夹直接子项哈希之和, 子项变化时按差值更新文件夹的ETag
+ALTER TABLE files ADD COLUMN etag_hash VARCHAR(64);
@@ -0,0 +1,2 @@
+ALTER TABLE transcode_config
+    ADD COLUMN on_demand boolean; -- 按需转码
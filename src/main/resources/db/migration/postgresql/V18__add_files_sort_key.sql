@@ -0,0 +1,3 @@
+-- 在files表中添加sort_key字段, 文件名的自然排序键(只含[0-9a-f]), 用于在数据库中按文件名排序和分页
+ALTER TABLE files ADD COLUMN sort_key VARCHAR(255) COLLATE "C";
+CREATE INDEX files_user_id_path_is_folder_sort_key ON public.files USING btree (user_id, path, is_folder, sort_key);
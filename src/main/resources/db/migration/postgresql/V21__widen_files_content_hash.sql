@@ -0,0 +1,3 @@
+-- 文件内容哈希改为服务端计算的SHA-256, 清空之前记录的MD5, 由后台任务重新计算
+ALTER TABLE files ALTER COLUMN content_hash TYPE VARCHAR(64);
+UPDATE files SET content_hash = NULL WHERE content_hash IS NOT NULL;
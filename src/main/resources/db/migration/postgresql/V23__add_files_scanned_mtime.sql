@@ -0,0 +1,2 @@
+-- 在files表中添加scanned_mtime字段, 记录同步扫描时目录的修改时间, 不再占用用户可见的update_date
+ALTER TABLE files ADD COLUMN scanned_mtime TIMESTAMP(6);
@@ -0,0 +1,4 @@
+ALTER TABLE transcode_config
+    ADD COLUMN abr_enable boolean; -- 多码率自适应
+ALTER TABLE transcode_config
+    ADD COLUMN abr_ladder JSON; -- 码率阶梯
@@ -0,0 +1,3 @@
+-- 在files表中添加media_status字段, 媒体处理状态(缩略图/Exif/封面/WebP)
+ALTER TABLE files ADD COLUMN media_status INTEGER;
+CREATE INDEX files_media_status ON files (media_status);
@@ -0,0 +1,3 @@
+-- 在files表中添加content_hash字段, 文件内容的MD5, 用于秒传和查找重复文件
+ALTER TABLE files ADD COLUMN content_hash VARCHAR(32);
+CREATE INDEX files_content_hash_size ON files (content_hash, size);
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS visit_counters (
+    id VARCHAR(24) PRIMARY KEY,
+    url VARCHAR(512) NOT NULL,
+    visits BIGINT NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS visit_counters_url ON visit_counters(url);
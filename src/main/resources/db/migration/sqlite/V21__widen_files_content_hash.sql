@@ -0,0 +1,3 @@
+-- 文件内容哈希改为服务端计算的SHA-256, 清空之前记录的MD5, 由后台任务重新计算
+-- SQLite 不限制 VARCHAR 长度, 不需要修改字段
+UPDATE files SET content_hash = NULL WHERE content_hash IS NOT NULL;
@@ -0,0 +1,193 @@
+package com.jmal.clouddisk.dao.impl.jpa.write;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueuedWriteServiceImplTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    /**
+     * 足够长, 凑满一批之前不会提前执行
+     */
+    private static final long BATCH_WAIT_MILLIS = 5_000;
+
+    private QueuedWriteServiceImpl writeService;
+
+    @AfterEach
+    void stopWriteService() {
+        if (writeService != null) {
+            writeService.stopConsumer();
+        }
+    }
+
+    @Test
+    void submittedOperationsAreCommittedInOneBatch() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of(), false);
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, BATCH_SIZE, BATCH_WAIT_MILLIS);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b", "c");
+
+        assertThat(results(futures)).containsExactly("a-done", "b-done", "c-done");
+        assertThat(dataManipulationService.batches).containsExactly(List.of("a", "b", "c"));
+        assertThat(dataManipulationService.singles).isEmpty();
+        QueuedWriteServiceImpl.WriteQueueStats stats = writeService.getStats();
+        assertThat(stats.batchCount()).isEqualTo(1L);
+        assertThat(stats.taskCount()).isEqualTo(3L);
+    }
+
+    @Test
+    void partialBatchIsCommittedAfterTheWait() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of(), false);
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, 10, 50L);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b");
+
+        assertThat(results(futures)).containsExactly("a-done", "b-done");
+        assertThat(dataManipulationService.batches).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void failedOperationOnlyFailsItsOwnFuture() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of("b"), false);
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, BATCH_SIZE, BATCH_WAIT_MILLIS);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b", "c");
+
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS)).isEqualTo("a-done");
+        assertThat(futures.get(2).get(5, TimeUnit.SECONDS)).isEqualTo("c-done");
+        assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        // 保存点回滚了失败的操作, 同批次的其他操作仍在一个事务中提交
+        assertThat(dataManipulationService.batches).containsExactly(List.of("a", "b", "c"));
+        assertThat(dataManipulationService.singles).isEmpty();
+    }
+
+    @Test
+    void rollbackOnlyFailureFallsBackToSingleExecution() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of("b"), true);
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, BATCH_SIZE, BATCH_WAIT_MILLIS);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b", "c");
+
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS)).isEqualTo("a-done");
+        assertThat(futures.get(2).get(5, TimeUnit.SECONDS)).isEqualTo("c-done");
+        assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        // 失败的操作不再重复执行, 其余的逐个执行
+        assertThat(dataManipulationService.singles).containsExactly("a", "c");
+    }
+
+    @Test
+    void unexpectedBatchFailureRetriesEachOperation() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of(), false);
+        dataManipulationService.batchFailure = new IllegalStateException("connection lost");
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, BATCH_SIZE, BATCH_WAIT_MILLIS);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b", "c");
+
+        assertThat(results(futures)).containsExactly("a-done", "b-done", "c-done");
+        assertThat(dataManipulationService.singles).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    void batchSizeOneExecutesEachOperationSeparately() throws Exception {
+        FakeDataManipulationService dataManipulationService = new FakeDataManipulationService(Set.of("b"), false);
+        writeService = new QueuedWriteServiceImpl(dataManipulationService, 1, BATCH_WAIT_MILLIS);
+
+        List<CompletableFuture<String>> futures = submitAll("a", "b", "c");
+
+        assertThat(futures.get(0).get(5, TimeUnit.SECONDS)).isEqualTo("a-done");
+        assertThat(futures.get(2).get(5, TimeUnit.SECONDS)).isEqualTo("c-done");
+        assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(dataManipulationService.batches).isEmpty();
+        assertThat(dataManipulationService.singles).containsExactly("a", "b", "c");
+    }
+
+    private List<CompletableFuture<String>> submitAll(String... names) {
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (String name : names) {
+            futures.add(writeService.submit(new TestOperation(name)));
+        }
+        return futures;
+    }
+
+    private static List<String> results(List<CompletableFuture<String>> futures) throws Exception {
+        List<String> results = new ArrayList<>();
+        for (CompletableFuture<String> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private record TestOperation(String name) implements IDataOperation<String> {
+    }
+
+    /**
+     * 记录每次执行的操作, failing 中的操作执行时抛出异常
+     */
+    private static final class FakeDataManipulationService extends DataManipulationService {
+
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final List<String> singles = new CopyOnWriteArrayList<>();
+        private final Set<String> failing;
+        private final boolean rollbackOnly;
+        private volatile RuntimeException batchFailure;
+
+        private FakeDataManipulationService(Set<String> failing, boolean rollbackOnly) {
+            super(Map.of(), null);
+            this.failing = failing;
+            this.rollbackOnly = rollbackOnly;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R> R execute(IDataOperation<R> operation) {
+            String name = ((TestOperation) operation).name();
+            singles.add(name);
+            return (R) handle(name);
+        }
+
+        @Override
+        public List<OperationResult> executeBatch(List<? extends IDataOperation<?>> operations) {
+            if (batchFailure != null) {
+                throw batchFailure;
+            }
+            List<String> names = operations.stream().map(operation -> ((TestOperation) operation).name()).toList();
+            batches.add(names);
+            List<OperationResult> results = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                try {
+                    results.add(OperationResult.success(handle(names.get(i))));
+                } catch (IllegalStateException e) {
+                    if (rollbackOnly) {
+                        throw new GroupCommitException(i, e);
+                    }
+                    results.add(OperationResult.failure(e));
+                }
+            }
+            return results;
+        }
+
+        private String handle(String name) {
+            if (failing.contains(name)) {
+                throw new IllegalStateException("failed: " + name);
+            }
+            return name + "-done";
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.jmal.clouddisk.dao.util;
+
+import com.jmal.clouddisk.exception.CommonException;
+import com.jmal.clouddisk.exception.ExceptionType;
+import com.jmal.clouddisk.model.file.FileIntroVO;
+import com.jmal.clouddisk.util.SortKeyUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+class FileCursorTest {
+
+    @Test
+    void encodeAndDecodeRoundTrip() {
+        FileCursor cursor = new FileCursor(true, SortKeyUtil.getSortKey("报告 10"), "6541f0a2c3b1");
+
+        FileCursor decoded = FileCursor.decode(cursor.encode());
+
+        assertThat(decoded).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new FileCursor(false, SortKeyUtil.getSortKey("a?b/c+d"), "id/+=").encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void blankCursorDecodesToNull() {
+        assertThat(FileCursor.decode(null)).isNull();
+        assertThat(FileCursor.decode("  ")).isNull();
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> FileCursor.decode("%%%")).isInstanceOf(CommonException.class);
+        // 缺少分隔符
+        Throwable thrown = catchThrowable(() -> FileCursor.decode("MWFi"));
+        assertThat(thrown).isInstanceOf(CommonException.class);
+        assertThat(((CommonException) thrown).getCode()).isEqualTo(ExceptionType.PARAMETERS_VALUE.getCode());
+    }
+
+    @Test
+    void nextUsesTheStoredSortKeyOfTheLastFile() {
+        FileIntroVO first = file("1", "a", false);
+        FileIntroVO last = file("2", "b", true);
+        // 数据库中保存的排序键, 不从文件名重新计算
+        last.setSortKey("2stored0000");
+
+        String next = FileCursor.next(List.of(first, last), 2);
+
+        assertThat(FileCursor.decode(next)).isEqualTo(new FileCursor(true, "2stored0000", "2"));
+    }
+
+    @Test
+    void nextIsNullOnTheLastPage() {
+        assertThat(FileCursor.next(List.of(file("1", "a", false)), 2)).isNull();
+        assertThat(FileCursor.next(List.of(), 2)).isNull();
+        assertThat(FileCursor.next(List.of(file("1", "a", false)), null)).isNull();
+    }
+
+    @Test
+    void nextIsNullWhenTheLastFileHasNoSortKey() {
+        FileIntroVO last = file("2", "b", false);
+        last.setSortKey(null);
+
+        assertThat(FileCursor.next(List.of(file("1", "a", false), last), 2)).isNull();
+    }
+
+    private static FileIntroVO file(String id, String name, boolean isFolder) {
+        FileIntroVO fileIntroVO = new FileIntroVO();
+        fileIntroVO.setId(id);
+        fileIntroVO.setName(name);
+        fileIntroVO.setIsFolder(isFolder);
+        fileIntroVO.setSortKey(SortKeyUtil.getSortKey(name));
+        return fileIntroVO;
+    }
+}
@@ -0,0 +1,115 @@
+package com.jmal.clouddisk.listener;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathEventTrieTest {
+
+    private static final int THRESHOLD = 3;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void newDirectoryBecomesOneCreatedReconcile() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("user/photos"));
+        Files.writeString(dir.resolve("a.jpg"), "a");
+        PathEventTrie trie = new PathEventTrie(root);
+        trie.add(dir, PathEventTrie.CREATE);
+        trie.add(dir.resolve("a.jpg"), PathEventTrie.CREATE);
+
+        List<PathEventTrie.Work> works = trie.drain(THRESHOLD, 1);
+
+        // 目录自身也要登记, 否则其下的文件没有上级目录的记录
+        assertThat(works).hasSize(1);
+        PathEventTrie.Reconcile reconcile = (PathEventTrie.Reconcile) works.getFirst();
+        assertThat(reconcile.dir()).isEqualTo(dir);
+        assertThat(reconcile.created()).isTrue();
+        assertThat(reconcile.recursive()).isTrue();
+        assertThat(reconcile.childFlags().get(dir.resolve("a.jpg"))).isEqualTo(PathEventTrie.CREATE);
+    }
+
+    @Test
+    void newDirectoryUnderCollapsedParentIsCoveredByTheParent() throws IOException {
+        Path parent = Files.createDirectories(root.resolve("user/docs"));
+        for (int i = 0; i < THRESHOLD; i++) {
+            Files.createDirectories(parent.resolve("dir" + i));
+        }
+        PathEventTrie trie = new PathEventTrie(root);
+        for (int i = 0; i < THRESHOLD; i++) {
+            trie.add(parent.resolve("dir" + i), PathEventTrie.CREATE);
+        }
+
+        List<PathEventTrie.Work> works = trie.drain(THRESHOLD, 1);
+
+        // 父目录的对账会登记并递归对账新目录
+        assertThat(works).hasSize(1);
+        PathEventTrie.Reconcile reconcile = (PathEventTrie.Reconcile) works.getFirst();
+        assertThat(reconcile.dir()).isEqualTo(parent);
+        assertThat(reconcile.created()).isFalse();
+        assertThat(reconcile.recursive()).isFalse();
+        assertThat(reconcile.childFlags()).hasSize(THRESHOLD);
+    }
+
+    @Test
+    void eventsOnOneFileAreMerged() throws IOException {
+        Path file = Files.createDirectories(root.resolve("user")).resolve("a.txt");
+        Files.writeString(file, "a");
+        PathEventTrie trie = new PathEventTrie(root);
+        trie.add(file, PathEventTrie.CREATE);
+        trie.add(file, PathEventTrie.MODIFY);
+
+        List<PathEventTrie.Work> works = trie.drain(THRESHOLD, 1);
+
+        assertThat(trie.size()).isEqualTo(1);
+        assertThat(works).containsExactly(new PathEventTrie.Change(file, PathEventTrie.CREATE | PathEventTrie.MODIFY));
+    }
+
+    @Test
+    void eventsUnderDeletedDirectoryAreDropped() {
+        Path dir = root.resolve("user/gone");
+        PathEventTrie trie = new PathEventTrie(root);
+        trie.add(dir.resolve("a.txt"), PathEventTrie.CREATE);
+        trie.add(dir, PathEventTrie.DELETE);
+
+        List<PathEventTrie.Work> works = trie.drain(THRESHOLD, 1);
+
+        assertThat(works).containsExactly(new PathEventTrie.Change(dir, PathEventTrie.DELETE));
+    }
+
+    @Test
+    void manyEventsInExistingDirectoryCollapse() throws IOException {
+        Path dir = Files.createDirectories(root.resolve("user/music"));
+        PathEventTrie trie = new PathEventTrie(root);
+        for (int i = 0; i < THRESHOLD; i++) {
+            Path file = dir.resolve(i + ".mp3");
+            Files.writeString(file, "x");
+            trie.add(file, PathEventTrie.MODIFY);
+        }
+
+        List<PathEventTrie.Work> works = trie.drain(THRESHOLD, 1);
+
+        assertThat(works).hasSize(1);
+        PathEventTrie.Reconcile reconcile = (PathEventTrie.Reconcile) works.getFirst();
+        assertThat(reconcile.dir()).isEqualTo(dir);
+        assertThat(reconcile.created()).isFalse();
+        assertThat(reconcile.childFlags()).hasSize(THRESHOLD);
+    }
+
+    @Test
+    void pathsOutsideRootAreIgnored() {
+        PathEventTrie trie = new PathEventTrie(root);
+        trie.add(root, PathEventTrie.MODIFY);
+        trie.add(root.resolveSibling("other.txt"), PathEventTrie.CREATE);
+
+        assertThat(trie.isEmpty()).isTrue();
+        assertThat(trie.drain(THRESHOLD, 1)).isEmpty();
+    }
+}
@@ -0,0 +1,174 @@
+package com.jmal.clouddisk.oss;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OssListingCacheTest {
+
+    private static final long TTL = 60_000;
+
+    @Test
+    void fileInfoIgnoresTrailingSlash() {
+        OssListingCache cache = new OssListingCache(TTL);
+        FileInfo folder = fileInfo("a/b/");
+
+        cache.putFileInfo("a/b/", folder);
+
+        assertThat(cache.getFileInfo("a/b")).isSameAs(folder);
+        assertThat(cache.getFileInfo("/a/b/")).isSameAs(folder);
+        assertThat(cache.getFileInfo("a/c")).isNull();
+    }
+
+    @Test
+    void listingIsLoadedOnceAndFillsChildren() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"), fileInfo("dir/sub/"));
+
+        List<FileInfo> first = cache.getListing("dir/", loader);
+        List<FileInfo> second = cache.getListing("dir/", loader);
+
+        assertThat(loader.calls.get()).isEqualTo(1);
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getFileInfo("dir/a.txt")).isNotNull();
+        assertThat(cache.getFileInfo("dir/sub")).isNotNull();
+    }
+
+    @Test
+    void nonDirectoryPrefixIsNotCached() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"));
+
+        cache.getListing("dir/a", loader);
+        cache.getListing("dir/a", loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredListingIsReloaded() {
+        OssListingCache cache = new OssListingCache(0);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"));
+
+        cache.getListing("dir/", loader);
+        cache.getListing("dir/", loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+        assertThat(cache.getFileInfo("dir/a.txt")).isNull();
+    }
+
+    @Test
+    void onChangedReplacesEntryInParentListing() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"), fileInfo("dir/b.txt"));
+        cache.getListing("dir/", loader);
+
+        FileInfo updated = fileInfo("dir/a.txt");
+        cache.onChanged("dir/a.txt", updated);
+        cache.onChanged("dir/c.txt", fileInfo("dir/c.txt"));
+
+        List<FileInfo> listing = cache.getListing("dir/", loader);
+        assertThat(loader.calls.get()).isEqualTo(1);
+        assertThat(keys(listing)).containsExactlyInAnyOrder("dir/a.txt", "dir/b.txt", "dir/c.txt");
+        assertThat(listing.stream().filter(info -> info.getKey().equals("dir/a.txt")).findFirst().orElse(null)).isSameAs(updated);
+        assertThat(cache.getFileInfo("dir/a.txt")).isSameAs(updated);
+    }
+
+    @Test
+    void onChangedInNewFolderInvalidatesAncestorListing() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("a/"));
+        cache.getListing("", loader);
+
+        // 上传到不存在的目录, oss 中隐式出现目录 b/
+        cache.onChanged("b/c/d.txt", fileInfo("b/c/d.txt"));
+        cache.getListing("", loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void onRemovedDropsEntryAndSubtree() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"), fileInfo("dir/sub/"));
+        cache.getListing("dir/", loader);
+        cache.putFileInfo("dir/sub/x.txt", fileInfo("dir/sub/x.txt"));
+
+        cache.onRemoved("dir/sub/");
+
+        assertThat(keys(cache.getListing("dir/", loader))).containsExactly("dir/a.txt");
+        assertThat(loader.calls.get()).isEqualTo(1);
+        assertThat(cache.getFileInfo("dir/sub/")).isNull();
+        assertThat(cache.getFileInfo("dir/sub/x.txt")).isNull();
+    }
+
+    @Test
+    void invalidateDropsParentListing() {
+        OssListingCache cache = new OssListingCache(TTL);
+        CountingLoader loader = new CountingLoader(fileInfo("dir/a.txt"));
+        cache.getListing("dir/", loader);
+
+        cache.invalidate("dir/a.txt");
+        cache.getListing("dir/", loader);
+
+        assertThat(loader.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void listingLoadedBeforeAChangeIsNotCached() {
+        OssListingCache cache = new OssListingCache(TTL);
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, List<FileInfo>> loader = objectName -> {
+            if (calls.getAndIncrement() == 0) {
+                // 列举过程中本服务修改了目录
+                cache.onChanged("dir/new.txt", fileInfo("dir/new.txt"));
+            }
+            return new ArrayList<>(List.of(fileInfo("dir/a.txt")));
+        };
+
+        cache.getListing("dir/", loader);
+        cache.getListing("dir/", loader);
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void evictExpiredKeepsValidEntries() {
+        OssListingCache cache = new OssListingCache(TTL);
+        cache.putFileInfo("dir/a.txt", fileInfo("dir/a.txt"));
+
+        cache.evictExpired();
+
+        assertThat(cache.getFileInfo("dir/a.txt")).isNotNull();
+    }
+
+    private static FileInfo fileInfo(String key) {
+        return new FileInfo(key, "etag", 1, new Date());
+    }
+
+    private static List<String> keys(List<FileInfo> fileInfoList) {
+        return fileInfoList.stream().map(FileInfo::getKey).toList();
+    }
+
+    private static final class CountingLoader implements Function<String, List<FileInfo>> {
+
+        private final List<FileInfo> fileInfoList;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private CountingLoader(FileInfo... fileInfoList) {
+            this.fileInfoList = List.of(fileInfoList);
+        }
+
+        @Override
+        public List<FileInfo> apply(String objectName) {
+            calls.incrementAndGet();
+            return new ArrayList<>(fileInfoList);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.jmal.clouddisk.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkBitmapTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void openPreallocatesPartFileAndEmptyBitmap() throws IOException {
+        Path bitmapFile = tempDir.resolve("upload.bitmap");
+        Path partFile = tempDir.resolve("upload.part");
+
+        ChunkBitmap bitmap = ChunkBitmap.open(bitmapFile, partFile, 10, 1000);
+
+        assertThat(Files.size(partFile)).isEqualTo(1000L);
+        assertThat(Files.size(bitmapFile)).isEqualTo(2L);
+        assertThat(bitmap.toList()).isEmpty();
+        assertThat(bitmap.isComplete()).isFalse();
+        assertThat(bitmap.getPartFile()).isEqualTo(partFile);
+    }
+
+    @Test
+    void setMarksChunksAndIgnoresOutOfRange() throws IOException {
+        ChunkBitmap bitmap = ChunkBitmap.open(tempDir.resolve("upload.bitmap"), tempDir.resolve("upload.part"), 3, 30);
+
+        bitmap.set(2);
+        bitmap.set(2);
+        bitmap.set(0);
+        bitmap.set(4);
+
+        assertThat(bitmap.contains(2)).isTrue();
+        assertThat(bitmap.contains(1)).isFalse();
+        assertThat(bitmap.toList()).containsExactly(2);
+        assertThat(bitmap.isComplete()).isFalse();
+
+        bitmap.set(1);
+        bitmap.set(3);
+        assertThat(bitmap.toList()).containsExactly(1, 2, 3);
+        assertThat(bitmap.isComplete()).isTrue();
+    }
+
+    @Test
+    void setPersistsAcrossReload() throws IOException {
+        Path bitmapFile = tempDir.resolve("upload.bitmap");
+        Path partFile = tempDir.resolve("upload.part");
+        ChunkBitmap bitmap = ChunkBitmap.open(bitmapFile, partFile, 12, 120);
+        bitmap.set(1);
+        bitmap.set(9);
+        bitmap.set(12);
+
+        ChunkBitmap reloaded = ChunkBitmap.load(bitmapFile, partFile, 12, 120);
+
+        assertThat(reloaded).isNotNull();
+        assertThat(reloaded.toList()).containsExactly(1, 9, 12);
+        // open 复用已有的位图, 不会清空
+        assertThat(ChunkBitmap.open(bitmapFile, partFile, 12, 120).toList()).containsExactly(1, 9, 12);
+    }
+
+    @Test
+    void loadIgnoresBitsBeyondTotalChunks() throws IOException {
+        Path bitmapFile = tempDir.resolve("upload.bitmap");
+        Path partFile = tempDir.resolve("upload.part");
+        Files.write(partFile, new byte[50]);
+        Files.write(bitmapFile, new byte[]{(byte) 0xff});
+
+        ChunkBitmap bitmap = ChunkBitmap.load(bitmapFile, partFile, 5, 50);
+
+        assertThat(bitmap).isNotNull();
+        assertThat(bitmap.toList()).containsExactly(1, 2, 3, 4, 5);
+        assertThat(bitmap.isComplete()).isTrue();
+    }
+
+    @Test
+    void loadRejectsMissingOrMismatchedFiles() throws IOException {
+        Path bitmapFile = tempDir.resolve("upload.bitmap");
+        Path partFile = tempDir.resolve("upload.part");
+        assertThat(ChunkBitmap.load(bitmapFile, partFile, 10, 100)).isNull();
+
+        ChunkBitmap.open(bitmapFile, partFile, 10, 100);
+
+        // 分片数或文件大小变化后不能复用
+        assertThat(ChunkBitmap.load(bitmapFile, partFile, 20, 100)).isNull();
+        assertThat(ChunkBitmap.load(bitmapFile, partFile, 10, 200)).isNull();
+        assertThat(ChunkBitmap.load(bitmapFile, partFile, 10, 100)).isNotNull();
+    }
+}
@@ -0,0 +1,138 @@
+package com.jmal.clouddisk.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadDigestTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final int TOTAL_CHUNKS = 4;
+
+    private static final long TOTAL_SIZE = 3500;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void chunksInOrderAreDigestedWhileWriting() throws Exception {
+        byte[] data = randomBytes();
+        ContentHashService.UploadDigest uploadDigest = new ContentHashService.UploadDigest();
+
+        for (int chunk = 1; chunk <= TOTAL_CHUNKS; chunk++) {
+            assertThat(uploadDigest.tryBeginChunk(chunk)).isTrue();
+            uploadDigest.update(chunk(data, chunk));
+            uploadDigest.endChunk(chunkLength(chunk));
+        }
+
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isEqualTo(sha256(data));
+    }
+
+    @Test
+    void outOfOrderChunksAreCaughtUpFromThePartFile() throws Exception {
+        byte[] data = randomBytes();
+        Path partFile = writePartFile(data);
+        ContentHashService.UploadDigest uploadDigest = new ContentHashService.UploadDigest();
+
+        // 分片 3 先到, 不是下一个需要计算的分片
+        assertThat(uploadDigest.tryBeginChunk(3)).isFalse();
+        digestChunk(uploadDigest, data, 1);
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isNull();
+
+        // 分片 2 也已写入, 补读到第一个未写入的分片为止
+        uploadDigest.catchUp(partFile, Set.of(1, 2, 3)::contains, CHUNK_SIZE, TOTAL_CHUNKS, TOTAL_SIZE, false, Long.MAX_VALUE);
+        assertThat(uploadDigest.tryBeginChunk(4)).isTrue();
+        uploadDigest.update(chunk(data, 4));
+        uploadDigest.endChunk(chunkLength(4));
+
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isEqualTo(sha256(data));
+    }
+
+    @Test
+    void catchUpStopsAtTheByteLimit() throws Exception {
+        byte[] data = randomBytes();
+        Path partFile = writePartFile(data);
+        ContentHashService.UploadDigest uploadDigest = new ContentHashService.UploadDigest();
+
+        uploadDigest.catchUp(partFile, _ -> true, CHUNK_SIZE, TOTAL_CHUNKS, TOTAL_SIZE, true, 2500);
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isNull();
+        // 已计算两个分片, 剩下的 1500 字节可以继续补读
+        uploadDigest.catchUp(partFile, _ -> true, CHUNK_SIZE, TOTAL_CHUNKS, TOTAL_SIZE, true, 1500);
+
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isEqualTo(sha256(data));
+    }
+
+    @Test
+    void abortedChunkRestoresTheCheckpoint() throws Exception {
+        byte[] data = randomBytes();
+        ContentHashService.UploadDigest uploadDigest = new ContentHashService.UploadDigest();
+        digestChunk(uploadDigest, data, 1);
+
+        assertThat(uploadDigest.tryBeginChunk(2)).isTrue();
+        uploadDigest.update(ByteBuffer.wrap(new byte[CHUNK_SIZE]));
+        uploadDigest.abortChunk();
+        for (int chunk = 2; chunk <= TOTAL_CHUNKS; chunk++) {
+            digestChunk(uploadDigest, data, chunk);
+        }
+
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isEqualTo(sha256(data));
+    }
+
+    @Test
+    void failedCatchUpGivesUpTheDigest() throws Exception {
+        byte[] data = randomBytes();
+        ContentHashService.UploadDigest uploadDigest = new ContentHashService.UploadDigest();
+        digestChunk(uploadDigest, data, 1);
+
+        uploadDigest.catchUp(tempDir.resolve("missing.part"), _ -> true, CHUNK_SIZE, TOTAL_CHUNKS, TOTAL_SIZE, true, Long.MAX_VALUE);
+
+        // 由后台任务补算
+        assertThat(uploadDigest.tryBeginChunk(2)).isFalse();
+        assertThat(uploadDigest.getHex(TOTAL_SIZE)).isNull();
+    }
+
+    private static void digestChunk(ContentHashService.UploadDigest uploadDigest, byte[] data, int chunk) {
+        assertThat(uploadDigest.tryBeginChunk(chunk)).isTrue();
+        ByteBuffer buffer = chunk(data, chunk);
+        uploadDigest.update(buffer);
+        // update 不改变 position, 调用方随后写入同一个 buffer
+        assertThat(buffer.position()).isEqualTo(0);
+        uploadDigest.endChunk(chunkLength(chunk));
+    }
+
+    private Path writePartFile(byte[] data) throws IOException {
+        Path partFile = tempDir.resolve("upload.part");
+        Files.write(partFile, data);
+        return partFile;
+    }
+
+    private static ByteBuffer chunk(byte[] data, int chunk) {
+        return ByteBuffer.wrap(data, (chunk - 1) * CHUNK_SIZE, (int) chunkLength(chunk)).slice();
+    }
+
+    private static long chunkLength(int chunk) {
+        return Math.min(CHUNK_SIZE, TOTAL_SIZE - (long) (chunk - 1) * CHUNK_SIZE);
+    }
+
+    private static byte[] randomBytes() {
+        byte[] data = new byte[(int) TOTAL_SIZE];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,79 @@
+package com.jmal.clouddisk.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SortKeyUtilTest {
+
+    @Test
+    void nullNameHasNoSortKey() {
+        assertThat(SortKeyUtil.getSortKey(null)).isNull();
+    }
+
+    @Test
+    void sortKeyOnlyContainsLowercaseHex() {
+        for (String name : List.of("file10.txt", "报告 2024.docx", "A_B-C", "💾.bin")) {
+            assertThat(SortKeyUtil.getSortKey(name)).matches("[0-9a-f]*");
+        }
+    }
+
+    @Test
+    void numbersSortBeforeText() {
+        assertThat(SortKeyUtil.getSortKey("1")).isLessThan(SortKeyUtil.getSortKey("a"));
+        assertThat(SortKeyUtil.getSortKey("999")).isLessThan(SortKeyUtil.getSortKey("A"));
+    }
+
+    @Test
+    void numbersCompareByValue() {
+        assertThat(SortKeyUtil.getSortKey("file2")).isLessThan(SortKeyUtil.getSortKey("file10"));
+        assertThat(SortKeyUtil.getSortKey("9")).isLessThan(SortKeyUtil.getSortKey("10"));
+        // 前导零不影响数值
+        assertThat(SortKeyUtil.getSortKey("01")).isEqualTo(SortKeyUtil.getSortKey("1"));
+    }
+
+    @Test
+    void textIgnoresCase() {
+        assertThat(SortKeyUtil.getSortKey("a")).isEqualTo(SortKeyUtil.getSortKey("A"));
+        assertThat(SortKeyUtil.getSortKey("b")).isGreaterThan(SortKeyUtil.getSortKey("A"));
+    }
+
+    @Test
+    void chineseSortsByPinyin() {
+        assertThat(SortKeyUtil.getSortKey("阿")).isLessThan(SortKeyUtil.getSortKey("波"));
+        assertThat(SortKeyUtil.getSortKey("波")).isLessThan(SortKeyUtil.getSortKey("中"));
+    }
+
+    @Test
+    void textEndSortsShorterTextFirst() {
+        // 文本段结束标记小于任何字符的权重, "a1" 中的 "a" 比 "ab" 短, 应排在前面
+        assertThat(SortKeyUtil.getSortKey("a")).isLessThan(SortKeyUtil.getSortKey("a1"));
+        assertThat(SortKeyUtil.getSortKey("a1")).isLessThan(SortKeyUtil.getSortKey("ab"));
+        assertThat(SortKeyUtil.getSortKey("ab99")).isLessThan(SortKeyUtil.getSortKey("abc"));
+    }
+
+    @Test
+    void naturalOrder() {
+        List<String> names = new ArrayList<>(List.of("b", "a10", "A2", "10", "a1", "2", "ab"));
+        names.sort(Comparator.comparing(SortKeyUtil::getSortKey));
+        assertThat(names).containsExactly("2", "10", "a1", "A2", "a10", "ab", "b");
+    }
+
+    @Test
+    void longNamesAreTruncatedToMaxLength() {
+        assertThat(SortKeyUtil.getSortKey("x".repeat(300))).hasSize(SortKeyUtil.MAX_LENGTH);
+        assertThat(SortKeyUtil.getSortKey("1".repeat(300))).hasSize(SortKeyUtil.MAX_LENGTH);
+        assertThat(SortKeyUtil.getSortKey("文件".repeat(200))).hasSizeLessThanOrEqualTo(SortKeyUtil.MAX_LENGTH);
+    }
+
+    @Test
+    void truncatedKeysKeepTheirPrefixOrder() {
+        String prefix = "x".repeat(300);
+        assertThat(SortKeyUtil.getSortKey(prefix + "a")).isEqualTo(SortKeyUtil.getSortKey(prefix + "b"));
+        assertThat(SortKeyUtil.getSortKey("a" + prefix)).isLessThan(SortKeyUtil.getSortKey("b" + prefix));
+    }
+}
@@ -0,0 +1,140 @@
+package com.jmal.clouddisk.util;
+
+import com.jmal.clouddisk.exception.CommonException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StoredZipArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writtenArchiveMatchesPlannedLengthAndContents() throws IOException {
+        Path folder = createFolder();
+        StoredZipArchive archive = StoredZipArchive.of(List.of(folder));
+
+        byte[] zip = write(archive);
+
+        assertThat((long) zip.length).isEqualTo(archive.getLength());
+        Path zipFile = tempDir.resolve("out.zip");
+        Files.write(zipFile, zip);
+        try (ZipFile zf = new ZipFile(zipFile.toFile(), StandardCharsets.UTF_8)) {
+            List<String> names = new ArrayList<>();
+            Collections.list(zf.entries()).forEach(entry -> names.add(entry.getName()));
+            assertThat(names).containsExactlyInAnyOrder("docs/a.txt", "docs/sub/", "docs/sub/中文.bin", "docs/empty.txt");
+            ZipEntry entry = zf.getEntry("docs/sub/中文.bin");
+            assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+            byte[] data = zf.getInputStream(entry).readAllBytes();
+            assertThat(data).isEqualTo(Files.readAllBytes(folder.resolve("sub/中文.bin")));
+            assertThat(entry.getCrc()).isEqualTo(crc(data));
+        }
+    }
+
+    @Test
+    void rangesConcatenateToTheFullArchive() throws IOException {
+        StoredZipArchive archive = StoredZipArchive.of(List.of(createFolder()));
+        byte[] full = write(archive);
+
+        // 断点位置落在文件头、文件数据、数据描述符和中央目录中
+        long[] cuts = {1, 40, 100, 5000, 70_000, archive.getLength() - 30, archive.getLength() - 1};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = 0;
+        for (long cut : cuts) {
+            archive.write(out, start, cut - 1);
+            start = cut;
+        }
+        archive.write(out, start, archive.getLength() - 1);
+
+        assertThat(out.toByteArray()).isEqualTo(full);
+    }
+
+    @Test
+    void rangeCrcIsComputedWithoutAFullPass() throws IOException {
+        Path file = tempDir.resolve("range.bin");
+        Files.write(file, randomBytes(10_000, 7));
+        StoredZipArchive archive = StoredZipArchive.of(List.of(file));
+
+        // 先只请求后半段, 还没有缓存, 数据描述符和中央目录的 CRC32 由读取文件计算
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long from = archive.getLength() / 2;
+        archive.write(out, from, archive.getLength() - 1);
+        byte[] full = write(archive);
+
+        byte[] tail = new byte[full.length - (int) from];
+        System.arraycopy(full, (int) from, tail, 0, tail.length);
+        assertThat(out.toByteArray()).isEqualTo(tail);
+    }
+
+    @Test
+    void etagChangesOnlyWhenContentChanges() throws IOException {
+        Path folder = createFolder();
+        String etag = StoredZipArchive.of(List.of(folder)).getEtag();
+
+        assertThat(StoredZipArchive.of(List.of(folder)).getEtag()).isEqualTo(etag);
+
+        Path file = folder.resolve("a.txt");
+        Files.writeString(file, "changed");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertThat(StoredZipArchive.of(List.of(folder)).getEtag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    void invalidRangeIsRejected() throws IOException {
+        StoredZipArchive archive = StoredZipArchive.of(List.of(createFolder()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThatThrownBy(() -> archive.write(out, -1, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archive.write(out, 0, archive.getLength())).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> archive.write(out, 10, 9)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void emptyPathListIsRejected() {
+        assertThatThrownBy(() -> StoredZipArchive.of(List.of())).isInstanceOf(CommonException.class);
+    }
+
+    private Path createFolder() throws IOException {
+        Path folder = tempDir.resolve("docs");
+        Files.createDirectories(folder.resolve("sub"));
+        Files.writeString(folder.resolve("a.txt"), "hello zip");
+        Files.write(folder.resolve("sub/中文.bin"), randomBytes(100_000, 1));
+        Files.createFile(folder.resolve("empty.txt"));
+        return folder;
+    }
+
+    private static byte[] write(StoredZipArchive archive) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        return crc32.getValue();
+    }
+}